@@ -0,0 +1,69 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring of a single price, from the history of non-outliers and from a precomputed {@link DetectionState}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnomalyDetectionBenchmark {
+
+    @Param({"100", "10000"})
+    private int historyLength;
+
+    @Param({"10", "100"})
+    private int windowSize;
+
+    @Param({"EXACT", "PRIMITIVE"})
+    private MathMode mathMode;
+
+    private AnomalyDetectionStandardDeviation anomalyDetection;
+    private List<PriceData> nonOutliers;
+    private DetectionState state;
+    private final BigDecimal newPrice = new BigDecimal("104.25");
+
+    @Setup
+    public void setUp() {
+        anomalyDetection = new AnomalyDetectionStandardDeviation(windowSize, new BigDecimal("1.5"), mathMode);
+        nonOutliers = BenchmarkData.history(historyLength);
+        state = anomalyDetection.buildState(nonOutliers);
+    }
+
+    @Benchmark
+    public String isAnomalyFromHistory() {
+        return anomalyDetection.isAnomaly(nonOutliers, newPrice);
+    }
+
+    @Benchmark
+    public String isAnomalyFromState() {
+        return anomalyDetection.isAnomaly(state, newPrice);
+    }
+
+    @Benchmark
+    public DetectionState buildState() {
+        return anomalyDetection.buildState(nonOutliers);
+    }
+}
@@ -0,0 +1,72 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic inputs shared by the benchmarks, so results of different builds are comparable.
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 42;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Daily prices around 100 with a spike about every 50 days, one per day starting on 2020-01-01.
+     */
+    static List<PriceData> history(int length) {
+        Random random = new Random(SEED);
+        List<PriceData> history = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            history.add(new PriceData(day(i), price(random)));
+        }
+        return history;
+    }
+
+    static List<BigDecimal> prices(int length) {
+        Random random = new Random(SEED);
+        List<BigDecimal> prices = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            prices.add(price(random));
+        }
+        return prices;
+    }
+
+    /**
+     * A CSV upload with the ITEM_ID,PRICE,ORD_CLOSED_DT columns and about 50 rows per item.
+     */
+    static byte[] csv(int rows) {
+        Random random = new Random(SEED);
+        int items = Math.max(1, rows / 50);
+        StringBuilder csv = new StringBuilder(rows * 32).append("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("MLB").append(3_500_000_000L + random.nextInt(items)).append(',')
+                    .append(price(random).toPlainString()).append(',')
+                    .append(FIRST_DAY.plusDays(random.nextInt(365))).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal price(Random random) {
+        double price = 100 + random.nextGaussian() * 5;
+        if (random.nextInt(50) == 0) {
+            price *= 3;
+        }
+        return BigDecimal.valueOf(Math.round(price * 100), 2);
+    }
+
+    private static Date day(int offset) {
+        return Date.from(FIRST_DAY.plusDays(offset).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
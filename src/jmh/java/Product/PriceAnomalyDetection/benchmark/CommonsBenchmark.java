@@ -0,0 +1,69 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of {@link Commons} over windows of {@code length} prices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonsBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int length;
+
+    private List<BigDecimal> prices;
+    private BigDecimal mean;
+
+    @Setup
+    public void setUp() {
+        prices = BenchmarkData.prices(length);
+        mean = Commons.calculateSMA(prices);
+    }
+
+    @Benchmark
+    public BigDecimal calculateSMA() {
+        return Commons.calculateSMA(prices);
+    }
+
+    @Benchmark
+    public BigDecimal calculateStandardDeviation() {
+        return Commons.calculateStandardDeviation(prices, mean);
+    }
+
+    @Benchmark
+    public PriceStatistics calculateStatistics() {
+        return Commons.calculateStatistics(prices);
+    }
+
+    @Benchmark
+    public List<BigDecimal> removeOutliers() {
+        return Commons.removeOutliers(prices);
+    }
+
+    @Benchmark
+    public List<BigDecimal> removeOutliersEstimated() {
+        return Commons.removeOutliers(prices, MathMode.PRIMITIVE);
+    }
+}
@@ -0,0 +1,66 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformerMovingWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification of the whole history of an item, as done for each item of an upload: from a list of
+ * {@link PriceData}, as a backfill does, and from a {@link PriceSeries}, as an upload does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTransformerBenchmark {
+
+    @Param({"1000", "100000"})
+    private int historyLength;
+
+    @Param({"10", "100"})
+    private int windowSize;
+
+    @Param({"EXACT", "PRIMITIVE"})
+    private MathMode mathMode;
+
+    private DataTransformerMovingWindow dataTransformer;
+    private List<PriceData> history;
+    private PriceSeries series;
+
+    @Setup
+    public void setUp() {
+        dataTransformer = new DataTransformerMovingWindow(windowSize, new BigDecimal("1.5"), mathMode);
+        history = BenchmarkData.history(historyLength);
+        series = PriceSeries.of(history);
+    }
+
+    @Benchmark
+    public Product transformToProduct() {
+        return dataTransformer.transformToProduct("MLB1", new ArrayList<>(history));
+    }
+
+    @Benchmark
+    public Product transformSeriesToProduct() {
+        return dataTransformer.transformToProduct("MLB1", series.copy());
+    }
+}
@@ -0,0 +1,88 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCodec;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the detection snapshot cached in Redis, with {@link DetectionSnapshotCodec} and with a
+ * {@link Jackson2JsonRedisSerializer}. The size of both payloads is printed when the trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionSnapshotCodecBenchmark {
+
+    /**
+     * The same fields as the binary snapshot, for the JSON serializer.
+     */
+    public record JsonSnapshot(long outlierCount, long nonOutlierCount, DetectionState detectionState) {
+    }
+
+    @Param({"10", "100"})
+    private int windowSize;
+
+    @Param({"EXACT", "PRIMITIVE"})
+    private MathMode mathMode;
+
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+    private final Jackson2JsonRedisSerializer<JsonSnapshot> jackson =
+            new Jackson2JsonRedisSerializer<>(JsonSnapshot.class);
+    private Product snapshot;
+    private JsonSnapshot jsonSnapshot;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        DetectionState state = new AnomalyDetectionStandardDeviation(windowSize, new BigDecimal("1.5"), mathMode)
+                .buildState(BenchmarkData.history(1_000));
+        state.setVersion(1_000);
+        snapshot = new Product("item", null, null, 20, 980, state, null, null, 1);
+        jsonSnapshot = new JsonSnapshot(20, 980, state);
+        binary = codec.serialize(snapshot);
+        json = jackson.serialize(jsonSnapshot);
+        System.out.printf("%nPayload with windowSize=%d, mathMode=%s: binary %d bytes, JSON %d bytes%n",
+                windowSize, mathMode, binary.length, json.length);
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+        return codec.serialize(snapshot);
+    }
+
+    @Benchmark
+    public Product deserializeBinary() {
+        return codec.deserialize(binary);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return jackson.serialize(jsonSnapshot);
+    }
+
+    @Benchmark
+    public JsonSnapshot deserializeJson() {
+        return jackson.deserialize(json);
+    }
+}
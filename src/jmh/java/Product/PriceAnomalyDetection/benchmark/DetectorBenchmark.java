@@ -0,0 +1,82 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionEwma;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionMad;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionSelector;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring of a stream of prices with each {@link Detector}: every price is compared against the state and, when it
+ * is not an anomaly, added to it, as the services do for each scored price. The window of
+ * {@link Detector#STANDARD_DEVIATION} is recomputed on every accepted price, so its cost grows with
+ * {@code windowSize}; the streaming detectors cost the same for any {@code windowSize}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectorBenchmark {
+
+    private static final int PRICES = 4_096;
+
+    @Param({"STANDARD_DEVIATION", "EWMA", "MAD"})
+    private Detector detector;
+
+    @Param({"10", "100"})
+    private int windowSize;
+
+    private AnomalyDetectionSelector anomalyDetection;
+    private DetectionState state;
+    private List<PriceData> history;
+    private List<BigDecimal> prices;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BigDecimal kValue = new BigDecimal("1.5");
+        anomalyDetection = new AnomalyDetectionSelector(List.of(
+                new AnomalyDetectionStandardDeviation(windowSize, kValue, MathMode.PRIMITIVE),
+                new AnomalyDetectionEwma(windowSize, kValue),
+                new AnomalyDetectionMad(windowSize, kValue)), detector);
+        history = BenchmarkData.history(windowSize + 1);
+        state = anomalyDetection.buildState(history);
+        prices = BenchmarkData.prices(PRICES);
+    }
+
+    @Benchmark
+    public String scoreAndUpdate() {
+        BigDecimal price = prices.get(next);
+        next = (next + 1) % PRICES;
+        String result = anomalyDetection.isAnomaly(state, price);
+        if (!Boolean.parseBoolean(result)) {
+            anomalyDetection.update(state, price);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public DetectionState buildState() {
+        return anomalyDetection.buildState(history);
+    }
+}
@@ -0,0 +1,104 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCodec;
+import Product.PriceAnomalyDetection.config.cache.MappedSnapshotStore;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup and update of detection snapshots in a {@link MappedSnapshotStore} holding {@code items} products, as done
+ * by {@code ProductService.isAnomaly} when the mapped tier is enabled. When the trial starts it prints the heap
+ * that the same snapshots take when decoded and kept in a {@link HashMap}, against none for the mapped store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedSnapshotStoreBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int items;
+
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+    private Path file;
+    private MappedSnapshotStore store;
+    private byte[][] keys;
+    private byte[] value;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DetectionState state = new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), MathMode.PRIMITIVE)
+                .buildState(BenchmarkData.history(1_000));
+        value = codec.serialize(new Product("item", null, null, 20, 980, state, null, null, 1));
+        file = Files.createTempFile("detection-states", ".bin");
+        store = new MappedSnapshotStore(file, items * 2L, 128);
+        keys = new byte[items][];
+        for (int i = 0; i < items; i++) {
+            keys[i] = ("MLB" + (1_000_000_000L + i)).getBytes(StandardCharsets.UTF_8);
+            store.put(keys[i], value, Long.MAX_VALUE);
+        }
+        System.out.printf("%nSnapshots of %d items: %d bytes off heap, %d bytes of heap decoded in a HashMap%n",
+                items, store.capacity() * 128, heapOfDecodedSnapshots());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Product getAndDecode() {
+        return codec.deserialize(store.get(nextKey()));
+    }
+
+    @Benchmark
+    public boolean put() {
+        return store.put(nextKey(), value, Long.MAX_VALUE);
+    }
+
+    private byte[] nextKey() {
+        next = (next + 7_919) % items;
+        return keys[next];
+    }
+
+    private long heapOfDecodedSnapshots() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Map<String, Product> snapshots = new HashMap<>();
+        for (byte[] key : keys) {
+            snapshots.put(new String(key, StandardCharsets.UTF_8), codec.deserialize(value));
+        }
+        System.gc();
+        long retained = runtime.totalMemory() - runtime.freeMemory() - before;
+        return snapshots.isEmpty() ? 0 : retained;
+    }
+}
@@ -0,0 +1,93 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.StorageEncoding;
+import Product.PriceAnomalyDetection.repository.PriceColumns;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full {@link PriceBucket} in each {@link StorageEncoding}, mapped and encoded to BSON as it is written to
+ * MongoDB, and decoded and mapped back with every point read, as it is read from MongoDB. The BSON size of both
+ * layouts is printed when the trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceBucketEncodingBenchmark {
+
+    @Param({"DOCUMENTS", "COLUMNAR"})
+    private StorageEncoding encoding;
+
+    @Param({"200", "1000"})
+    private int bucketSize;
+
+    private final DocumentCodec codec = new DocumentCodec();
+    private MappingMongoConverter converter;
+    private List<PriceData> points;
+    private RawBsonDocument bson;
+
+    @Setup
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        points = BenchmarkData.history(bucketSize);
+        bson = write();
+        System.out.printf("%nBucket of %d points with encoding=%s: %d bytes of BSON%n",
+                bucketSize, encoding, bson.getByteBuffer().remaining());
+    }
+
+    @Benchmark
+    public RawBsonDocument write() {
+        byte[] columns = encoding == StorageEncoding.COLUMNAR ? PriceColumns.encode(points) : null;
+        PriceBucket bucket = new PriceBucket(PriceBucket.bucketId("item", false, 0), "item", false, 0, 1,
+                points.size(), points.get(0).getDate(), points.get(points.size() - 1).getDate(),
+                columns == null ? new ArrayList<>(points) : new ArrayList<>(), columns);
+        Document document = new Document();
+        converter.write(bucket, document);
+        return new RawBsonDocument(document, codec);
+    }
+
+    @Benchmark
+    public BigDecimal read() {
+        Document document = codec.decode(bson.asBsonReader(), DecoderContext.builder().build());
+        PriceBucket bucket = converter.read(PriceBucket.class, document);
+        List<PriceData> read = bucket.getColumns() == null ? bucket.getPrices() : new PriceColumns(bucket.getColumns());
+        BigDecimal last = null;
+        for (PriceData point : read) {
+            last = point.getPrice();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,49 @@
+package Product.PriceAnomalyDetection.benchmark;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFileImp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and grouping of a CSV upload of {@code rows} rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessFileBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private final ProcessFileImp processFile = new ProcessFileImp();
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() {
+        file = new MockMultipartFile("file", "prices.csv", "text/csv", BenchmarkData.csv(rows));
+    }
+
+    @Benchmark
+    public Map<String, PriceSeries> processData() throws IOException, ParseException {
+        return processFile.processData(file);
+    }
+}
@@ -0,0 +1,444 @@
+package Product.PriceAnomalyDetection.loadtest;
+
+import Product.PriceAnomalyDetection.PriceAnomalyDetectionApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load test of the application started in process on top of {@link InMemoryInfrastructure}, so it
+ * needs neither MongoDB nor Redis and can run offline, for example in CI.
+ *
+ * <p>Each client sends requests back to back over HTTP, choosing for each one an operation by its weight in
+ * {@code mix} and a product with a Zipfian distribution of exponent {@code skew}, so a few hot products take most
+ * of the traffic ({@code 0} picks them uniformly):
+ * <ul>
+ *     <li>{@code score}: {@code POST /} with a random price.</li>
+ *     <li>{@code get}: {@code GET /{id}}.</li>
+ *     <li>{@code upload}: {@code POST /upload} with a new history of {@code upload-rows} prices for the
+ *         product.</li>
+ * </ul>
+ * Before the first level the products are uploaded with a history of {@code history} prices, and then warmed up
+ * for {@code warmup}. For each concurrency level the throughput and the percentiles of the latency of each
+ * operation, recorded in an HDR histogram, are reported and written to {@code result}.</p>
+ *
+ * <p>With {@code baseline}, a result file of an earlier run, the run fails when the throughput of an operation
+ * drops or its 99th percentile grows by more than {@code tolerance} percent at the same concurrency. It also
+ * fails when any request fails. Both builds should be measured on the same machine, one after the other.</p>
+ *
+ * <p>Arguments, all optional: {@code --items=1000 --history=50 --concurrency=8,32 --duration=10s --warmup=5s
+ * --mix=score:90,get:8,upload:2 --skew=0.99 --upload-rows=50 --random-seed=42 --label=embedded
+ * --result=target/embedded-loadtest-embedded.csv --baseline=<csv> --tolerance=20}. Arguments whose name contains
+ * a dot are application properties, for example {@code --scoring.engine.enabled=true}.</p>
+ */
+public final class EmbeddedLoadTest {
+
+    private static final String API = "/api/v1/price-anomaly";
+    private static final String BOUNDARY = "embedded-load-test";
+    private static final String HEADER = "label,concurrency,operation,requests,errors,throughput,p50_ms,p90_ms,"
+            + "p99_ms,p999_ms,max_ms";
+
+    enum Operation { SCORE, GET, UPLOAD }
+
+    private final HttpClient client;
+    private final String url;
+    private final int items;
+    private final Map<Operation, Integer> mix;
+    private final ZipfianKeys keys;
+    private final int uploadRows;
+    private final long randomSeed;
+
+    private EmbeddedLoadTest(String url, int items, Map<Operation, Integer> mix, double skew, int uploadRows,
+                             long randomSeed) {
+        this.url = url;
+        this.items = items;
+        this.mix = mix;
+        this.keys = new ZipfianKeys(items, skew);
+        this.uploadRows = uploadRows;
+        this.randomSeed = randomSeed;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int items = Integer.parseInt(option(args, "items", "1000"));
+        int history = Integer.parseInt(option(args, "history", "50"));
+        int[] levels = Arrays.stream(option(args, "concurrency", "8,32").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Duration duration = duration(option(args, "duration", "10s"));
+        Duration warmup = duration(option(args, "warmup", "5s"));
+        Map<Operation, Integer> mix = mix(option(args, "mix", "score:90,get:8,upload:2"));
+        double skew = Double.parseDouble(option(args, "skew", "0.99"));
+        int uploadRows = Integer.parseInt(option(args, "upload-rows", "50"));
+        long randomSeed = Long.parseLong(option(args, "random-seed", "42"));
+        String label = option(args, "label", "embedded");
+        Path result = Paths.get(option(args, "result", "target/embedded-loadtest-" + label + ".csv"));
+        String baseline = option(args, "baseline", null);
+        double tolerance = Double.parseDouble(option(args, "tolerance", "20")) / 100;
+
+        // DevTools would restart main with the arguments of the application instead of these.
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                PriceAnomalyDetectionApplication.class, InMemoryInfrastructure.class)
+                .run(applicationArguments(args));
+        int exitCode;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            EmbeddedLoadTest loadTest = new EmbeddedLoadTest("http://localhost:" + port, items, mix, skew,
+                    uploadRows, randomSeed);
+            loadTest.seed(history);
+            loadTest.run(Math.max(1, levels[0]), warmup);
+
+            List<String> lines = new ArrayList<>();
+            lines.add(HEADER);
+            System.out.printf("%-10s %11s %9s %9s %7s %10s %8s %8s %8s %8s %8s%n", "label", "concurrency",
+                    "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+            long errors = 0;
+            for (int concurrency : levels) {
+                Level level = loadTest.run(concurrency, duration);
+                for (Operation operation : mix.keySet()) {
+                    Histogram latencies = level.latencies.get(operation);
+                    long failed = level.errors.getOrDefault(operation, 0L);
+                    double throughput = latencies.getTotalCount() / (level.elapsedNanos / 1e9);
+                    errors += failed;
+                    System.out.printf(Locale.ROOT, "%-10s %11d %9s %9d %7d %10.1f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                            label, concurrency, name(operation), latencies.getTotalCount(), failed, throughput,
+                            millis(latencies, 50), millis(latencies, 90), millis(latencies, 99),
+                            millis(latencies, 99.9), latencies.getMaxValue() / 1000.0);
+                    lines.add(String.format(Locale.ROOT, "%s,%d,%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f", label,
+                            concurrency, name(operation), latencies.getTotalCount(), failed, throughput,
+                            millis(latencies, 50), millis(latencies, 90), millis(latencies, 99),
+                            millis(latencies, 99.9), latencies.getMaxValue() / 1000.0));
+                }
+            }
+            if (result.getParent() != null) {
+                Files.createDirectories(result.getParent());
+            }
+            Files.write(result, lines, StandardCharsets.UTF_8);
+            System.out.println("Results written to " + result);
+
+            List<String> regressions = baseline == null ? List.of()
+                    : compare(Files.readAllLines(Paths.get(baseline), StandardCharsets.UTF_8), lines, tolerance);
+            regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+            if (errors > 0) {
+                System.out.println("FAILED " + errors + " requests");
+            }
+            exitCode = regressions.isEmpty() && errors == 0 ? 0 : 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Uploads {@code items} products with {@code history} prices each, in files of up to 1000 products.
+     */
+    private void seed(int history) throws IOException, InterruptedException {
+        Random random = new Random(randomSeed);
+        long start = System.nanoTime();
+        for (int first = 0; first < items; first += 1_000) {
+            StringBuilder csv = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+            for (int item = first; item < Math.min(items, first + 1_000); item++) {
+                appendHistory(csv, itemId(item), history, random);
+            }
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + API + "/upload/stream"))
+                    .header("Content-Type", "text/csv")
+                    .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": "
+                        + response.body());
+            }
+        }
+        System.out.printf("Seeded %d items with %d prices in %d ms%n", items, history,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Level run(int concurrency, Duration duration) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        SplittableRandom seeds = new SplittableRandom(randomSeed + concurrency);
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Client result = new Client(seeds.split());
+            futures.add(clients.submit(() -> {
+                start.await();
+                while (System.nanoTime() < deadline[0]) {
+                    Operation operation = result.nextOperation();
+                    long latency = send(operation, result.random);
+                    result.record(operation, latency);
+                }
+                return result;
+            }));
+        }
+        long started = System.nanoTime();
+        deadline[0] = started + duration.toNanos();
+        start.countDown();
+
+        Level level = new Level();
+        for (Future<Client> future : futures) {
+            level.add(future.get());
+        }
+        level.elapsedNanos = System.nanoTime() - started;
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+        return level;
+    }
+
+    /**
+     * @return The latency in nanoseconds, negative if the request failed.
+     */
+    private long send(Operation operation, SplittableRandom random) {
+        String itemId = itemId(keys.next(random));
+        HttpRequest.Builder request = switch (operation) {
+            case SCORE -> HttpRequest.newBuilder(URI.create(url + API))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(String.format("{\"item_id\":\"%s\",\"price\":%d.%02d}",
+                            itemId, 90 + random.nextInt(20), random.nextInt(100))));
+            case GET -> HttpRequest.newBuilder(URI.create(url + API + "/" + itemId)).GET();
+            case UPLOAD -> HttpRequest.newBuilder(URI.create(url + API + "/upload"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                    .POST(HttpRequest.BodyPublishers.ofString(multipart(itemId, random)));
+        };
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            long latency = System.nanoTime() - start;
+            return response.statusCode() == 200 ? latency : -latency;
+        } catch (IOException e) {
+            return -(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a response", e);
+        }
+    }
+
+    private String multipart(String itemId, SplittableRandom random) {
+        StringBuilder body = new StringBuilder()
+                .append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"prices.csv\"\r\n")
+                .append("Content-Type: text/csv\r\n\r\n")
+                .append("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        appendHistory(body, itemId, uploadRows, new Random(random.nextLong()));
+        return body.append("\r\n--").append(BOUNDARY).append("--\r\n").toString();
+    }
+
+    private static void appendHistory(StringBuilder csv, String itemId, int prices, Random random) {
+        LocalDate firstDay = LocalDate.of(2024, 1, 1);
+        for (int day = 0; day < prices; day++) {
+            csv.append(itemId).append(',')
+                    .append(String.format(Locale.ROOT, "%.2f", 100 + random.nextGaussian() * 5)).append(',')
+                    .append(firstDay.plusDays(day)).append('\n');
+        }
+    }
+
+    /**
+     * @return One line for each operation and concurrency of {@code current} whose throughput or 99th percentile
+     *         is worse than in {@code baseline} by more than {@code tolerance}.
+     */
+    static List<String> compare(List<String> baseline, List<String> current, double tolerance) {
+        Map<String, String[]> expected = new HashMap<>();
+        for (String line : baseline.subList(1, baseline.size())) {
+            String[] columns = line.split(",");
+            expected.put(columns[1] + "," + columns[2], columns);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (String line : current.subList(1, current.size())) {
+            String[] columns = line.split(",");
+            String[] before = expected.get(columns[1] + "," + columns[2]);
+            if (before == null) {
+                continue;
+            }
+            double throughput = Double.parseDouble(columns[5]);
+            double baselineThroughput = Double.parseDouble(before[5]);
+            double p99 = Double.parseDouble(columns[8]);
+            double baselineP99 = Double.parseDouble(before[8]);
+            if (throughput < baselineThroughput * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s at concurrency %s: %.1f req/s, baseline %.1f",
+                        columns[2], columns[1], throughput, baselineThroughput));
+            }
+            if (p99 > baselineP99 * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s at concurrency %s: p99 %.3f ms, baseline %.3f",
+                        columns[2], columns[1], p99, baselineP99));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * @return The arguments of the application: the properties that keep it offline and quiet, overridden by the
+     *         arguments whose name contains a dot.
+     */
+    private static String[] applicationArguments(String[] args) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.data.mongodb.auto-index-creation", "false");
+        properties.put("logging.level.org.springframework.cache", "WARN");
+        properties.put("logging.level.org.mongodb.driver", "OFF");
+        properties.put("logging.level.Product.PriceAnomalyDetection.config.cache.RetryingMessageListenerContainer",
+                "ERROR");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (arg.startsWith("--") && separator > 0 && arg.substring(2, separator).contains(".")) {
+                properties.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+    }
+
+    private static Map<Operation, Integer> mix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = Integer.parseInt(parts[1]);
+            if (weight > 0) {
+                mix.put(Operation.valueOf(parts[0].toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("The mix must give a positive weight to some operation: " + value);
+        }
+        return mix;
+    }
+
+    private static String name(Operation operation) {
+        return operation.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static String itemId(int index) {
+        return "load-" + index;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Duration duration(String value) {
+        String number = value.replaceAll("[^0-9]", "");
+        return value.endsWith("ms") ? Duration.ofMillis(Long.parseLong(number))
+                : value.endsWith("m") ? Duration.ofMinutes(Long.parseLong(number))
+                : Duration.ofSeconds(Long.parseLong(number));
+    }
+
+    /**
+     * Zipfian distribution over {@code [0, items)}: index {@code k} is drawn with probability proportional to
+     * {@code 1 / (k + 1)^skew}, by a binary search of its cumulative distribution.
+     */
+    static final class ZipfianKeys {
+        private final double[] cumulative;
+
+        ZipfianKeys(int items, double skew) {
+            cumulative = new double[items];
+            double sum = 0;
+            for (int k = 0; k < items; k++) {
+                sum += 1 / Math.pow(k + 1, skew);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < items; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int next(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    private final class Client {
+        private final SplittableRandom random;
+        private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private final Operation[] operations;
+        private final int[] cumulativeWeights;
+
+        private Client(SplittableRandom random) {
+            this.random = random;
+            this.operations = mix.keySet().toArray(Operation[]::new);
+            this.cumulativeWeights = new int[operations.length];
+            int total = 0;
+            for (int i = 0; i < operations.length; i++) {
+                total += mix.get(operations[i]);
+                cumulativeWeights[i] = total;
+                latencies.put(operations[i], new Histogram(3));
+            }
+        }
+
+        private Operation nextOperation() {
+            int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < operations.length; i++) {
+                if (draw < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            return operations[operations.length - 1];
+        }
+
+        private void record(Operation operation, long latency) {
+            if (latency < 0) {
+                errors.merge(operation, 1L, Long::sum);
+            } else {
+                latencies.get(operation).recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latency)));
+            }
+        }
+    }
+
+    private final class Level {
+        private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private long elapsedNanos;
+
+        private Level() {
+            mix.keySet().forEach(operation -> latencies.put(operation, new Histogram(3)));
+        }
+
+        private void add(Client client) {
+            client.latencies.forEach((operation, histogram) -> latencies.get(operation).add(histogram));
+            client.errors.forEach((operation, count) -> errors.merge(operation, count, Long::sum));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package Product.PriceAnomalyDetection.loadtest;
+
+import Product.PriceAnomalyDetection.config.cache.CacheGenerations;
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.config.cache.TwoLevelCacheManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-ins for MongoDB and Redis used by {@link EmbeddedLoadTest}, registered as primary beans so they are
+ * injected instead of the ones of {@code CacheConfig} and of the MongoDB repositories. Those are still created,
+ * but never used: the clients only connect on first use, and the listener of cache invalidations keeps retrying
+ * to subscribe in the background, which {@link EmbeddedLoadTest} does not log.
+ *
+ * <ul>
+ *     <li>The products are kept in an {@link InMemoryProductRepo}.</li>
+ *     <li>The shared tier of the result cache is a {@link ConcurrentMapCacheManager} behind the same
+ *         {@link TwoLevelCacheManager} as in production, so the local tier, the generations and the key generator
+ *         are the real ones.</li>
+ *     <li>The generations and the detection snapshots are kept in maps instead of Redis, and invalidations are
+ *         delivered to this node as if they came back from the channel.</li>
+ * </ul>
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class InMemoryInfrastructure {
+
+    @Bean
+    @Primary
+    public InMemoryProductRepo inMemoryProductRepo() {
+        return new InMemoryProductRepo();
+    }
+
+    @Bean
+    @Primary
+    public CacheGenerations inMemoryCacheGenerations(@Value("${cache.invalidation-channel}") String channel,
+                                                     @Value("${cache.local.maximum-size}") long maximumSize,
+                                                     @Value("${cache.local.ttl}") Duration ttl) {
+        return new InMemoryCacheGenerations(channel, maximumSize, ttl);
+    }
+
+    @Bean
+    @Primary
+    public TwoLevelCacheManager inMemoryCacheManager(CacheGenerations cacheGenerations,
+                                                     @Value("${cache.local.maximum-size}") long maximumSize,
+                                                     @Value("${cache.local.ttl}") Duration ttl) {
+        return new TwoLevelCacheManager(new ConcurrentMapCacheManager(), cacheGenerations, maximumSize, ttl);
+    }
+
+    @Bean
+    @Primary
+    public DetectionSnapshotCache inMemoryDetectionSnapshotCache(@Value("${cache.detection-state.ttl}") Duration ttl) {
+        return new InMemoryDetectionSnapshotCache(ttl);
+    }
+
+    private static final class InMemoryCacheGenerations extends CacheGenerations {
+        private final Map<String, Long> stored = new ConcurrentHashMap<>();
+        private final byte[] channel;
+
+        private InMemoryCacheGenerations(String channel, long maximumSize, Duration ttl) {
+            super(null, channel, maximumSize, ttl);
+            this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected long fetch(String itemId) {
+            return stored.getOrDefault(itemId, 0L);
+        }
+
+        @Override
+        protected List<Long> incrementAndPublish(List<String> itemIds) {
+            List<Long> incremented = new ArrayList<>(itemIds.size());
+            for (String itemId : itemIds) {
+                long generation = stored.merge(itemId, 1L, Long::sum);
+                incremented.add(generation);
+                deliver(generation + ":" + itemId);
+            }
+            return incremented;
+        }
+
+        @Override
+        public void publishClear(String cacheName) {
+            deliver("clear:" + cacheName);
+        }
+
+        private void deliver(String body) {
+            onMessage(new DefaultMessage(channel, body.getBytes(StandardCharsets.UTF_8)), null);
+        }
+    }
+
+    private static final class InMemoryDetectionSnapshotCache extends DetectionSnapshotCache {
+        private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+        private InMemoryDetectionSnapshotCache(Duration ttl) {
+            super(null, ttl);
+        }
+
+        @Override
+        protected List<byte[]> mget(List<byte[]> keys) {
+            return keys.stream().map(key -> values.get(new String(key, StandardCharsets.UTF_8))).toList();
+        }
+
+        @Override
+        protected void set(Map<byte[], byte[]> entries) {
+            entries.forEach((key, value) -> values.put(new String(key, StandardCharsets.UTF_8), value));
+        }
+
+        @Override
+        protected void delete(List<byte[]> keys) {
+            keys.forEach(key -> values.remove(new String(key, StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package Product.PriceAnomalyDetection.loadtest;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCodec;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * {@link IProductRepo} kept in memory, so the application can be load tested without MongoDB.
+ *
+ * <p>It follows the semantics of {@code IProductRepoCustomImpl} that the services depend on: the history lives
+ * apart from the product, which is read without it; a score is only recorded while the detection state still
+ * has the version it was scored against, the window of the stored state keeps its newest {@code windowSize + 1}
+ * prices, and the version of the new state is set as the MongoDB update does; and {@link #recordScores} reports
+ * the products that changed since they were read. Each product is kept encoded with the
+ * {@link DetectionSnapshotCodec}, so every read returns a copy, as a database would, and its writes are
+ * serialized by a lock per product.</p>
+ *
+ * <p>Queries by example are not used by the application and are not supported.</p>
+ */
+public class InMemoryProductRepo implements IProductRepo {
+
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+    /**
+     * A product and its two series. Every access is synchronized on the document.
+     */
+    private static final class Document {
+        private byte[] product;
+        private List<PriceData> outliers = new ArrayList<>();
+        private List<PriceData> nonOutliers = new ArrayList<>();
+
+        private List<PriceData> series(boolean outlier) {
+            return outlier ? outliers : nonOutliers;
+        }
+    }
+
+    @Override
+    public Product saveWithHistory(Product product) {
+        saveAllWithHistory(List.of(product));
+        return product;
+    }
+
+    @Override
+    public void saveAllWithHistory(List<Product> products) {
+        for (Product product : products) {
+            List<PriceData> outliers = product.getOutliers() == null ? List.of() : product.getOutliers();
+            List<PriceData> nonOutliers = product.getNonOutliers() == null ? List.of() : product.getNonOutliers();
+            product.setOutlierCount(outliers.size());
+            product.setNonOutlierCount(nonOutliers.size());
+            Document document = documents.computeIfAbsent(product.getId(), id -> new Document());
+            synchronized (document) {
+                Product stored = decode(product.getId(), document);
+                Detector detector = product.getDetector() == null && stored != null
+                        ? stored.getDetector() : product.getDetector();
+                product.setHistoryEpoch(stored == null ? 1 : stored.getHistoryEpoch() + 1);
+                document.product = codec.serialize(new Product(product.getId(), null, null, outliers.size(),
+                        nonOutliers.size(), product.getDetectionState(), detector, null, product.getHistoryEpoch()));
+                document.outliers = new ArrayList<>(outliers);
+                document.nonOutliers = new ArrayList<>(nonOutliers);
+            }
+        }
+    }
+
+    @Override
+    public boolean setDetector(String itemId, Detector detector) {
+        Document document = documents.get(itemId);
+        if (document == null) {
+            return false;
+        }
+        synchronized (document) {
+            Product stored = decode(itemId, document);
+            if (stored == null) {
+                return false;
+            }
+            stored.setDetector(detector);
+            stored.setDetectionState(null);
+            document.product = codec.serialize(stored);
+            return true;
+        }
+    }
+
+    @Override
+    public List<PriceData> findHistory(String itemId, boolean outlier) {
+        return findHistory(itemId, outlier, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<PriceData> findHistory(String itemId, boolean outlier, long offset, int limit) {
+        Document document = documents.get(itemId);
+        if (document == null || limit <= 0 || offset < 0) {
+            return new ArrayList<>();
+        }
+        synchronized (document) {
+            List<PriceData> series = document.series(outlier);
+            int from = (int) Math.min(offset, series.size());
+            return new ArrayList<>(series.subList(from, (int) Math.min(series.size(), from + (long) limit)));
+        }
+    }
+
+    @Override
+    public List<PriceData> findLastNonOutliers(Product product, int limit) {
+        Document document = documents.get(product.getId());
+        if (document == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        synchronized (document) {
+            List<PriceData> series = document.nonOutliers;
+            return new ArrayList<>(series.subList(Math.max(0, series.size() - limit), series.size()));
+        }
+    }
+
+    @Override
+    public Map<String, List<PriceData>> findLastNonOutliers(Collection<Product> products, int limit) {
+        Map<String, List<PriceData>> histories = new HashMap<>();
+        for (Product product : products) {
+            histories.put(product.getId(), findLastNonOutliers(product, limit));
+        }
+        return histories;
+    }
+
+    @Override
+    public boolean recordScore(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                               DetectionState state, boolean replaceState, PriceData priceData, boolean outlier) {
+        Document document = documents.get(itemId);
+        if (document == null) {
+            return false;
+        }
+        synchronized (document) {
+            Product stored = decode(itemId, document);
+            if (stored == null || stored.getHistoryEpoch() != historyEpoch || !hasVersion(stored, expectedVersion)
+                    || (outlier ? stored.getOutlierCount() : stored.getNonOutlierCount()) != expectedCount) {
+                return false;
+            }
+            if (replaceState || !outlier) {
+                state.setVersion(expectedVersion + 1);
+            }
+            if (replaceState || (!outlier && stored.getDetectionState() == null)) {
+                stored.setDetectionState(state);
+            } else if (!outlier) {
+                DetectionState storedState = stored.getDetectionState();
+                if (state.getStatistics() != null) {
+                    storedState.setStatistics(state.getStatistics());
+                } else {
+                    storedState.setWindow(push(storedState.getWindow(), state.getWindow(), state.getWindowSize()));
+                }
+                storedState.setSma(state.getSma());
+                storedState.setStdDev(state.getStdDev());
+                storedState.setLowerLimit(state.getLowerLimit());
+                storedState.setUpperLimit(state.getUpperLimit());
+                storedState.setVersion(state.getVersion());
+            }
+            if (outlier) {
+                stored.setOutlierCount(stored.getOutlierCount() + 1);
+            } else {
+                stored.setNonOutlierCount(stored.getNonOutlierCount() + 1);
+            }
+            document.product = codec.serialize(stored);
+            document.series(outlier).add(priceData);
+            return true;
+        }
+    }
+
+    @Override
+    public Set<String> recordScores(List<ScoreBatch> batches) {
+        Set<String> conflicts = new HashSet<>();
+        for (ScoreBatch batch : batches) {
+            batch.getState().setVersion(batch.getExpectedVersion() + 1);
+            Document document = documents.computeIfAbsent(batch.getItemId(), id -> new Document());
+            synchronized (document) {
+                Product stored = decode(batch.getItemId(), document);
+                if (stored == null) {
+                    // The upsert of IProductRepoCustomImpl creates the product with the counts of its filter.
+                    stored = new Product(batch.getItemId(), null, null, batch.getOutlierCount(),
+                            batch.getNonOutlierCount(), null, null, null, batch.getHistoryEpoch());
+                } else if (stored.getHistoryEpoch() != batch.getHistoryEpoch()
+                        || stored.getOutlierCount() != batch.getOutlierCount()
+                        || stored.getNonOutlierCount() != batch.getNonOutlierCount()
+                        || !hasVersion(stored, batch.getExpectedVersion())) {
+                    conflicts.add(batch.getItemId());
+                    continue;
+                }
+                stored.setDetectionState(batch.getState());
+                stored.setOutlierCount(stored.getOutlierCount() + batch.getOutliers().size());
+                stored.setNonOutlierCount(stored.getNonOutlierCount() + batch.getNonOutliers().size());
+                document.product = codec.serialize(stored);
+                document.outliers.addAll(batch.getOutliers());
+                document.nonOutliers.addAll(batch.getNonOutliers());
+            }
+        }
+        return conflicts;
+    }
+
+    @Override
+    public Stream<Product> streamProducts(String afterItemId, int batchSize) {
+        return documents.keySet().stream()
+                .filter(id -> afterItemId == null || id.compareTo(afterItemId) > 0)
+                .sorted()
+                .map(this::find)
+                .flatMap(Optional::stream)
+                .map(product -> {
+                    product.setDetectionState(null);
+                    return product;
+                });
+    }
+
+    @Override
+    public void loadHistories(List<Product> products) {
+        for (Product product : products) {
+            product.setOutliers(findHistory(product.getId(), true));
+            product.setNonOutliers(findHistory(product.getId(), false));
+        }
+    }
+
+    /**
+     * Products are never stored with an embedded history here, so there is nothing to migrate.
+     */
+    @Override
+    public List<String> migrateEmbeddedHistories(int batchSize) {
+        return List.of();
+    }
+
+    /**
+     * Points are added to their series in the same synchronized block that records them, so none is ever pending.
+     */
+    @Override
+    public List<String> appendPendingPoints(String afterItemId, int batchSize) {
+        return List.of();
+    }
+
+    @Override
+    public <S extends Product> S save(S product) {
+        Document document = documents.computeIfAbsent(product.getId(), id -> new Document());
+        synchronized (document) {
+            document.product = codec.serialize(product);
+        }
+        return product;
+    }
+
+    @Override
+    public <S extends Product> List<S> saveAll(Iterable<S> products) {
+        List<S> saved = new ArrayList<>();
+        products.forEach(product -> saved.add(save(product)));
+        return saved;
+    }
+
+    @Override
+    public <S extends Product> S insert(S product) {
+        return save(product);
+    }
+
+    @Override
+    public <S extends Product> List<S> insert(Iterable<S> products) {
+        return saveAll(products);
+    }
+
+    @Override
+    public Optional<Product> findById(String id) {
+        return find(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return find(id).isPresent();
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return findAllById(documents.keySet());
+    }
+
+    @Override
+    public List<Product> findAll(Sort sort) {
+        if (sort.isSorted()) {
+            throw new UnsupportedOperationException("Sorting is not supported by the in-memory repository");
+        }
+        return findAll();
+    }
+
+    @Override
+    public Page<Product> findAll(Pageable pageable) {
+        List<Product> all = findAll(pageable.getSort());
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(all);
+        }
+        int from = (int) Math.min(pageable.getOffset(), all.size());
+        return new PageImpl<>(all.subList(from, Math.min(all.size(), from + pageable.getPageSize())), pageable,
+                all.size());
+    }
+
+    @Override
+    public List<Product> findAllById(Iterable<String> ids) {
+        List<Product> products = new ArrayList<>();
+        ids.forEach(id -> find(id).ifPresent(products::add));
+        return products;
+    }
+
+    @Override
+    public long count() {
+        return findAll().size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        documents.remove(id);
+    }
+
+    @Override
+    public void delete(Product product) {
+        deleteById(product.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Product> products) {
+        products.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        documents.clear();
+    }
+
+    @Override
+    public <S extends Product> Optional<S> findOne(Example<S> example) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product> List<S> findAll(Example<S> example) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product> List<S> findAll(Example<S> example, Sort sort) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product> long count(Example<S> example) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product> boolean exists(Example<S> example) {
+        throw unsupportedExample();
+    }
+
+    @Override
+    public <S extends Product, R> R findBy(Example<S> example,
+                                           Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw unsupportedExample();
+    }
+
+    private Optional<Product> find(String id) {
+        Document document = documents.get(id);
+        if (document == null) {
+            return Optional.empty();
+        }
+        synchronized (document) {
+            return Optional.ofNullable(decode(id, document));
+        }
+    }
+
+    /**
+     * @return The product of the document without its history, or {@code null} if it only has buckets.
+     */
+    private Product decode(String id, Document document) {
+        if (document.product == null) {
+            return null;
+        }
+        Product product = codec.deserialize(document.product);
+        product.setId(id);
+        return product;
+    }
+
+    /**
+     * Same match as {@code versionCriteria} of {@code IProductRepoCustomImpl}: a product without a state matches
+     * version {@code 0}.
+     */
+    private static boolean hasVersion(Product product, long expectedVersion) {
+        DetectionState state = product.getDetectionState();
+        return state == null ? expectedVersion == 0 : state.getVersion() == expectedVersion;
+    }
+
+    /**
+     * Appends the newest price of {@code window} to {@code stored}, keeping the newest {@code windowSize + 1}.
+     */
+    private static long[] push(long[] stored, long[] window, int windowSize) {
+        long[] base = stored == null ? new long[0] : stored;
+        long[] pushed = Arrays.copyOf(base, base.length + 1);
+        pushed[base.length] = window[window.length - 1];
+        return pushed.length > windowSize + 1
+                ? Arrays.copyOfRange(pushed, pushed.length - (windowSize + 1), pushed.length)
+                : pushed;
+    }
+
+    private static UnsupportedOperationException unsupportedExample() {
+        return new UnsupportedOperationException("Queries by example are not supported by the in-memory repository");
+    }
+}
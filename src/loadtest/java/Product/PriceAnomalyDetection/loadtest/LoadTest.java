@@ -0,0 +1,240 @@
+package Product.PriceAnomalyDetection.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load test of {@code POST /isAnomaly} against a running instance.
+ *
+ * <p>For each concurrency level, that many clients send requests back to back for {@code duration}, each one
+ * waiting for its response before sending the next, and the throughput and the 50th and 99th percentiles of the
+ * latency are reported. Prices are random so the results are not served from the cache and every request reads
+ * and writes the product. Running it once against an instance with the {@code virtual-threads} profile and once
+ * against one without it compares both modes as concurrency increases.</p>
+ *
+ * <p>Arguments, all optional: {@code --url=http://localhost:8080 --items=100 --concurrency=16,64,256,1024
+ * --duration=10s --warmup=5s --label=platform --result=target/loadtest-platform.csv --seed}. With
+ * {@code --seed} the items are first uploaded with a history of 50 prices through {@code /upload/stream}.</p>
+ */
+public final class LoadTest {
+
+    private static final String API = "/api/v1/price-anomaly";
+
+    private final HttpClient client;
+    private final String url;
+    private final int items;
+
+    private LoadTest(String url, int items) {
+        this.url = url;
+        this.items = items;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = option(args, "url", "http://localhost:8080");
+        int items = Integer.parseInt(option(args, "items", "100"));
+        int[] levels = Arrays.stream(option(args, "concurrency", "16,64,256,1024").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Duration duration = duration(option(args, "duration", "10s"));
+        Duration warmup = duration(option(args, "warmup", "5s"));
+        String label = option(args, "label", "run");
+        Path result = Paths.get(option(args, "result", "target/loadtest-" + label + ".csv"));
+
+        LoadTest loadTest = new LoadTest(url, items);
+        if (Arrays.asList(args).contains("--seed")) {
+            loadTest.seed();
+        }
+        loadTest.run(Math.max(1, levels[0]), warmup);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("label,concurrency,requests,errors,throughput,p50_ms,p99_ms");
+        System.out.printf("%-10s %11s %10s %8s %12s %10s %10s%n",
+                "label", "concurrency", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+        for (int concurrency : levels) {
+            Level level = loadTest.run(concurrency, duration);
+            System.out.printf("%-10s %11d %10d %8d %12.1f %10.2f %10.2f%n", label, concurrency,
+                    level.requests(), level.errors(), level.throughput(), level.percentile(0.50),
+                    level.percentile(0.99));
+            lines.add(String.format("%s,%d,%d,%d,%.1f,%.3f,%.3f", label, concurrency, level.requests(),
+                    level.errors(), level.throughput(), level.percentile(0.50), level.percentile(0.99)));
+        }
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        Files.write(result, lines, StandardCharsets.UTF_8);
+        System.out.println("Results written to " + result);
+        System.exit(0);
+    }
+
+    /**
+     * Uploads {@code items} products with 50 prices each.
+     */
+    private void seed() throws IOException, InterruptedException {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        LocalDate firstDay = LocalDate.of(2024, 1, 1);
+        for (int item = 0; item < items; item++) {
+            for (int day = 0; day < 50; day++) {
+                csv.append(itemId(item)).append(',')
+                        .append(String.format("%.2f", 100 + random.nextGaussian() * 5)).append(',')
+                        .append(firstDay.plusDays(day)).append('\n');
+            }
+        }
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + API + "/upload/stream"))
+                .header("Content-Type", "text/csv")
+                .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+        }
+        System.out.println("Seeded " + items + " items");
+    }
+
+    private Level run(int concurrency, Duration duration) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(clients.submit(() -> {
+                Client result = new Client();
+                start.await();
+                while (System.nanoTime() < deadline[0]) {
+                    result.record(send());
+                }
+                return result;
+            }));
+        }
+        long started = System.nanoTime();
+        deadline[0] = started + duration.toNanos();
+        start.countDown();
+
+        Level level = new Level();
+        for (Future<Client> future : futures) {
+            level.add(future.get());
+        }
+        level.elapsedNanos = System.nanoTime() - started;
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.SECONDS);
+        return level;
+    }
+
+    /**
+     * @return The latency in nanoseconds, negative if the request failed.
+     */
+    private long send() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String body = String.format("{\"item_id\":\"%s\",\"price\":%d.%02d}", itemId(random.nextInt(items)),
+                90 + random.nextInt(20), random.nextInt(100));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + API))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long latency = System.nanoTime() - start;
+            return response.statusCode() == 200 ? latency : -latency;
+        } catch (IOException e) {
+            return -(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a response", e);
+        }
+    }
+
+    private static String itemId(int index) {
+        return "load-" + index;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    private static Duration duration(String value) {
+        String number = value.replaceAll("[^0-9]", "");
+        return value.endsWith("ms") ? Duration.ofMillis(Long.parseLong(number))
+                : value.endsWith("m") ? Duration.ofMinutes(Long.parseLong(number))
+                : Duration.ofSeconds(Long.parseLong(number));
+    }
+
+    private static final class Client {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        private void record(long latency) {
+            if (latency < 0) {
+                errors++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+    }
+
+    private static final class Level {
+        private long[] latencies = new long[0];
+        private long errors;
+        private long elapsedNanos;
+
+        private void add(Client client) {
+            int previous = latencies.length;
+            latencies = Arrays.copyOf(latencies, previous + client.count);
+            System.arraycopy(client.latencies, 0, latencies, previous, client.count);
+            errors += client.errors;
+        }
+
+        private long requests() {
+            return latencies.length + errors;
+        }
+
+        private long errors() {
+            return errors;
+        }
+
+        private double throughput() {
+            return latencies.length * 1e9 / elapsedNanos;
+        }
+
+        private double percentile(double percentile) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            Arrays.sort(latencies);
+            int index = (int) Math.ceil(percentile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Product.PriceAnomalyDetection.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first successful {@code POST /isAnomaly} of a new instance, and its resident memory at that point.
+ *
+ * <p>Starts the command given after {@code --}, sends the same request every 10 ms until it is answered with 200,
+ * then reads {@code VmRSS} of the process from {@code /proc} and stops it. This is repeated {@code runs} times and
+ * the median of both is reported, so the plain jar, the AOT-processed jar with its AppCDS archive and the native
+ * image can be compared with the same command line. The item must already exist, for example seeded with
+ * {@code LoadTest --seed}, and MongoDB and Redis must be reachable.</p>
+ *
+ * <p>Arguments: {@code --url=http://localhost:8080 --item=load-0 --runs=5 --timeout=120s --label=jvm
+ * --result=target/startup-jvm.csv -- <command> <arguments>}. Reading the memory needs Linux.</p>
+ */
+public final class StartupProbe {
+
+    private static final String API = "/api/v1/price-anomaly";
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator < 0 || separator == args.length - 1) {
+            throw new IllegalArgumentException("The command to start the application goes after --");
+        }
+        String[] options = Arrays.copyOfRange(args, 0, separator);
+        List<String> command = Arrays.asList(args).subList(separator + 1, args.length);
+        String url = option(options, "url", "http://localhost:8080");
+        String item = option(options, "item", "load-0");
+        int runs = Integer.parseInt(option(options, "runs", "5"));
+        Duration timeout = Duration.ofSeconds(Long.parseLong(option(options, "timeout", "120s")
+                .replaceAll("[^0-9]", "")));
+        String label = option(options, "label", "run");
+        Path result = Paths.get(option(options, "result", "target/startup-" + label + ".csv"));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + API))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"item_id\":\"" + item + "\",\"price\":100.00}"))
+                .build();
+
+        List<String> lines = new ArrayList<>();
+        lines.add("label,run,ready_ms,rss_mb");
+        long[] readyMillis = new long[runs];
+        long[] rssKb = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            try {
+                long started = System.nanoTime();
+                readyMillis[run] = awaitFirstSuccess(client, request, process, started, timeout);
+                rssKb[run] = residentKb(process.pid());
+            } finally {
+                stop(process);
+            }
+            System.out.printf("%-10s run %d: first isAnomaly after %d ms, RSS %.1f MB%n", label, run + 1,
+                    readyMillis[run], rssKb[run] / 1024.0);
+            lines.add(String.format("%s,%d,%d,%.1f", label, run + 1, readyMillis[run], rssKb[run] / 1024.0));
+        }
+        System.out.printf("%-10s median: first isAnomaly after %d ms, RSS %.1f MB%n", label, median(readyMillis),
+                median(rssKb) / 1024.0);
+
+        if (result.getParent() != null) {
+            Files.createDirectories(result.getParent());
+        }
+        Files.write(result, lines, StandardCharsets.UTF_8);
+        System.out.println("Results written to " + result);
+        System.exit(0);
+    }
+
+    /**
+     * @return The milliseconds from {@code started} to the first response with status 200.
+     */
+    private static long awaitFirstSuccess(HttpClient client, HttpRequest request, Process process, long started,
+                                          Duration timeout) throws InterruptedException {
+        long deadline = started + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The application exited with " + process.exitValue());
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No successful isAnomaly after " + timeout);
+    }
+
+    private static long residentKb(long pid) throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        throw new IllegalStateException("No VmRSS for process " + pid);
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -1,20 +1,29 @@
 package Product.PriceAnomalyDetection.config;
 
+import Product.PriceAnomalyDetection.config.cache.CacheGenerations;
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.config.cache.ItemKeyGenerator;
+import Product.PriceAnomalyDetection.config.cache.MappedSnapshotStore;
+import Product.PriceAnomalyDetection.config.cache.RetryingMessageListenerContainer;
+import Product.PriceAnomalyDetection.config.cache.TwoLevelCacheManager;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.CacheManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
-import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.lang.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 
 @Configuration
@@ -25,9 +34,17 @@ public class CacheConfig {
     private String host;
     @Value("${spring.redis.port}")
     private Integer port;
+    @Value("${cache.local.maximum-size}")
+    private long localMaximumSize;
+    @Value("${cache.local.ttl}")
+    private Duration localTtl;
+    @Value("${cache.invalidation-channel}")
+    private String invalidationChannel;
+    @Value("${cache.detection-state.ttl}")
+    private Duration detectionStateTtl;
 
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
+    public LettuceConnectionFactory redisConnectionFactory() {
        LettuceConnectionFactory  lettuceConnectionFactory =  new LettuceConnectionFactory();
        lettuceConnectionFactory.setPort(port);
        lettuceConnectionFactory.setHostName(host);
@@ -35,17 +52,58 @@ public class CacheConfig {
     }
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory){
-        Jackson2JsonRedisSerializer<String> jacksonSerializer = new Jackson2JsonRedisSerializer<>(String.class);
+    public CacheGenerations cacheGenerations(StringRedisTemplate stringRedisTemplate) {
+        return new CacheGenerations(stringRedisTemplate, invalidationChannel, localMaximumSize, localTtl);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListener(RedisConnectionFactory redisConnectionFactory,
+                                                                   CacheGenerations cacheGenerations) {
+        RedisMessageListenerContainer container = new RetryingMessageListenerContainer(Duration.ofSeconds(5));
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheGenerations, new ChannelTopic(invalidationChannel));
+        return container;
+    }
+
+    /**
+     * Off-heap store of detection snapshots in front of Redis, kept in a memory-mapped file that survives restarts.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "cache.detection-state.mapped.enabled", havingValue = "true")
+    public MappedSnapshotStore mappedSnapshotStore(@Value("${cache.detection-state.mapped.path}") String path,
+                                                   @Value("${cache.detection-state.mapped.slots}") long slots,
+                                                   @Value("${cache.detection-state.mapped.slot-size}") int slotSize)
+            throws IOException {
+        return new MappedSnapshotStore(Path.of(path), slots, slotSize);
+    }
 
+    @Bean
+    public DetectionSnapshotCache detectionSnapshotCache(StringRedisTemplate stringRedisTemplate,
+                                                         @Nullable MappedSnapshotStore mappedSnapshotStore) {
+        return new DetectionSnapshotCache(stringRedisTemplate, detectionStateTtl, mappedSnapshotStore);
+    }
+
+    @Bean
+    public ItemKeyGenerator itemKeyGenerator(CacheGenerations cacheGenerations) {
+        return new ItemKeyGenerator(cacheGenerations);
+    }
+
+    /**
+     * Near cache in front of Redis: each cache keeps its hot entries in process and falls back to Redis.
+     */
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                             CacheGenerations cacheGenerations) {
         RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(10))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair
                         .fromSerializer(new StringRedisSerializer()));
 
-        return RedisCacheManager.builder(redisConnectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
                 .cacheDefaults(cacheConfiguration)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(redisCacheManager, cacheGenerations, localMaximumSize, localTtl);
     }
 
 
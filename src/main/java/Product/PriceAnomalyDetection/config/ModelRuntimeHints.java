@@ -0,0 +1,73 @@
+package Product.PriceAnomalyDetection.config;
+
+import Product.PriceAnomalyDetection.controller.commons.CustomResponse;
+import Product.PriceAnomalyDetection.model.BackfillJob;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceResponse;
+import Product.PriceAnomalyDetection.model.ItemPriceScore;
+import Product.PriceAnomalyDetection.model.PendingAppend;
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.model.StorageEncoding;
+import Product.PriceAnomalyDetection.model.UploadJob;
+import Product.PriceAnomalyDetection.model.UploadJobStatus;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+
+/**
+ * Reachability metadata of the models for the native image built with the {@code native} profile.
+ *
+ * <p>A native image only keeps the reflection that is known at build time. The Lombok models are read and written
+ * by reflection: the documents and everything embedded in them by the MongoDB mapping, which uses their
+ * constructors and fields, and the bodies of the API by Jackson, which uses their accessors. Spring registers the
+ * types it reaches from the repositories and the controllers, but not always the embedded ones, so every model is
+ * registered here. A new model, or a new type embedded in a document, has to be added to these lists.</p>
+ *
+ * <p>The hints are only used by the native image; on the JVM, with or without AOT, they have no effect.</p>
+ *
+ * @see RegisterReflectionForBinding
+ */
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(ModelRuntimeHints.Registrar.class)
+public class ModelRuntimeHints {
+
+    /**
+     * Types mapped to MongoDB, as documents or embedded in one.
+     */
+    static final List<Class<?>> MAPPED_TYPES = List.of(Product.class, PriceBucket.class, PriceData.class,
+            PendingAppend.class, DetectionState.class, ScoreBatch.class, BackfillJob.class, UploadJob.class, UploadJobStatus.class,
+            StorageEncoding.class, Detector.class, MathMode.class);
+
+    /**
+     * Types read from or written to the bodies of the API.
+     */
+    static final List<Class<?>> BODY_TYPES = List.of(ItemPriceRequest.class, ItemPriceResponse.class,
+            ItemPriceScore.class, CustomResponse.class, Product.class, PriceData.class, UploadJob.class,
+            BackfillJob.class);
+
+    static class Registrar implements RuntimeHintsRegistrar {
+
+        private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (Class<?> type : MAPPED_TYPES) {
+                hints.reflection().registerType(type, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_METHODS);
+            }
+            bindingRegistrar.registerReflectionHints(hints.reflection(), BODY_TYPES.toArray(Class<?>[]::new));
+        }
+    }
+}
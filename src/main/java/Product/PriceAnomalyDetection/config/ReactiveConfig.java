@@ -0,0 +1,57 @@
+package Product.PriceAnomalyDetection.config;
+
+import Product.PriceAnomalyDetection.config.cache.ReactiveCacheGenerations;
+import Product.PriceAnomalyDetection.config.cache.ReactiveDetectionSnapshotCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+
+/**
+ * Reactive mode, enabled with the {@code reactive} profile.
+ *
+ * <p>The profile sets {@code spring.main.web-application-type=reactive}, so the scoring and lookup endpoints are
+ * served by WebFlux on the Reactor Netty event loop instead of by Spring MVC on Tomcat's thread pool. Netty is
+ * chosen explicitly because Tomcat is also on the classpath and would otherwise be preferred. Requests never hold
+ * a thread while waiting for MongoDB or Redis, so a handful of event-loop threads serve any number of concurrent
+ * requests.</p>
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfig {
+
+    @Value("${cache.invalidation-channel}")
+    private String invalidationChannel;
+    @Value("${cache.detection-state.ttl}")
+    private Duration detectionStateTtl;
+
+    @Bean
+    public NettyReactiveWebServerFactory reactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public ReactiveCacheGenerations reactiveCacheGenerations(ReactiveRedisConnectionFactory redisConnectionFactory) {
+        return new ReactiveCacheGenerations(new ReactiveStringRedisTemplate(redisConnectionFactory),
+                invalidationChannel);
+    }
+
+    @Bean
+    public ReactiveDetectionSnapshotCache reactiveDetectionSnapshotCache(
+            ReactiveRedisConnectionFactory redisConnectionFactory) {
+        RedisSerializationContext<String, byte[]> serializationContext = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveDetectionSnapshotCache(
+                new ReactiveRedisTemplate<>(redisConnectionFactory, serializationContext), detectionStateTtl);
+    }
+}
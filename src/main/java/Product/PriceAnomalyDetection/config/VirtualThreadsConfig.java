@@ -0,0 +1,38 @@
+package Product.PriceAnomalyDetection.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Virtual-thread mode, enabled with the {@code virtual-threads} profile.
+ *
+ * <p>The profile sets {@code spring.threads.virtual.enabled}, so Tomcat handles each request on a new virtual
+ * thread instead of taking one from its pool of {@code server.tomcat.threads.max} platform threads. Scoring runs
+ * on the request thread, so the blocking calls to MongoDB and Redis park the virtual thread and release its carrier
+ * instead of holding a pooled thread. Upload jobs and the transformation of uploads keep their own bounded pools,
+ * which limit how much work runs at once.</p>
+ *
+ * <p>Virtual threads need Java 21. The build still targets Java 17, so the same jar runs in both modes, and the
+ * {@code virtual-threads} stage of the Dockerfile runs it on Java 21 with this profile; on an older runtime the
+ * property has no effect and a warning is logged.</p>
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadsConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadsConfig.class);
+
+    static final int MINIMUM_JAVA_VERSION = 21;
+
+    public VirtualThreadsConfig() {
+        int version = Runtime.version().feature();
+        if (version < MINIMUM_JAVA_VERSION) {
+            logger.warn("The virtual-threads profile needs Java {} but is running on Java {}; requests are handled "
+                    + "by the platform-thread pool", MINIMUM_JAVA_VERSION, version);
+        } else {
+            logger.info("Handling requests on virtual threads");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Generation of the cached entries of each item, shared by all the nodes through Redis.
+ *
+ * <p>Entries of an item are cached under its current generation, so incrementing the generation makes every
+ * entry of the item unreachable in both tiers at once, without looking for its keys; the old entries expire on
+ * their own. The generation of each item is kept in Redis and a script increments it and publishes the new value
+ * on {@code cache.invalidation-channel} in a single round trip. Every node listens to that channel and updates
+ * its local copy, so the generation of a hot item is read from memory.</p>
+ *
+ * <p>Local copies expire after {@code cache.local.ttl}, which bounds how long a node that missed a message keeps
+ * serving entries of an old generation.</p>
+ */
+public class CacheGenerations implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheGenerations.class);
+
+    static final String KEY_PREFIX = "cache-generation::";
+    private static final String CLEAR_PREFIX = "clear:";
+    static final String INCREMENT_AND_PUBLISH_SCRIPT = """
+            local generation = redis.call('INCR', KEYS[1])
+            redis.call('PUBLISH', ARGV[1], generation .. ':' .. ARGV[2])
+            return generation
+            """;
+    private static final byte[] INCREMENT_AND_PUBLISH = INCREMENT_AND_PUBLISH_SCRIPT.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final Cache<String, Long> generations;
+    private final List<Consumer<String>> clearListeners = new CopyOnWriteArrayList<>();
+
+    public CacheGenerations(StringRedisTemplate redisTemplate, String channel, long maximumSize, Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.generations = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(ttl).build();
+    }
+
+    /**
+     * @param itemId The identifier of the item.
+     * @return The current generation of the item, read from Redis only when it is not known locally.
+     */
+    public long current(String itemId) {
+        return generations.get(itemId, this::fetch);
+    }
+
+    /**
+     * Moves the given items to a new generation on every node.
+     *
+     * @param itemIds The identifiers of the items whose cached entries are no longer valid.
+     */
+    public void increment(Collection<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return;
+        }
+        List<String> items = new ArrayList<>(itemIds);
+        List<Long> incremented = incrementAndPublish(items);
+        for (int i = 0; i < items.size(); i++) {
+            advance(items.get(i), incremented.get(i));
+        }
+    }
+
+    /**
+     * Tells every node that a cache was cleared.
+     *
+     * @param cacheName The name of the cleared cache.
+     */
+    public void publishClear(String cacheName) {
+        redisTemplate.convertAndSend(channel, CLEAR_PREFIX + cacheName);
+    }
+
+    void onClear(Consumer<String> listener) {
+        clearListeners.add(listener);
+    }
+
+    /**
+     * Applies an invalidation published by any node, including this one.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (body.startsWith(CLEAR_PREFIX)) {
+            String cacheName = body.substring(CLEAR_PREFIX.length());
+            clearListeners.forEach(listener -> listener.accept(cacheName));
+            return;
+        }
+        int separator = body.indexOf(':');
+        try {
+            advance(body.substring(separator + 1), Long.parseLong(body.substring(0, separator)));
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed cache invalidation '{}'", body);
+        }
+    }
+
+    private void advance(String itemId, long generation) {
+        generations.asMap().merge(itemId, generation, Math::max);
+    }
+
+    protected long fetch(String itemId) {
+        String generation = redisTemplate.opsForValue().get(KEY_PREFIX + itemId);
+        return generation == null ? 0 : Long.parseLong(generation);
+    }
+
+    protected List<Long> incrementAndPublish(List<String> itemIds) {
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String itemId : itemIds) {
+                incrementAndPublish(connection, itemId, channelBytes);
+            }
+            return null;
+        });
+        List<Long> generations = new ArrayList<>(results.size());
+        for (Object result : results) {
+            generations.add(((Number) result).longValue());
+        }
+        return generations;
+    }
+
+    private static void incrementAndPublish(RedisConnection connection, String itemId, byte[] channel) {
+        connection.scriptingCommands().eval(INCREMENT_AND_PUBLISH, ReturnType.INTEGER, 1,
+                (KEY_PREFIX + itemId).getBytes(StandardCharsets.UTF_8), channel,
+                itemId.getBytes(StandardCharsets.UTF_8));
+    }
+}
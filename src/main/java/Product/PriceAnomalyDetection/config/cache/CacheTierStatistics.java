@@ -0,0 +1,17 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+/**
+ * Hit and miss counters of one tier of a {@link TwoLevelCache} since the application started.
+ *
+ * @param hits Lookups answered by the tier.
+ * @param misses Lookups the tier could not answer.
+ * @param hitRate {@code hits / (hits + misses)}, or {@code 0} before the first lookup.
+ * @param size Number of entries held by the tier, or {@code -1} when it is not known.
+ */
+public record CacheTierStatistics(long hits, long misses, double hitRate, long size) {
+
+    public static CacheTierStatistics of(long hits, long misses, long size) {
+        long lookups = hits + misses;
+        return new CacheTierStatistics(hits, misses, lookups == 0 ? 0 : (double) hits / lookups, size);
+    }
+}
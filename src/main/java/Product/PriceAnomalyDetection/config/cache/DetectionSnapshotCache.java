@@ -0,0 +1,200 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import Product.PriceAnomalyDetection.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detection snapshots of the products, kept in Redis so scoring a price does not need to read the product from
+ * MongoDB.
+ *
+ * <p>A snapshot is the size of both series and the {@link Product#getDetectionState() detection state}, encoded
+ * with {@link DetectionSnapshotCodec}. Any number of snapshots is read with a single {@code MGET} and written with
+ * one pipelined batch of {@code SET ... PX}, so a batch of N items costs one round trip each way. Snapshots
+ * expire after {@code cache.detection-state.ttl}.</p>
+ *
+ * <p>MongoDB remains the source of truth: writes are still conditional on the version of the state, so a stale
+ * snapshot only causes a conflict, after which it is evicted and the product is read from MongoDB. For the same
+ * reason a failure to reach Redis is logged and handled as a miss.</p>
+ *
+ * <p>With a {@link MappedSnapshotStore}, snapshots are first looked up in it and only the missing ones are read
+ * from Redis and copied to it; writes and evictions go to both, and local snapshots expire after the same
+ * {@code cache.detection-state.ttl}. The store is local to the node, so it is only enabled when a single node scores
+ * the prices of each item.</p>
+ */
+public class DetectionSnapshotCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DetectionSnapshotCache.class);
+
+    static final String KEY_PREFIX = "detection-state::";
+
+    private final RedisTemplate<?, ?> redisTemplate;
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+    private final Duration ttl;
+    private final MappedSnapshotStore localStore;
+
+    public DetectionSnapshotCache(RedisTemplate<?, ?> redisTemplate, Duration ttl) {
+        this(redisTemplate, ttl, null);
+    }
+
+    /**
+     * @param localStore The off-heap store in front of Redis, or {@code null} to read and write only Redis.
+     */
+    public DetectionSnapshotCache(RedisTemplate<?, ?> redisTemplate, Duration ttl, MappedSnapshotStore localStore) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        this.localStore = localStore;
+    }
+
+    /**
+     * @param itemIds The identifiers of the products.
+     * @return The cached snapshots, by item id, with the id set. Items without a readable snapshot are missing.
+     */
+    public Map<String, Product> getAll(Collection<String> itemIds) {
+        Map<String, Product> snapshots = new HashMap<>();
+        if (itemIds.isEmpty()) {
+            return snapshots;
+        }
+        List<String> ids = new ArrayList<>(itemIds);
+        if (localStore != null) {
+            ids.removeIf(id -> readLocal(id, snapshots));
+            if (ids.isEmpty()) {
+                return snapshots;
+            }
+        }
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        List<byte[]> values;
+        try {
+            values = mget(ids.stream().map(DetectionSnapshotCache::key).toList());
+        } catch (RuntimeException e) {
+            logger.warn("Could not read {} detection snapshots: {}", ids.size(), e.getMessage());
+            return snapshots;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] value = values == null ? null : values.get(i);
+            if (value == null) {
+                continue;
+            }
+            try {
+                Product snapshot = codec.deserialize(value);
+                snapshot.setId(ids.get(i));
+                snapshots.put(ids.get(i), snapshot);
+            } catch (RuntimeException e) {
+                logger.debug("Ignoring unreadable detection snapshot of {}", ids.get(i), e);
+                continue;
+            }
+            if (localStore != null) {
+                localStore.put(localKey(ids.get(i)), value, expiresAt);
+            }
+        }
+        return snapshots;
+    }
+
+    private boolean readLocal(String itemId, Map<String, Product> snapshots) {
+        byte[] value = localStore.get(localKey(itemId));
+        if (value == null) {
+            return false;
+        }
+        try {
+            Product snapshot = codec.deserialize(value);
+            snapshot.setId(itemId);
+            snapshots.put(itemId, snapshot);
+            return true;
+        } catch (RuntimeException e) {
+            logger.debug("Ignoring unreadable local detection snapshot of {}", itemId, e);
+            return false;
+        }
+    }
+
+    /**
+     * @param itemId The identifier of the product.
+     * @return The cached snapshot, or {@code null} if there is none.
+     */
+    public Product get(String itemId) {
+        return getAll(List.of(itemId)).get(itemId);
+    }
+
+    /**
+     * Caches the snapshot of each product, replacing the previous one.
+     *
+     * @param products The products, with their counts and detection state.
+     */
+    public void putAll(Collection<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        Map<byte[], byte[]> values = new LinkedHashMap<>();
+        for (Product product : products) {
+            byte[] value = codec.serialize(product);
+            if (localStore != null) {
+                localStore.put(localKey(product.getId()), value, expiresAt);
+            }
+            values.put(key(product.getId()), value);
+        }
+        try {
+            set(values);
+        } catch (RuntimeException e) {
+            logger.warn("Could not write {} detection snapshots: {}", values.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the snapshots of products that changed without going through the cache or whose snapshot was stale.
+     *
+     * @param itemIds The identifiers of the products.
+     */
+    public void evictAll(Collection<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return;
+        }
+        if (localStore != null) {
+            itemIds.forEach(itemId -> localStore.remove(localKey(itemId)));
+        }
+        try {
+            delete(itemIds.stream().map(DetectionSnapshotCache::key).toList());
+        } catch (RuntimeException e) {
+            logger.warn("Could not evict {} detection snapshots: {}", itemIds.size(), e.getMessage());
+        }
+    }
+
+    static byte[] key(String itemId) {
+        return (KEY_PREFIX + itemId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] localKey(String itemId) {
+        return itemId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected List<byte[]> mget(List<byte[]> keys) {
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys.toArray(new byte[0][])));
+    }
+
+    protected void set(Map<byte[], byte[]> values) {
+        Expiration expiration = Expiration.from(ttl);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> connection.stringCommands().set(key, value, expiration,
+                    RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+    }
+
+    protected void delete(List<byte[]> keys) {
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.keyCommands().del(keys.toArray(new byte[0][])));
+    }
+}
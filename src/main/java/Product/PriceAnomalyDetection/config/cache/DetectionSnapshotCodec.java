@@ -0,0 +1,282 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Binary encoding of the detection snapshot of a product: its history epoch, the size of both series, its
+ * {@link Detector} and its {@link DetectionState}, including the {@link MathMode} its limits were computed with.
+ *
+ * <p>Integers are written as variable-length quantities, zig-zag encoded when they can be negative, and the
+ * window as the first price followed by the difference with the previous one, which for prices of the same item
+ * takes one or two bytes each. A decimal is its scale and either its unscaled value as a variable-length quantity
+ * or, when it does not fit in a {@code long}, its two's-complement bytes. A snapshot with a window of 11 prices
+ * takes under 120 bytes, about a quarter of its JSON representation. The statistics of streaming detectors are
+ * written as the eight bytes of each {@code double}, so they are read back bit for bit.</p>
+ *
+ * <p>The first byte is the version of the format, so a snapshot written by a different version is rejected
+ * with a {@link SerializationException} and can be treated as missing. The product id is not encoded, since it is
+ * part of the key.</p>
+ */
+public class DetectionSnapshotCodec implements RedisSerializer<Product> {
+
+    static final byte FORMAT_VERSION = 4;
+
+    private static final byte NULL = 0;
+    private static final byte PRESENT = 1;
+    private static final byte LONG_DECIMAL = 1;
+    private static final byte BIG_DECIMAL = 2;
+
+    @Override
+    public byte[] serialize(Product product) {
+        if (product == null) {
+            return new byte[0];
+        }
+        Writer writer = new Writer();
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeVarLong(product.getHistoryEpoch());
+        writer.writeVarLong(product.getOutlierCount());
+        writer.writeVarLong(product.getNonOutlierCount());
+        writer.writeDetector(product.getDetector());
+        DetectionState state = product.getDetectionState();
+        if (state == null) {
+            writer.writeByte(NULL);
+            return writer.toByteArray();
+        }
+        writer.writeByte(PRESENT);
+        writer.writeVarLong(state.getWindowSize());
+        writer.writeDecimal(state.getKValue());
+        long[] window = state.getWindow();
+        if (window == null) {
+            writer.writeVarLong(0);
+        } else {
+            writer.writeVarLong(window.length + 1L);
+            long previous = 0;
+            for (long price : window) {
+                writer.writeVarLong(zigZag(price - previous));
+                previous = price;
+            }
+        }
+        writer.writeDecimal(state.getSma());
+        writer.writeDecimal(state.getStdDev());
+        writer.writeDecimal(state.getLowerLimit());
+        writer.writeDecimal(state.getUpperLimit());
+        writer.writeVarLong(state.getVersion());
+        writer.writeDetector(state.getDetector());
+        double[] statistics = state.getStatistics();
+        if (statistics == null) {
+            writer.writeVarLong(0);
+        } else {
+            writer.writeVarLong(statistics.length + 1L);
+            for (double statistic : statistics) {
+                writer.writeDouble(statistic);
+            }
+        }
+        writer.writeByte(state.getMathMode() == null ? NULL : state.getMathMode().ordinal() + 1);
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return The snapshot, with counts and state but without id or history, or {@code null} for no bytes.
+     * @throws SerializationException If the bytes were not written by this version of the codec.
+     */
+    @Override
+    public Product deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            Reader reader = new Reader(bytes);
+            if (reader.readByte() != FORMAT_VERSION) {
+                throw new SerializationException("Unknown detection snapshot format " + bytes[0]);
+            }
+            Product product = new Product();
+            product.setHistoryEpoch(reader.readVarLong());
+            product.setOutlierCount(reader.readVarLong());
+            product.setNonOutlierCount(reader.readVarLong());
+            product.setDetector(reader.readDetector());
+            if (reader.readByte() == NULL) {
+                return product;
+            }
+            DetectionState state = new DetectionState();
+            state.setWindowSize((int) reader.readVarLong());
+            state.setKValue(reader.readDecimal());
+            long length = reader.readVarLong();
+            if (length > 0) {
+                long[] window = new long[(int) (length - 1)];
+                long previous = 0;
+                for (int i = 0; i < window.length; i++) {
+                    previous += unZigZag(reader.readVarLong());
+                    window[i] = previous;
+                }
+                state.setWindow(window);
+            }
+            state.setSma(reader.readDecimal());
+            state.setStdDev(reader.readDecimal());
+            state.setLowerLimit(reader.readDecimal());
+            state.setUpperLimit(reader.readDecimal());
+            state.setVersion(reader.readVarLong());
+            state.setDetector(reader.readDetector());
+            long statistics = reader.readVarLong();
+            if (statistics > 0) {
+                double[] values = new double[(int) (statistics - 1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = reader.readDouble();
+                }
+                state.setStatistics(values);
+            }
+            state.setMathMode(reader.readMathMode());
+            product.setDetectionState(state);
+            return product;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated detection snapshot", e);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        private void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 0; shift < 64; shift += 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        }
+
+        private void writeDetector(Detector detector) {
+            writeByte(detector == null ? NULL : detector.ordinal() + 1);
+        }
+
+        private void writeDecimal(BigDecimal value) {
+            if (value == null) {
+                writeByte(NULL);
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                writeByte(LONG_DECIMAL);
+                writeVarLong(zigZag(unscaled.longValue()));
+            } else {
+                byte[] bytes = unscaled.toByteArray();
+                writeByte(BIG_DECIMAL);
+                writeVarLong(bytes.length);
+                for (byte b : bytes) {
+                    writeByte(b);
+                }
+            }
+            writeVarLong(zigZag(value.scale()));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte readByte() {
+            return bytes[position++];
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed variable-length quantity");
+        }
+
+        private double readDouble() {
+            long bits = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                bits |= (readByte() & 0xFFL) << shift;
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private Detector readDetector() {
+            int tag = readByte();
+            if (tag == NULL) {
+                return null;
+            }
+            if (tag < 0 || tag > Detector.values().length) {
+                throw new SerializationException("Unknown detector " + tag);
+            }
+            return Detector.values()[tag - 1];
+        }
+
+        private MathMode readMathMode() {
+            int tag = readByte();
+            if (tag == NULL) {
+                return null;
+            }
+            if (tag < 0 || tag > MathMode.values().length) {
+                throw new SerializationException("Unknown math mode " + tag);
+            }
+            return MathMode.values()[tag - 1];
+        }
+
+        private BigDecimal readDecimal() {
+            byte tag = readByte();
+            if (tag == NULL) {
+                return null;
+            }
+            BigInteger unscaled;
+            if (tag == LONG_DECIMAL) {
+                unscaled = BigInteger.valueOf(unZigZag(readVarLong()));
+            } else if (tag == BIG_DECIMAL) {
+                int length = (int) readVarLong();
+                if (length <= 0 || position + length > bytes.length) {
+                    throw new ArrayIndexOutOfBoundsException(position + length);
+                }
+                unscaled = new BigInteger(bytes, position, length);
+                position += length;
+            } else {
+                throw new SerializationException("Unknown decimal encoding " + tag);
+            }
+            return new BigDecimal(unscaled, (int) unZigZag(readVarLong()));
+        }
+    }
+}
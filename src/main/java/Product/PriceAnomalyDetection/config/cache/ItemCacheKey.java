@@ -0,0 +1,22 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+/**
+ * Key of a cached entry that belongs to an item.
+ *
+ * <p>The key carries the generation of the item at the time the entry was looked up, so the entries of older
+ * generations are never found again once {@link CacheGenerations#increment} has moved the item forward.</p>
+ *
+ * @param itemId The identifier of the item.
+ * @param generation The generation of the item when the key was generated.
+ * @param params The remaining parameters of the cached method, as built by the {@code SimpleKeyGenerator}.
+ */
+public record ItemCacheKey(String itemId, long generation, Object params) {
+
+    /**
+     * @return The key used in Redis: {@code <itemId>:<params>@<generation>}.
+     */
+    @Override
+    public String toString() {
+        return itemId + ":" + params + "@" + generation;
+    }
+}
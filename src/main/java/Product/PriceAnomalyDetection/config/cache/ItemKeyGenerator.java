@@ -0,0 +1,31 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Generates an {@link ItemCacheKey} for methods whose first parameter is the identifier of an item.
+ *
+ * <p>The key is generated once per invocation, so the value computed by a method that changes the item is stored
+ * under the generation that was current when the lookup missed, and is not served after the change.</p>
+ */
+public class ItemKeyGenerator implements KeyGenerator {
+
+    private final CacheGenerations generations;
+
+    public ItemKeyGenerator(CacheGenerations generations) {
+        this.generations = generations;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        if (params.length == 0 || !(params[0] instanceof String itemId)) {
+            throw new IllegalStateException("The first parameter of " + method + " must be the item id");
+        }
+        return new ItemCacheKey(itemId, generations.current(itemId),
+                SimpleKeyGenerator.generateKey(Arrays.copyOfRange(params, 1, params.length)));
+    }
+}
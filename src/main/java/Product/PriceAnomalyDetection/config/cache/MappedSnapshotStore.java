@@ -0,0 +1,314 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+/**
+ * Off-heap table of detection snapshots in a memory-mapped file, used by {@link DetectionSnapshotCache} as a tier
+ * in front of Redis when {@code cache.detection-state.mapped.enabled} is set.
+ *
+ * <p>The file is split in segments of fixed-size slots. The hash of the item id selects a segment and a home slot
+ * in it, and a snapshot is stored in the first slot of its key, or the first free one, among the
+ * {@value #MAX_PROBES} slots that follow the home slot (open addressing with linear probing). When they are all
+ * taken by other items the home slot is overwritten, so the table behaves as a cache of fixed capacity instead of
+ * growing. Each slot holds:
+ * <ul>
+ *     <li>The hash of the key, the length of the key and the length of the value, where a key length of {@code 0}
+ *         marks a slot never used and {@code -1} a removed one.</li>
+ *     <li>A CRC32 of the key and the value, so a slot torn by a crash in the middle of a write is read as a
+ *         miss.</li>
+ *     <li>The time the snapshot expires, in epoch milliseconds, after which it is read as a miss.</li>
+ *     <li>The key and the value.</li>
+ * </ul>
+ * Snapshots that do not fit in {@code slotSize} are not stored.</p>
+ *
+ * <p>The slots live in the OS page cache, outside the Java heap, so the number of items kept does not add to the
+ * work of the garbage collector, and the file is reused when the process restarts with the same layout. Each
+ * segment is mapped separately, which keeps every mapping under 2 GB, and has its own lock: a read copies the
+ * value of a slot under a read lock and a write takes the write lock of the segment.</p>
+ */
+public class MappedSnapshotStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSnapshotStore.class);
+
+    static final int MAGIC = 0x50414453;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 4096;
+    static final int SLOT_HEADER_BYTES = 20;
+    static final int MAX_PROBES = 16;
+
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int SLOTS_PER_LOCK = 1024;
+    private static final short EMPTY = 0;
+    private static final short REMOVED = -1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final StampedLock[] locks;
+    private final int slotSize;
+    private final int slotsPerSegment;
+    private final int probes;
+
+    /**
+     * Opens the store, reusing the file when it was written with the same layout and starting empty otherwise.
+     *
+     * @param file The file of the store; it is created if it does not exist.
+     * @param slots The minimum number of snapshots the store can hold.
+     * @param slotSize The bytes of each slot, including {@value #SLOT_HEADER_BYTES} bytes of header.
+     * @throws IllegalArgumentException If {@code slots} is not positive or {@code slotSize} is not between
+     *         {@value #SLOT_HEADER_BYTES} and 32767 bytes.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedSnapshotStore(Path file, long slots, int slotSize) throws IOException {
+        if (slots <= 0 || slotSize <= SLOT_HEADER_BYTES || slotSize > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid mapped store layout: " + slots + " slots of " + slotSize
+                    + " bytes");
+        }
+        int segmentCount = (int) Math.max((slots * slotSize + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES,
+                Math.min(MAX_SEGMENTS, slots / SLOTS_PER_LOCK));
+        this.slotSize = slotSize;
+        this.slotsPerSegment = (int) ((slots + segmentCount - 1) / segmentCount);
+        this.probes = Math.min(MAX_PROBES, slotsPerSegment);
+        this.segments = new MappedByteBuffer[segmentCount];
+        this.locks = new StampedLock[segmentCount];
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long segmentBytes = (long) slotsPerSegment * slotSize;
+            if (!hasLayout(segmentCount)) {
+                if (channel.size() > 0) {
+                    logger.warn("Detection snapshot store {} has another layout, starting empty", file);
+                }
+                channel.truncate(0);
+                writeHeader(segmentCount);
+            }
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + i * segmentBytes,
+                        segmentBytes);
+                locks[i] = new StampedLock();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of slots of the store.
+     */
+    public long capacity() {
+        return (long) slotsPerSegment * segments.length;
+    }
+
+    /**
+     * @param key The key of the snapshot.
+     * @return A copy of the stored value, or {@code null} if the key is not stored, has expired or its slot is
+     *         corrupt.
+     */
+    public byte[] get(byte[] key) {
+        long hash = hash(key);
+        int segmentIndex = segment(hash);
+        ByteBuffer segment = segments[segmentIndex];
+        StampedLock lock = locks[segmentIndex];
+        long stamp = lock.readLock();
+        try {
+            int slot = find(segment, home(hash), (int) hash, key);
+            if (slot < 0) {
+                return null;
+            }
+            int base = slot * slotSize;
+            if (segment.getLong(base + 12) <= System.currentTimeMillis()) {
+                return null;
+            }
+            byte[] value = new byte[Short.toUnsignedInt(segment.getShort(base + 6))];
+            segment.get(base + SLOT_HEADER_BYTES + key.length, value);
+            return checksum(key, value) == segment.getInt(base + 8) ? value : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stores a value, replacing the previous value of the key.
+     *
+     * @param key The key of the snapshot.
+     * @param value The snapshot.
+     * @param expiresAt The time the snapshot expires, in epoch milliseconds.
+     * @return {@code false} if the key and the value do not fit in a slot; the previous value is then removed.
+     */
+    public boolean put(byte[] key, byte[] value, long expiresAt) {
+        if (SLOT_HEADER_BYTES + key.length + value.length > slotSize || key.length == 0) {
+            remove(key);
+            return false;
+        }
+        long hash = hash(key);
+        int segmentIndex = segment(hash);
+        ByteBuffer segment = segments[segmentIndex];
+        StampedLock lock = locks[segmentIndex];
+        long stamp = lock.writeLock();
+        try {
+            int home = home(hash);
+            int slot = find(segment, home, (int) hash, key);
+            if (slot < 0) {
+                slot = home;
+                for (int i = 0; i < probes; i++) {
+                    int candidate = (home + i) % slotsPerSegment;
+                    short keyLength = segment.getShort(candidate * slotSize + 4);
+                    if (keyLength == EMPTY || keyLength == REMOVED) {
+                        slot = candidate;
+                        break;
+                    }
+                }
+            }
+            int base = slot * slotSize;
+            segment.putShort(base + 4, REMOVED);
+            segment.put(base + SLOT_HEADER_BYTES, key);
+            segment.put(base + SLOT_HEADER_BYTES + key.length, value);
+            segment.putInt(base, (int) hash);
+            segment.putShort(base + 6, (short) value.length);
+            segment.putInt(base + 8, checksum(key, value));
+            segment.putLong(base + 12, expiresAt);
+            segment.putShort(base + 4, (short) key.length);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param key The key of the snapshot to remove; nothing happens if it is not stored.
+     */
+    public void remove(byte[] key) {
+        long hash = hash(key);
+        int segmentIndex = segment(hash);
+        ByteBuffer segment = segments[segmentIndex];
+        StampedLock lock = locks[segmentIndex];
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(segment, home(hash), (int) hash, key);
+            if (slot >= 0) {
+                segment.putShort(slot * slotSize + 4, REMOVED);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Writes the slots changed so far to the file, so they also survive a crash of the machine.
+     */
+    public void force() {
+        for (int i = 0; i < segments.length; i++) {
+            long stamp = locks[i].readLock();
+            try {
+                segments[i].force();
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * @return The slot of {@code key} in the probe sequence of {@code home}, or {@code -1}. The sequence stops at
+     *         the first slot never used, since a key is never stored after one.
+     */
+    private int find(ByteBuffer segment, int home, int hash, byte[] key) {
+        for (int i = 0; i < probes; i++) {
+            int slot = (home + i) % slotsPerSegment;
+            int base = slot * slotSize;
+            short keyLength = segment.getShort(base + 4);
+            if (keyLength == EMPTY) {
+                return -1;
+            }
+            if (keyLength == key.length && segment.getInt(base) == hash && keyEquals(segment, base, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean keyEquals(ByteBuffer segment, int base, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(base + SLOT_HEADER_BYTES + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int segment(long hash) {
+        return (int) Long.remainderUnsigned(hash >>> 32, segments.length);
+    }
+
+    private int home(long hash) {
+        return (int) Long.remainderUnsigned(hash, slotsPerSegment);
+    }
+
+    /**
+     * Mixes the hash of the key with the finalizer of MurmurHash3, so it is the same in every run.
+     */
+    static long hash(byte[] key) {
+        long hash = Arrays.hashCode(key);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int checksum(byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private boolean hasLayout(int segmentCount) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(20);
+        channel.read(header, 0);
+        header.flip();
+        return header.remaining() == 20
+                && header.getInt() == MAGIC
+                && header.getInt() == FORMAT_VERSION
+                && header.getInt() == slotSize
+                && header.getInt() == slotsPerSegment
+                && header.getInt() == segmentCount;
+    }
+
+    private void writeHeader(int segmentCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(slotSize).putInt(slotsPerSegment).putInt(segmentCount);
+        header.rewind();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+}
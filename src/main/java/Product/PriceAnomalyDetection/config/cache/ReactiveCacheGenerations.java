@@ -0,0 +1,58 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link CacheGenerations#increment} for the reactive endpoints.
+ *
+ * <p>Runs the same script through a {@link ReactiveStringRedisTemplate}, so the generation of an item is
+ * incremented and published exactly as the servlet endpoints do. Every node, this one included, applies the new
+ * generation when the message reaches its {@link CacheGenerations} listener.</p>
+ *
+ * <p>The change itself is already stored in MongoDB, so a failure to reach Redis is logged and ignored: the stale
+ * entries expire on their own, as with {@code CacheService}.</p>
+ */
+public class ReactiveCacheGenerations {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCacheGenerations.class);
+
+    private static final RedisScript<Long> INCREMENT_AND_PUBLISH =
+            RedisScript.of(CacheGenerations.INCREMENT_AND_PUBLISH_SCRIPT, Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String channel;
+
+    public ReactiveCacheGenerations(ReactiveStringRedisTemplate redisTemplate, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+    }
+
+    /**
+     * Moves the given items to a new generation on every node.
+     *
+     * @param itemIds The identifiers of the items whose cached entries are no longer valid.
+     * @return Completes once every generation was incremented, or the failure was logged.
+     */
+    public Mono<Void> increment(Collection<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(itemIds)
+                .flatMap(itemId -> redisTemplate.execute(INCREMENT_AND_PUBLISH,
+                        List.of(CacheGenerations.KEY_PREFIX + itemId), List.of(channel, itemId)))
+                .then()
+                .onErrorResume(e -> {
+                    logger.warn("Could not invalidate the cached entries of {} items: {}", itemIds.size(),
+                            e.getMessage());
+                    return Mono.empty();
+                });
+    }
+}
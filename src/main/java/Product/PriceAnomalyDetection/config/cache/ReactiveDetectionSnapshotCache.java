@@ -0,0 +1,136 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import Product.PriceAnomalyDetection.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-blocking access to the detection snapshots of {@link DetectionSnapshotCache}, for the reactive endpoints.
+ *
+ * <p>Snapshots use the same keys and the same {@link DetectionSnapshotCodec} encoding, so both kinds of endpoint
+ * share them. Any number of snapshots is read with a single {@code MGET}; writes are sent on the shared Lettuce
+ * connection without waiting for each reply, so a batch still costs about one round trip.</p>
+ *
+ * <p>As with the blocking cache, MongoDB remains the source of truth and a failure to reach Redis is logged and
+ * handled as a miss.</p>
+ */
+public class ReactiveDetectionSnapshotCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveDetectionSnapshotCache.class);
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+    private final Duration ttl;
+
+    public ReactiveDetectionSnapshotCache(ReactiveRedisTemplate<String, byte[]> redisTemplate, Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param itemIds The identifiers of the products.
+     * @return The cached snapshots, by item id, with the id set. Items without a readable snapshot are missing.
+     */
+    public Mono<Map<String, Product>> getAll(Collection<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return Mono.just(new HashMap<>());
+        }
+        List<String> ids = new ArrayList<>(itemIds);
+        return mget(ids.stream().map(ReactiveDetectionSnapshotCache::key).toList())
+                .map(values -> decode(ids, values))
+                .onErrorResume(e -> {
+                    logger.warn("Could not read {} detection snapshots: {}", ids.size(), e.getMessage());
+                    return Mono.just(new HashMap<>());
+                });
+    }
+
+    /**
+     * @param itemId The identifier of the product.
+     * @return The cached snapshot, or an empty {@link Mono} if there is none.
+     */
+    public Mono<Product> get(String itemId) {
+        return getAll(List.of(itemId)).mapNotNull(snapshots -> snapshots.get(itemId));
+    }
+
+    /**
+     * Caches the snapshot of each product, replacing the previous one.
+     *
+     * @param products The products, with their counts and detection state.
+     */
+    public Mono<Void> putAll(Collection<Product> products) {
+        if (products.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (Product product : products) {
+            values.put(key(product.getId()), codec.serialize(product));
+        }
+        return set(values).onErrorResume(e -> {
+            logger.warn("Could not write {} detection snapshots: {}", values.size(), e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Removes the snapshots of products whose snapshot was stale.
+     *
+     * @param itemIds The identifiers of the products.
+     */
+    public Mono<Void> evictAll(Collection<String> itemIds) {
+        if (itemIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return delete(itemIds.stream().map(ReactiveDetectionSnapshotCache::key).toList())
+                .onErrorResume(e -> {
+                    logger.warn("Could not evict {} detection snapshots: {}", itemIds.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Map<String, Product> decode(List<String> ids, List<byte[]> values) {
+        Map<String, Product> snapshots = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            try {
+                Product snapshot = codec.deserialize(value);
+                snapshot.setId(ids.get(i));
+                snapshots.put(ids.get(i), snapshot);
+            } catch (RuntimeException e) {
+                logger.debug("Ignoring unreadable detection snapshot of {}", ids.get(i), e);
+            }
+        }
+        return snapshots;
+    }
+
+    static String key(String itemId) {
+        return DetectionSnapshotCache.KEY_PREFIX + itemId;
+    }
+
+    protected Mono<List<byte[]>> mget(List<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
+    protected Mono<Void> set(Map<String, byte[]> values) {
+        return Flux.fromIterable(values.entrySet())
+                .flatMap(entry -> redisTemplate.opsForValue().set(entry.getKey(), entry.getValue(), ttl))
+                .then();
+    }
+
+    protected Mono<Void> delete(List<String> keys) {
+        return redisTemplate.delete(Flux.fromIterable(keys)).then();
+    }
+}
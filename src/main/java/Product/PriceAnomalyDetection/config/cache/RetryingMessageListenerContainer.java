@@ -0,0 +1,53 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.adapter.RedisListenerExecutionFailedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listener container that does not prevent the application from starting when Redis is unreachable.
+ *
+ * <p>The plain container fails to start, and with it the application, if it cannot subscribe. This one logs the
+ * failure and tries again every {@code retryInterval} until it subscribes. Until then the node does not receive
+ * invalidations from other nodes, so its local entries are only refreshed when they expire.</p>
+ */
+public class RetryingMessageListenerContainer extends RedisMessageListenerContainer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryingMessageListenerContainer.class);
+
+    private final Duration retryInterval;
+    private final ScheduledExecutorService retries =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("cache-invalidation-"));
+
+    public RetryingMessageListenerContainer(Duration retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    @Override
+    public void start() {
+        try {
+            super.start();
+        } catch (RedisConnectionFailureException | RedisListenerExecutionFailedException e) {
+            logger.warn("Could not subscribe to cache invalidations, retrying in {}: {}", retryInterval,
+                    e.getMessage());
+            stop();
+            if (!retries.isShutdown()) {
+                retries.schedule(this::start, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        retries.shutdownNow();
+        super.destroy();
+    }
+}
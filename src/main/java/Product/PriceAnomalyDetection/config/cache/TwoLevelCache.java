@@ -0,0 +1,137 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Cache with an in-process tier in front of a shared tier, usually Redis.
+ *
+ * <p>Lookups are answered by the local tier when possible, so hot keys never leave the process. A miss in the
+ * local tier falls back to the shared tier and, on a hit, copies the entry into the local tier. Writes and
+ * evictions go to both tiers. The local tier is a size-bounded Caffeine cache, whose W-TinyLFU policy keeps the
+ * frequently used keys when it is full, and its entries expire after {@code cache.local.ttl}, which bounds how
+ * long a node can serve a value that was evicted elsewhere.</p>
+ *
+ * <p>Entries of an item are invalidated across nodes by moving the item to a new generation, see
+ * {@link ItemCacheKey}. Clearing the whole cache is broadcast so every node drops its local tier.</p>
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final Cache remote;
+    private final Consumer<String> onClear;
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+
+    /**
+     * @param name The name of the cache.
+     * @param local The in-process tier. It should record statistics.
+     * @param remote The shared tier.
+     * @param onClear Called with the name of the cache after it is cleared, to tell the other nodes.
+     */
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> local, Cache remote,
+                         Consumer<String> onClear) {
+        super(false);
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.onClear = onClear;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        ValueWrapper wrapper = remote.get(remoteKey(key));
+        if (wrapper == null || wrapper.get() == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        local.put(key, wrapper.get());
+        return wrapper.get();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = lookup(key);
+        if (value != null) {
+            return (T) value;
+        }
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return (T) value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            evict(key);
+            return;
+        }
+        remote.put(remoteKey(key), value);
+        local.put(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(remoteKey(key));
+        local.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        onClear.accept(name);
+    }
+
+    /**
+     * Drops the local tier only, when another node cleared the cache.
+     */
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    /**
+     * @return The hits and misses of the local tier. Every local miss is a lookup in the shared tier.
+     */
+    public CacheTierStatistics getLocalStatistics() {
+        CacheStats stats = local.stats();
+        return CacheTierStatistics.of(stats.hitCount(), stats.missCount(), local.estimatedSize());
+    }
+
+    /**
+     * @return The hits and misses of the shared tier. Its size is not known.
+     */
+    public CacheTierStatistics getRemoteStatistics() {
+        return CacheTierStatistics.of(remoteHits.sum(), remoteMisses.sum(), -1);
+    }
+
+    private static Object remoteKey(Object key) {
+        return key instanceof ItemCacheKey ? key.toString() : key;
+    }
+}
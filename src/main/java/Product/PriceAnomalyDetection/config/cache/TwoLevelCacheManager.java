@@ -0,0 +1,113 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Wraps every cache of a shared {@link CacheManager} in a {@link TwoLevelCache}.
+ *
+ * <p>Once bound to a {@link MeterRegistry}, the hits, misses and hit ratio of both tiers of every cache, including
+ * those created later, are published as {@code cache.tier.gets} and {@code cache.tier.hit.ratio}, tagged with
+ * {@code cache} and {@code tier}. They are read from the statistics of {@link TwoLevelCache} when the registry is
+ * scraped, so lookups do not update any meter.</p>
+ */
+public class TwoLevelCacheManager implements CacheManager, MeterBinder {
+
+    private final CacheManager remote;
+    private final CacheGenerations generations;
+    private final long maximumSize;
+    private final Duration ttl;
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    /**
+     * @param remote The manager of the shared tier.
+     * @param generations The generations of the items, also used to broadcast clears.
+     * @param maximumSize Maximum number of entries of the local tier of each cache.
+     * @param ttl Time after which an entry of the local tier expires.
+     */
+    public TwoLevelCacheManager(CacheManager remote, CacheGenerations generations, long maximumSize, Duration ttl) {
+        this.remote = remote;
+        this.generations = generations;
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        generations.onClear(name -> {
+            TwoLevelCache cache = caches.get(name);
+            if (cache != null) {
+                cache.clearLocal();
+            }
+        });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache existing = caches.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        Cache shared = remote.getCache(name);
+        if (shared == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, cacheName -> register(new TwoLevelCache(cacheName, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(), shared, generations::publishClear)));
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        caches.values().forEach(this::register);
+    }
+
+    private TwoLevelCache register(TwoLevelCache cache) {
+        MeterRegistry target = registry;
+        if (target != null) {
+            register(target, cache, "local", TwoLevelCache::getLocalStatistics);
+            register(target, cache, "remote", TwoLevelCache::getRemoteStatistics);
+        }
+        return cache;
+    }
+
+    private static void register(MeterRegistry registry, TwoLevelCache cache, String tier,
+                                 Function<TwoLevelCache, CacheTierStatistics> statistics) {
+        FunctionCounter.builder("cache.tier.gets", cache, c -> statistics.apply(c).hits())
+                .description("Lookups of one tier of a cache")
+                .tags("cache", cache.getName(), "tier", tier, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.tier.gets", cache, c -> statistics.apply(c).misses())
+                .description("Lookups of one tier of a cache")
+                .tags("cache", cache.getName(), "tier", tier, "result", "miss")
+                .register(registry);
+        Gauge.builder("cache.tier.hit.ratio", cache, c -> statistics.apply(c).hitRate())
+                .description("Hits over lookups of one tier of a cache since the application started")
+                .tags("cache", cache.getName(), "tier", tier)
+                .register(registry);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * @return The caches created so far, by name.
+     */
+    public Map<String, TwoLevelCache> getCaches() {
+        return Collections.unmodifiableMap(caches);
+    }
+}
@@ -1,18 +1,32 @@
 package Product.PriceAnomalyDetection.controller;
 
+import Product.PriceAnomalyDetection.config.cache.CacheTierStatistics;
 import Product.PriceAnomalyDetection.controller.commons.CustomResponse;
+import Product.PriceAnomalyDetection.controller.constant.ApiGlobalConstant;
 import Product.PriceAnomalyDetection.controller.constant.MessageConstants;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillAlreadyRunningException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillJobNotFoundException;
 import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadJobNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadQueueFullException;
+import Product.PriceAnomalyDetection.model.BackfillJob;
 import Product.PriceAnomalyDetection.model.ItemPriceRequest;
 import Product.PriceAnomalyDetection.model.ItemPriceResponse;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJob;
+import Product.PriceAnomalyDetection.service.backfillService.IBackfillService;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
 import Product.PriceAnomalyDetection.service.productService.IProductService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.uploadJobService.IUploadJobService;
 import Product.PriceAnomalyDetection.service.uploadService.IUploadDataService;
 import Product.PriceAnomalyDetection.service.productService.ProductService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -21,23 +35,37 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.net.URI;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static Product.PriceAnomalyDetection.controller.constant.ApiGlobalConstant.*;
 
 @RestController
 @RequestMapping(API_PRODUCT)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
 
     private final IProductService productService;
     private final IUploadDataService uploadDataService;
+    private final IUploadJobService uploadJobService;
+    private final ICacheService cacheService;
+    private final IBackfillService backfillService;
     private static final Logger logger = LoggerFactory.getLogger(ProductController.class);
 
     @Autowired
-    public ProductController(IProductService productService, IUploadDataService uploadDataService) {
+    public ProductController(IProductService productService, IUploadDataService uploadDataService,
+                             IUploadJobService uploadJobService, ICacheService cacheService,
+                             IBackfillService backfillService) {
         this.productService = productService;
         this.uploadDataService = uploadDataService;
+        this.uploadJobService = uploadJobService;
+        this.cacheService = cacheService;
+        this.backfillService = backfillService;
     }
 
 
@@ -141,6 +169,66 @@ public class ProductController {
                 .body(itemPriceResponse);
     }
 
+    /**
+     * Checks a batch of prices, of one or many items, in a single call.
+     *
+     * This endpoint accepts a JSON array of up to {@link ApiGlobalConstant#BATCH_MAX_SIZE} item/price pairs.
+     * Every referenced product is read with one query and all the scores are recorded with one bulk write, so
+     * the cost of a call grows with the number of distinct items much more slowly than with {@code POST} per
+     * price. Prices of the same item are scored in the order they appear in the array.
+     *
+     * @param requests The items and prices to check, each with the same structure as in {@code POST}.
+     * @return A {@link ResponseEntity} with one {@link ItemPriceResponse} per request, in request order. An item
+     *         that does not exist gets {@code status_code} 404 and no {@code anomaly}; it does not fail the batch.
+     *
+     * @example Example request:
+     * <pre>
+     * POST /batch
+     * Content-Type: application/json
+     *
+     * [
+     *     {"item_id": "12345", "price": 100.0},
+     *     {"item_id": "67890", "price": 15.5}
+     * ]
+     * </pre>
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<ItemPriceResponse>> isAnomalyBatch(
+            @RequestBody @Size(max = BATCH_MAX_SIZE) List<@Valid ItemPriceRequest> requests) {
+
+        List<String> results = productService.isAnomaly(requests);
+
+        List<ItemPriceResponse> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String isAnomaly = results.get(i);
+            CustomResponse customResponse = new CustomResponse();
+            ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+            itemPriceResponse.setItem_id(requests.get(i).getItem_id());
+            itemPriceResponse.setPrice(requests.get(i).getPrice());
+            itemPriceResponse.setAnomaly(isAnomaly);
+            if (isAnomaly == null) {
+                customResponse.setMessage(MessageConstants.MSG_RESPONSE_NOT_FOUND);
+                itemPriceResponse.setStatus_code(String.valueOf(HttpStatus.NOT_FOUND.value()));
+            } else {
+                customResponse.setMessage(MessageConstants.MSG_RESPONSE_OK);
+                itemPriceResponse.setStatus_code(String.valueOf(HttpStatus.OK.value()));
+            }
+            itemPriceResponse.setMetadata(customResponse);
+            responses.add(itemPriceResponse);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("API-Method", API_METHOD_IS_ANOMALY_BATCH);
+        headers.add("API-Version", API_VERSION);
+        headers.add("Content-Type", API_CONTENT_TYPE);
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers)
+                .body(responses);
+    }
+
     /**
      * Handles the upload of a CSV file containing item price data.
      *
@@ -227,10 +315,264 @@ public class ProductController {
     }
 
 
-    @GetMapping("/{id}")
-    public ResponseEntity<Product> findById(@PathVariable("id") String id) {
+    /**
+     * Handles the upload of a CSV file of any size sent as the raw request body.
+     *
+     * This endpoint reads the body as a stream instead of a multipart file, so it is not limited by
+     * {@code spring.servlet.multipart.max-file-size}. Rows are grouped by item within
+     * {@code upload.stream.memory-budget}, spilling to temporary files when needed, and each product is saved
+     * as soon as it is complete. The file must have the same columns as in {@code /upload}.
+     *
+     * @param body The CSV content.
+     * @return A {@link ResponseEntity} containing an {@link ItemPriceResponse} object with a success message.
+     * @throws IOException If an I/O error occurs while reading the body.
+     * @throws ParseException If the body contains invalid data (e.g., incorrect date format).
+     *
+     * @example Example request:
+     * <pre>
+     * POST /upload/stream
+     * Content-Type: text/csv
+     *
+     * ITEM_ID,PRICE,ORD_CLOSED_DT
+     * 1,10.5,2023-10-01
+     * </pre>
+     */
+    @PostMapping(value = "/upload/stream", consumes = {"text/csv", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<ItemPriceResponse> uploadDataStream(InputStream body) throws IOException, ParseException {
+
+        uploadDataService.processStream(body);
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage("Data cargada con exito");
 
-        Product product = productService.findById(id);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setMetadata(customResponse);
+        itemPriceResponse.setStatus_code(String.valueOf(HttpStatus.OK.value()));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("API-Method", API_METHOD_UPLOAD_STREAM);
+        headers.add("API-Version", API_VERSION);
+        headers.add("Content-Type", API_CONTENT_TYPE);
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers)
+                .body(itemPriceResponse);
+    }
+
+
+    /**
+     * Queues the upload of a CSV file and returns immediately with the job that processes it.
+     *
+     * The file has the same format as in {@code /upload}. It is processed in the background on a dedicated pool,
+     * so the request does not wait for the products to be transformed and saved. The progress can be followed with
+     * {@code GET /upload/jobs/{jobId}}, whose URL is returned in the {@code Location} header.
+     *
+     * @param file The CSV file to upload, as a multipart form-data parameter with the key "file".
+     * @return A {@link ResponseEntity} with status 202 and the queued {@link UploadJob}.
+     * @throws IOException If the file cannot be stored for processing.
+     * @throws UploadQueueFullException If too many uploads are already queued (status 503).
+     *
+     * @example Example response:
+     * <pre>
+     * {
+     *     "id": "2f1c...",
+     *     "fileName": "example.csv",
+     *     "status": "QUEUED",
+     *     "rowsParsed": 0,
+     *     "itemsSaved": 0
+     * }
+     * </pre>
+     */
+    @PostMapping("/upload/jobs")
+    public ResponseEntity<UploadJob> submitUploadJob(@RequestParam("file") MultipartFile file) throws IOException {
+
+        UploadJob job = uploadJobService.submit(file);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/" + API_PRODUCT + "/upload/jobs/" + job.getId()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(job);
+    }
+
+    /**
+     * Retrieves the status of an upload job: rows parsed, items saved, throughput and the error if it failed.
+     *
+     * @param jobId The ID returned by {@code POST /upload/jobs}.
+     * @return A {@link ResponseEntity} containing the {@link UploadJob}.
+     * @throws UploadJobNotFoundException If the job does not exist or finished more than
+     *                                    {@code upload.jobs.retention} ago.
+     */
+    @GetMapping("/upload/jobs/{jobId}")
+    public ResponseEntity<UploadJob> findUploadJob(@PathVariable("jobId") String jobId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(uploadJobService.findById(jobId));
+    }
+
+    /**
+     * Cancels an upload job. Products already saved by the job are kept.
+     *
+     * @param jobId The ID returned by {@code POST /upload/jobs}.
+     * @return A {@link ResponseEntity} containing the {@link UploadJob}, with {@code cancelRequested} set.
+     * @throws UploadJobNotFoundException If the job does not exist or finished more than
+     *                                    {@code upload.jobs.retention} ago.
+     */
+    @DeleteMapping("/upload/jobs/{jobId}")
+    public ResponseEntity<UploadJob> cancelUploadJob(@PathVariable("jobId") String jobId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(uploadJobService.cancel(jobId));
+    }
+
+    /**
+     * Starts re-classifying the stored history of every product with the current {@code algorithm.window-size},
+     * {@code algorithm.k-value} and {@code algorithm.math-mode}, and returns immediately with the job that does it.
+     *
+     * If the last backfill did not complete and was started with the same parameters, it is resumed after the last
+     * product it committed. The progress can be followed with {@code GET /backfill/jobs/{jobId}}, whose URL is
+     * returned in the {@code Location} header.
+     *
+     * @return A {@link ResponseEntity} with status 202 and the queued {@link BackfillJob}.
+     * @throws BackfillAlreadyRunningException If a backfill is already running on this instance (status 409).
+     *
+     * @example Example response:
+     * <pre>
+     * {
+     *     "id": "7c0e...",
+     *     "status": "QUEUED",
+     *     "windowSize": 20,
+     *     "kvalue": 2,
+     *     "itemsProcessed": 0,
+     *     "itemsChanged": 0
+     * }
+     * </pre>
+     */
+    @PostMapping("/backfill/jobs")
+    public ResponseEntity<BackfillJob> startBackfill() {
+
+        BackfillJob job = backfillService.start();
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/" + API_PRODUCT + "/backfill/jobs/" + job.getId()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(job);
+    }
+
+    /**
+     * Retrieves the progress of a backfill: products processed and rewritten, percentage, throughput, last product
+     * committed and the error if it failed.
+     *
+     * @param jobId The ID returned by {@code POST /backfill/jobs}.
+     * @return A {@link ResponseEntity} containing the {@link BackfillJob}.
+     * @throws BackfillJobNotFoundException If the job does not exist.
+     */
+    @GetMapping("/backfill/jobs/{jobId}")
+    public ResponseEntity<BackfillJob> findBackfill(@PathVariable("jobId") String jobId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(backfillService.findById(jobId));
+    }
+
+    /**
+     * Cancels the backfill running on this instance. Products already rewritten are kept, and starting a backfill
+     * with the same parameters resumes it.
+     *
+     * @param jobId The ID returned by {@code POST /backfill/jobs}.
+     * @return A {@link ResponseEntity} containing the {@link BackfillJob}.
+     * @throws BackfillJobNotFoundException If the job does not exist.
+     */
+    @DeleteMapping("/backfill/jobs/{jobId}")
+    public ResponseEntity<BackfillJob> cancelBackfill(@PathVariable("jobId") String jobId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(backfillService.cancel(jobId));
+    }
+
+    /**
+     * Sets the detector of a product, overriding {@code algorithm.detector} for it.
+     *
+     * The detection state of the product is rebuilt with the new detector on its next score. The detector is kept
+     * when the history of the product is replaced by an upload or a backfill.
+     *
+     * @param id The ID of the product.
+     * @param detector The detector to use: {@code STANDARD_DEVIATION}, {@code EWMA} or {@code MAD}.
+     * @return A {@link ResponseEntity} containing the {@link Product}, without history.
+     * @throws ProductNotFoundException If the product does not exist.
+     *
+     * @example Example request:
+     * <pre>
+     * PUT /{id}/detector/MAD
+     * </pre>
+     */
+    @PutMapping("/{id}/detector/{detector}")
+    public ResponseEntity<Product> setDetector(@PathVariable("id") String id,
+                                               @PathVariable("detector") Detector detector) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productService.setDetector(id, detector));
+    }
+
+    /**
+     * Clears the detector of a product, so it is scored again with {@code algorithm.detector}.
+     *
+     * @param id The ID of the product.
+     * @return A {@link ResponseEntity} containing the {@link Product}, without history.
+     * @throws ProductNotFoundException If the product does not exist.
+     */
+    @DeleteMapping("/{id}/detector")
+    public ResponseEntity<Product> clearDetector(@PathVariable("id") String id) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(productService.setDetector(id, null));
+    }
+
+    /**
+     * Retrieves the hit and miss counters of each tier of each cache on this instance.
+     *
+     * @return A {@link ResponseEntity} containing, for each cache, the statistics of its {@code local} tier (in
+     *         process) and its {@code remote} tier (Redis).
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Map<String, CacheTierStatistics>>> findCacheStatistics() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(cacheService.getStatistics());
+    }
+
+
+    /**
+     * Retrieves a product and its price history.
+     *
+     * Without paging parameters the complete history is returned. When {@code page} or {@code size} is given,
+     * only that page of each series (outliers and non-outliers, oldest first) is read from storage; the
+     * {@code outlierCount} and {@code nonOutlierCount} fields tell how many pages there are.
+     *
+     * @param id The ID of the product.
+     * @param page Zero-based page of history to return. Optional.
+     * @param size Number of points per page and series. Optional, defaults to {@link ApiGlobalConstant#HISTORY_PAGE_SIZE}.
+     * @return A {@link ResponseEntity} containing the {@link Product}.
+     * @throws ProductNotFoundException If the product does not exist.
+     *
+     * @example Example request:
+     * <pre>
+     * GET /{id}?page=0&amp;size=100
+     * </pre>
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Product> findById(@PathVariable("id") String id,
+                                            @RequestParam(value = "page", required = false) Integer page,
+                                            @RequestParam(value = "size", required = false) Integer size) {
+
+        Product product;
+        if (page == null && size == null) {
+            product = productService.findById(id);
+        } else {
+            product = productService.findById(id,
+                    page == null ? 0 : Math.max(0, page),
+                    size == null ? HISTORY_PAGE_SIZE : Math.max(1, size));
+        }
 
         if(product == null){
             throw new ProductNotFoundException();
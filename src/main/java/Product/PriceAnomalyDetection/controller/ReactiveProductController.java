@@ -0,0 +1,144 @@
+package Product.PriceAnomalyDetection.controller;
+
+import Product.PriceAnomalyDetection.controller.commons.CustomResponse;
+import Product.PriceAnomalyDetection.controller.constant.ApiGlobalConstant;
+import Product.PriceAnomalyDetection.controller.constant.MessageConstants;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceResponse;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.reactiveProductService.IReactiveProductService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+import static Product.PriceAnomalyDetection.controller.constant.ApiGlobalConstant.*;
+
+/**
+ * WebFlux variant of the scoring and lookup endpoints of {@link ProductController}, served in the
+ * {@code reactive} profile.
+ *
+ * <p>The paths, request bodies and responses are the same. Upload endpoints are only served by
+ * {@link ProductController}.</p>
+ */
+@RestController
+@RequestMapping(API_PRODUCT)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+
+    private final IReactiveProductService productService;
+
+    @Autowired
+    public ReactiveProductController(IReactiveProductService productService) {
+        this.productService = productService;
+    }
+
+    /**
+     * Checks if a given price for a specific item is considered an anomaly.
+     *
+     * @param request The item ID and price to check, as in {@link ProductController#isAnomaly}.
+     * @return The same {@link ItemPriceResponse} and headers as {@link ProductController#isAnomaly}.
+     * @throws ProductNotFoundException If the item does not exist.
+     */
+    @PostMapping
+    public Mono<ResponseEntity<ItemPriceResponse>> isAnomaly(@Valid @RequestBody ItemPriceRequest request) {
+
+        String itemId = request.getItem_id();
+        BigDecimal newPrice = request.getPrice();
+
+        return productService.isAnomaly(itemId, newPrice).map(isAnomaly -> {
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("API-Method", API_METHOD_IS_ANOMALY);
+            headers.add("API-Version", API_VERSION);
+            headers.add("Content-Type", API_CONTENT_TYPE);
+
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .headers(headers)
+                    .body(response(itemId, newPrice, isAnomaly));
+        });
+    }
+
+    /**
+     * Checks a stream of prices, of one or many items.
+     *
+     * The body is a JSON array, as in {@link ProductController#isAnomalyBatch}, or one JSON object per line with
+     * {@code Content-Type: application/x-ndjson}. It is decoded and scored while it arrives, and responses are
+     * written as soon as they are ready, as a JSON array or, with {@code Accept: application/x-ndjson}, one object
+     * per line. Since the request is never held in memory as a whole, there is no
+     * {@link ApiGlobalConstant#BATCH_MAX_SIZE} limit.
+     *
+     * @param requests The items and prices to check.
+     * @return One {@link ItemPriceResponse} per request, in request order. An item that does not exist gets
+     *         {@code status_code} 404 and no {@code anomaly}; it does not fail the stream.
+     */
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Flux<ItemPriceResponse>> isAnomalyBatch(
+            @Valid @RequestBody Flux<ItemPriceRequest> requests) {
+
+        Flux<ItemPriceResponse> responses = productService.isAnomaly(requests)
+                .map(score -> score.getAnomaly() == null
+                        ? notFound(score.getItemId(), score.getPrice())
+                        : response(score.getItemId(), score.getPrice(), score.getAnomaly()));
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .header("API-Method", API_METHOD_IS_ANOMALY_BATCH)
+                .header("API-Version", API_VERSION)
+                .body(responses);
+    }
+
+    /**
+     * Retrieves a product and its price history, with the same paging as {@link ProductController#findById}.
+     *
+     * @param id The ID of the product.
+     * @param page Zero-based page of history to return. Optional.
+     * @param size Number of points per page and series. Optional, defaults to {@link ApiGlobalConstant#HISTORY_PAGE_SIZE}.
+     * @return A {@link ResponseEntity} containing the {@link Product}.
+     * @throws ProductNotFoundException If the product does not exist.
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Product>> findById(@PathVariable("id") String id,
+                                                  @RequestParam(value = "page", required = false) Integer page,
+                                                  @RequestParam(value = "size", required = false) Integer size) {
+
+        Mono<Product> product;
+        if (page == null && size == null) {
+            product = productService.findById(id);
+        } else {
+            product = productService.findById(id,
+                    page == null ? 0 : Math.max(0, page),
+                    size == null ? HISTORY_PAGE_SIZE : Math.max(1, size));
+        }
+
+        return product.map(found -> ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(found));
+    }
+
+    private static ItemPriceResponse response(String itemId, BigDecimal price, String isAnomaly) {
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_RESPONSE_OK);
+        return new ItemPriceResponse(itemId, price, isAnomaly, customResponse,
+                String.valueOf(HttpStatus.OK.value()));
+    }
+
+    private static ItemPriceResponse notFound(String itemId, BigDecimal price) {
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_RESPONSE_NOT_FOUND);
+        return new ItemPriceResponse(itemId, price, null, customResponse,
+                String.valueOf(HttpStatus.NOT_FOUND.value()));
+    }
+}
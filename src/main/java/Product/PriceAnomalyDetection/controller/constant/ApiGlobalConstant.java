@@ -4,9 +4,13 @@ public class ApiGlobalConstant {
 
     public static final String API_PRODUCT = "api/v1/price-anomaly";
     public static final String API_METHOD_IS_ANOMALY = "POST - isAnomaly";
+    public static final String API_METHOD_IS_ANOMALY_BATCH = "POST - isAnomalyBatch";
 
     public static final String API_METHOD_UPLOAD = "POST - UploadData";
+    public static final String API_METHOD_UPLOAD_STREAM = "POST - UploadDataStream";
     public static final String API_VERSION = "v1";
     public static final String API_CONTENT_TYPE = "application/json";
+    public static final int HISTORY_PAGE_SIZE = 100;
+    public static final int BATCH_MAX_SIZE = 1000;
 
 }
@@ -17,6 +17,11 @@ public class MessageConstants {
             "revise los requisitos del archivo";
     public static final String MSG_METHOD_NOT_ALLOWED= "Metodo HTTP no permitido, revise documentacion para conocer los metodos" +
             "HTTP permitidos.";
+    public static final String MSG_CONCURRENT_UPDATE= "El producto esta siendo actualizado por otras solicitudes, " +
+            "intente nuevamente";
+    public static final String MSG_UPLOAD_QUEUE_FULL= "Hay demasiadas cargas en cola, intente nuevamente mas tarde";
+    public static final String MSG_BACKFILL_RUNNING= "Ya hay un recalculo en ejecucion, consulte su progreso o " +
+            "cancelelo antes de iniciar otro";
 
 
 
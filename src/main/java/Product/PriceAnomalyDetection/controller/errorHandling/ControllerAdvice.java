@@ -2,21 +2,29 @@ package Product.PriceAnomalyDetection.controller.errorHandling;
 
 import Product.PriceAnomalyDetection.controller.commons.CustomResponse;
 import Product.PriceAnomalyDetection.controller.constant.MessageConstants;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillAlreadyRunningException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillJobNotFoundException;
 import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadJobNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadQueueFullException;
 import Product.PriceAnomalyDetection.model.ItemPriceResponse;
 import org.apache.coyote.BadRequestException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
 
 import java.io.IOException;
 import java.text.ParseException;
 
 @org.springframework.web.bind.annotation.ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ControllerAdvice {
 
     @ExceptionHandler(ProductNotFoundException.class)
@@ -46,6 +54,19 @@ public class ControllerAdvice {
 
     }
 
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> HandlerMethodValidationException(HandlerMethodValidationException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_RESPONSE_BAD_REQUEST);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("400");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(itemPriceResponse);
+
+    }
+
     @ExceptionHandler
     public ResponseEntity<ItemPriceResponse> HttpMessageNotReadableException(HttpMessageNotReadableException exc) {
 
@@ -135,6 +156,71 @@ public class ControllerAdvice {
 
     }
 
+    @ExceptionHandler(UploadJobNotFoundException.class)
+    public ResponseEntity<ItemPriceResponse> uploadJobNotFoundException(UploadJobNotFoundException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_RESPONSE_NOT_FOUND);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("404");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(itemPriceResponse);
+
+    }
+
+    @ExceptionHandler(UploadQueueFullException.class)
+    public ResponseEntity<ItemPriceResponse> uploadQueueFullException(UploadQueueFullException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_UPLOAD_QUEUE_FULL);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("503");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(itemPriceResponse);
+
+    }
+
+    @ExceptionHandler(BackfillJobNotFoundException.class)
+    public ResponseEntity<ItemPriceResponse> backfillJobNotFoundException(BackfillJobNotFoundException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_RESPONSE_NOT_FOUND);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("404");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(itemPriceResponse);
+
+    }
+
+    @ExceptionHandler(BackfillAlreadyRunningException.class)
+    public ResponseEntity<ItemPriceResponse> backfillAlreadyRunningException(BackfillAlreadyRunningException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_BACKFILL_RUNNING);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("409");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(itemPriceResponse);
+
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> OptimisticLockingFailureException(OptimisticLockingFailureException exc) {
+
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(MessageConstants.MSG_CONCURRENT_UPDATE);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code("409");
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(itemPriceResponse);
+
+    }
+
 
 
 
@@ -0,0 +1,69 @@
+package Product.PriceAnomalyDetection.controller.errorHandling;
+
+import Product.PriceAnomalyDetection.controller.commons.CustomResponse;
+import Product.PriceAnomalyDetection.controller.constant.MessageConstants;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.ItemPriceResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
+import org.springframework.web.server.MethodNotAllowedException;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.server.UnsupportedMediaTypeStatusException;
+
+/**
+ * Error responses of the reactive endpoints, with the same bodies as {@link ControllerAdvice}.
+ */
+@org.springframework.web.bind.annotation.ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveControllerAdvice {
+
+    @ExceptionHandler(ProductNotFoundException.class)
+    public ResponseEntity<ItemPriceResponse> productNotFoundException(ProductNotFoundException exc) {
+        return response(HttpStatus.NOT_FOUND, MessageConstants.MSG_RESPONSE_NOT_FOUND);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> webExchangeBindException(WebExchangeBindException exc) {
+        return response(HttpStatus.BAD_REQUEST, MessageConstants.MSG_RESPONSE_BAD_REQUEST);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> handlerMethodValidationException(HandlerMethodValidationException exc) {
+        return response(HttpStatus.BAD_REQUEST, MessageConstants.MSG_RESPONSE_BAD_REQUEST);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> serverWebInputException(ServerWebInputException exc) {
+        return response(HttpStatus.BAD_REQUEST, MessageConstants.MSG_BAD_JSON_FORMAT);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> unsupportedMediaTypeStatusException(UnsupportedMediaTypeStatusException exc) {
+        return response(HttpStatus.UNSUPPORTED_MEDIA_TYPE, MessageConstants.MSG_BAD_JSON_FORMAT);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> methodNotAllowedException(MethodNotAllowedException exc) {
+        return response(HttpStatus.METHOD_NOT_ALLOWED, MessageConstants.MSG_METHOD_NOT_ALLOWED);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ItemPriceResponse> optimisticLockingFailureException(OptimisticLockingFailureException exc) {
+        return response(HttpStatus.CONFLICT, MessageConstants.MSG_CONCURRENT_UPDATE);
+    }
+
+    private static ResponseEntity<ItemPriceResponse> response(HttpStatus status, String message) {
+        CustomResponse customResponse = new CustomResponse();
+        customResponse.setMessage(message);
+        ItemPriceResponse itemPriceResponse = new ItemPriceResponse();
+        itemPriceResponse.setStatus_code(String.valueOf(status.value()));
+        itemPriceResponse.setMetadata(customResponse);
+
+        return ResponseEntity.status(status).body(itemPriceResponse);
+    }
+}
@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.controller.errorHandling.exceptions;
+
+public class BackfillAlreadyRunningException extends RuntimeException{
+
+    public BackfillAlreadyRunningException(){
+        super();
+    }
+
+    public BackfillAlreadyRunningException(String message){
+        super(message);
+    }
+
+
+
+}
@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.controller.errorHandling.exceptions;
+
+public class BackfillJobNotFoundException extends RuntimeException{
+
+    public BackfillJobNotFoundException(){
+        super();
+    }
+
+    public BackfillJobNotFoundException(String message){
+        super(message);
+    }
+
+
+
+}
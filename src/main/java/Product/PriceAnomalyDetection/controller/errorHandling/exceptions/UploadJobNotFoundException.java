@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.controller.errorHandling.exceptions;
+
+public class UploadJobNotFoundException extends RuntimeException{
+
+    public UploadJobNotFoundException(){
+        super();
+    }
+
+    public UploadJobNotFoundException(String message){
+        super(message);
+    }
+
+
+
+}
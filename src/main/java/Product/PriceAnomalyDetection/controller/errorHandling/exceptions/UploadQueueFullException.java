@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.controller.errorHandling.exceptions;
+
+public class UploadQueueFullException extends RuntimeException{
+
+    public UploadQueueFullException(){
+        super();
+    }
+
+    public UploadQueueFullException(String message){
+        super(message);
+    }
+
+
+
+}
@@ -0,0 +1,118 @@
+package Product.PriceAnomalyDetection.model;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Progress of a re-scoring backfill, as reported by {@code GET /backfill/jobs/{jobId}}.
+ *
+ * <p>Unlike {@link UploadJob}, a backfill is stored in the {@code backfill_jobs} collection every time a batch is
+ * written, so its progress can be read from any instance and an interrupted backfill resumes after
+ * {@code lastItemId}, the identifier of the last product of the batches already written. The parameters it was
+ * started with are kept to decide whether it can be resumed with the current configuration.</p>
+ *
+ * <p>Fields are written by the thread running the backfill while request threads read them, so they are
+ * volatile; only that thread updates them.</p>
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "backfill_jobs")
+public class BackfillJob {
+
+    @Id
+    private String id;
+
+    @Field
+    private volatile UploadJobStatus status = UploadJobStatus.QUEUED;
+
+    @Field
+    private int windowSize;
+
+    @Field
+    private BigDecimal kValue;
+
+    @Field
+    private MathMode mathMode;
+
+    // Products in the collection when the backfill started or was last resumed.
+    @Field
+    private volatile long totalItems;
+
+    @Field
+    private volatile long itemsProcessed;
+
+    // Products whose classification changed and were rewritten.
+    @Field
+    private volatile long itemsChanged;
+
+    @Field
+    private volatile String lastItemId;
+
+    @Field
+    private Date createdAt = new Date();
+
+    @Field
+    private volatile Date startedAt;
+
+    @Field
+    private volatile Date updatedAt;
+
+    @Field
+    private volatile Date finishedAt;
+
+    @Field
+    private volatile String error;
+
+    // Items processed before the current run, to measure the throughput of this run only.
+    @Transient
+    @JsonIgnore
+    private volatile long itemsAtStart;
+
+    @Transient
+    @JsonIgnore
+    private volatile boolean cancelRequested;
+
+    public BackfillJob(String id, int windowSize, BigDecimal kValue, MathMode mathMode) {
+        this.id = id;
+        this.windowSize = windowSize;
+        this.kValue = kValue;
+        this.mathMode = mathMode;
+    }
+
+    /**
+     * @return Percentage of the products already processed, between 0 and 100.
+     */
+    public double getPercentComplete() {
+        if (status == UploadJobStatus.COMPLETED) {
+            return 100;
+        }
+        return totalItems == 0 ? 0 : Math.min(100, itemsProcessed * 100.0 / totalItems);
+    }
+
+    /**
+     * @return Products processed per second since the backfill was last started, or 0 if it is not running.
+     */
+    public double getItemsPerSecond() {
+        Date start = startedAt;
+        if (start == null) {
+            return 0;
+        }
+        Date end = finishedAt == null ? new Date() : finishedAt;
+        long millis = Math.max(1, end.getTime() - start.getTime());
+        return (itemsProcessed - itemsAtStart) * 1000.0 / millis;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+}
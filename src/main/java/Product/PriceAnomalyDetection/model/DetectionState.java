@@ -0,0 +1,49 @@
+package Product.PriceAnomalyDetection.model;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Rolling detection state of a product, kept next to its history so scoring a price does not need to sort
+ * or read the full list of non-outliers.
+ *
+ * <p>{@code window} holds the most recent {@code windowSize + 1} non-outlier prices, oldest first, scaled with
+ * {@code Commons.toScaledPrice}, which rounds prices with more than {@code Commons.PRICE_SCALE} decimal places. The
+ * limits are computed over every price of the window except the newest one, which is the same window
+ * {@code AnomalyDetectionStandardDeviation} takes from the full history.</p>
+ *
+ * <p>{@code detector} is the {@link Detector} that built the state, {@code null} for states written before it was
+ * recorded, which are those of {@link Detector#STANDARD_DEVIATION}. Streaming detectors keep an empty window and
+ * their running statistics in {@code statistics}, whose layout is private to each detector and whose size does not
+ * depend on the number of prices seen.</p>
+ *
+ * <p>{@code mathMode} is the {@link MathMode} the limits were computed with, since each mode rounds them
+ * differently. It is {@code null} for streaming detectors and for states written before it was recorded, which
+ * are rebuilt on their next score.</p>
+ *
+ * <p>{@code version} is incremented on every write of the state and is used for optimistic concurrency: a score
+ * is only recorded if the state it was computed from is still the stored one.</p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DetectionState {
+
+    private int windowSize;
+    private BigDecimal kValue;
+    private long[] window;
+    private BigDecimal sma;
+    private BigDecimal stdDev;
+    private BigDecimal lowerLimit;
+    private BigDecimal upperLimit;
+    private long version;
+    private Detector detector;
+    private double[] statistics;
+    private MathMode mathMode;
+
+}
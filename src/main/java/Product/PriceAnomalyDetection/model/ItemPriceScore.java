@@ -0,0 +1,20 @@
+package Product.PriceAnomalyDetection.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Result of scoring one price of a stream: the scored item and price, and {@code "true"} or {@code "false"}, or
+ * {@code null} if the product does not exist.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ItemPriceScore {
+    private String itemId;
+    private BigDecimal price;
+    private String anomaly;
+}
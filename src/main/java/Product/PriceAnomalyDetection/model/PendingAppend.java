@@ -0,0 +1,31 @@
+package Product.PriceAnomalyDetection.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Scored point recorded on its product but possibly not yet appended to its {@link PriceBucket}.
+ *
+ * <p>{@code index} is the position of the point in its series, which tells the bucket it goes to and lets the
+ * append be repeated without duplicating the point. {@code key} identifies the entry within the product.</p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PendingAppend {
+
+    private String key;
+    private boolean outlier;
+    private long index;
+    private PriceData point;
+
+    public PendingAppend(boolean outlier, long index, PriceData point) {
+        this(key(outlier, index), outlier, index, point);
+    }
+
+    public static String key(boolean outlier, long index) {
+        return (outlier ? "o" : "n") + index;
+    }
+
+}
@@ -0,0 +1,79 @@
+package Product.PriceAnomalyDetection.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Fixed-size chunk of the price history of a product.
+ *
+ * <p>The history of each product is split in two series, outliers and non-outliers, and every series is stored
+ * as consecutive buckets numbered by {@code sequence}. Bucket {@code n} holds the points
+ * {@code [n * bucketSize, (n + 1) * bucketSize)} of the series in date order, so the last bucket is the only
+ * one that is not full and new points are always appended to it.</p>
+ *
+ * <p>The points are kept in {@code prices}. With the {@link StorageEncoding#COLUMNAR} encoding a full bucket keeps
+ * them in {@code columns} instead and {@code prices} is left empty, so it can still be projected with
+ * {@code $slice}.</p>
+ *
+ * <p>{@code epoch} is the {@code historyEpoch} of the product when the bucket was written. Points are only appended
+ * to a bucket of the epoch they were scored in, and buckets of another epoch are not read.</p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Document(collection = "price_buckets")
+@CompoundIndex(name = "item_series_sequence", def = "{'itemId': 1, 'outlier': 1, 'sequence': 1}", unique = true)
+@ToString
+public class PriceBucket {
+
+    @Id
+    @EqualsAndHashCode.Include
+    private String id;
+
+    @Field
+    private String itemId;
+
+    @Field
+    private boolean outlier;
+
+    @Field
+    private int sequence;
+
+    @Field
+    private long epoch;
+
+    @Field
+    private int count;
+
+    @Field
+    private Date firstDate;
+
+    @Field
+    private Date lastDate;
+
+    @Field
+    private List<PriceData> prices;
+
+    @Field
+    private byte[] columns;
+
+    /**
+     * Builds the identifier of a bucket, so a bucket can be addressed without querying for it first.
+     *
+     * @param itemId The identifier of the product.
+     * @param outlier {@code true} for the outliers series, {@code false} for the non-outliers series.
+     * @param sequence The position of the bucket in the series.
+     * @return The bucket identifier.
+     */
+    public static String bucketId(String itemId, boolean outlier, int sequence) {
+        return itemId + (outlier ? ":o:" : ":n:") + sequence;
+    }
+
+}
@@ -1,7 +1,11 @@
 package Product.PriceAnomalyDetection.model;
 
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import java.math.BigDecimal;
@@ -11,6 +15,7 @@ import java.util.List;
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Document(collection = "products")
+@CompoundIndex(name = "pending_appends", def = "{'pendingAppends.key': 1}", sparse = true)
 @ToString
 public class Product {
 
@@ -18,10 +23,37 @@ public class Product {
     @EqualsAndHashCode.Include
     private String id;
 
-    @Field
+    // Both series live in the price_buckets collection (see PriceBucket) and are only filled when read through
+    // IProductRepoCustom; the counts below are the size of each series.
+    @Transient
     private List<PriceData> outliers;
 
-    @Field
+    @Transient
     private List<PriceData> nonOutliers;
 
+    @Field
+    private long outlierCount;
+
+    @Field
+    private long nonOutlierCount;
+
+    @Field
+    @JsonIgnore
+    private DetectionState detectionState;
+
+    // Detector of this product, overriding algorithm.detector; null uses the one of the deployment.
+    @Field
+    private Detector detector;
+
+    // Scored points whose append to their bucket may not have completed; see IProductRepoCustomImpl#recordScore.
+    @Field
+    @JsonIgnore
+    private List<PendingAppend> pendingAppends;
+
+    // Changed each time the history is replaced, so scores read from the previous history are not recorded and
+    // buckets of the previous history are not read; see IProductRepoCustomImpl#saveAllWithHistory.
+    @Field
+    @JsonIgnore
+    private long historyEpoch;
+
 }
@@ -0,0 +1,31 @@
+package Product.PriceAnomalyDetection.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prices of one product scored together in a batch, ready to be recorded with a single write.
+ *
+ * <p>{@code historyEpoch}, {@code expectedVersion}, {@code outlierCount} and {@code nonOutlierCount} are the values
+ * the product had when it was read; the batch is only recorded if they have not changed, so the position of every
+ * new point in its series is known in advance. {@code state} is the detection state after scoring all the prices.</p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScoreBatch {
+
+    private String itemId;
+    private long historyEpoch;
+    private long expectedVersion;
+    private long outlierCount;
+    private long nonOutlierCount;
+    private DetectionState state;
+    private List<PriceData> outliers = new ArrayList<>();
+    private List<PriceData> nonOutliers = new ArrayList<>();
+
+}
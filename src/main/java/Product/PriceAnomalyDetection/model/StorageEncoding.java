@@ -0,0 +1,16 @@
+package Product.PriceAnomalyDetection.model;
+
+/**
+ * Layout of the points of the full {@link PriceBucket}s, selected with {@code storage.encoding}.
+ */
+public enum StorageEncoding {
+    /**
+     * Every point is a subdocument of {@code prices} with its date and its price.
+     */
+    DOCUMENTS,
+    /**
+     * Once a bucket is full its points are packed in the binary {@code columns} field; see
+     * {@code PriceColumns}. The last bucket of each series, which still receives points, keeps the documents layout.
+     */
+    COLUMNAR
+}
@@ -0,0 +1,72 @@
+package Product.PriceAnomalyDetection.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an asynchronous upload, as reported by {@code GET /upload/jobs/{jobId}}.
+ *
+ * <p>The counters are updated by the thread running the upload while other threads read them, so they are atomic
+ * and the remaining mutable fields are volatile.</p>
+ */
+@Getter
+public class UploadJob {
+
+    private final String id;
+    private final String fileName;
+    private final Date createdAt = new Date();
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong itemsSaved = new AtomicLong();
+    @Setter
+    private volatile UploadJobStatus status = UploadJobStatus.QUEUED;
+    @Setter
+    private volatile Date startedAt;
+    @Setter
+    private volatile Date finishedAt;
+    @Setter
+    private volatile String error;
+    @Setter
+    private volatile boolean cancelRequested;
+    @Setter
+    @JsonIgnore
+    private volatile Future<?> future;
+
+    public UploadJob(String id, String fileName) {
+        this.id = id;
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return Rows parsed per second since the job started, or 0 if it has not started.
+     */
+    public double getRowsPerSecond() {
+        return perSecond(rowsParsed.get());
+    }
+
+    /**
+     * @return Items saved per second since the job started, or 0 if it has not started.
+     */
+    public double getItemsPerSecond() {
+        return perSecond(itemsSaved.get());
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    private double perSecond(long count) {
+        Date start = startedAt;
+        if (start == null) {
+            return 0;
+        }
+        Date end = finishedAt == null ? new Date() : finishedAt;
+        long millis = Math.max(1, end.getTime() - start.getTime());
+        return count * 1000.0 / millis;
+    }
+}
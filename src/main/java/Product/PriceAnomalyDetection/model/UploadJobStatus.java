@@ -0,0 +1,9 @@
+package Product.PriceAnomalyDetection.model;
+
+public enum UploadJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,10 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.BackfillJob;
+
+import java.util.Optional;
+
+public interface IBackfillJobRepo extends IGenericRepo<BackfillJob, String> {
+
+    Optional<BackfillJob> findFirstByOrderByCreatedAtDesc();
+}
@@ -2,5 +2,5 @@ package Product.PriceAnomalyDetection.repository;
 
 import Product.PriceAnomalyDetection.model.Product;
 
-public interface IProductRepo extends IGenericRepo<Product, String>{
+public interface IProductRepo extends IGenericRepo<Product, String>, IProductRepoCustom {
 }
@@ -0,0 +1,43 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public interface IProductRepoCustom {
+
+    Product saveWithHistory(Product product);
+
+    void saveAllWithHistory(List<Product> products);
+
+    boolean setDetector(String itemId, Detector detector);
+
+    List<PriceData> findHistory(String itemId, boolean outlier);
+
+    List<PriceData> findHistory(String itemId, boolean outlier, long offset, int limit);
+
+    List<PriceData> findLastNonOutliers(Product product, int limit);
+
+    Map<String, List<PriceData>> findLastNonOutliers(Collection<Product> products, int limit);
+
+    boolean recordScore(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                        DetectionState state, boolean replaceState, PriceData priceData, boolean outlier);
+
+    Set<String> recordScores(List<ScoreBatch> batches);
+
+    Stream<Product> streamProducts(String afterItemId, int batchSize);
+
+    void loadHistories(List<Product> products);
+
+    List<String> migrateEmbeddedHistories(int batchSize);
+
+    List<String> appendPendingPoints(String afterItemId, int batchSize);
+}
@@ -0,0 +1,1024 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PendingAppend;
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.model.StorageEncoding;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stores the history of each {@link Product} in the {@code price_buckets} collection using the bucket pattern.
+ *
+ * <p>The product document only keeps the identifier, the size of each series and the detection state, so it
+ * stays small whatever the length of the history. Points are grouped in {@link PriceBucket}s of
+ * {@code storage.bucket-size} points, which lets the scoring path read only the last buckets and lets
+ * {@code GET /{id}} read one page of history at a time.</p>
+ *
+ * <p>Within a bucket, points are kept sorted by date, so prices scored concurrently end up in date order
+ * whatever the order in which their writes arrive.</p>
+ *
+ * <p>With {@code storage.encoding=COLUMNAR} a bucket is sealed as soon as it is full: its points are packed with
+ * {@link PriceColumns} in the binary {@code columns} field and {@code prices} is emptied. Full buckets are sealed when
+ * a history is saved and, when points are scored, by the write that fills them. Reads accept both layouts, so the
+ * encoding can be switched at any time; existing buckets keep the layout they were written with until their
+ * history is saved again.</p>
+ */
+public class IProductRepoCustomImpl implements IProductRepoCustom {
+
+    private static final String ITEM_ID = "itemId";
+    private static final String OUTLIER = "outlier";
+    private static final String SEQUENCE = "sequence";
+    private static final String PRICES = "prices";
+    private static final String COLUMNS = "columns";
+    private static final String COUNT = "count";
+    private static final String STATE = "detectionState";
+    private static final String DETECTOR = "detector";
+    private static final String PENDING = "pendingAppends";
+    private static final String INDEX = "index";
+    private static final String EPOCH = "epoch";
+    private static final String HISTORY_EPOCH = "historyEpoch";
+    private static final String EMBEDDED_OUTLIERS = "outliers";
+    private static final String EMBEDDED_NON_OUTLIERS = "nonOutliers";
+
+    private final MongoTemplate mongoTemplate;
+    private final int bucketSize;
+    private final StorageEncoding encoding;
+
+    public IProductRepoCustomImpl(MongoTemplate mongoTemplate, int bucketSize) {
+        this(mongoTemplate, bucketSize, StorageEncoding.DOCUMENTS);
+    }
+
+    @Autowired
+    public IProductRepoCustomImpl(MongoTemplate mongoTemplate, @Value("${storage.bucket-size}") int bucketSize,
+                                  @Value("${storage.encoding}") StorageEncoding encoding) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketSize = bucketSize;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Replaces a product and its whole history.
+     *
+     * @param product The product with its outliers and non-outliers sorted by date.
+     * @return The saved product.
+     * @see #saveAllWithHistory(List)
+     */
+    @Override
+    public Product saveWithHistory(Product product) {
+        saveAllWithHistory(List.of(product));
+        return product;
+    }
+
+    /**
+     * Replaces a batch of products and their whole history with a fixed number of round trips.
+     *
+     * <p>The steps are as follows, each a single query or unordered bulk write whatever the number of products:
+     * <ol>
+     *     <li>Increments the {@code historyEpoch} of the existing products, so every score read before the replace
+     *         fails its filter from now on, and reads the new value.</li>
+     *     <li>Splits both series of each product into buckets of {@code storage.bucket-size} points, stamped with
+     *         the epoch the product is about to get, and writes them over the buckets with the same identifier.</li>
+     *     <li>Upserts the product documents with the size of each series and that epoch, one higher again, so the
+     *         scores read while the history was being replaced fail as well.</li>
+     *     <li>Removes the buckets of the products that belong to another epoch: those past the end of a shorter
+     *         history, and any bucket created by a score that had been recorded before the replace.</li>
+     * </ol>
+     * Points are only appended to buckets of the epoch they were scored in and the last non-outliers are only read
+     * from buckets of the epoch of the product, so a score running concurrently with the replace can neither add a
+     * point to the new history nor be read as part of it.</p>
+     *
+     * <p>The upsert sets the size of each series and the detection state, and removes the pending appends, whose
+     * points belong to the replaced history. The detector of a product is only written when the given product has
+     * one, so replacing the history, as an upload or a backfill does, keeps the detector set with
+     * {@link #setDetector}.</p>
+     *
+     * @param products The products with their outliers and non-outliers sorted by date. Identifiers must be unique.
+     */
+    @Override
+    public void saveAllWithHistory(List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        List<String> itemIds = new ArrayList<>(products.size());
+        for (Product product : products) {
+            itemIds.add(product.getId());
+        }
+        mongoTemplate.updateMulti(query(where("_id").in(itemIds)), new Update().inc(HISTORY_EPOCH, 1), Product.class);
+        Map<String, Long> epochs = new HashMap<>();
+        for (Product stored : mongoTemplate.find(epochQuery(itemIds), Product.class)) {
+            epochs.put(stored.getId(), stored.getHistoryEpoch());
+        }
+
+        List<PriceBucket> buckets = new ArrayList<>();
+        for (Product product : products) {
+            List<PriceData> outliers = product.getOutliers() == null ? List.of() : product.getOutliers();
+            List<PriceData> nonOutliers = product.getNonOutliers() == null ? List.of() : product.getNonOutliers();
+            product.setOutlierCount(outliers.size());
+            product.setNonOutlierCount(nonOutliers.size());
+            product.setHistoryEpoch(epochs.getOrDefault(product.getId(), 0L) + 1);
+            addBuckets(product.getId(), false, nonOutliers, product.getHistoryEpoch(), buckets);
+            addBuckets(product.getId(), true, outliers, product.getHistoryEpoch(), buckets);
+        }
+        if (!buckets.isEmpty()) {
+            BulkOperations bucketOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                    PriceBucket.class);
+            for (PriceBucket bucket : buckets) {
+                bucketOperations.replaceOne(query(where("_id").is(bucket.getId())), bucket,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            bucketOperations.execute();
+        }
+        BulkOperations productOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        BulkOperations removals = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PriceBucket.class);
+        for (Product product : products) {
+            productOperations.upsert(query(where("_id").is(product.getId())), historyUpdate(product));
+            removals.remove(staleBucketsQuery(product.getId(), product.getHistoryEpoch()));
+        }
+        productOperations.execute();
+        removals.execute();
+    }
+
+    static Query epochQuery(Collection<String> itemIds) {
+        Query query = query(where("_id").in(itemIds));
+        query.fields().include(HISTORY_EPOCH);
+        return query;
+    }
+
+    /**
+     * Query of the buckets of a product that do not belong to its current history.
+     */
+    static Query staleBucketsQuery(String itemId, long historyEpoch) {
+        return query(where(ITEM_ID).is(itemId).and(EPOCH).ne(historyEpoch));
+    }
+
+    /**
+     * Update of the product document of {@link #saveAllWithHistory}.
+     */
+    static Update historyUpdate(Product product) {
+        Update update = new Update()
+                .set("outlierCount", product.getOutlierCount())
+                .set("nonOutlierCount", product.getNonOutlierCount())
+                .set(HISTORY_EPOCH, product.getHistoryEpoch())
+                .unset(PENDING);
+        if (product.getDetectionState() == null) {
+            update.unset(STATE);
+        } else {
+            update.set(STATE, product.getDetectionState());
+        }
+        if (product.getDetector() != null) {
+            update.set(DETECTOR, product.getDetector());
+        }
+        return update;
+    }
+
+    /**
+     * Sets the detector of a product, overriding {@code algorithm.detector}, or clears it.
+     *
+     * <p>The detection state is removed in the same update, so it is rebuilt with the new detector on the next
+     * score, and a score in flight against the previous state fails its version check and is scored again.</p>
+     *
+     * @param itemId The identifier of the product.
+     * @param detector The detector of the product, or {@code null} to use the one of the deployment.
+     * @return {@code true} if the product exists.
+     */
+    @Override
+    public boolean setDetector(String itemId, Detector detector) {
+        Update update = detector == null ? new Update().unset(DETECTOR) : new Update().set(DETECTOR, detector);
+        update.unset(STATE);
+        return mongoTemplate.updateFirst(query(where("_id").is(itemId)), update, Product.class).getMatchedCount() > 0;
+    }
+
+    private void addBuckets(String itemId, boolean outlier, List<PriceData> series, long epoch,
+                            List<PriceBucket> buckets) {
+        for (int start = 0, sequence = 0; start < series.size(); start += bucketSize, sequence++) {
+            List<PriceData> prices = new ArrayList<>(series.subList(start, Math.min(series.size(), start + bucketSize)));
+            byte[] columns = encoding == StorageEncoding.COLUMNAR && prices.size() == bucketSize
+                    ? PriceColumns.encode(prices)
+                    : null;
+            buckets.add(new PriceBucket(PriceBucket.bucketId(itemId, outlier, sequence), itemId, outlier, sequence,
+                    epoch, prices.size(), prices.get(0).getDate(), prices.get(prices.size() - 1).getDate(),
+                    columns == null ? prices : new ArrayList<>(), columns));
+        }
+    }
+
+    /**
+     * Reads a whole series of a product in date order.
+     *
+     * @param itemId The identifier of the product.
+     * @param outlier {@code true} for the outliers, {@code false} for the non-outliers.
+     * @return Every point of the series.
+     */
+    @Override
+    public List<PriceData> findHistory(String itemId, boolean outlier) {
+        return flatten(mongoTemplate.find(historyQuery(itemId, outlier), PriceBucket.class));
+    }
+
+    /**
+     * Reads one page of a series of a product in date order, fetching only the buckets that overlap the page.
+     *
+     * @param itemId The identifier of the product.
+     * @param outlier {@code true} for the outliers, {@code false} for the non-outliers.
+     * @param offset Position of the first point of the page.
+     * @param limit Maximum number of points of the page.
+     * @return The points in {@code [offset, offset + limit)} of the series.
+     */
+    @Override
+    public List<PriceData> findHistory(String itemId, boolean outlier, long offset, int limit) {
+        if (limit <= 0 || offset < 0) {
+            return new ArrayList<>();
+        }
+        return page(mongoTemplate.find(historyPageQuery(itemId, outlier, offset, limit, bucketSize),
+                PriceBucket.class), offset, limit, bucketSize);
+    }
+
+    /**
+     * Reads the most recent non-outlier points of a product, the only ones the detection state needs.
+     *
+     * @param product The product to read, with its {@code nonOutlierCount} and {@code historyEpoch}.
+     * @param limit Number of points to read.
+     * @return Up to {@code limit} points, oldest first.
+     * @see #findLastNonOutliers(Collection, int)
+     */
+    @Override
+    public List<PriceData> findLastNonOutliers(Product product, int limit) {
+        return findLastNonOutliers(List.of(product), limit).get(product.getId());
+    }
+
+    /**
+     * Reads the most recent non-outlier points of several products with a single query on the buckets.
+     *
+     * <p>The size of the non-outliers series of each product tells which buckets hold its last {@code limit}
+     * points, so they are read by identifier with one {@code $in} query, each projected with {@code $slice} so no
+     * more than {@code limit} points per bucket travel over the network. Buckets of another epoch than the product
+     * are left out; see {@link #saveAllWithHistory}.</p>
+     *
+     * @param products The products to read, with their {@code nonOutlierCount} and {@code historyEpoch}.
+     * @param limit Number of points to read per product.
+     * @return Up to {@code limit} points of each product, oldest first, by product identifier; a product without
+     *         non-outliers gets an empty list.
+     */
+    @Override
+    public Map<String, List<PriceData>> findLastNonOutliers(Collection<Product> products, int limit) {
+        List<PriceBucket> buckets = limit <= 0 || products.isEmpty()
+                ? List.of()
+                : mongoTemplate.find(lastNonOutliersQuery(products, limit, bucketSize), PriceBucket.class);
+        return lastNonOutliers(products, buckets, limit);
+    }
+
+    /**
+     * @param buckets The buckets read with {@link #lastNonOutliersQuery}, in any order.
+     * @return Up to {@code limit} points of each product, oldest first, from the buckets of its epoch.
+     */
+    static Map<String, List<PriceData>> lastNonOutliers(Collection<Product> products, List<PriceBucket> buckets,
+                                                        int limit) {
+        Map<String, Long> epochs = new HashMap<>();
+        Map<String, List<PriceBucket>> byItem = new HashMap<>();
+        for (Product product : products) {
+            epochs.put(product.getId(), product.getHistoryEpoch());
+            byItem.put(product.getId(), new ArrayList<>());
+        }
+        for (PriceBucket bucket : buckets) {
+            Long epoch = epochs.get(bucket.getItemId());
+            if (epoch != null && epoch == bucket.getEpoch()) {
+                byItem.get(bucket.getItemId()).add(bucket);
+            }
+        }
+        Map<String, List<PriceData>> histories = new HashMap<>();
+        byItem.forEach((itemId, itemBuckets) -> {
+            itemBuckets.sort(Comparator.comparingInt(PriceBucket::getSequence).reversed());
+            histories.put(itemId, lastPoints(itemBuckets, limit));
+        });
+        return histories;
+    }
+
+    /**
+     * Records a scored price and the detection state it produced, provided the stored state is still the one
+     * the price was scored against and the history is still the one it was read with.
+     *
+     * <p>The product document is updated with a single atomic {@code findAndModify} filtered on the
+     * {@code historyEpoch}, on the detection state {@code version} and on the size of the series:
+     * <ul>
+     *     <li>With {@code replaceState} the whole state is written, e.g. after rebuilding it from the history.</li>
+     *     <li>For a non-outlier the price is pushed into the state window with {@code $slice}, so only the newest
+     *         {@code windowSize + 1} prices are kept, and the recomputed limits are set.</li>
+     *     <li>For an outlier the state is left as is; the version filter still guarantees it was current.</li>
+     * </ul>
+     * The same update increments the size of the series and records the point on the product as a
+     * {@link PendingAppend} with its position in the series, {@code expectedCount}, which tells in which bucket it
+     * goes. The point is then pushed into that bucket if it belongs to the same epoch, creating it when it is the
+     * first point of the bucket, and finally removed from the pending appends of the product. None of the writes
+     * reads or rewrites the rest of the history.</p>
+     *
+     * <p>MongoDB only updates two documents atomically within a transaction, which needs a replica set, so a
+     * failure after the first write leaves the point pending on the product instead of losing it. The append to the
+     * bucket is filtered on the bucket not holding the position of the point yet, so it can be repeated: the next
+     * score of the product appends every point the {@code findAndModify} returns as pending, and
+     * {@link #appendPendingPoints} appends those of every product.</p>
+     *
+     * @param itemId The identifier of the product.
+     * @param historyEpoch The {@code historyEpoch} of the product when it was read.
+     * @param expectedVersion The version of the stored state the price was scored against; {@code 0} when the
+     *                        product had no state.
+     * @param expectedCount The size of the series the price goes to when the product was read.
+     * @param state The detection state after scoring the price. Its version is set to {@code expectedVersion + 1}
+     *              when it changes.
+     * @param replaceState {@code true} to write the whole state instead of appending to it.
+     * @param priceData The scored price.
+     * @param outlier {@code true} if the price was classified as an outlier.
+     * @return {@code true} if the score was recorded, {@code false} if the product changed in the meantime
+     *         and the price has to be scored again.
+     */
+    @Override
+    public boolean recordScore(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                               DetectionState state, boolean replaceState, PriceData priceData, boolean outlier) {
+        Product recorded = mongoTemplate.findAndModify(
+                scoreQuery(itemId, historyEpoch, expectedVersion, expectedCount, outlier),
+                scoreUpdate(expectedVersion, state, replaceState, new PendingAppend(outlier, expectedCount, priceData)),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+        if (recorded == null) {
+            return false;
+        }
+        appendPending(itemId, historyEpoch, recorded.getPendingAppends());
+        return true;
+    }
+
+    /**
+     * Filter of the {@code findAndModify} of {@link #recordScore}, which only returns the pending appends of the
+     * product.
+     */
+    static Query scoreQuery(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                            boolean outlier) {
+        Query productQuery = query(where("_id").is(itemId).andOperator(countCriteria(HISTORY_EPOCH, historyEpoch),
+                versionCriteria(expectedVersion), countCriteria(countField(outlier), expectedCount)));
+        productQuery.fields().include(PENDING);
+        return productQuery;
+    }
+
+    /**
+     * Update of the {@code findAndModify} of {@link #recordScore}. Sets the version of {@code state} to
+     * {@code expectedVersion + 1} when the state changes. A non-outlier is pushed to the window of the stored state,
+     * or replaces its statistics if the state belongs to a streaming detector.
+     */
+    static Update scoreUpdate(long expectedVersion, DetectionState state, boolean replaceState, PendingAppend pending) {
+        boolean outlier = pending.isOutlier();
+        Update update = new Update().inc(countField(outlier), 1).push(PENDING, pending);
+        if (replaceState || !outlier) {
+            state.setVersion(expectedVersion + 1);
+        }
+        if (replaceState) {
+            update.set(STATE, state);
+        } else if (!outlier) {
+            if (state.getStatistics() != null) {
+                update.set(STATE + ".statistics", state.getStatistics());
+            } else {
+                long[] window = state.getWindow();
+                update.push(STATE + ".window").slice(-(state.getWindowSize() + 1)).each(window[window.length - 1]);
+            }
+            update.set(STATE + ".sma", state.getSma())
+                    .set(STATE + ".stdDev", state.getStdDev())
+                    .set(STATE + ".lowerLimit", state.getLowerLimit())
+                    .set(STATE + ".upperLimit", state.getUpperLimit())
+                    .set(STATE + ".version", state.getVersion());
+        }
+        return update;
+    }
+
+    /**
+     * Removes from a product the pending appends that were appended to their buckets.
+     */
+    static Update pendingRemoval(List<PendingAppend> appended) {
+        List<String> keys = new ArrayList<>(appended.size());
+        for (PendingAppend append : appended) {
+            keys.add(append.getKey());
+        }
+        return new Update().pull(PENDING, new Document("key", new Document("$in", keys)));
+    }
+
+    private static String countField(boolean outlier) {
+        return outlier ? "outlierCount" : "nonOutlierCount";
+    }
+
+    /**
+     * Appends to their buckets of {@code historyEpoch} the given pending appends of a product and then removes them
+     * from it. If the history was replaced in between, the buckets of {@code historyEpoch} are removed instead;
+     * see {@link #removeOrphanedBuckets}.
+     */
+    private void appendPending(String itemId, long historyEpoch, List<PendingAppend> pending) {
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        for (PendingAppend append : pending) {
+            appendToBucket(itemId, historyEpoch, append);
+        }
+        if (mongoTemplate.updateFirst(pendingRemovalQuery(itemId, historyEpoch), pendingRemoval(pending),
+                Product.class).getMatchedCount() == 0) {
+            mongoTemplate.remove(epochBucketsQuery(itemId, historyEpoch), PriceBucket.class);
+        }
+    }
+
+    /**
+     * Filter of the removal of the pending appends, which only matches while the product has the epoch the points
+     * were appended for. Epochs only grow, so once it no longer matches it never will again.
+     */
+    static Query pendingRemovalQuery(String itemId, long historyEpoch) {
+        return query(where("_id").is(itemId).andOperator(countCriteria(HISTORY_EPOCH, historyEpoch)));
+    }
+
+    /**
+     * Removes the buckets that appends created for a history that has been replaced since.
+     *
+     * <p>A point is appended after its score is recorded on the product, so a replace can run in between: the
+     * append then misses the buckets of the new history, which have another epoch, but creates a bucket of the old
+     * epoch when none had its identifier. The cleanup of {@link #saveAllWithHistory} has already run by then, so the
+     * writer of the append removes it.</p>
+     *
+     * @param epochs The epoch each product had when its points were appended, by product identifier.
+     */
+    private void removeOrphanedBuckets(Map<String, Long> epochs) {
+        Map<String, Long> orphaned = new HashMap<>(epochs);
+        for (Product product : mongoTemplate.find(epochQuery(epochs.keySet()), Product.class)) {
+            if (product.getHistoryEpoch() == epochs.get(product.getId())) {
+                orphaned.remove(product.getId());
+            }
+        }
+        if (orphaned.isEmpty()) {
+            return;
+        }
+        BulkOperations removals = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PriceBucket.class);
+        orphaned.forEach((itemId, epoch) -> removals.remove(epochBucketsQuery(itemId, epoch)));
+        removals.execute();
+    }
+
+    /**
+     * Query of the buckets of a product that belong to the given epoch.
+     */
+    static Query epochBucketsQuery(String itemId, long epoch) {
+        return query(where(ITEM_ID).is(itemId).andOperator(countCriteria(EPOCH, epoch)));
+    }
+
+    /**
+     * Appends the points left pending by scores that failed before appending them, walking the products in
+     * identifier order.
+     *
+     * @param afterItemId Identifier of the last product already walked, or {@code null} to start from the first.
+     * @param batchSize Maximum number of products walked by the call.
+     * @return The identifiers of the products whose pending points were appended, empty when none is left.
+     */
+    @Override
+    public List<String> appendPendingPoints(String afterItemId, int batchSize) {
+        List<String> appended = new ArrayList<>();
+        for (Product product : mongoTemplate.find(pendingQuery(afterItemId, batchSize), Product.class)) {
+            appendPending(product.getId(), product.getHistoryEpoch(), product.getPendingAppends());
+            appended.add(product.getId());
+        }
+        return appended;
+    }
+
+    static Query pendingQuery(String afterItemId, int batchSize) {
+        Criteria pending = where(PENDING + ".key").exists(true);
+        Query query = query(afterItemId == null ? pending : pending.and("_id").gt(afterItemId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(batchSize);
+        query.fields().include(PENDING, HISTORY_EPOCH);
+        return query;
+    }
+
+    /**
+     * Records the scores of several products with one bulk write on the products and one on the buckets.
+     *
+     * <p>Each product gets an update that writes its new detection state, with version
+     * {@code expectedVersion + 1}, and increments the size of both series. The update is filtered on the history
+     * epoch, the version and both sizes the product had when it was read, and is sent as an upsert: when the filter
+     * no longer matches, the upsert tries to insert a second document with the same {@code _id} and fails with a
+     * duplicate key error that identifies the product, while the other updates of the unordered bulk write go
+     * through.
+     * Since the sizes are part of the filter, the position of every new point is known in advance: the same update
+     * records the points as {@link PendingAppend}s, the points of the products that were updated are pushed into
+     * their buckets with a second unordered bulk write, one upsert per bucket, and a third one removes them from
+     * the pending appends, as in {@link #recordScore}.</p>
+     *
+     * @param batches The scores of each product. Identifiers must be unique.
+     * @return The identifiers of the products that changed since they were read; none of their scores was
+     *         recorded and they have to be scored again.
+     */
+    @Override
+    public Set<String> recordScores(List<ScoreBatch> batches) {
+        Set<String> conflicts = new HashSet<>();
+        if (batches.isEmpty()) {
+            return conflicts;
+        }
+        List<List<PendingAppend>> pending = new ArrayList<>(batches.size());
+        BulkOperations productOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (ScoreBatch batch : batches) {
+            batch.getState().setVersion(batch.getExpectedVersion() + 1);
+            List<PendingAppend> appends = pendingAppends(batch);
+            pending.add(appends);
+            Query productQuery = query(where("_id").is(batch.getItemId())
+                    .and("outlierCount").is(batch.getOutlierCount())
+                    .and("nonOutlierCount").is(batch.getNonOutlierCount())
+                    .andOperator(countCriteria(HISTORY_EPOCH, batch.getHistoryEpoch()),
+                            versionCriteria(batch.getExpectedVersion())));
+            Update update = new Update()
+                    .set(STATE, batch.getState())
+                    .inc("outlierCount", batch.getOutliers().size())
+                    .inc("nonOutlierCount", batch.getNonOutliers().size());
+            if (!appends.isEmpty()) {
+                update.push(PENDING).each(appends.toArray());
+            }
+            productOperations.upsert(productQuery, update);
+        }
+        try {
+            productOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                conflicts.add(batches.get(error.getIndex()).getItemId());
+            }
+        }
+
+        List<Pair<Query, Update>> appends = new ArrayList<>();
+        List<String> bucketIds = new ArrayList<>();
+        Map<String, Long> epochs = new HashMap<>();
+        BulkOperations removals = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (int i = 0; i < batches.size(); i++) {
+            ScoreBatch batch = batches.get(i);
+            if (!conflicts.contains(batch.getItemId()) && !pending.get(i).isEmpty()) {
+                addBucketAppends(appends, batch.getItemId(), batch.getHistoryEpoch(), true, batch.getOutlierCount(),
+                        batch.getOutliers(), bucketIds);
+                addBucketAppends(appends, batch.getItemId(), batch.getHistoryEpoch(), false,
+                        batch.getNonOutlierCount(), batch.getNonOutliers(), bucketIds);
+                epochs.put(batch.getItemId(), batch.getHistoryEpoch());
+                removals.updateOne(pendingRemovalQuery(batch.getItemId(), batch.getHistoryEpoch()),
+                        pendingRemoval(pending.get(i)));
+            }
+        }
+        if (!appends.isEmpty()) {
+            appendToBuckets(appends);
+            if (encoding == StorageEncoding.COLUMNAR) {
+                sealFullBuckets(bucketIds);
+            }
+            if (removals.execute().getMatchedCount() < epochs.size()) {
+                removeOrphanedBuckets(epochs);
+            }
+        }
+        return conflicts;
+    }
+
+    private static List<PendingAppend> pendingAppends(ScoreBatch batch) {
+        List<PendingAppend> appends = new ArrayList<>(batch.getOutliers().size() + batch.getNonOutliers().size());
+        for (int i = 0; i < batch.getOutliers().size(); i++) {
+            appends.add(new PendingAppend(true, batch.getOutlierCount() + i, batch.getOutliers().get(i)));
+        }
+        for (int i = 0; i < batch.getNonOutliers().size(); i++) {
+            appends.add(new PendingAppend(false, batch.getNonOutlierCount() + i, batch.getNonOutliers().get(i)));
+        }
+        return appends;
+    }
+
+    private void addBucketAppends(List<Pair<Query, Update>> appends, String itemId, long epoch, boolean outlier,
+                                  long firstIndex, List<PriceData> points, List<String> bucketIds) {
+        int start = 0;
+        while (start < points.size()) {
+            int sequence = (int) ((firstIndex + start) / bucketSize);
+            int end = (int) Math.min(points.size(), (long) (sequence + 1) * bucketSize - firstIndex);
+            List<PriceData> bucketPoints = points.subList(start, end);
+            appends.add(Pair.of(bucketAppendQuery(itemId, epoch, outlier, sequence, firstIndex + start,
+                    bucketPoints.size(), bucketSize), bucketAppend(itemId, epoch, outlier, sequence, bucketPoints,
+                    firstIndex + start)));
+            bucketIds.add(PriceBucket.bucketId(itemId, outlier, sequence));
+            start = end;
+        }
+    }
+
+    /**
+     * Runs the given appends with one unordered bulk write of upserts. An upsert whose bucket already exists but
+     * does not match its filter fails with a duplicate key error; it is run again as a plain update, which does
+     * nothing if the bucket already holds the points and appends them if it was created concurrently.
+     */
+    private void appendToBuckets(List<Pair<Query, Update>> appends) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PriceBucket.class).upsert(appends).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            for (BulkWriteError error : e.getErrors()) {
+                Pair<Query, Update> append = appends.get(error.getIndex());
+                mongoTemplate.updateFirst(append.getFirst(), append.getSecond(), PriceBucket.class);
+            }
+        }
+    }
+
+    /**
+     * Packs the points of the given buckets that are full and not sealed yet in their {@code columns}, with one
+     * query and one bulk write. Each update is filtered on the bucket still being full and unsealed, so concurrent
+     * writers sealing the same bucket write it only once.
+     */
+    private void sealFullBuckets(Collection<String> bucketIds) {
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PriceBucket.class);
+        boolean hasSeals = false;
+        for (PriceBucket bucket : mongoTemplate.find(sealCandidatesQuery(bucketIds, bucketSize), PriceBucket.class)) {
+            Update seal = sealUpdate(bucket);
+            if (seal != null) {
+                operations.updateOne(sealQuery(bucket.getId(), bucketSize), seal);
+                hasSeals = true;
+            }
+        }
+        if (hasSeals) {
+            operations.execute();
+        }
+    }
+
+    /**
+     * Query of the buckets among {@code bucketIds} that are full and still keep their points as documents.
+     */
+    static Query sealCandidatesQuery(Collection<String> bucketIds, int bucketSize) {
+        Query query = query(where("_id").in(bucketIds).and(COUNT).is(bucketSize).and(COLUMNS).exists(false));
+        query.fields().include(PRICES);
+        return query;
+    }
+
+    /**
+     * Filter of the update that seals a bucket, matching it only while it is full and unsealed.
+     */
+    static Query sealQuery(String bucketId, int bucketSize) {
+        return query(where("_id").is(bucketId).and(COUNT).is(bucketSize).and(COLUMNS).exists(false));
+    }
+
+    /**
+     * @param bucket A bucket read with {@link #sealCandidatesQuery}.
+     * @return The update that moves its {@code prices} to {@code columns}, or {@code null} if its points
+     *         cannot be encoded and have to stay as documents.
+     */
+    static Update sealUpdate(PriceBucket bucket) {
+        byte[] columns = bucket.getPrices() == null ? null : PriceColumns.encode(bucket.getPrices());
+        return columns == null ? null : new Update().set(COLUMNS, columns).set(PRICES, List.of());
+    }
+
+    /**
+     * Streams the products in identifier order with a server-side cursor, without their history or detection
+     * state, so any number of products can be walked with constant memory.
+     *
+     * @param afterItemId Identifier of the last product already walked, or {@code null} to start from the first.
+     * @param batchSize Number of products fetched per round trip of the cursor.
+     * @return The identifier, detector and series sizes of each product. The stream must be closed.
+     */
+    @Override
+    public Stream<Product> streamProducts(String afterItemId, int batchSize) {
+        return mongoTemplate.stream(productsAfterQuery(afterItemId, batchSize), Product.class);
+    }
+
+    static Query productsAfterQuery(String afterItemId, int batchSize) {
+        Query query = afterItemId == null ? new Query() : query(where("_id").gt(afterItemId));
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(batchSize);
+        query.fields().include("_id", "detector", "outlierCount", "nonOutlierCount");
+        return query;
+    }
+
+    /**
+     * Fills the outliers and non-outliers of several products with a single query on the buckets.
+     *
+     * @param products The products to fill; a product without buckets gets two empty series.
+     */
+    @Override
+    public void loadHistories(List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        Map<String, Product> byId = new HashMap<>();
+        for (Product product : products) {
+            product.setOutliers(new ArrayList<>());
+            product.setNonOutliers(new ArrayList<>());
+            byId.put(product.getId(), product);
+        }
+        Query query = query(where(ITEM_ID).in(byId.keySet()))
+                .with(Sort.by(Sort.Direction.ASC, ITEM_ID, OUTLIER, SEQUENCE));
+        query.fields().include(ITEM_ID, OUTLIER, PRICES, COLUMNS);
+        for (PriceBucket bucket : mongoTemplate.find(query, PriceBucket.class)) {
+            Product product = byId.get(bucket.getItemId());
+            if (product != null) {
+                (bucket.isOutlier() ? product.getOutliers() : product.getNonOutliers()).addAll(points(bucket));
+            }
+        }
+    }
+
+    /**
+     * Moves to {@code price_buckets} the history that products written before the bucket pattern still embed in
+     * their {@code outliers} and {@code nonOutliers} arrays.
+     *
+     * <p>Up to {@code batchSize} products that still have one of the arrays are read as raw documents, since the
+     * arrays are no longer mapped. For each one, both arrays are merged in date order with the points its buckets
+     * already hold, scored after the upgrade, and written as buckets; then the product gets the size of each series
+     * and loses the arrays and its detection state, which was built without the embedded history and is rebuilt
+     * from the buckets on the next score. The product update is filtered on the sizes that were read, so a price
+     * scored in the meantime makes the product be migrated again; points already in the buckets that also appear in
+     * the arrays are not duplicated, so a product can be migrated again safely.</p>
+     *
+     * @param batchSize Maximum number of products migrated by the call.
+     * @return The identifiers of the migrated products, empty when none is left.
+     */
+    @Override
+    public List<String> migrateEmbeddedHistories(int batchSize) {
+        Query legacyQuery = query(embeddedHistoryCriteria()).with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+        String collection = mongoTemplate.getCollectionName(Product.class);
+        List<String> migrated = new ArrayList<>();
+        for (Document document : mongoTemplate.find(legacyQuery, Document.class, collection)) {
+            String itemId = document.get("_id").toString();
+            while (document != null && !migrateEmbeddedHistory(itemId, document, collection)) {
+                document = mongoTemplate.findOne(query(where("_id").is(itemId).andOperator(embeddedHistoryCriteria())),
+                        Document.class, collection);
+            }
+            migrated.add(itemId);
+        }
+        return migrated;
+    }
+
+    /**
+     * @return {@code false} if the product was scored since {@code document} was read and has to be read again.
+     */
+    private boolean migrateEmbeddedHistory(String itemId, Document document, String collection) {
+        long outlierCount = document.get("outlierCount", Number.class) == null
+                ? 0 : document.get("outlierCount", Number.class).longValue();
+        long nonOutlierCount = document.get("nonOutlierCount", Number.class) == null
+                ? 0 : document.get("nonOutlierCount", Number.class).longValue();
+        List<PriceData> outliers = mergeEmbedded(embeddedSeries(document, EMBEDDED_OUTLIERS),
+                outlierCount == 0 ? List.of() : findHistory(itemId, true));
+        List<PriceData> nonOutliers = mergeEmbedded(embeddedSeries(document, EMBEDDED_NON_OUTLIERS),
+                nonOutlierCount == 0 ? List.of() : findHistory(itemId, false));
+
+        long epoch = document.get(HISTORY_EPOCH, Number.class) == null
+                ? 0 : document.get(HISTORY_EPOCH, Number.class).longValue();
+        List<PriceBucket> buckets = new ArrayList<>();
+        addBuckets(itemId, false, nonOutliers, epoch, buckets);
+        addBuckets(itemId, true, outliers, epoch, buckets);
+        mongoTemplate.remove(query(where(ITEM_ID).is(itemId)), PriceBucket.class);
+        if (!buckets.isEmpty()) {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PriceBucket.class).insert(buckets).execute();
+        }
+        Query productQuery = query(where("_id").is(itemId).andOperator(embeddedHistoryCriteria(),
+                countCriteria("outlierCount", outlierCount), countCriteria("nonOutlierCount", nonOutlierCount)));
+        Update update = new Update()
+                .set("outlierCount", outliers.size())
+                .set("nonOutlierCount", nonOutliers.size())
+                .unset(EMBEDDED_OUTLIERS)
+                .unset(EMBEDDED_NON_OUTLIERS)
+                .unset(STATE);
+        return mongoTemplate.updateFirst(productQuery, update, collection).getMatchedCount() > 0;
+    }
+
+    private List<PriceData> embeddedSeries(Document document, String field) {
+        List<Document> points = document.getList(field, Document.class);
+        List<PriceData> series = new ArrayList<>(points == null ? 0 : points.size());
+        if (points != null) {
+            for (Document point : points) {
+                series.add(mongoTemplate.getConverter().read(PriceData.class, point));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * @return The embedded points followed by the bucket points that are not among them, sorted by date.
+     */
+    static List<PriceData> mergeEmbedded(List<PriceData> embedded, List<PriceData> bucketed) {
+        Map<PriceData, Integer> remaining = new HashMap<>();
+        for (PriceData point : embedded) {
+            remaining.merge(point, 1, Integer::sum);
+        }
+        List<PriceData> merged = new ArrayList<>(embedded);
+        for (PriceData point : bucketed) {
+            if (remaining.merge(point, -1, Integer::sum) < 0) {
+                merged.add(point);
+            }
+        }
+        merged.sort(Comparator.comparing(PriceData::getDate));
+        return merged;
+    }
+
+    private static Criteria embeddedHistoryCriteria() {
+        return new Criteria().orOperator(where(EMBEDDED_OUTLIERS).exists(true),
+                where(EMBEDDED_NON_OUTLIERS).exists(true));
+    }
+
+    /**
+     * Matches a series size or an epoch, which documents written before the field existed do not have when it is
+     * {@code 0}.
+     */
+    private static Criteria countCriteria(String field, long count) {
+        Criteria matchesCount = where(field).is(count);
+        return count != 0 ? matchesCount : new Criteria().orOperator(matchesCount, where(field).exists(false));
+    }
+
+    private static Criteria versionCriteria(long expectedVersion) {
+        Criteria matchesVersion = where(STATE + ".version").is(expectedVersion);
+        if (expectedVersion != 0) {
+            return matchesVersion;
+        }
+        return new Criteria().orOperator(matchesVersion, where(STATE + ".version").exists(false));
+    }
+
+    private void appendToBucket(String itemId, long epoch, PendingAppend append) {
+        int sequence = (int) (append.getIndex() / bucketSize);
+        Query query = bucketAppendQuery(itemId, epoch, append.isOutlier(), sequence, append.getIndex(), 1,
+                bucketSize);
+        Update update = bucketAppend(itemId, epoch, append.isOutlier(), sequence, List.of(append.getPoint()),
+                append.getIndex());
+        if (encoding != StorageEncoding.COLUMNAR) {
+            try {
+                mongoTemplate.upsert(query, update, PriceBucket.class);
+            } catch (DuplicateKeyException e) {
+                mongoTemplate.updateFirst(query, update, PriceBucket.class);
+            }
+            return;
+        }
+        PriceBucket bucket;
+        try {
+            bucket = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), PriceBucket.class);
+        } catch (DuplicateKeyException e) {
+            bucket = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                    PriceBucket.class);
+        }
+        if (bucket != null && bucket.getCount() == bucketSize) {
+            sealFullBuckets(List.of(bucket.getId()));
+        }
+    }
+
+    /**
+     * Filter of the append of {@code size} points starting at position {@code firstIndex} of a series, projected on
+     * the number of points. It only matches the bucket while it belongs to {@code epoch}, has room for the points
+     * and does not hold the first one yet, so an append that is repeated does nothing; a full bucket, sealed or
+     * not, holds all its positions. As an upsert it creates the bucket when it does not exist, and fails with a
+     * duplicate key error when it exists but does not match.
+     */
+    static Query bucketAppendQuery(String itemId, long epoch, boolean outlier, int sequence, long firstIndex,
+                                   int size, int bucketSize) {
+        Query query = query(where("_id").is(PriceBucket.bucketId(itemId, outlier, sequence))
+                .and(COUNT).lte(bucketSize - size)
+                .and(PRICES + "." + INDEX).ne(firstIndex)
+                .andOperator(countCriteria(EPOCH, epoch)));
+        query.fields().include(COUNT);
+        return query;
+    }
+
+    /**
+     * Pushes {@code points} to a bucket in date order, each with its position in the series from
+     * {@code firstIndex} on. A bucket created by the push belongs to {@code epoch}.
+     */
+    static Update bucketAppend(String itemId, long epoch, boolean outlier, int sequence, List<PriceData> points,
+                               long firstIndex) {
+        Date firstDate = points.get(0).getDate();
+        Date lastDate = firstDate;
+        List<Document> indexed = new ArrayList<>(points.size());
+        for (PriceData point : points) {
+            firstDate = point.getDate().before(firstDate) ? point.getDate() : firstDate;
+            lastDate = point.getDate().after(lastDate) ? point.getDate() : lastDate;
+            indexed.add(new Document("date", point.getDate()).append("price", point.getPrice())
+                    .append(INDEX, firstIndex + indexed.size()));
+        }
+        Update update = new Update()
+                .setOnInsert(ITEM_ID, itemId)
+                .setOnInsert(OUTLIER, outlier)
+                .setOnInsert(SEQUENCE, sequence)
+                .setOnInsert(EPOCH, epoch)
+                .inc(COUNT, points.size())
+                .min("firstDate", firstDate)
+                .max("lastDate", lastDate);
+        update.push(PRICES).sort(Sort.by(Sort.Direction.ASC, "date")).each(indexed.toArray());
+        return update;
+    }
+
+    static Query seriesQuery(String itemId, boolean outlier) {
+        return query(where(ITEM_ID).is(itemId).and(OUTLIER).is(outlier));
+    }
+
+    /**
+     * Query of the whole series of a product, in date order, projected on the prices.
+     */
+    static Query historyQuery(String itemId, boolean outlier) {
+        Query query = seriesQuery(itemId, outlier).with(Sort.by(Sort.Direction.ASC, SEQUENCE));
+        query.fields().include(PRICES, COLUMNS);
+        return query;
+    }
+
+    /**
+     * Query of the buckets overlapping {@code [offset, offset + limit)}; see {@link #page}.
+     */
+    static Query historyPageQuery(String itemId, boolean outlier, long offset, int limit, int bucketSize) {
+        int firstSequence = (int) (offset / bucketSize);
+        int lastSequence = (int) ((offset + limit - 1) / bucketSize);
+        Query query = query(where(ITEM_ID).is(itemId).and(OUTLIER).is(outlier)
+                .and(SEQUENCE).gte(firstSequence).lte(lastSequence))
+                .with(Sort.by(Sort.Direction.ASC, SEQUENCE));
+        query.fields().include(PRICES, COLUMNS);
+        return query;
+    }
+
+    /**
+     * @param buckets The buckets read with {@link #historyPageQuery}.
+     * @return The points in {@code [offset, offset + limit)} of the series.
+     */
+    static List<PriceData> page(List<PriceBucket> buckets, long offset, int limit, int bucketSize) {
+        List<PriceData> prices = flatten(buckets);
+        int from = (int) Math.min(prices.size(), offset - (offset / bucketSize) * bucketSize);
+        int to = Math.min(prices.size(), from + limit);
+        return new ArrayList<>(prices.subList(from, to));
+    }
+
+    /**
+     * Query of the buckets that hold the last {@code limit} non-outliers of each product, addressed by identifier
+     * from the size of the series, each projected with {@code $slice} to its last {@code limit} points; see
+     * {@link #lastPoints}. A sealed bucket is read whole, since its columns cannot be sliced.
+     */
+    static Query lastNonOutliersQuery(Collection<Product> products, int limit, int bucketSize) {
+        List<String> bucketIds = new ArrayList<>();
+        for (Product product : products) {
+            long count = product.getNonOutlierCount();
+            if (count > 0) {
+                int last = (int) ((count - 1) / bucketSize);
+                for (int sequence = Math.max(0, last - (limit + bucketSize - 1) / bucketSize); sequence <= last;
+                     sequence++) {
+                    bucketIds.add(PriceBucket.bucketId(product.getId(), false, sequence));
+                }
+            }
+        }
+        Query query = query(where("_id").in(bucketIds));
+        query.fields().include(ITEM_ID, SEQUENCE, EPOCH, COLUMNS).slice(PRICES, -limit);
+        return query;
+    }
+
+    /**
+     * @param buckets The buckets read with {@link #lastNonOutliersQuery}, newest first.
+     * @return Up to {@code limit} points, oldest first.
+     */
+    static List<PriceData> lastPoints(List<PriceBucket> buckets, int limit) {
+        List<PriceBucket> oldestFirst = new ArrayList<>(buckets);
+        Collections.reverse(oldestFirst);
+        List<PriceData> prices = flatten(oldestFirst);
+        return new ArrayList<>(prices.subList(Math.max(0, prices.size() - limit), prices.size()));
+    }
+
+    static List<PriceData> flatten(List<PriceBucket> buckets) {
+        List<PriceData> prices = new ArrayList<>();
+        for (PriceBucket bucket : buckets) {
+            prices.addAll(points(bucket));
+        }
+        return prices;
+    }
+
+    /**
+     * @return The points of a bucket in date order, whichever its layout.
+     */
+    static List<PriceData> points(PriceBucket bucket) {
+        List<PriceData> prices = bucket.getPrices() == null ? List.of() : bucket.getPrices();
+        if (bucket.getColumns() == null) {
+            return prices;
+        }
+        List<PriceData> columns = new PriceColumns(bucket.getColumns());
+        if (prices.isEmpty()) {
+            return columns;
+        }
+        List<PriceData> merged = new ArrayList<>(columns);
+        merged.addAll(prices);
+        merged.sort(Comparator.comparing(PriceData::getDate));
+        return merged;
+    }
+}
@@ -0,0 +1,7 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.Product;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface IReactiveProductRepo extends ReactiveMongoRepository<Product, String>, IReactiveProductRepoCustom {
+}
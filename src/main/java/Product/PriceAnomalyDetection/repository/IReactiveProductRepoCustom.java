@@ -0,0 +1,20 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface IReactiveProductRepoCustom {
+
+    Mono<List<PriceData>> findHistory(String itemId, boolean outlier);
+
+    Mono<List<PriceData>> findHistory(String itemId, boolean outlier, long offset, int limit);
+
+    Mono<List<PriceData>> findLastNonOutliers(Product product, int limit);
+
+    Mono<Boolean> recordScore(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                              DetectionState state, boolean replaceState, PriceData priceData, boolean outlier);
+}
@@ -0,0 +1,147 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PendingAppend;
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.StorageEncoding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static Product.PriceAnomalyDetection.repository.IProductRepoCustomImpl.*;
+
+/**
+ * Non-blocking access to the bucketed history kept by {@link IProductRepoCustomImpl}, for the reactive endpoints.
+ *
+ * <p>Queries and updates are built by {@link IProductRepoCustomImpl}, so both implementations read and write the
+ * same documents in the same way and can serve the same data side by side; only the driver differs.</p>
+ */
+public class IReactiveProductRepoCustomImpl implements IReactiveProductRepoCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final int bucketSize;
+    private final StorageEncoding encoding;
+
+    public IReactiveProductRepoCustomImpl(ReactiveMongoTemplate mongoTemplate, int bucketSize) {
+        this(mongoTemplate, bucketSize, StorageEncoding.DOCUMENTS);
+    }
+
+    @Autowired
+    public IReactiveProductRepoCustomImpl(ReactiveMongoTemplate mongoTemplate,
+                                          @Value("${storage.bucket-size}") int bucketSize,
+                                          @Value("${storage.encoding}") StorageEncoding encoding) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketSize = bucketSize;
+        this.encoding = encoding;
+    }
+
+    /**
+     * @see IProductRepoCustomImpl#findHistory(String, boolean)
+     */
+    @Override
+    public Mono<List<PriceData>> findHistory(String itemId, boolean outlier) {
+        return mongoTemplate.find(historyQuery(itemId, outlier), PriceBucket.class)
+                .collectList()
+                .map(IProductRepoCustomImpl::flatten);
+    }
+
+    /**
+     * @see IProductRepoCustomImpl#findHistory(String, boolean, long, int)
+     */
+    @Override
+    public Mono<List<PriceData>> findHistory(String itemId, boolean outlier, long offset, int limit) {
+        if (limit <= 0 || offset < 0) {
+            return Mono.just(new ArrayList<>());
+        }
+        return mongoTemplate.find(historyPageQuery(itemId, outlier, offset, limit, bucketSize), PriceBucket.class)
+                .collectList()
+                .map(buckets -> page(buckets, offset, limit, bucketSize));
+    }
+
+    /**
+     * @see IProductRepoCustomImpl#findLastNonOutliers(Product, int)
+     */
+    @Override
+    public Mono<List<PriceData>> findLastNonOutliers(Product product, int limit) {
+        if (limit <= 0) {
+            return Mono.just(new ArrayList<>());
+        }
+        return mongoTemplate.find(lastNonOutliersQuery(List.of(product), limit, bucketSize), PriceBucket.class)
+                .collectList()
+                .map(buckets -> lastNonOutliers(List.of(product), buckets, limit).get(product.getId()));
+    }
+
+    /**
+     * Records a scored price with the same writes as
+     * {@link IProductRepoCustomImpl#recordScore(String, long, long, long, DetectionState, boolean, PriceData,
+     * boolean)}, appending the points left pending on the product and sealing the bucket the same way when a point
+     * fills it.
+     *
+     * @return {@code true} if the score was recorded, {@code false} if the product changed since it was read or
+     *         does not exist.
+     */
+    @Override
+    public Mono<Boolean> recordScore(String itemId, long historyEpoch, long expectedVersion, long expectedCount,
+                                     DetectionState state, boolean replaceState, PriceData priceData,
+                                     boolean outlier) {
+        return mongoTemplate.findAndModify(scoreQuery(itemId, historyEpoch, expectedVersion, expectedCount, outlier),
+                        scoreUpdate(expectedVersion, state, replaceState,
+                                new PendingAppend(outlier, expectedCount, priceData)),
+                        FindAndModifyOptions.options().returnNew(true), Product.class)
+                .flatMap(recorded -> appendPending(itemId, historyEpoch, recorded.getPendingAppends())
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    private Mono<Void> appendPending(String itemId, long historyEpoch, List<PendingAppend> pending) {
+        if (pending == null || pending.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(pending)
+                .concatMap(append -> appendToBucket(itemId, historyEpoch, append))
+                .then(mongoTemplate.updateFirst(pendingRemovalQuery(itemId, historyEpoch), pendingRemoval(pending),
+                        Product.class))
+                .flatMap(result -> result.getMatchedCount() == 0
+                        ? mongoTemplate.remove(epochBucketsQuery(itemId, historyEpoch), PriceBucket.class).then()
+                        : Mono.<Void>empty());
+    }
+
+    private Mono<Void> appendToBucket(String itemId, long epoch, PendingAppend append) {
+        int sequence = (int) (append.getIndex() / bucketSize);
+        Query query = bucketAppendQuery(itemId, epoch, append.isOutlier(), sequence, append.getIndex(), 1,
+                bucketSize);
+        Update update = bucketAppend(itemId, epoch, append.isOutlier(), sequence, List.of(append.getPoint()),
+                append.getIndex());
+        if (encoding != StorageEncoding.COLUMNAR) {
+            return mongoTemplate.upsert(query, update, PriceBucket.class)
+                    .onErrorResume(DuplicateKeyException.class,
+                            e -> mongoTemplate.updateFirst(query, update, PriceBucket.class))
+                    .then();
+        }
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        PriceBucket.class)
+                .onErrorResume(DuplicateKeyException.class, e -> mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().returnNew(true), PriceBucket.class))
+                .filter(bucket -> bucket.getCount() == bucketSize)
+                .flatMapMany(bucket -> mongoTemplate.find(sealCandidatesQuery(List.of(bucket.getId()), bucketSize),
+                        PriceBucket.class))
+                .concatMap(bucket -> {
+                    Update seal = sealUpdate(bucket);
+                    return seal == null
+                            ? Mono.empty()
+                            : mongoTemplate.updateFirst(sealQuery(bucket.getId(), bucketSize), seal, PriceBucket.class);
+                })
+                .then();
+    }
+}
@@ -0,0 +1,251 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar encoding of the points of a full {@link Product.PriceAnomalyDetection.model.PriceBucket}, stored in its
+ * {@code columns} field when {@code storage.encoding} is {@code COLUMNAR}.
+ *
+ * <p>The dates and the prices are written as two columns of variable-length quantities:
+ * <ul>
+ *     <li>Dates are epoch milliseconds encoded as the difference between consecutive deltas, zig-zag encoded. A
+ *         series with one point per day takes one byte per date after the first two.</li>
+ *     <li>Prices are scaled to the largest scale of the bucket and their unscaled values are XORed with the
+ *         previous one, so prices of the same item that share their high bits take one or two bytes each.</li>
+ *     <li>When the prices do not all have the same scale a third column keeps the scale of each one, so every
+ *         {@link BigDecimal} is read back with the scale it was written with.</li>
+ * </ul>
+ * A full bucket of 200 daily prices with two decimals takes about 800 bytes of BSON, against about 8 KB with the
+ * points as subdocuments.</p>
+ *
+ * <p>The first byte is the version of the format. The list decodes the columns into primitive arrays the first
+ * time a point is read, and builds each {@link PriceData} when it is read; instances are not thread safe.</p>
+ */
+public final class PriceColumns extends AbstractList<PriceData> implements RandomAccess {
+
+    static final byte FORMAT_VERSION = 1;
+
+    private static final byte UNIFORM_SCALE = 0;
+    private static final byte MIXED_SCALES = 1;
+
+    private final byte[] bytes;
+    private final int size;
+    private final int headerLength;
+    private long[] epochMillis;
+    private long[] unscaledPrices;
+    private int scale;
+    private int[] scales;
+
+    /**
+     * @param bytes The columns written by {@link #encode(List)}; only the header is read until a point is.
+     * @throws IllegalArgumentException If the bytes were not written by this version of the format.
+     */
+    public PriceColumns(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown price columns format");
+        }
+        Reader reader = new Reader(bytes, 1);
+        this.bytes = bytes;
+        this.size = (int) reader.readVarLong();
+        this.headerLength = reader.position;
+    }
+
+    /**
+     * Encodes a list of points.
+     *
+     * @param points The points, with a date and a price each, in date order.
+     * @return The columns, or {@code null} when a point has no date or price or when a price scaled to the largest
+     *         scale of the list does not fit in a {@code long}; such points are kept as documents.
+     */
+    public static byte[] encode(List<PriceData> points) {
+        int maxScale = Integer.MIN_VALUE;
+        boolean mixed = false;
+        for (PriceData point : points) {
+            if (point.getDate() == null || point.getPrice() == null) {
+                return null;
+            }
+            int pointScale = point.getPrice().scale();
+            mixed |= maxScale != Integer.MIN_VALUE && pointScale != maxScale;
+            maxScale = Math.max(maxScale, pointScale);
+        }
+        long[] unscaled = new long[points.size()];
+        for (int i = 0; i < unscaled.length; i++) {
+            BigDecimal price = points.get(i).getPrice().setScale(maxScale);
+            if (price.unscaledValue().bitLength() > 63) {
+                return null;
+            }
+            unscaled[i] = price.unscaledValue().longValue();
+        }
+
+        Writer writer = new Writer(points.size() * 3 + 8);
+        writer.writeByte(FORMAT_VERSION);
+        writer.writeVarLong(points.size());
+        writer.writeByte(mixed ? MIXED_SCALES : UNIFORM_SCALE);
+        writer.writeVarLong(zigZag(points.isEmpty() ? 0 : maxScale));
+        long previousDate = 0;
+        long previousDelta = 0;
+        for (PriceData point : points) {
+            long date = point.getDate().getTime();
+            long delta = date - previousDate;
+            writer.writeVarLong(zigZag(delta - previousDelta));
+            previousDate = date;
+            previousDelta = delta;
+        }
+        long previousPrice = 0;
+        for (long price : unscaled) {
+            writer.writeVarLong(price ^ previousPrice);
+            previousPrice = price;
+        }
+        if (mixed) {
+            for (PriceData point : points) {
+                writer.writeVarLong(zigZag(point.getPrice().scale()));
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PriceData get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        decode();
+        BigDecimal price = BigDecimal.valueOf(unscaledPrices[index], scale);
+        return new PriceData(new Date(epochMillis[index]), scales == null ? price : price.setScale(scales[index]));
+    }
+
+    /**
+     * @return The date of each point in epoch milliseconds. The array is not copied and must not be modified.
+     */
+    public long[] epochMillis() {
+        decode();
+        return epochMillis;
+    }
+
+    /**
+     * @return The unscaled value of each price at {@link #scale()}. The array is not copied and must not be modified.
+     */
+    public long[] unscaledPrices() {
+        decode();
+        return unscaledPrices;
+    }
+
+    /**
+     * @return The scale of {@link #unscaledPrices()}, the largest scale of the prices.
+     */
+    public int scale() {
+        decode();
+        return scale;
+    }
+
+    private void decode() {
+        if (epochMillis != null) {
+            return;
+        }
+        try {
+            Reader reader = new Reader(bytes, headerLength);
+            boolean mixed = reader.readByte() == MIXED_SCALES;
+            int decodedScale = (int) unZigZag(reader.readVarLong());
+            long[] dates = new long[size];
+            long date = 0;
+            long delta = 0;
+            for (int i = 0; i < size; i++) {
+                delta += unZigZag(reader.readVarLong());
+                date += delta;
+                dates[i] = date;
+            }
+            long[] prices = new long[size];
+            long price = 0;
+            for (int i = 0; i < size; i++) {
+                price ^= reader.readVarLong();
+                prices[i] = price;
+            }
+            if (mixed) {
+                int[] pointScales = new int[size];
+                for (int i = 0; i < size; i++) {
+                    pointScales[i] = (int) unZigZag(reader.readVarLong());
+                }
+                scales = pointScales;
+            }
+            scale = decodedScale;
+            unscaledPrices = prices;
+            epochMillis = dates;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated price columns", e);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        private Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private byte readByte() {
+            return bytes[position++];
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable-length quantity");
+        }
+    }
+}
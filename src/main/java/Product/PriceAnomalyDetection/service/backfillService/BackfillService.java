@@ -0,0 +1,308 @@
+package Product.PriceAnomalyDetection.service.backfillService;
+
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillAlreadyRunningException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillJobNotFoundException;
+import Product.PriceAnomalyDetection.model.BackfillJob;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJobStatus;
+import Product.PriceAnomalyDetection.repository.IBackfillJobRepo;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.scoringEngine.IScoringEngine;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Re-classifies the stored history of every product with the current {@code algorithm.window-size},
+ * {@code algorithm.k-value} and {@code algorithm.math-mode}, which otherwise only apply to new uploads.
+ *
+ * <p>A backfill walks the products in identifier order with a MongoDB cursor and groups them in batches of
+ * {@code backfill.batch-size}. Each batch is processed on a pool of {@code backfill.parallelism} threads: the history
+ * of all its products is read with one query, merged and classified again with {@link DataTransformer}, and the
+ * products whose outliers changed are replaced with {@link IProductRepo#saveAllWithHistory}, which writes them with
+ * bulk writes, keeps their detector and clears their detection state, and their cached results are invalidated.
+ * Products whose classification did not change are not written.</p>
+ *
+ * <p>No more than {@code backfill.max-items-per-second} products are read per second, so the backfill does not
+ * starve the scoring traffic, and at most {@code backfill.parallelism} batches are processed at once. Batches are
+ * committed in order: after every batch the {@link BackfillJob} is stored with the last product of the batches
+ * whose predecessors are all written. Starting a backfill while the last one did not complete and has the same
+ * parameters resumes it after that product, whether it failed, was cancelled or was running on an instance that
+ * stopped; products already rewritten are classified again without being written.</p>
+ *
+ * <p>Like an upload, a product is replaced as a whole: a price scored between the moment its history is read and
+ * the moment it is written is lost. Only one backfill runs at a time on each instance, and it should be started on
+ * a single instance.</p>
+ */
+@Service
+public class BackfillService implements IBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackfillService.class);
+
+    private final IProductRepo repo;
+    private final IBackfillJobRepo jobRepo;
+    private final DataTransformer dataTransformer;
+    private final ICacheService cacheService;
+    private final IScoringEngine scoringEngine;
+    private final int windowSize;
+    private final BigDecimal kValue;
+    private final MathMode mathMode;
+    private final int batchSize;
+    private final int parallelism;
+    private final double maxItemsPerSecond;
+    private final ExecutorService runner;
+    private final ExecutorService workers;
+    private volatile BackfillJob current;
+    private volatile Future<?> currentFuture;
+
+    @Autowired
+    public BackfillService(IProductRepo repo, IBackfillJobRepo jobRepo, DataTransformer dataTransformer,
+                           ICacheService cacheService, @Nullable IScoringEngine scoringEngine,
+                           @Value("${algorithm.window-size}") int windowSize,
+                           @Value("${algorithm.k-value}") BigDecimal kValue,
+                           @Value("${algorithm.math-mode}") MathMode mathMode,
+                           @Value("${backfill.batch-size}") int batchSize,
+                           @Value("${backfill.parallelism}") int parallelism,
+                           @Value("${backfill.max-items-per-second}") double maxItemsPerSecond) {
+        this.repo = repo;
+        this.jobRepo = jobRepo;
+        this.dataTransformer = dataTransformer;
+        this.cacheService = cacheService;
+        this.scoringEngine = scoringEngine;
+        this.windowSize = windowSize;
+        this.kValue = kValue;
+        this.mathMode = mathMode;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.maxItemsPerSecond = maxItemsPerSecond;
+        this.runner = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("backfill-job-"));
+        this.workers = Executors.newFixedThreadPool(this.parallelism, new CustomizableThreadFactory("backfill-worker-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Starts a backfill in the background, or resumes the last one if it did not complete and was started with
+     * the current parameters.
+     *
+     * @return The queued job.
+     * @throws BackfillAlreadyRunningException If a backfill is already running on this instance.
+     */
+    @Override
+    public synchronized BackfillJob start() {
+        BackfillJob running = current;
+        if (running != null && !running.isFinished()) {
+            throw new BackfillAlreadyRunningException("Backfill " + running.getId() + " is already running");
+        }
+        BackfillJob job = jobRepo.findFirstByOrderByCreatedAtDesc()
+                .filter(last -> last.getStatus() != UploadJobStatus.COMPLETED && hasCurrentParameters(last))
+                .orElseGet(() -> new BackfillJob(UUID.randomUUID().toString(), windowSize, kValue, mathMode));
+        job.setStatus(UploadJobStatus.QUEUED);
+        job.setFinishedAt(null);
+        job.setError(null);
+        job.setUpdatedAt(new Date());
+        jobRepo.save(job);
+        current = job;
+        currentFuture = runner.submit(() -> run(job));
+        return job;
+    }
+
+    /**
+     * Retrieves the progress of a backfill, from memory if it runs on this instance or from MongoDB otherwise.
+     *
+     * @param jobId The identifier returned by {@link #start()}.
+     * @return The job.
+     * @throws BackfillJobNotFoundException If the job does not exist.
+     */
+    @Override
+    public BackfillJob findById(String jobId) {
+        BackfillJob running = current;
+        if (running != null && running.getId().equals(jobId)) {
+            return running;
+        }
+        return jobRepo.findById(jobId).orElseThrow(BackfillJobNotFoundException::new);
+    }
+
+    /**
+     * Asks the backfill running on this instance to stop. Batches being written are completed, but the job is
+     * stored with the last batch committed before them, so they are processed again when it is resumed.
+     *
+     * @param jobId The identifier returned by {@link #start()}.
+     * @return The job; its status becomes {@link UploadJobStatus#CANCELLED} once it has stopped.
+     * @throws BackfillJobNotFoundException If the job does not exist.
+     */
+    @Override
+    public BackfillJob cancel(String jobId) {
+        BackfillJob job = findById(jobId);
+        Future<?> future = currentFuture;
+        if (job == current && !job.isFinished()) {
+            job.setCancelRequested(true);
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+        return job;
+    }
+
+    private boolean hasCurrentParameters(BackfillJob job) {
+        return job.getWindowSize() == windowSize
+                && job.getKValue() != null && job.getKValue().compareTo(kValue) == 0
+                && job.getMathMode() == mathMode;
+    }
+
+    private void run(BackfillJob job) {
+        UploadJobStatus outcome = UploadJobStatus.COMPLETED;
+        try {
+            job.setStartedAt(new Date());
+            job.setItemsAtStart(job.getItemsProcessed());
+            job.setTotalItems(repo.count());
+            job.setStatus(UploadJobStatus.RUNNING);
+            jobRepo.save(job);
+            logger.info("Backfill {} started after item {}: window size {}, k {}, {} math, {} items", job.getId(),
+                    job.getLastItemId(), windowSize, kValue, mathMode, job.getTotalItems());
+            rescore(job);
+        } catch (InterruptedException | CancellationException e) {
+            outcome = UploadJobStatus.CANCELLED;
+        } catch (Exception e) {
+            if (job.isCancelRequested()) {
+                outcome = UploadJobStatus.CANCELLED;
+            } else {
+                outcome = UploadJobStatus.FAILED;
+                job.setError(e.getClass().getSimpleName() + ": " + e.getMessage());
+                logger.warn("Backfill {} failed", job.getId(), e);
+            }
+        }
+        // The interrupt of a cancellation would make the driver refuse the last write.
+        Thread.interrupted();
+        job.setFinishedAt(new Date());
+        job.setUpdatedAt(job.getFinishedAt());
+        job.setStatus(outcome);
+        jobRepo.save(job);
+        logger.info("Backfill {} {}: {} items processed, {} changed, last item {}", job.getId(), outcome,
+                job.getItemsProcessed(), job.getItemsChanged(), job.getLastItemId());
+    }
+
+    /**
+     * Walks the products after the checkpoint of the job, keeping at most {@link #parallelism} batches in flight.
+     */
+    private void rescore(BackfillJob job) throws InterruptedException {
+        long start = System.nanoTime();
+        long submitted = 0;
+        Deque<PendingBatch> inFlight = new ArrayDeque<>();
+        try (Stream<Product> products = repo.streamProducts(job.getLastItemId(), batchSize)) {
+            Iterator<Product> iterator = products.iterator();
+            List<Product> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() < batchSize && iterator.hasNext()) {
+                    continue;
+                }
+                throttle(start, submitted);
+                if (job.isCancelRequested() || Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Backfill was cancelled after item " + job.getLastItemId());
+                }
+                List<Product> toRescore = batch;
+                inFlight.add(new PendingBatch(batch.get(batch.size() - 1).getId(), batch.size(),
+                        workers.submit(() -> rescoreBatch(toRescore))));
+                submitted += batch.size();
+                batch = new ArrayList<>(batchSize);
+                while (inFlight.size() > parallelism) {
+                    commit(job, inFlight.poll());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                commit(job, inFlight.poll());
+            }
+        } finally {
+            // Batches already being written finish, but are not committed.
+            inFlight.forEach(pending -> pending.changed().cancel(false));
+        }
+    }
+
+    private void throttle(long start, long submitted) throws InterruptedException {
+        if (maxItemsPerSecond <= 0) {
+            return;
+        }
+        long wait = start + (long) (submitted * 1_000_000_000d / maxItemsPerSecond) - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void commit(BackfillJob job, PendingBatch pending) throws InterruptedException {
+        int changed;
+        try {
+            changed = pending.changed().get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+        job.setItemsProcessed(job.getItemsProcessed() + pending.size());
+        job.setItemsChanged(job.getItemsChanged() + changed);
+        job.setLastItemId(pending.lastItemId());
+        job.setUpdatedAt(new Date());
+        jobRepo.save(job);
+        logger.debug("Backfill {}: {} of {} items processed, {} changed", job.getId(), job.getItemsProcessed(),
+                job.getTotalItems(), job.getItemsChanged());
+    }
+
+    /**
+     * Classifies the history of a batch of products again and rewrites those whose outliers changed.
+     *
+     * @param products The products read by the cursor, without history.
+     * @return The number of products rewritten.
+     */
+    int rescoreBatch(List<Product> products) {
+        repo.loadHistories(products);
+        List<Product> changed = new ArrayList<>();
+        for (Product stored : products) {
+            List<PriceData> prices = new ArrayList<>(stored.getOutliers().size() + stored.getNonOutliers().size());
+            prices.addAll(stored.getNonOutliers());
+            prices.addAll(stored.getOutliers());
+            Product rescored = dataTransformer.transformToProduct(stored.getId(), prices);
+            if (!stored.getOutliers().equals(rescored.getOutliers())) {
+                changed.add(rescored);
+            }
+        }
+        if (!changed.isEmpty()) {
+            repo.saveAllWithHistory(changed);
+            List<String> itemIds = changed.stream().map(Product::getId).toList();
+            cacheService.invalidateItems(itemIds);
+            if (scoringEngine != null) {
+                scoringEngine.forget(itemIds);
+            }
+        }
+        return changed.size();
+    }
+
+    private record PendingBatch(String lastItemId, int size, Future<Integer> changed) {
+    }
+}
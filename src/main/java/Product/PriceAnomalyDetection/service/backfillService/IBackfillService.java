@@ -0,0 +1,12 @@
+package Product.PriceAnomalyDetection.service.backfillService;
+
+import Product.PriceAnomalyDetection.model.BackfillJob;
+
+public interface IBackfillService {
+
+    BackfillJob start();
+
+    BackfillJob findById(String jobId);
+
+    BackfillJob cancel(String jobId);
+}
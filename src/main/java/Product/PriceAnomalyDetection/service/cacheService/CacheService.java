@@ -0,0 +1,77 @@
+package Product.PriceAnomalyDetection.service.cacheService;
+
+import Product.PriceAnomalyDetection.config.cache.CacheGenerations;
+import Product.PriceAnomalyDetection.config.cache.CacheTierStatistics;
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.config.cache.TwoLevelCacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+public class CacheService implements ICacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheService.class);
+
+    private final TwoLevelCacheManager cacheManager;
+    private final CacheGenerations generations;
+    private final DetectionSnapshotCache detectionSnapshots;
+
+    @Autowired
+    public CacheService(TwoLevelCacheManager cacheManager, CacheGenerations generations,
+                        DetectionSnapshotCache detectionSnapshots) {
+        this.cacheManager = cacheManager;
+        this.generations = generations;
+        this.detectionSnapshots = detectionSnapshots;
+    }
+
+    /**
+     * Invalidates everything cached about items that were rewritten without going through scoring, such as an
+     * upload: their cached results on every node and their detection snapshots.
+     *
+     * @param itemIds The identifiers of the rewritten items.
+     */
+    @Override
+    public void invalidateItems(Collection<String> itemIds) {
+        detectionSnapshots.evictAll(itemIds);
+        invalidateResults(itemIds);
+    }
+
+    /**
+     * Invalidates, on every node, the cached results of items whose detection state changed.
+     *
+     * <p>The change itself is already stored, so a failure to reach Redis is only logged: the stale entries expire
+     * after {@code cache.local.ttl} in the local tiers and after the Redis TTL in the shared tier.</p>
+     *
+     * @param itemIds The identifiers of the changed items.
+     */
+    @Override
+    public void invalidateResults(Collection<String> itemIds) {
+        try {
+            generations.increment(itemIds);
+        } catch (RuntimeException e) {
+            logger.warn("Could not invalidate the cached entries of {} items", itemIds.size(), e);
+        }
+    }
+
+    /**
+     * @return For each cache, the statistics of its {@code local} and {@code remote} tiers.
+     */
+    @Override
+    public Map<String, Map<String, CacheTierStatistics>> getStatistics() {
+        Map<String, Map<String, CacheTierStatistics>> statistics = new TreeMap<>();
+        cacheManager.getCaches().forEach((name, cache) -> {
+            Map<String, CacheTierStatistics> tiers = new LinkedHashMap<>();
+            tiers.put("local", cache.getLocalStatistics());
+            tiers.put("remote", cache.getRemoteStatistics());
+            statistics.put(name, tiers);
+        });
+        return statistics;
+    }
+}
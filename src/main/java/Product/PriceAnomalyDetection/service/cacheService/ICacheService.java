@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.service.cacheService;
+
+import Product.PriceAnomalyDetection.config.cache.CacheTierStatistics;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface ICacheService {
+
+    void invalidateItems(Collection<String> itemIds);
+
+    void invalidateResults(Collection<String> itemIds);
+
+    Map<String, Map<String, CacheTierStatistics>> getStatistics();
+}
@@ -0,0 +1,100 @@
+package Product.PriceAnomalyDetection.service.migrationService;
+
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.scoringEngine.IScoringEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * One-time migration of the products written before the history moved to the {@code price_buckets} collection,
+ * which still embed it in their {@code outliers} and {@code nonOutliers} arrays.
+ *
+ * <p>With {@code storage.migration.enabled}, the migration runs while the application starts, once every bean is
+ * created and before the web server accepts requests, so this instance never serves a product whose history is
+ * still embedded. It moves {@code storage.migration.batch-size} products at a time with
+ * {@link IProductRepo#migrateEmbeddedHistories} and invalidates everything cached about them. Once every product is
+ * migrated it only costs a query that finds nothing, so it can stay enabled.</p>
+ *
+ * <p>It then appends to their buckets the points that scores recorded on their products but failed to append,
+ * with {@link IProductRepo#appendPendingPoints}, so the history of every product matches the size of its series
+ * again after a crash.</p>
+ */
+@Service
+public class HistoryMigrationService implements IHistoryMigrationService, SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryMigrationService.class);
+
+    private final IProductRepo repo;
+    private final ICacheService cacheService;
+    private final IScoringEngine scoringEngine;
+    private final boolean enabled;
+    private final int batchSize;
+
+    @Autowired
+    public HistoryMigrationService(IProductRepo repo, ICacheService cacheService,
+                                   @Nullable IScoringEngine scoringEngine,
+                                   @Value("${storage.migration.enabled}") boolean enabled,
+                                   @Value("${storage.migration.batch-size}") int batchSize) {
+        this.repo = repo;
+        this.cacheService = cacheService;
+        this.scoringEngine = scoringEngine;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            migrate();
+            appendPendingPoints();
+        }
+    }
+
+    /**
+     * Moves the embedded history of every product that still has one to its buckets.
+     *
+     * @return The number of migrated products.
+     */
+    @Override
+    public long migrate() {
+        long migrated = 0;
+        List<String> itemIds;
+        while (!(itemIds = repo.migrateEmbeddedHistories(batchSize)).isEmpty()) {
+            cacheService.invalidateItems(itemIds);
+            if (scoringEngine != null) {
+                scoringEngine.forget(itemIds);
+            }
+            migrated += itemIds.size();
+            logger.info("Migrated the embedded history of {} products", migrated);
+        }
+        return migrated;
+    }
+
+    /**
+     * Appends the points left pending by scores that failed after recording them on their product.
+     *
+     * @return The number of products that had pending points.
+     */
+    @Override
+    public long appendPendingPoints() {
+        long repaired = 0;
+        String afterItemId = null;
+        List<String> itemIds;
+        while (!(itemIds = repo.appendPendingPoints(afterItemId, batchSize)).isEmpty()) {
+            repaired += itemIds.size();
+            afterItemId = itemIds.get(itemIds.size() - 1);
+        }
+        if (repaired > 0) {
+            logger.info("Appended the pending points of {} products", repaired);
+        }
+        return repaired;
+    }
+}
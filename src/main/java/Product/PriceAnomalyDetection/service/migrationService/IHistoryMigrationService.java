@@ -0,0 +1,8 @@
+package Product.PriceAnomalyDetection.service.migrationService;
+
+public interface IHistoryMigrationService {
+
+    long migrate();
+
+    long appendPendingPoints();
+}
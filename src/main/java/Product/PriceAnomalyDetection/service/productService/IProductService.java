@@ -1,11 +1,20 @@
 package Product.PriceAnomalyDetection.service.productService;
 
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
 import Product.PriceAnomalyDetection.model.Product;
 import Product.PriceAnomalyDetection.service.genericService.IGenericService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 public interface IProductService extends IGenericService<Product, String> {
 
+    Product findById(String id, int page, int size);
+
     String isAnomaly(String id, BigDecimal price);
+
+    List<String> isAnomaly(List<ItemPriceRequest> requests);
+
+    Product setDetector(String id, Detector detector);
 }
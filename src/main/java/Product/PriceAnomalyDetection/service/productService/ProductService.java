@@ -1,27 +1,66 @@
 package Product.PriceAnomalyDetection.service.productService;
 
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
 import Product.PriceAnomalyDetection.repository.IGenericRepo;
 import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
 import Product.PriceAnomalyDetection.service.genericService.GenericImp;
+import Product.PriceAnomalyDetection.service.scoringEngine.IScoringEngine;
 import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetection;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics.Path.BATCH;
+import static Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics.Path.SINGLE;
+import static Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics.Stage.*;
 
 @Service
 public class ProductService extends GenericImp<Product, String> implements IProductService {
     private final IProductRepo repo;
     private final AnomalyDetection anomalyDetection;
+    private final ICacheService cacheService;
+    private final DetectionSnapshotCache detectionSnapshots;
+    private final ScoringMetrics metrics;
+    private final IScoringEngine scoringEngine;
+    private final int maxAttempts;
 
     @Autowired
-    public ProductService(IProductRepo repo, AnomalyDetection anomalyDetection) {
+    public ProductService(IProductRepo repo, AnomalyDetection anomalyDetection, ICacheService cacheService,
+                          DetectionSnapshotCache detectionSnapshots, ScoringMetrics metrics,
+                          @Nullable IScoringEngine scoringEngine,
+                          @Value("${scoring.max-attempts}") int maxAttempts) {
         this.repo = repo;
         this.anomalyDetection = anomalyDetection;
+        this.cacheService = cacheService;
+        this.detectionSnapshots = detectionSnapshots;
+        this.metrics = metrics;
+        this.scoringEngine = scoringEngine;
+        this.maxAttempts = maxAttempts;
     }
 
     @Override
@@ -29,36 +68,353 @@ public class ProductService extends GenericImp<Product, String> implements IProd
         return repo;
     }
 
+    /**
+     * Retrieves a product with its complete history.
+     *
+     * @param id The unique identifier of the product.
+     * @return The product with both series filled, oldest first.
+     * @throws ProductNotFoundException If the product does not exist.
+     */
+    @Override
+    public Product findById(String id) {
+        Product product = super.findById(id);
+        product.setOutliers(repo.findHistory(id, true));
+        product.setNonOutliers(repo.findHistory(id, false));
+        return product;
+    }
+
+    /**
+     * Retrieves a product with one page of each series of its history.
+     *
+     * <p>Only the buckets overlapping the page are read, so large histories can be traversed lazily using
+     * {@link Product#getOutlierCount()} and {@link Product#getNonOutlierCount()} to know when to stop.</p>
+     *
+     * @param id The unique identifier of the product.
+     * @param page Zero-based page number.
+     * @param size Number of points per page and series.
+     * @return The product with the requested page of outliers and non-outliers, oldest first.
+     * @throws ProductNotFoundException If the product does not exist.
+     */
+    @Override
+    public Product findById(String id, int page, int size) {
+        Product product = super.findById(id);
+        long offset = (long) page * size;
+        product.setOutliers(repo.findHistory(id, true, offset, size));
+        product.setNonOutliers(repo.findHistory(id, false, offset, size));
+        return product;
+    }
+
+    /**
+     * Sets the detector of a product, overriding {@code algorithm.detector}, or clears it.
+     *
+     * <p>The detection state of the product is dropped and rebuilt with the new detector on its next score, and
+     * its detection snapshot and cached results are invalidated. Uploads and backfills replace the history but keep
+     * the detector. With {@code scoring.engine.enabled}, the engine is told to read the product again.</p>
+     *
+     * @param id The unique identifier of the product.
+     * @param detector The detector of the product, or {@code null} to use the one of the deployment.
+     * @return The product without its history.
+     * @throws ProductNotFoundException If the product does not exist.
+     */
+    @Override
+    public Product setDetector(String id, Detector detector) {
+        if (!repo.setDetector(id, detector)) {
+            throw new ProductNotFoundException();
+        }
+        cacheService.invalidateItems(List.of(id));
+        if (scoringEngine != null) {
+            scoringEngine.forget(List.of(id));
+        }
+        return super.findById(id);
+    }
+
     /**
      * Detects whether a price is an anomaly for a given product and classifies it accordingly.
      *
      * <p>This method retrieves a product by its {@code id} and uses the anomaly detection service
      * to determine if the provided price is an anomaly. If it is an anomaly, the price is added
-     * to the product's outliers list; otherwise, it is added to the non-outliers list.</p>
+     * to the product's outliers; otherwise, it is added to the non-outliers.</p>
      *
-     * <p>The result of the anomaly detection, along with the corresponding date and price,
-     * is saved back to the database.</p>
+     * <p>The price is scored against the product's {@link DetectionState}, so the history is not sorted
+     * on every call. The state is built from the last non-outliers the first time the product is scored, or
+     * again when the window size or {@code kValue} changed; afterwards each non-outlier price is pushed into it.</p>
+     *
+     * <p>Only the product document is read, and the score is recorded with atomic appends through
+     * {@link IProductRepo#recordScore}, so neither the read nor the writes depend on the length of the history.
+     * The write only succeeds if the state still has the version the price was scored against and the series the
+     * size it was read with; otherwise another request changed them in the meantime and the price is scored again,
+     * up to {@code scoring.max-attempts} times.</p>
+     *
+     * <p>The first attempt takes the state from the {@link DetectionSnapshotCache} when it has it, and the
+     * snapshot is refreshed after every recorded score. A stale snapshot only makes the write fail: it is then
+     * evicted and the next attempts read the product from MongoDB. With {@code cache.detection-state.mapped.enabled}
+     * the snapshot is looked up first in a {@link Product.PriceAnomalyDetection.config.cache.MappedSnapshotStore},
+     * off the heap and without a round trip to Redis.</p>
+     *
+     * <p>Results are cached per product and price. When the score changes the state, the cached results of the
+     * product are invalidated on every node, since they were computed against the previous state.</p>
+     *
+     * <p>When {@code scoring.engine.enabled} is set, the price is scored by the {@link IScoringEngine} instead,
+     * against the state it keeps in memory, and recorded by it in the background.</p>
      *
      * @param id The unique identifier of the product to analyze.
      * @param price The price to evaluate for anomaly detection.
      * @return {@code "true"} if the price is considered an anomaly, {@code "false"} otherwise.
+     * @throws ProductNotFoundException If the product does not exist.
+     * @throws OptimisticLockingFailureException If the state kept changing during every attempt.
      */
-    @Cacheable("isAnomaly")
+    @Cacheable(value = "isAnomaly", keyGenerator = "itemKeyGenerator")
     @Override
     public String isAnomaly(String id, BigDecimal price) {
-        Product product = findById(id);
-        Boolean isAnomaly = Boolean.valueOf(anomalyDetection.isAnomaly(product.getNonOutliers(), price));
-        Date date = new Date();
-        if(isAnomaly){
-            product.getOutliers().add(new PriceData(date, price));
-        }else {
-            product.getNonOutliers().add(new PriceData(date, price));
+        long start = System.nanoTime();
+        try {
+            return scoringEngine == null ? score(id, price) : scoreOnEngine(id, price);
+        } finally {
+            metrics.duration(SINGLE, start);
         }
+    }
 
-        save(product);
+    private String score(String id, BigDecimal price) {
+        PriceData priceData = new PriceData(new Date(), price);
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            long time = System.nanoTime();
+            Product product = null;
+            if (attempt == 0) {
+                product = detectionSnapshots.get(id);
+                metrics.snapshotLookups(product == null ? 0 : 1, product == null ? 1 : 0);
+                time = metrics.stage(SINGLE, SNAPSHOT_READ, time);
+            }
+            if (product == null) {
+                product = super.findById(id);
+                time = metrics.stage(SINGLE, PRODUCT_READ, time);
+            }
+            DetectionState state = product.getDetectionState();
+            long version = state == null ? 0 : state.getVersion();
+            boolean rebuilt = false;
+            if (!anomalyDetection.isCurrent(state, product.getDetector())) {
+                List<PriceData> history = repo.findLastNonOutliers(product, anomalyDetection.getHistorySize());
+                metrics.historyLength(history.size());
+                state = anomalyDetection.buildState(history, product.getDetector());
+                rebuilt = true;
+                time = metrics.stage(SINGLE, STATE_REBUILD, time);
+            }
+            metrics.windowSize(state.getWindow().length);
+            boolean isAnomaly = Boolean.parseBoolean(anomalyDetection.isAnomaly(state, price));
+            if (!isAnomaly) {
+                anomalyDetection.update(state, price);
+            }
+            time = metrics.stage(SINGLE, DETECT, time);
+            long count = isAnomaly ? product.getOutlierCount() : product.getNonOutlierCount();
+            boolean recorded = repo.recordScore(id, product.getHistoryEpoch(), version, count, state, rebuilt,
+                    priceData, isAnomaly);
+            time = metrics.stage(SINGLE, RECORD, time);
+            if (recorded) {
+                if (isAnomaly) {
+                    product.setOutlierCount(product.getOutlierCount() + 1);
+                } else {
+                    product.setNonOutlierCount(product.getNonOutlierCount() + 1);
+                }
+                product.setDetectionState(state);
+                detectionSnapshots.putAll(List.of(product));
+                time = metrics.stage(SINGLE, SNAPSHOT_WRITE, time);
+                if (rebuilt || !isAnomaly) {
+                    cacheService.invalidateResults(List.of(id));
+                    metrics.stage(SINGLE, INVALIDATE, time);
+                }
+                return String.valueOf(isAnomaly);
+            }
+            metrics.conflicts(1);
+            detectionSnapshots.evictAll(List.of(id));
+            metrics.stage(SINGLE, SNAPSHOT_WRITE, time);
+        }
+        throw new OptimisticLockingFailureException("Detection state of product " + id + " kept changing");
+    }
 
-        return String.valueOf(isAnomaly);
+    /**
+     * Scores a batch of prices, possibly of many products, with a fixed number of round trips.
+     *
+     * <p>The method performs the following steps:
+     * <ol>
+     *     <li>Groups the requests by item, keeping the order of the prices of each item.</li>
+     *     <li>Reads the detection snapshots of every referenced product with a single {@code MGET} and the
+     *         products without one with a single {@code $in} query.</li>
+     *     <li>Reads the last non-outliers of the products whose state has to be rebuilt with a single {@code $in}
+     *         query on the buckets.</li>
+     *     <li>Scores the items in parallel; the prices of one item are scored in order, each against the state
+     *         left by the previous one, exactly as consecutive calls to {@link #isAnomaly(String, BigDecimal)}
+     *         would.</li>
+     *     <li>Records all the scores with {@link IProductRepo#recordScores}, one bulk write for the products and
+     *         one for the buckets.</li>
+     *     <li>Refreshes the snapshots of the recorded items with one pipelined write. Items whose product changed
+     *         in the meantime, or whose snapshot was stale, are read from MongoDB and scored again, up to
+     *         {@code scoring.max-attempts} times.</li>
+     * </ol></p>
+     *
+     * <p>Unlike {@link #isAnomaly(String, BigDecimal)}, results are not cached: every price is recorded. The cached
+     * results of the scored products are invalidated.</p>
+     *
+     * <p>When {@code scoring.engine.enabled} is set, every price is submitted to the {@link IScoringEngine} instead,
+     * in request order, and the results are awaited.</p>
+     *
+     * @param requests The items and prices to score.
+     * @return For each request, in the same order, {@code "true"} if the price is an anomaly, {@code "false"} if it
+     *         is not, or {@code null} if the product does not exist.
+     * @throws OptimisticLockingFailureException If some products kept changing during every attempt.
+     */
+    @Override
+    public List<String> isAnomaly(List<ItemPriceRequest> requests) {
+        long start = System.nanoTime();
+        try {
+            return scoringEngine == null ? scoreAll(requests) : scoreAllOnEngine(requests);
+        } finally {
+            metrics.duration(BATCH, start);
+        }
     }
 
+    private List<String> scoreAll(List<ItemPriceRequest> requests) {
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positions.computeIfAbsent(requests.get(i).getItem_id(), key -> new ArrayList<>()).add(i);
+        }
+        String[] results = new String[requests.size()];
+        List<String> pending = new ArrayList<>(positions.keySet());
+        for (int attempt = 0; attempt < maxAttempts && !pending.isEmpty(); attempt++) {
+            long time = System.nanoTime();
+            Map<String, Product> products;
+            if (attempt == 0) {
+                products = detectionSnapshots.getAll(pending);
+                metrics.snapshotLookups(products.size(), pending.size() - products.size());
+                time = metrics.stage(BATCH, SNAPSHOT_READ, time);
+            } else {
+                products = new HashMap<>();
+            }
+            List<String> missing = pending.stream().filter(id -> !products.containsKey(id)).toList();
+            if (!missing.isEmpty()) {
+                repo.findAllById(missing).forEach(product -> products.put(product.getId(), product));
+                time = metrics.stage(BATCH, PRODUCT_READ, time);
+            }
+            List<Product> stale = pending.stream()
+                    .map(products::get)
+                    .filter(product -> product != null
+                            && !anomalyDetection.isCurrent(product.getDetectionState(), product.getDetector()))
+                    .toList();
+            Map<String, List<PriceData>> histories = stale.isEmpty()
+                    ? Map.of() : repo.findLastNonOutliers(stale, anomalyDetection.getHistorySize());
+            if (!stale.isEmpty()) {
+                time = metrics.stage(BATCH, STATE_REBUILD, time);
+            }
+            List<ScoreBatch> batches = pending.parallelStream()
+                    .filter(products::containsKey)
+                    .map(id -> score(products.get(id), histories.get(id), positions.get(id), requests, results))
+                    .toList();
+            time = metrics.stage(BATCH, DETECT, time);
+            Set<String> conflicts = repo.recordScores(batches);
+            time = metrics.stage(BATCH, RECORD, time);
+            metrics.conflicts(conflicts.size());
+            List<ScoreBatch> recorded = batches.stream()
+                    .filter(batch -> !conflicts.contains(batch.getItemId()))
+                    .toList();
+            List<Product> snapshots = new ArrayList<>(recorded.size());
+            for (ScoreBatch batch : recorded) {
+                snapshots.add(snapshotOf(batch, products.get(batch.getItemId()).getDetector()));
+            }
+            detectionSnapshots.putAll(snapshots);
+            detectionSnapshots.evictAll(conflicts);
+            time = metrics.stage(BATCH, SNAPSHOT_WRITE, time);
+            cacheService.invalidateResults(recorded.stream().map(ScoreBatch::getItemId).toList());
+            metrics.stage(BATCH, INVALIDATE, time);
+            pending = pending.stream().filter(conflicts::contains).toList();
+        }
+        if (!pending.isEmpty()) {
+            throw new OptimisticLockingFailureException("Detection state of products " + pending + " kept changing");
+        }
+        return Arrays.asList(results);
+    }
+
+    private String scoreOnEngine(String id, BigDecimal price) {
+        String result = await(scoringEngine.score(id, price));
+        if (!Boolean.parseBoolean(result)) {
+            cacheService.invalidateResults(List.of(id));
+        }
+        return result;
+    }
 
+    private List<String> scoreAllOnEngine(List<ItemPriceRequest> requests) {
+        List<CompletableFuture<String>> scores = new ArrayList<>(requests.size());
+        for (ItemPriceRequest request : requests) {
+            scores.add(scoringEngine.score(request.getItem_id(), request.getPrice()));
+        }
+        List<String> results = new ArrayList<>(requests.size());
+        Set<String> changed = new LinkedHashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String result;
+            try {
+                result = await(scores.get(i));
+            } catch (ProductNotFoundException e) {
+                result = null;
+            }
+            if ("false".equals(result)) {
+                changed.add(requests.get(i).getItem_id());
+            }
+            results.add(result);
+        }
+        cacheService.invalidateResults(changed);
+        return results;
+    }
+
+    private static String await(CompletableFuture<String> score) {
+        try {
+            return score.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param history The last non-outliers of the product when its state is not current, {@code null} otherwise.
+     */
+    private ScoreBatch score(Product product, List<PriceData> history, List<Integer> positions,
+                             List<ItemPriceRequest> requests, String[] results) {
+        DetectionState state = product.getDetectionState();
+        long version = state == null ? 0 : state.getVersion();
+        if (history != null) {
+            metrics.historyLength(history.size());
+            state = anomalyDetection.buildState(history, product.getDetector());
+        }
+        metrics.windowSize(state.getWindow().length);
+        ScoreBatch batch = new ScoreBatch();
+        batch.setItemId(product.getId());
+        batch.setHistoryEpoch(product.getHistoryEpoch());
+        batch.setExpectedVersion(version);
+        batch.setOutlierCount(product.getOutlierCount());
+        batch.setNonOutlierCount(product.getNonOutlierCount());
+        for (int position : positions) {
+            BigDecimal price = requests.get(position).getPrice();
+            PriceData priceData = new PriceData(new Date(), price);
+            boolean isAnomaly = Boolean.parseBoolean(anomalyDetection.isAnomaly(state, price));
+            if (isAnomaly) {
+                batch.getOutliers().add(priceData);
+            } else {
+                anomalyDetection.update(state, price);
+                batch.getNonOutliers().add(priceData);
+            }
+            results[position] = String.valueOf(isAnomaly);
+        }
+        batch.setState(state);
+        return batch;
+    }
+
+    private static Product snapshotOf(ScoreBatch batch, Detector detector) {
+        Product snapshot = new Product();
+        snapshot.setId(batch.getItemId());
+        snapshot.setDetector(detector);
+        snapshot.setHistoryEpoch(batch.getHistoryEpoch());
+        snapshot.setOutlierCount(batch.getOutlierCount() + batch.getOutliers().size());
+        snapshot.setNonOutlierCount(batch.getNonOutlierCount() + batch.getNonOutliers().size());
+        snapshot.setDetectionState(batch.getState());
+        return snapshot;
+    }
 }
@@ -0,0 +1,20 @@
+package Product.PriceAnomalyDetection.service.reactiveProductService;
+
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceScore;
+import Product.PriceAnomalyDetection.model.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+public interface IReactiveProductService {
+
+    Mono<Product> findById(String id);
+
+    Mono<Product> findById(String id, int page, int size);
+
+    Mono<String> isAnomaly(String id, BigDecimal price);
+
+    Flux<ItemPriceScore> isAnomaly(Flux<ItemPriceRequest> requests);
+}
@@ -0,0 +1,218 @@
+package Product.PriceAnomalyDetection.service.reactiveProductService;
+
+import Product.PriceAnomalyDetection.config.cache.ReactiveCacheGenerations;
+import Product.PriceAnomalyDetection.config.cache.ReactiveDetectionSnapshotCache;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceScore;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.repository.IReactiveProductRepo;
+import Product.PriceAnomalyDetection.service.productService.ProductService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Non-blocking variant of {@link ProductService} for the reactive endpoints.
+ *
+ * <p>Prices are scored with the same {@link AnomalyDetection} against the same {@link DetectionState}, and recorded
+ * with the same conditional writes, so both services can run side by side on the same data. Every call to MongoDB
+ * and Redis returns a publisher, so no thread is held while waiting for them.</p>
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductService implements IReactiveProductService {
+
+    /**
+     * Longest time a chunk of a stream waits to fill up before being scored.
+     */
+    static final Duration CHUNK_WAIT = Duration.ofMillis(10);
+
+    private final IReactiveProductRepo repo;
+    private final AnomalyDetection anomalyDetection;
+    private final ReactiveDetectionSnapshotCache detectionSnapshots;
+    private final ReactiveCacheGenerations cacheGenerations;
+    private final int maxAttempts;
+    private final int concurrency;
+
+    @Autowired
+    public ReactiveProductService(IReactiveProductRepo repo, AnomalyDetection anomalyDetection,
+                                  ReactiveDetectionSnapshotCache detectionSnapshots,
+                                  ReactiveCacheGenerations cacheGenerations,
+                                  @Value("${scoring.max-attempts}") int maxAttempts,
+                                  @Value("${scoring.reactive.concurrency}") int concurrency) {
+        this.repo = repo;
+        this.anomalyDetection = anomalyDetection;
+        this.detectionSnapshots = detectionSnapshots;
+        this.cacheGenerations = cacheGenerations;
+        this.maxAttempts = maxAttempts;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Retrieves a product with its complete history; both series are read at the same time.
+     *
+     * @param id The unique identifier of the product.
+     * @return The product with both series filled, oldest first, or a {@link ProductNotFoundException} if it does
+     *         not exist.
+     */
+    @Override
+    public Mono<Product> findById(String id) {
+        return findProduct(id).flatMap(product -> Mono.zip(repo.findHistory(id, true), repo.findHistory(id, false))
+                .map(series -> withHistory(product, series.getT1(), series.getT2())));
+    }
+
+    /**
+     * Retrieves a product with one page of each series of its history.
+     *
+     * @param id The unique identifier of the product.
+     * @param page Zero-based page number.
+     * @param size Number of points per page and series.
+     * @return The product with the requested page of outliers and non-outliers, oldest first, or a
+     *         {@link ProductNotFoundException} if it does not exist.
+     * @see ProductService#findById(String, int, int)
+     */
+    @Override
+    public Mono<Product> findById(String id, int page, int size) {
+        long offset = (long) page * size;
+        return findProduct(id).flatMap(product -> Mono.zip(repo.findHistory(id, true, offset, size),
+                        repo.findHistory(id, false, offset, size))
+                .map(series -> withHistory(product, series.getT1(), series.getT2())));
+    }
+
+    /**
+     * Detects whether a price is an anomaly for a given product and records it in the matching series.
+     *
+     * <p>Follows the same steps as {@link ProductService#isAnomaly(String, BigDecimal)}: the first attempt takes
+     * the state from the detection snapshot, the state is rebuilt from the last non-outliers only when it is not
+     * current, and the score is recorded only if the state still has the version it was scored against; otherwise
+     * the snapshot is evicted and the price is scored again against the product read from MongoDB, up to
+     * {@code scoring.max-attempts} times.</p>
+     *
+     * <p>Results are not cached, so every call is recorded. When the score changes the state, the results cached
+     * by the servlet endpoints of other nodes are invalidated.</p>
+     *
+     * @param id The unique identifier of the product to analyze.
+     * @param price The price to evaluate for anomaly detection.
+     * @return {@code "true"} if the price is considered an anomaly, {@code "false"} otherwise; or a
+     *         {@link ProductNotFoundException} if the product does not exist, or an
+     *         {@link OptimisticLockingFailureException} if the state kept changing during every attempt.
+     */
+    @Override
+    public Mono<String> isAnomaly(String id, BigDecimal price) {
+        return score(id, price, new PriceData(new Date(), price), 0);
+    }
+
+    /**
+     * Scores a stream of prices, possibly of many products, with bounded concurrency.
+     *
+     * <p>The stream is consumed in chunks of up to {@code scoring.reactive.concurrency} prices, or of whatever
+     * arrived within {@link #CHUNK_WAIT} when the client sends them slowly. The next chunk is only requested when
+     * the results of the previous one have been emitted, so a slow client or a slow database slows down the reading
+     * of the request instead of buffering it. Within a chunk, the distinct items are scored at the same time and the
+     * prices of each item in order, each against the state left by the previous one.</p>
+     *
+     * @param requests The items and prices to score.
+     * @return For each request, in the same order, its item and price with {@code "true"} if the price is an
+     *         anomaly, {@code "false"} if it is not, or {@code null} if the product does not exist. The stream
+     *         fails with an {@link OptimisticLockingFailureException} if a product kept changing during every
+     *         attempt.
+     */
+    @Override
+    public Flux<ItemPriceScore> isAnomaly(Flux<ItemPriceRequest> requests) {
+        return requests.bufferTimeout(concurrency, CHUNK_WAIT, true).concatMap(this::scoreChunk, 1);
+    }
+
+    private Flux<ItemPriceScore> scoreChunk(List<ItemPriceRequest> chunk) {
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            positions.computeIfAbsent(chunk.get(i).getItem_id(), key -> new ArrayList<>()).add(i);
+        }
+        AtomicReferenceArray<String> results = new AtomicReferenceArray<>(chunk.size());
+        return Flux.fromIterable(positions.entrySet())
+                .flatMap(item -> Flux.fromIterable(item.getValue())
+                        .concatMap(position -> isAnomaly(item.getKey(), chunk.get(position).getPrice())
+                                .doOnNext(result -> results.set(position, result))
+                                .onErrorResume(ProductNotFoundException.class, e -> Mono.empty())), positions.size())
+                .thenMany(Flux.range(0, chunk.size()).map(position -> new ItemPriceScore(
+                        chunk.get(position).getItem_id(), chunk.get(position).getPrice(), results.get(position))));
+    }
+
+    private Mono<String> score(String id, BigDecimal price, PriceData priceData, int attempt) {
+        if (attempt == maxAttempts) {
+            return Mono.error(new OptimisticLockingFailureException(
+                    "Detection state of product " + id + " kept changing"));
+        }
+        Mono<Product> snapshot = attempt == 0 ? detectionSnapshots.get(id) : Mono.empty();
+        return snapshot
+                .switchIfEmpty(findProduct(id))
+                .flatMap(product -> {
+                    DetectionState state = product.getDetectionState();
+                    long version = state == null ? 0 : state.getVersion();
+                    if (anomalyDetection.isCurrent(state, product.getDetector())) {
+                        return record(product, version, state, false, price, priceData);
+                    }
+                    return repo.findLastNonOutliers(product, anomalyDetection.getHistorySize())
+                            .flatMap(prices -> record(product, version,
+                                    anomalyDetection.buildState(prices, product.getDetector()), true,
+                                    price, priceData));
+                })
+                .switchIfEmpty(Mono.defer(() -> detectionSnapshots.evictAll(List.of(id))
+                        .then(score(id, price, priceData, attempt + 1))));
+    }
+
+    /**
+     * @return The result, or empty if the state or the series changed since the product was read.
+     */
+    private Mono<String> record(Product product, long version, DetectionState state, boolean rebuilt,
+                                BigDecimal price, PriceData priceData) {
+        boolean isAnomaly = Boolean.parseBoolean(anomalyDetection.isAnomaly(state, price));
+        if (!isAnomaly) {
+            anomalyDetection.update(state, price);
+        }
+        long count = isAnomaly ? product.getOutlierCount() : product.getNonOutlierCount();
+        return repo.recordScore(product.getId(), product.getHistoryEpoch(), version, count, state, rebuilt,
+                        priceData, isAnomaly)
+                .filter(Boolean::booleanValue)
+                .flatMap(recorded -> {
+                    if (isAnomaly) {
+                        product.setOutlierCount(product.getOutlierCount() + 1);
+                    } else {
+                        product.setNonOutlierCount(product.getNonOutlierCount() + 1);
+                    }
+                    product.setDetectionState(state);
+                    Mono<Void> invalidation = rebuilt || !isAnomaly
+                            ? cacheGenerations.increment(List.of(product.getId()))
+                            : Mono.empty();
+                    return detectionSnapshots.putAll(List.of(product))
+                            .then(invalidation)
+                            .thenReturn(String.valueOf(isAnomaly));
+                });
+    }
+
+    private Mono<Product> findProduct(String id) {
+        return repo.findById(id).switchIfEmpty(Mono.error(ProductNotFoundException::new));
+    }
+
+    private static Product withHistory(Product product, List<PriceData> outliers, List<PriceData> nonOutliers) {
+        product.setOutliers(outliers);
+        product.setNonOutliers(nonOutliers);
+        return product;
+    }
+}
@@ -0,0 +1,40 @@
+package Product.PriceAnomalyDetection.service.scoringEngine;
+
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+public interface IScoringEngine {
+
+    /**
+     * Scores a price against the state of its product kept by the engine.
+     *
+     * <p>Prices of the same product are scored in the order they are submitted by each caller, one at a time.</p>
+     *
+     * @param id The unique identifier of the product.
+     * @param price The price to evaluate.
+     * @return {@code "true"} if the price is an anomaly, {@code "false"} otherwise; completed exceptionally with a
+     *         {@link ProductNotFoundException} if the product does not exist.
+     */
+    CompletableFuture<String> score(String id, BigDecimal price);
+
+    /**
+     * Writes the prices scored so far that have not been recorded yet.
+     *
+     * @return Completed when every price submitted before the call has been recorded, or has failed to be.
+     */
+    CompletableFuture<Void> flush();
+
+    /**
+     * Drops what the engine keeps about products that were changed without it, such as a replaced history or a new
+     * detector, so they are read again before their next price is scored. Prices of these products scored but not
+     * recorded yet are scored again against the changed products.
+     *
+     * <p>Prices submitted after the call are scored against the changed products.</p>
+     *
+     * @param itemIds The identifiers of the changed products.
+     */
+    void forget(Collection<String> itemIds);
+}
@@ -0,0 +1,505 @@
+package Product.PriceAnomalyDetection.service.scoringEngine;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetection;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scores prices in memory on a fixed set of single-threaded shards, enabled with {@code scoring.engine.enabled}.
+ *
+ * <p>Each product is owned by one of {@code scoring.engine.shards} shards, chosen by the hash of its ID. A shard
+ * is a thread that keeps the {@link DetectionState} of its products in memory and takes the prices to score from a
+ * lock-free queue, one at a time, so the prices of a product are scored in order without locks or conditional
+ * writes, and different products are scored in parallel on as many cores as shards.</p>
+ *
+ * <p>Results are returned as soon as the price is scored; the scores are recorded afterwards, in batches, with
+ * {@link IProductRepo#recordScores}. A shard writes its pending scores when they reach
+ * {@code scoring.engine.flush-size}, or {@code scoring.engine.flush-interval} after the oldest one was scored, and
+ * also refreshes the detection snapshots of the written products. Scores not written yet are lost if the process
+ * dies, and are written before it stops normally, with up to four attempts if the write fails.</p>
+ *
+ * <p>The engine assumes it is the only one scoring its products, as when a single instance scores them or
+ * requests are routed to instances by item. Services that change products otherwise, by replacing their history or
+ * setting their detector, tell the engine with {@link #forget}, and the shard reads them again. If a product is
+ * still changed behind the back of the engine, e.g. by another instance, the write of its batch fails its check;
+ * the shard then reads the product again and scores the pending prices against it before writing them, so no
+ * price is lost, although the recorded result of some of them may differ from the returned one.</p>
+ */
+@Service
+@ConditionalOnProperty(name = "scoring.engine.enabled", havingValue = "true")
+public class ShardedScoringEngine implements IScoringEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedScoringEngine.class);
+
+    /**
+     * Longest time an idle shard sleeps before checking again whether it has to stop.
+     */
+    private static final long IDLE_PARK_NANOS = Duration.ofSeconds(1).toNanos();
+
+    /**
+     * Most writes done for a {@link #flush()}, when products keep being changed by another writer.
+     */
+    private static final int FLUSH_WRITES = 4;
+
+    private final IProductRepo repo;
+    private final AnomalyDetection anomalyDetection;
+    private final DetectionSnapshotCache detectionSnapshots;
+    private final ICacheService cacheService;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final int maxItems;
+    private final Shard[] shards;
+    private volatile boolean running = true;
+
+    @Autowired
+    public ShardedScoringEngine(IProductRepo repo, AnomalyDetection anomalyDetection,
+                                DetectionSnapshotCache detectionSnapshots, ICacheService cacheService,
+                                @Value("${scoring.engine.shards}") int shards,
+                                @Value("${scoring.engine.flush-size}") int flushSize,
+                                @Value("${scoring.engine.flush-interval}") Duration flushInterval,
+                                @Value("${scoring.engine.max-items}") int maxItems) {
+        this.repo = repo;
+        this.anomalyDetection = anomalyDetection;
+        this.detectionSnapshots = detectionSnapshots;
+        this.cacheService = cacheService;
+        this.flushSize = Math.max(1, flushSize);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxItems = Math.max(1, maxItems);
+        this.shards = new Shard[shards > 0 ? shards : Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting prices, writes the pending scores and waits for the shards to finish.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join();
+            for (Task task = shard.queue.poll(); task != null; task = shard.queue.poll()) {
+                reject(task);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> score(String id, BigDecimal price) {
+        Score score = new Score(id, new PriceData(new Date(), price), new CompletableFuture<>());
+        submit(shardOf(id), score);
+        return score.result();
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<?>[] flushed = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            Flush flush = new Flush(new CompletableFuture<>());
+            submit(shards[i], flush);
+            flushed[i] = flush.done();
+        }
+        return CompletableFuture.allOf(flushed);
+    }
+
+    @Override
+    public void forget(Collection<String> itemIds) {
+        Map<Shard, List<String>> byShard = new HashMap<>();
+        for (String itemId : itemIds) {
+            byShard.computeIfAbsent(shardOf(itemId), shard -> new ArrayList<>()).add(itemId);
+        }
+        byShard.forEach((shard, ids) -> submit(shard, new Forget(ids)));
+    }
+
+    private void submit(Shard shard, Task task) {
+        if (!running) {
+            reject(task);
+            return;
+        }
+        shard.queue.offer(task);
+        if (shard.parked) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * Fails a task submitted while the engine was stopping.
+     */
+    private static void reject(Task task) {
+        IllegalStateException stopped = new IllegalStateException("Scoring engine is stopped");
+        if (task instanceof Score score) {
+            score.result().completeExceptionally(stopped);
+        } else if (task instanceof Flush flush) {
+            flush.done().completeExceptionally(stopped);
+        }
+    }
+
+    private Shard shardOf(String id) {
+        int hash = id.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    private sealed interface Task permits Score, Flush, Forget {
+    }
+
+    private record Score(String itemId, PriceData priceData, CompletableFuture<String> result) implements Task {
+    }
+
+    private record Flush(CompletableFuture<Void> done) implements Task {
+    }
+
+    private record Forget(List<String> itemIds) implements Task {
+    }
+
+    /**
+     * Number of outliers and non-outliers of an item sent by a write that failed. The write may still have been
+     * recorded, e.g. when it failed after the products were updated, and then the product has these many more points
+     * than the item expects; see {@link Shard#reload}.
+     */
+    private record FailedWrite(int outliers, int nonOutliers) {
+    }
+
+    /**
+     * Detection state of a product owned by a shard, with the scores not written yet.
+     *
+     * <p>{@code historyEpoch}, {@code version}, {@code outlierCount} and {@code nonOutlierCount} are the values
+     * stored in MongoDB, which the next write expects; {@code state} already includes the pending scores.</p>
+     */
+    private static final class Item {
+        private final String itemId;
+        private final Detector detector;
+        private final long historyEpoch;
+        private long version;
+        private long outlierCount;
+        private long nonOutlierCount;
+        private DetectionState state;
+        private List<PriceData> pending = new ArrayList<>();
+        private List<PriceData> outliers = new ArrayList<>();
+        private List<PriceData> nonOutliers = new ArrayList<>();
+        private List<FailedWrite> failedWrites = new ArrayList<>();
+
+        private Item(Product product) {
+            this.itemId = product.getId();
+            this.detector = product.getDetector();
+            this.historyEpoch = product.getHistoryEpoch();
+            this.version = product.getDetectionState() == null ? 0 : product.getDetectionState().getVersion();
+            this.outlierCount = product.getOutlierCount();
+            this.nonOutlierCount = product.getNonOutlierCount();
+            this.state = product.getDetectionState();
+        }
+    }
+
+    private final class Shard implements Runnable {
+        private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private volatile boolean parked;
+
+        /**
+         * Items by ID, least recently used first. Items with pending scores are never evicted; see {@link #evict()}.
+         */
+        private final Map<String, Item> items = new LinkedHashMap<>(16, 0.75f, true);
+        private final Set<Item> dirty = new LinkedHashSet<>();
+        private int pendingCount;
+        private long flushDeadline;
+
+        private Shard(int index) {
+            this.thread = new Thread(this, "scoring-shard-" + index);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task = queue.poll();
+                if (task != null) {
+                    if (task instanceof Score score) {
+                        score(score);
+                        if (pendingCount >= flushSize) {
+                            write();
+                        }
+                    } else if (task instanceof Flush flush) {
+                        writeAll();
+                        flush.done().complete(null);
+                    } else if (task instanceof Forget forget) {
+                        forget(forget.itemIds());
+                    }
+                    continue;
+                }
+                if (!running) {
+                    if (writeAll()) {
+                        logger.error("Could not record {} scores of {} products before stopping, they are lost",
+                                pendingCount, dirty.size());
+                        dirty.clear();
+                        pendingCount = 0;
+                    }
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                long wait = pendingCount == 0 ? IDLE_PARK_NANOS : flushDeadline - System.nanoTime();
+                if (wait <= 0) {
+                    write();
+                    continue;
+                }
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, wait);
+                }
+                parked = false;
+            }
+        }
+
+        private void score(Score score) {
+            try {
+                Item item = items.get(score.itemId());
+                if (item == null) {
+                    item = load(score.itemId());
+                    items.put(item.itemId, item);
+                }
+                boolean isAnomaly = apply(item, score.priceData());
+                if (dirty.add(item) && pendingCount == 0) {
+                    flushDeadline = System.nanoTime() + flushIntervalNanos;
+                }
+                item.pending.add(score.priceData());
+                pendingCount++;
+                evict();
+                score.result().complete(String.valueOf(isAnomaly));
+            } catch (RuntimeException e) {
+                score.result().completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Evicts the given items, or reads them again and scores their pending prices against them if they have
+         * some; see {@link #reload}.
+         */
+        private void forget(List<String> itemIds) {
+            for (String itemId : itemIds) {
+                Item item = items.get(itemId);
+                if (item == null) {
+                    continue;
+                }
+                if (item.pending.isEmpty()) {
+                    items.remove(itemId);
+                    continue;
+                }
+                dirty.remove(item);
+                pendingCount -= item.pending.size();
+                Item fresh = reload(item);
+                if (fresh != null && !fresh.pending.isEmpty()) {
+                    dirty.add(fresh);
+                    pendingCount += fresh.pending.size();
+                }
+            }
+        }
+
+        /**
+         * Evicts the least recently used items without pending scores until no more than
+         * {@code scoring.engine.max-items} are left or every item left has pending scores.
+         */
+        private void evict() {
+            Iterator<Item> iterator = items.values().iterator();
+            while (items.size() > maxItems && iterator.hasNext()) {
+                if (iterator.next().pending.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private Item load(String itemId) {
+            Product product = repo.findById(itemId).orElseThrow(ProductNotFoundException::new);
+            Item item = new Item(product);
+            if (!anomalyDetection.isCurrent(item.state, item.detector)) {
+                item.state = anomalyDetection.buildState(
+                        repo.findLastNonOutliers(product, anomalyDetection.getHistorySize()), item.detector);
+                cacheService.invalidateResults(List.of(itemId));
+            }
+            return item;
+        }
+
+        private boolean apply(Item item, PriceData priceData) {
+            boolean isAnomaly = Boolean.parseBoolean(anomalyDetection.isAnomaly(item.state, priceData.getPrice()));
+            if (isAnomaly) {
+                item.outliers.add(priceData);
+            } else {
+                anomalyDetection.update(item.state, priceData.getPrice());
+                item.nonOutliers.add(priceData);
+            }
+            return isAnomaly;
+        }
+
+        /**
+         * Writes the pending scores up to {@link #FLUSH_WRITES} times, while some are left.
+         *
+         * @return {@code true} if some scores are still pending after the last write.
+         */
+        private boolean writeAll() {
+            boolean retry = write();
+            for (int i = 1; retry && i < FLUSH_WRITES; i++) {
+                retry = write();
+            }
+            return retry;
+        }
+
+        /**
+         * Records the pending scores of every dirty item with one call to {@link IProductRepo#recordScores}.
+         * Items whose product changed in the meantime are read again and written with the next batch; if the write
+         * fails, every item is kept dirty and written with the next batch, which conflicts if the failed write was
+         * recorded after all.
+         *
+         * @return {@code true} if some items were read again or the write failed, so scores still have to be
+         *         written.
+         */
+        private boolean write() {
+            if (dirty.isEmpty()) {
+                return false;
+            }
+            List<ScoreBatch> batches = new ArrayList<>(dirty.size());
+            for (Item item : dirty) {
+                batches.add(new ScoreBatch(item.itemId, item.historyEpoch, item.version, item.outlierCount,
+                        item.nonOutlierCount, item.state, item.outliers, item.nonOutliers));
+            }
+            Set<String> conflicts;
+            try {
+                conflicts = repo.recordScores(batches);
+            } catch (RuntimeException e) {
+                for (Item item : dirty) {
+                    item.failedWrites.add(new FailedWrite(item.outliers.size(), item.nonOutliers.size()));
+                }
+                logger.error("Could not record {} scores of {} products, retrying",
+                        pendingCount, dirty.size(), e);
+                flushDeadline = System.nanoTime() + flushIntervalNanos;
+                return true;
+            }
+            List<Product> snapshots = new ArrayList<>(dirty.size());
+            List<Item> reloaded = new ArrayList<>();
+            for (Item item : dirty) {
+                if (conflicts.contains(item.itemId)) {
+                    Item fresh = reload(item);
+                    if (fresh != null && !fresh.pending.isEmpty()) {
+                        reloaded.add(fresh);
+                    }
+                    continue;
+                }
+                item.version++;
+                item.outlierCount += item.outliers.size();
+                item.nonOutlierCount += item.nonOutliers.size();
+                item.pending = new ArrayList<>();
+                item.outliers = new ArrayList<>();
+                item.nonOutliers = new ArrayList<>();
+                item.failedWrites = new ArrayList<>();
+                snapshots.add(snapshotOf(item));
+            }
+            dirty.clear();
+            pendingCount = 0;
+            for (Item item : reloaded) {
+                dirty.add(item);
+                pendingCount += item.pending.size();
+            }
+            flushDeadline = System.nanoTime() + flushIntervalNanos;
+            detectionSnapshots.putAll(snapshots);
+            detectionSnapshots.evictAll(conflicts);
+            return !dirty.isEmpty();
+        }
+
+        /**
+         * Reads again a product whose write conflicted and scores its pending prices against it.
+         *
+         * <p>The product may have been changed by another writer, or by a write of this shard that failed but was
+         * recorded. Only one write per version can be recorded, so if the product has exactly the version and
+         * series sizes one of the failed writes of the item would have given it, the prices of that write are
+         * recorded and only the ones scored after it are scored again.</p>
+         *
+         * @return The item with the pending prices scored again, or {@code null} if it could not be read.
+         */
+        private Item reload(Item stale) {
+            items.remove(stale.itemId);
+            try {
+                Item item = load(stale.itemId);
+                int recorded = recordedByFailedWrite(stale, item);
+                for (PriceData priceData : stale.pending.subList(recorded, stale.pending.size())) {
+                    apply(item, priceData);
+                    item.pending.add(priceData);
+                }
+                items.put(item.itemId, item);
+                if (recorded > 0) {
+                    logger.warn("A failed write of product {} was recorded, {} pending scores were scored again",
+                            item.itemId, item.pending.size());
+                } else {
+                    logger.warn("Product {} was changed, {} pending scores were scored again",
+                            item.itemId, item.pending.size());
+                }
+                return item;
+            } catch (RuntimeException e) {
+                logger.error("Could not read product {} again, {} pending scores are lost",
+                        stale.itemId, stale.pending.size(), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return The number of pending prices of {@code stale} that a failed write recorded in {@code fresh}, the
+     *         first ones since a write sends every pending price; {@code 0} if none did.
+     */
+    private static int recordedByFailedWrite(Item stale, Item fresh) {
+        if (fresh.historyEpoch != stale.historyEpoch || fresh.version != stale.version + 1) {
+            return 0;
+        }
+        for (FailedWrite write : stale.failedWrites) {
+            if (fresh.outlierCount == stale.outlierCount + write.outliers()
+                    && fresh.nonOutlierCount == stale.nonOutlierCount + write.nonOutliers()) {
+                return write.outliers() + write.nonOutliers();
+            }
+        }
+        return 0;
+    }
+
+    private static Product snapshotOf(Item item) {
+        Product snapshot = new Product();
+        snapshot.setId(item.itemId);
+        snapshot.setDetector(item.detector);
+        snapshot.setHistoryEpoch(item.historyEpoch);
+        snapshot.setOutlierCount(item.outlierCount);
+        snapshot.setNonOutlierCount(item.nonOutlierCount);
+        snapshot.setDetectionState(item.state);
+        return snapshot;
+    }
+}
@@ -1,5 +1,6 @@
 package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
 
+import Product.PriceAnomalyDetection.model.DetectionState;
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
 
@@ -8,4 +9,39 @@ import java.util.List;
 
 public interface AnomalyDetection {
     String isAnomaly(List<PriceData> nonOutliers, BigDecimal price);
+
+    int getHistorySize();
+
+    DetectionState buildState(List<PriceData> nonOutliers);
+
+    boolean isCurrent(DetectionState state);
+
+    String isAnomaly(DetectionState state, BigDecimal price);
+
+    void update(DetectionState state, BigDecimal acceptedPrice);
+
+    /**
+     * @return The detector this implementation scores prices with.
+     */
+    Detector getDetector();
+
+    /**
+     * Builds the detection state of a product that asks for a given detector, see {@link Product#getDetector()}.
+     * Implementations backed by a single detector ignore {@code detector}.
+     *
+     * @param detector The detector of the product, or {@code null} for the one of the deployment.
+     */
+    default DetectionState buildState(List<PriceData> nonOutliers, Detector detector) {
+        return buildState(nonOutliers);
+    }
+
+    /**
+     * Checks whether a detection state can score the prices of a product that asks for a given detector.
+     * Implementations backed by a single detector ignore {@code detector}.
+     *
+     * @param detector The detector of the product, or {@code null} for the one of the deployment.
+     */
+    default boolean isCurrent(DetectionState state, Detector detector) {
+        return isCurrent(state);
+    }
 }
@@ -0,0 +1,63 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Detector comparing a price against the exponentially weighted mean and standard deviation of the accepted prices.
+ *
+ * <p>{@code windowSize} is the span of the weights: each accepted price weighs {@code alpha = 2 / (windowSize + 1)}
+ * and the weight of the previous ones decays by {@code 1 - alpha}, so the center of mass of the weights is about
+ * {@code windowSize / 2} prices back, as in a window of {@code windowSize} prices. The mean and variance are updated
+ * incrementally (Finch, 2009), so the state is three values: the number of prices, the mean and the variance.</p>
+ */
+@Component
+public class AnomalyDetectionEwma extends StreamingAnomalyDetection {
+
+    private static final int COUNT = 0;
+    private static final int MEAN = 1;
+    private static final int VARIANCE = 2;
+
+    public AnomalyDetectionEwma() {
+    }
+
+    public AnomalyDetectionEwma(int windowSize, BigDecimal kValue) {
+        super(windowSize, kValue);
+    }
+
+    @Override
+    public Detector getDetector() {
+        return Detector.EWMA;
+    }
+
+    @Override
+    protected int statisticsSize() {
+        return 3;
+    }
+
+    @Override
+    protected void add(double[] statistics, double scaledPrice) {
+        if (statistics[COUNT] == 0) {
+            statistics[MEAN] = scaledPrice;
+            statistics[VARIANCE] = 0;
+        } else {
+            double alpha = 2.0 / (getWindowSize() + 1);
+            double difference = scaledPrice - statistics[MEAN];
+            double increment = alpha * difference;
+            statistics[MEAN] += increment;
+            statistics[VARIANCE] = (1 - alpha) * (statistics[VARIANCE] + difference * increment);
+        }
+        statistics[COUNT]++;
+    }
+
+    @Override
+    protected double center(double[] statistics) {
+        return statistics[MEAN];
+    }
+
+    @Override
+    protected double spread(double[] statistics) {
+        return Math.sqrt(statistics[VARIANCE]);
+    }
+}
@@ -0,0 +1,62 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.P2Quantile;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Robust detector comparing a price against the median of the accepted prices and their median absolute deviation
+ * (MAD), scaled by {@value #NORMAL_CONSISTENCY} so it estimates the standard deviation of normally distributed
+ * prices.
+ *
+ * <p>Both medians are estimated with a {@link P2Quantile} sketch, so the state is two sketches of
+ * {@value P2Quantile#SIZE} values. The absolute deviation of each price is taken from the median estimated before
+ * the price is added, since the final median is not known while streaming. A few extreme prices move the limits
+ * much less than they move the mean and standard deviation, but the medians cover every accepted price since the
+ * state was seeded, so the limits follow a change of level more slowly than the other detectors.</p>
+ */
+@Component
+public class AnomalyDetectionMad extends StreamingAnomalyDetection {
+
+    static final double NORMAL_CONSISTENCY = 1.4826;
+
+    private static final double MEDIAN = 0.5;
+    private static final int PRICES = 0;
+    private static final int DEVIATIONS = P2Quantile.SIZE;
+
+    public AnomalyDetectionMad() {
+    }
+
+    public AnomalyDetectionMad(int windowSize, BigDecimal kValue) {
+        super(windowSize, kValue);
+    }
+
+    @Override
+    public Detector getDetector() {
+        return Detector.MAD;
+    }
+
+    @Override
+    protected int statisticsSize() {
+        return 2 * P2Quantile.SIZE;
+    }
+
+    @Override
+    protected void add(double[] statistics, double scaledPrice) {
+        if (P2Quantile.count(statistics, PRICES) > 0) {
+            P2Quantile.add(statistics, DEVIATIONS, MEDIAN, Math.abs(scaledPrice - center(statistics)));
+        }
+        P2Quantile.add(statistics, PRICES, MEDIAN, scaledPrice);
+    }
+
+    @Override
+    protected double center(double[] statistics) {
+        return P2Quantile.quantile(statistics, PRICES, MEDIAN);
+    }
+
+    @Override
+    protected double spread(double[] statistics) {
+        return NORMAL_CONSISTENCY * P2Quantile.quantile(statistics, DEVIATIONS, MEDIAN);
+    }
+}
@@ -0,0 +1,105 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AnomalyDetection} injected into the services, dispatching to the detector of each product.
+ *
+ * <p>The detector of a product is {@link Product#getDetector()} when set, or {@code algorithm.detector} otherwise.
+ * A state is scored and updated by the detector that built it, and it is only current if that detector is the one
+ * of the product, so changing the detector of a product or of the deployment rebuilds its state on the next
+ * score.</p>
+ */
+@Primary
+@Component
+public class AnomalyDetectionSelector implements AnomalyDetection {
+
+    private final Map<Detector, AnomalyDetection> detectors = new EnumMap<>(Detector.class);
+    private final Detector defaultDetector;
+    private final int historySize;
+
+    public AnomalyDetectionSelector(List<AnomalyDetection> detectors,
+                                    @Value("${algorithm.detector}") Detector defaultDetector) {
+        for (AnomalyDetection detector : detectors) {
+            this.detectors.put(detector.getDetector(), detector);
+        }
+        if (!this.detectors.containsKey(defaultDetector)) {
+            throw new IllegalArgumentException("No implementation of detector " + defaultDetector);
+        }
+        this.defaultDetector = defaultDetector;
+        this.historySize = detectors.stream().mapToInt(AnomalyDetection::getHistorySize).max().orElse(0);
+    }
+
+    @Override
+    public String isAnomaly(List<PriceData> nonOutliers, BigDecimal price) {
+        return detector(null).isAnomaly(nonOutliers, price);
+    }
+
+    /**
+     * @return The largest history any detector reads to build a state.
+     */
+    @Override
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    @Override
+    public DetectionState buildState(List<PriceData> nonOutliers) {
+        return buildState(nonOutliers, null);
+    }
+
+    @Override
+    public DetectionState buildState(List<PriceData> nonOutliers, Detector detector) {
+        return detector(detector).buildState(nonOutliers);
+    }
+
+    @Override
+    public boolean isCurrent(DetectionState state) {
+        return isCurrent(state, null);
+    }
+
+    @Override
+    public boolean isCurrent(DetectionState state, Detector detector) {
+        return state != null && detectorOf(state) == detector(detector) && detectorOf(state).isCurrent(state);
+    }
+
+    @Override
+    public String isAnomaly(DetectionState state, BigDecimal price) {
+        return detectorOf(state).isAnomaly(state, price);
+    }
+
+    @Override
+    public void update(DetectionState state, BigDecimal acceptedPrice) {
+        detectorOf(state).update(state, acceptedPrice);
+    }
+
+    /**
+     * @return The detector of the deployment.
+     */
+    @Override
+    public Detector getDetector() {
+        return defaultDetector;
+    }
+
+    private AnomalyDetection detector(Detector detector) {
+        AnomalyDetection implementation = detectors.get(detector == null ? defaultDetector : detector);
+        if (implementation == null) {
+            throw new IllegalArgumentException("No implementation of detector " + detector);
+        }
+        return implementation;
+    }
+
+    private AnomalyDetection detectorOf(DetectionState state) {
+        return detector(state.getDetector() == null ? Detector.STANDARD_DEVIATION : state.getDetector());
+    }
+}
@@ -1,6 +1,11 @@
 package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
 
+import Product.PriceAnomalyDetection.model.DetectionState;
 import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceStatistics;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.WindowStatistics;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,11 +16,14 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
-import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateSMA;
-import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateStandardDeviation;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateStatistics;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.fromScaledPrice;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.scaledToPrice;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.toScaledPrice;
 
 @Component
 @AllArgsConstructor
@@ -27,6 +35,8 @@ public class AnomalyDetectionStandardDeviation implements AnomalyDetection {
     private int windowSize ;
     @Value("${algorithm.k-value}")
     private  BigDecimal kValue;
+    @Value("${algorithm.math-mode}")
+    private MathMode mathMode = MathMode.EXACT;
     private static final MathContext MATH_CONTEXT = new MathContext(10, RoundingMode.HALF_UP);
 
     /**
@@ -40,7 +50,8 @@ public class AnomalyDetectionStandardDeviation implements AnomalyDetection {
      * <ol>
      *     <li>Sorts the list of non-outlier prices by date.</li>
      *     <li>Selects a sliding window of the most recent prices based on a predefined window size.</li>
-     *     <li>Calculates the SMA and standard deviation for the selected window of prices.</li>
+     *     <li>Calculates the SMA and standard deviation for the selected window of prices, with {@link BigDecimal}
+     *         arithmetic or, under {@link MathMode#PRIMITIVE}, with {@link WindowStatistics}.</li>
      *     <li>Calculates the lower and upper limits using the SMA and standard deviation, adjusting by a factor
      *         defined by {@code kValue}.</li>
      *     <li>Compares the new price with the calculated limits to determine if it falls outside (anomaly) or inside
@@ -59,23 +70,25 @@ public class AnomalyDetectionStandardDeviation implements AnomalyDetection {
         }
 
         nonOutliers.sort(Comparator.comparing(PriceData::getDate));
-        List<BigDecimal> sortedPrices = new ArrayList<>();
-
-        for (PriceData priceData : nonOutliers) {
-            sortedPrices.add(priceData.getPrice());
-        }
-        int start = sortedPrices.size() - (windowSize + 1);
-        int end = sortedPrices.size() - 1;
+        int start = nonOutliers.size() - (windowSize + 1);
+        int end = nonOutliers.size() - 1;
 
         if (start < 0) {
             start = 0;
         }
 
-        List<BigDecimal> window = sortedPrices.subList(start, end);
+        if (mathMode == MathMode.PRIMITIVE) {
+            return String.valueOf(isAnomalyPrimitive(nonOutliers.subList(start, end), newPrice));
+        }
 
+        List<BigDecimal> window = new ArrayList<>(end - start);
+        for (PriceData priceData : nonOutliers.subList(start, end)) {
+            window.add(priceData.getPrice());
+        }
 
-        BigDecimal sma = calculateSMA(window);
-        BigDecimal stdDev = calculateStandardDeviation(window, sma);
+        PriceStatistics statistics = calculateStatistics(window);
+        BigDecimal sma = statistics.sma();
+        BigDecimal stdDev = statistics.stdDev();
 
         BigDecimal lowerLimit = sma.subtract(kValue.multiply(stdDev, MATH_CONTEXT), MATH_CONTEXT);
         BigDecimal upperLimit = sma.add(kValue.multiply(stdDev, MATH_CONTEXT), MATH_CONTEXT);
@@ -84,5 +97,152 @@ public class AnomalyDetectionStandardDeviation implements AnomalyDetection {
 
     }
 
+    private boolean isAnomalyPrimitive(List<PriceData> window, BigDecimal newPrice) {
+        long[] scaledWindow = new long[window.size()];
+        for (int i = 0; i < scaledWindow.length; i++) {
+            scaledWindow[i] = toScaledPrice(window.get(i).getPrice());
+        }
+        WindowStatistics statistics = new WindowStatistics();
+        statistics.compute(scaledWindow, 0, scaledWindow.length);
+        return statistics.isOutside(toScaledPrice(newPrice), kValue.doubleValue());
+    }
+
+    @Override
+    public Detector getDetector() {
+        return Detector.STANDARD_DEVIATION;
+    }
+
+    /**
+     * Number of most recent non-outlier prices {@link #buildState(List)} keeps from the history.
+     *
+     * @return {@code windowSize + 1}.
+     */
+    @Override
+    public int getHistorySize() {
+        return windowSize + 1;
+    }
+
+    /**
+     * Builds the rolling {@link DetectionState} of a product from its historical non-outlier prices.
+     *
+     * <p>The history is sorted by date once, the most recent {@code windowSize + 1} prices are kept in the state
+     * and the limits are precomputed, so later scores only compare the new price against them. The state keeps the
+     * prices scaled with {@link Commons#toScaledPrice}, rounded to {@link Commons#PRICE_SCALE} decimal places in
+     * both math modes.</p>
+     *
+     * @param nonOutliers A list of historical price data that are not considered outliers.
+     * @return The detection state for the configured window size and {@code kValue}.
+     */
+    @Override
+    public DetectionState buildState(List<PriceData> nonOutliers) {
+        DetectionState state = new DetectionState();
+        state.setDetector(Detector.STANDARD_DEVIATION);
+        state.setWindowSize(windowSize);
+        state.setKValue(kValue);
+        state.setMathMode(mathMode);
+
+        List<PriceData> history = nonOutliers == null ? List.of() : new ArrayList<>(nonOutliers);
+        history.sort(Comparator.comparing(PriceData::getDate));
+        int start = Math.max(0, history.size() - (windowSize + 1));
+        long[] window = new long[history.size() - start];
+        for (int i = start; i < history.size(); i++) {
+            window[i - start] = toScaledPrice(history.get(i).getPrice());
+        }
+        state.setWindow(window);
+        refreshLimits(state);
+        return state;
+    }
+
+    /**
+     * Checks whether a detection state was built by this detector with the configured window size,
+     * {@code kValue} and math mode.
+     *
+     * @param state The detection state to check.
+     * @return {@code true} if the state can be used to score prices, {@code false} if it has to be rebuilt.
+     */
+    @Override
+    public boolean isCurrent(DetectionState state) {
+        return state != null
+                && (state.getDetector() == null || state.getDetector() == Detector.STANDARD_DEVIATION)
+                && state.getWindow() != null
+                && state.getWindowSize() == windowSize
+                && state.getKValue() != null
+                && state.getKValue().compareTo(kValue) == 0
+                && state.getMathMode() == mathMode;
+    }
+
+    /**
+     * Determines whether a given price is an anomaly using the precomputed limits of a {@link DetectionState}.
+     *
+     * <p>This gives the same answer as {@link #isAnomaly(List, BigDecimal)} over the history the state was built
+     * from, in constant time and without reading the history, as long as the prices of the window have no more than
+     * {@link Commons#PRICE_SCALE} decimal places. The state keeps longer prices rounded, so under
+     * {@link MathMode#EXACT} its limits are those of the rounded prices, while the list of prices is used as is; a
+     * new price close to a limit may then be classified differently.</p>
+     *
+     * @param state The current detection state of the product.
+     * @param newPrice The new price to evaluate for anomaly detection.
+     * @return {@code "true"} if the new price is considered an anomaly, {@code "false"} otherwise.
+     */
+    @Override
+    public String isAnomaly(DetectionState state, BigDecimal newPrice) {
+        if (state.getWindow().length == 0) {
+            return "false";
+        }
+        Boolean result = newPrice.compareTo(state.getLowerLimit()) < 0 || newPrice.compareTo(state.getUpperLimit()) > 0;
+        return result.toString();
+    }
+
+    /**
+     * Appends a price classified as non-outlier to a {@link DetectionState} and recomputes its limits.
+     *
+     * <p>The oldest price is dropped once the state holds {@code windowSize + 1} prices, so the update costs
+     * {@code O(windowSize)} whatever the length of the history.</p>
+     *
+     * @param state The detection state to update.
+     * @param acceptedPrice The price that was classified as non-outlier.
+     */
+    @Override
+    public void update(DetectionState state, BigDecimal acceptedPrice) {
+        long[] window = state.getWindow();
+        long[] updated;
+        if (window.length < state.getWindowSize() + 1) {
+            updated = Arrays.copyOf(window, window.length + 1);
+        } else {
+            updated = new long[window.length];
+            System.arraycopy(window, 1, updated, 0, window.length - 1);
+        }
+        updated[updated.length - 1] = toScaledPrice(acceptedPrice);
+        state.setWindow(updated);
+        refreshLimits(state);
+    }
+
+    private void refreshLimits(DetectionState state) {
+        long[] window = state.getWindow();
+        int end = Math.max(0, window.length - 1);
+
+        if (mathMode == MathMode.PRIMITIVE) {
+            WindowStatistics statistics = new WindowStatistics();
+            statistics.compute(window, 0, end);
+            double margin = kValue.doubleValue() * statistics.getStandardDeviation();
+            state.setSma(scaledToPrice(statistics.getMean()));
+            state.setStdDev(scaledToPrice(statistics.getStandardDeviation()));
+            state.setLowerLimit(scaledToPrice(statistics.getMean() - margin));
+            state.setUpperLimit(scaledToPrice(statistics.getMean() + margin));
+            return;
+        }
+
+        List<BigDecimal> prices = new ArrayList<>(end);
+        for (int i = 0; i < end; i++) {
+            prices.add(fromScaledPrice(window[i]));
+        }
+        PriceStatistics statistics = calculateStatistics(prices);
+        BigDecimal sma = statistics.sma();
+        BigDecimal stdDev = statistics.stdDev();
+        state.setSma(sma);
+        state.setStdDev(stdDev);
+        state.setLowerLimit(sma.subtract(kValue.multiply(stdDev, MATH_CONTEXT), MATH_CONTEXT));
+        state.setUpperLimit(sma.add(kValue.multiply(stdDev, MATH_CONTEXT), MATH_CONTEXT));
+    }
 
 }
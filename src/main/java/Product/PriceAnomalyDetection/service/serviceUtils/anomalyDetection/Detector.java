@@ -0,0 +1,18 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+/**
+ * Detector used to score the prices of a product.
+ *
+ * <ul>
+ *     <li>{@link #STANDARD_DEVIATION}: {@link AnomalyDetectionStandardDeviation}, mean and standard deviation of the
+ *         last {@code windowSize} non-outliers.</li>
+ *     <li>{@link #EWMA}: {@link AnomalyDetectionEwma}, exponentially weighted mean and variance.</li>
+ *     <li>{@link #MAD}: {@link AnomalyDetectionMad}, median and median absolute deviation estimated with a
+ *         streaming quantile sketch.</li>
+ * </ul>
+ */
+public enum Detector {
+    STANDARD_DEVIATION,
+    EWMA,
+    MAD
+}
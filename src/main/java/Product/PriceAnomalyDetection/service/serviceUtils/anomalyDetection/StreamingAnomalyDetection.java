@@ -0,0 +1,176 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.fromScaledPrice;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.toScaledPrice;
+
+/**
+ * Base of the detectors whose state has a constant size: the {@link DetectionState} keeps an empty window and
+ * the running statistics of every accepted price in {@code statistics}, so both scoring a price and accepting it
+ * cost {@code O(1)} whatever {@code windowSize} is.
+ *
+ * <p>The history is only read when the state is missing or was built with another configuration: the statistics
+ * are then seeded with the most recent {@code windowSize + 1} non-outliers, the same prices
+ * {@link AnomalyDetectionStandardDeviation} reads. Statistics are computed with {@code double} arithmetic in
+ * scaled units, and a price is never an anomaly until the state has seen {@value #MIN_PRICES} prices.</p>
+ *
+ * <p>The first value of {@code statistics} is the number of prices seen. Limits are
+ * {@code center ± kValue * spread}, and {@code sma} and {@code stdDev} of the state hold the center and the
+ * spread, rounded.</p>
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public abstract class StreamingAnomalyDetection implements AnomalyDetection {
+
+    static final int MIN_PRICES = 2;
+
+    @Value("${algorithm.window-size}")
+    private int windowSize;
+    @Value("${algorithm.k-value}")
+    private BigDecimal kValue;
+
+    /**
+     * @return The number of values of {@code statistics}.
+     */
+    protected abstract int statisticsSize();
+
+    /**
+     * Adds an accepted price to the statistics, in place.
+     *
+     * @param statistics The statistics, all zeros before the first price.
+     * @param scaledPrice The price scaled with {@code Commons.toScaledPrice}.
+     */
+    protected abstract void add(double[] statistics, double scaledPrice);
+
+    /**
+     * @return The center of the accepted prices, in scaled units.
+     */
+    protected abstract double center(double[] statistics);
+
+    /**
+     * @return The spread of the accepted prices, in scaled units.
+     */
+    protected abstract double spread(double[] statistics);
+
+    /**
+     * Determines whether a given price is an anomaly against the statistics of the most recent
+     * {@code windowSize + 1} non-outliers.
+     *
+     * @param nonOutliers A list of historical price data that are not considered outliers.
+     * @param newPrice The new price to evaluate for anomaly detection.
+     * @return {@code "true"} if the new price is considered an anomaly, {@code "false"} otherwise.
+     */
+    @Override
+    public String isAnomaly(List<PriceData> nonOutliers, BigDecimal newPrice) {
+        return isAnomaly(buildState(nonOutliers), newPrice);
+    }
+
+    /**
+     * @return {@code windowSize + 1}, the number of non-outliers used to seed a state.
+     */
+    @Override
+    public int getHistorySize() {
+        return windowSize + 1;
+    }
+
+    @Override
+    public DetectionState buildState(List<PriceData> nonOutliers) {
+        DetectionState state = new DetectionState();
+        state.setDetector(getDetector());
+        state.setWindowSize(windowSize);
+        state.setKValue(kValue);
+        state.setWindow(new long[0]);
+
+        List<PriceData> history = nonOutliers == null ? List.of() : new ArrayList<>(nonOutliers);
+        history.sort(Comparator.comparing(PriceData::getDate));
+        double[] statistics = new double[statisticsSize()];
+        for (int i = Math.max(0, history.size() - (windowSize + 1)); i < history.size(); i++) {
+            add(statistics, toScaledPrice(history.get(i).getPrice()));
+        }
+        state.setStatistics(statistics);
+        refreshLimits(state);
+        return state;
+    }
+
+    /**
+     * Checks whether a detection state was built by this detector with the configured window size and
+     * {@code kValue}.
+     *
+     * @param state The detection state to check.
+     * @return {@code true} if the state can be used to score prices, {@code false} if it has to be rebuilt.
+     */
+    @Override
+    public boolean isCurrent(DetectionState state) {
+        return state != null
+                && state.getDetector() == getDetector()
+                && state.getStatistics() != null
+                && state.getStatistics().length == statisticsSize()
+                && state.getWindowSize() == windowSize
+                && state.getKValue() != null
+                && state.getKValue().compareTo(kValue) == 0;
+    }
+
+    /**
+     * Determines whether a given price is an anomaly comparing it, in scaled units, against the limits derived from
+     * the statistics of a {@link DetectionState}.
+     *
+     * @param state The current detection state of the product.
+     * @param newPrice The new price to evaluate for anomaly detection.
+     * @return {@code "true"} if the new price is considered an anomaly, {@code "false"} otherwise.
+     */
+    @Override
+    public String isAnomaly(DetectionState state, BigDecimal newPrice) {
+        double[] statistics = state.getStatistics();
+        if (statistics[0] < MIN_PRICES) {
+            return "false";
+        }
+        double center = center(statistics);
+        double margin = kValue.doubleValue() * spread(statistics);
+        long price = toScaledPrice(newPrice);
+        return String.valueOf(price < center - margin || price > center + margin);
+    }
+
+    /**
+     * Adds a price classified as non-outlier to the statistics of a {@link DetectionState} and recomputes its
+     * limits. The statistics are copied rather than modified, like the window of
+     * {@link AnomalyDetectionStandardDeviation}, so a state shared with a reader is never seen half updated.
+     *
+     * @param state The detection state to update.
+     * @param acceptedPrice The price that was classified as non-outlier.
+     */
+    @Override
+    public void update(DetectionState state, BigDecimal acceptedPrice) {
+        double[] statistics = state.getStatistics().clone();
+        add(statistics, toScaledPrice(acceptedPrice));
+        state.setStatistics(statistics);
+        refreshLimits(state);
+    }
+
+    /**
+     * Stores the center, spread and limits in the state, rounded to {@code Commons.PRICE_SCALE} decimal places. They
+     * are only informative: prices are scored against the statistics, and converting the exact {@code double} values
+     * into {@link BigDecimal} would cost more than the rest of the update.
+     */
+    private void refreshLimits(DetectionState state) {
+        double[] statistics = state.getStatistics();
+        double center = center(statistics);
+        double spread = spread(statistics);
+        double margin = kValue.doubleValue() * spread;
+        state.setSma(fromScaledPrice(Math.round(center)));
+        state.setStdDev(fromScaledPrice(Math.round(spread)));
+        state.setLowerLimit(fromScaledPrice(Math.round(center - margin)));
+        state.setUpperLimit(fromScaledPrice(Math.round(center + margin)));
+    }
+}
@@ -3,12 +3,25 @@ package Product.PriceAnomalyDetection.service.serviceUtils.commons;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class Commons {
     private static final MathContext MATH_CONTEXT = new MathContext(10, RoundingMode.HALF_UP);
 
+    /**
+     * Number of decimal places kept when a price is converted to a scaled {@code long}.
+     */
+    public static final int PRICE_SCALE = 4;
+
+    /**
+     * Largest window whose quartiles {@link #removeOutliers(List, MathMode)} computes exactly under
+     * {@link MathMode#PRIMITIVE}; the quartiles of larger windows are estimated with a {@link QuantileSketch}, which
+     * keeps every value up to its capacity. Under {@link MathMode#EXACT} the quartiles are always exact.
+     */
+    public static final int EXACT_QUARTILES_LIMIT = QuantileSketch.DEFAULT_CAPACITY;
+
     /**
      * Calculates the Simple Moving Average (SMA) of a list of prices, excluding outliers.
      *
@@ -28,12 +41,7 @@ public class Commons {
      * @return The Simple Moving Average (SMA) of the filtered prices, or {@link BigDecimal#ZERO} if no prices remain.
      */
     public static BigDecimal calculateSMA(List<BigDecimal> prices) {
-        List<BigDecimal> filteredPrices = removeOutliers(prices);
-        if (filteredPrices.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-        BigDecimal sum = filteredPrices.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
-        return sum.divide(new BigDecimal(filteredPrices.size()), MATH_CONTEXT);
+        return mean(removeOutliers(prices));
     }
 
     /**
@@ -57,7 +65,37 @@ public class Commons {
      */
 
     public static BigDecimal calculateStandardDeviation(List<BigDecimal> prices, BigDecimal mean) {
+        return standardDeviation(removeOutliers(prices), mean);
+    }
+
+    /**
+     * Calculates the SMA and the standard deviation of a list of prices, excluding outliers, removing them once.
+     *
+     * <p>The result is the same as {@link #calculateSMA(List)} followed by
+     * {@link #calculateStandardDeviation(List, BigDecimal)} with that SMA, which filter the list twice.</p>
+     *
+     * @param prices A list of prices, with potential outliers.
+     * @return The SMA and the standard deviation of the filtered prices, both {@link BigDecimal#ZERO} if no prices
+     *         remain.
+     */
+    public static PriceStatistics calculateStatistics(List<BigDecimal> prices) {
         List<BigDecimal> filteredPrices = removeOutliers(prices);
+        BigDecimal sma = mean(filteredPrices);
+        return new PriceStatistics(sma, standardDeviation(filteredPrices, sma));
+    }
+
+    private static BigDecimal mean(List<BigDecimal> filteredPrices) {
+        if (filteredPrices.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (BigDecimal price : filteredPrices) {
+            sum = sum.add(price);
+        }
+        return sum.divide(new BigDecimal(filteredPrices.size()), MATH_CONTEXT);
+    }
+
+    private static BigDecimal standardDeviation(List<BigDecimal> filteredPrices, BigDecimal mean) {
         if (filteredPrices.isEmpty()) {
             return BigDecimal.ZERO;
         }
@@ -91,22 +129,62 @@ public class Commons {
      *     <li>Filters out prices that fall outside the lower and upper bounds.</li>
      * </ol></p>
      *
+     * <p>The quartiles are always exact, whatever the size of the list; this is the {@link MathMode#EXACT} filter.</p>
+     *
      * @param prices A list of prices to be filtered for outliers.
      * @return A list of prices that are within the calculated bounds, with outliers removed.
      */
     public static List<BigDecimal> removeOutliers(List<BigDecimal> prices) {
+        return removeOutliers(prices, MathMode.EXACT);
+    }
+
+    /**
+     * Removes outliers from a list of prices like {@link #removeOutliers(List)}, choosing how the quartiles of
+     * large lists are found.
+     *
+     * <p>Under {@link MathMode#PRIMITIVE}, lists of more than {@link #EXACT_QUARTILES_LIMIT} prices are not sorted:
+     * Q1 and Q3 are estimated from their {@code double} values with a {@link QuantileSketch} built in a single pass.
+     * Each estimate lies between the exact values {@link #calculateQuartile} would interpolate at
+     * {@link QuantileSketch#getMaxRankError()} positions below and above its index, that is within about
+     * {@code log2(n / 200) / 200} of the quartile's rank for a list of {@code n} prices. Under {@link MathMode#EXACT},
+     * or for smaller lists, the prices are sorted and the quartiles are exact.</p>
+     *
+     * @param prices A list of prices to be filtered for outliers.
+     * @param mathMode {@link MathMode#PRIMITIVE} to accept estimated quartiles for lists of more than
+     *                 {@link #EXACT_QUARTILES_LIMIT} prices.
+     * @return A list of prices that are within the calculated bounds, with outliers removed.
+     */
+    public static List<BigDecimal> removeOutliers(List<BigDecimal> prices, MathMode mathMode) {
         if (prices == null || prices.isEmpty()) {
             return List.of();
         }
-        List<BigDecimal> sortedPrices = prices.stream().sorted().collect(Collectors.toList());
-        BigDecimal q1 = calculateQuartile(sortedPrices, 0.25);
-        BigDecimal q3 = calculateQuartile(sortedPrices, 0.75);
+        BigDecimal q1;
+        BigDecimal q3;
+        if (mathMode != MathMode.PRIMITIVE || prices.size() <= EXACT_QUARTILES_LIMIT) {
+            BigDecimal[] sortedPrices = prices.toArray(new BigDecimal[0]);
+            Arrays.sort(sortedPrices);
+            List<BigDecimal> sorted = Arrays.asList(sortedPrices);
+            q1 = calculateQuartile(sorted, 0.25);
+            q3 = calculateQuartile(sorted, 0.75);
+        } else {
+            QuantileSketch sketch = new QuantileSketch();
+            for (BigDecimal price : prices) {
+                sketch.update(price.doubleValue());
+            }
+            double[] quartiles = sketch.quantiles(0.25, 0.75);
+            q1 = BigDecimal.valueOf(quartiles[0]);
+            q3 = BigDecimal.valueOf(quartiles[1]);
+        }
         BigDecimal iqr = q3.subtract(q1);
         BigDecimal lowerBound = q1.subtract(iqr.multiply(BigDecimal.valueOf(1.5)));
         BigDecimal upperBound = q3.add(iqr.multiply(BigDecimal.valueOf(1.5)));
-        return prices.stream()
-                .filter(price -> price.compareTo(lowerBound) >= 0 && price.compareTo(upperBound) <= 0)
-                .collect(Collectors.toList());
+        List<BigDecimal> filteredPrices = new ArrayList<>(prices.size());
+        for (BigDecimal price : prices) {
+            if (price.compareTo(lowerBound) >= 0 && price.compareTo(upperBound) <= 0) {
+                filteredPrices.add(price);
+            }
+        }
+        return filteredPrices;
     }
 
     /**
@@ -141,4 +219,39 @@ public class Commons {
         return lowerValue.add(upperValue.subtract(lowerValue).multiply(fraction));
     }
 
+    /**
+     * Converts a price into a scaled {@code long} with {@link #PRICE_SCALE} decimal places.
+     *
+     * <p>Prices with more decimal places than {@link #PRICE_SCALE} are rounded using {@link RoundingMode#HALF_UP}.</p>
+     *
+     * @param price The price to convert.
+     * @return The price multiplied by 10^{@link #PRICE_SCALE}.
+     * @throws ArithmeticException If the scaled price does not fit in a {@code long}.
+     */
+    public static long toScaledPrice(BigDecimal price) {
+        return price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts a scaled {@code long} produced by {@link #toScaledPrice(BigDecimal)} back into a price.
+     *
+     * @param scaledPrice The price multiplied by 10^{@link #PRICE_SCALE}.
+     * @return The price as a {@link BigDecimal} with {@link #PRICE_SCALE} decimal places.
+     */
+    public static BigDecimal fromScaledPrice(long scaledPrice) {
+        return BigDecimal.valueOf(scaledPrice, PRICE_SCALE);
+    }
+
+    /**
+     * Converts a value in scaled units, such as a mean or a limit computed with {@code double} arithmetic over
+     * scaled prices, into a price without rounding, so comparing a price against it gives the same result as
+     * comparing the scaled price against the {@code double} value.
+     *
+     * @param scaledValue A finite value multiplied by 10^{@link #PRICE_SCALE}.
+     * @return The exact value as a {@link BigDecimal}.
+     */
+    public static BigDecimal scaledToPrice(double scaledValue) {
+        return new BigDecimal(scaledValue).movePointLeft(PRICE_SCALE);
+    }
+
 }
@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+/**
+ * Arithmetic used by the detection pipeline to compute window statistics.
+ *
+ * <ul>
+ *     <li>{@link #EXACT}: {@link java.math.BigDecimal} arithmetic through {@link Commons}.</li>
+ *     <li>{@link #PRIMITIVE}: scaled {@code long} prices through {@link WindowStatistics}, without
+ *         allocations per window.</li>
+ * </ul>
+ */
+public enum MathMode {
+    EXACT,
+    PRIMITIVE
+}
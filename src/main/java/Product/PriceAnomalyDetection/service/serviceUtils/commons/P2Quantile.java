@@ -0,0 +1,143 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+/**
+ * Streaming estimate of one quantile with the P² algorithm (Jain and Chlamtac, 1985), kept in a slice of a
+ * {@code double[]} so it can be stored inside a detection state.
+ *
+ * <p>The sketch takes {@link #SIZE} values whatever the number of observations: the count, then the heights of five
+ * markers and then their positions. The first five observations are kept exactly, so until then the quantile is
+ * interpolated like {@link Commons#removeOutliers} does. Afterwards the markers sit at the minimum, at {@code p / 2},
+ * {@code p}, {@code (1 + p) / 2} and at the maximum, and each observation moves them at most one position, adjusting
+ * their heights with a piecewise parabolic interpolation. Adding an observation costs {@code O(1)}.</p>
+ *
+ * <p>The estimate is not exact: for smooth distributions the middle marker is usually within a few percent of the
+ * true quantile, but it is not mergeable and gives no worst-case bound.</p>
+ */
+public final class P2Quantile {
+
+    /**
+     * Number of {@code double} values taken by a sketch.
+     */
+    public static final int SIZE = 11;
+
+    private static final int MARKERS = 5;
+    private static final int HEIGHTS = 1;
+    private static final int POSITIONS = HEIGHTS + MARKERS;
+
+    private P2Quantile() {
+    }
+
+    /**
+     * @return The number of observations added to the sketch at {@code offset}.
+     */
+    public static long count(double[] sketch, int offset) {
+        return (long) sketch[offset];
+    }
+
+    /**
+     * Adds an observation to the sketch at {@code offset}.
+     *
+     * @param sketch Array holding the sketch, all zeros for an empty one.
+     * @param offset Index of the sketch inside {@code sketch}.
+     * @param p The quantile estimated by the sketch, between 0 and 1.
+     * @param value The observation.
+     */
+    public static void add(double[] sketch, int offset, double p, double value) {
+        int heights = offset + HEIGHTS;
+        int positions = offset + POSITIONS;
+        if (sketch[offset] < MARKERS) {
+            int count = (int) sketch[offset];
+            int i = count;
+            while (i > 0 && sketch[heights + i - 1] > value) {
+                sketch[heights + i] = sketch[heights + i - 1];
+                i--;
+            }
+            sketch[heights + i] = value;
+            sketch[offset] = count + 1;
+            if (count + 1 == MARKERS) {
+                for (int marker = 0; marker < MARKERS; marker++) {
+                    sketch[positions + marker] = marker + 1;
+                }
+            }
+            return;
+        }
+
+        int cell;
+        if (value < sketch[heights]) {
+            sketch[heights] = value;
+            cell = 0;
+        } else if (value >= sketch[heights + MARKERS - 1]) {
+            sketch[heights + MARKERS - 1] = value;
+            cell = MARKERS - 2;
+        } else {
+            cell = 0;
+            while (value >= sketch[heights + cell + 1]) {
+                cell++;
+            }
+        }
+        for (int marker = cell + 1; marker < MARKERS; marker++) {
+            sketch[positions + marker]++;
+        }
+        sketch[offset] = sketch[offset] + 1;
+
+        double observations = sketch[offset];
+        for (int marker = 1; marker < MARKERS - 1; marker++) {
+            double desired = 1 + (observations - 1) * increment(marker, p);
+            double position = sketch[positions + marker];
+            double delta = desired - position;
+            if ((delta >= 1 && sketch[positions + marker + 1] - position > 1)
+                    || (delta <= -1 && sketch[positions + marker - 1] - position < -1)) {
+                int step = delta > 0 ? 1 : -1;
+                double height = parabolic(sketch, heights, positions, marker, step);
+                if (height <= sketch[heights + marker - 1] || height >= sketch[heights + marker + 1]) {
+                    height = sketch[heights + marker] + step
+                            * (sketch[heights + marker + step] - sketch[heights + marker])
+                            / (sketch[positions + marker + step] - position);
+                }
+                sketch[heights + marker] = height;
+                sketch[positions + marker] = position + step;
+            }
+        }
+    }
+
+    /**
+     * @param p The quantile estimated by the sketch, the same passed to {@link #add}.
+     * @return The estimated quantile of the sketch at {@code offset}, or {@code 0} if it is empty.
+     */
+    public static double quantile(double[] sketch, int offset, double p) {
+        int heights = offset + HEIGHTS;
+        if (sketch[offset] > MARKERS) {
+            return sketch[heights + 2];
+        }
+        int count = (int) sketch[offset];
+        if (count == 0) {
+            return 0;
+        }
+        double index = p * (count - 1);
+        int lower = (int) Math.floor(index);
+        int upper = (int) Math.ceil(index);
+        return sketch[heights + lower] + (sketch[heights + upper] - sketch[heights + lower]) * (index - lower);
+    }
+
+    /**
+     * Fraction of the observations below each marker.
+     */
+    private static double increment(int marker, double p) {
+        return switch (marker) {
+            case 1 -> p / 2;
+            case 2 -> p;
+            case 3 -> (1 + p) / 2;
+            default -> marker == 0 ? 0 : 1;
+        };
+    }
+
+    private static double parabolic(double[] sketch, int heights, int positions, int marker, int step) {
+        double previous = sketch[positions + marker - 1];
+        double position = sketch[positions + marker];
+        double next = sketch[positions + marker + 1];
+        double height = sketch[heights + marker];
+        return height + step / (next - previous)
+                * ((position - previous + step) * (sketch[heights + marker + 1] - height) / (next - position)
+                + (next - position - step) * (height - sketch[heights + marker - 1]) / (position - previous));
+    }
+}
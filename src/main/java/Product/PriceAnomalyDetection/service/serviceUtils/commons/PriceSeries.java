@@ -0,0 +1,312 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Price history of one item kept as parallel primitive arrays: the day of each price, as days since 1970-01-01, its
+ * value scaled by {@link Commons#PRICE_SCALE} and the number of decimals it was written with.
+ *
+ * <p>A point takes {@value #BYTES_PER_POINT} bytes, against about 112 for a {@link PriceData} with its {@code Date}
+ * and {@code BigDecimal}. {@link #sortByDate()} permutes the arrays in place and {@link PriceData} objects are only
+ * built by {@link #toPriceDataList()}, where the series is returned by the API or stored in MongoDB.</p>
+ *
+ * <p>Dates are kept without the time of day, which is what a CSV upload carries. A price with more than
+ * {@link Commons#PRICE_SCALE} decimals is kept as written in a {@link BigDecimal} array, only allocated once the
+ * series has such a price, and its scaled value is rounded {@code HALF_UP} like {@link Commons#toScaledPrice}. Instances
+ * are not thread safe.</p>
+ */
+public final class PriceSeries {
+
+    /**
+     * Bytes of the arrays per point: an {@code int}, a {@code long} and a {@code byte}.
+     */
+    public static final int BYTES_PER_POINT = Integer.BYTES + Long.BYTES + Byte.BYTES;
+
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000};
+
+    private int[] epochDays;
+    private long[] scaledPrices;
+    private byte[] scales;
+    private BigDecimal[] exactPrices;
+    private int size;
+
+    public PriceSeries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of points the series holds before its arrays grow.
+     */
+    public PriceSeries(int capacity) {
+        this(new int[capacity], new long[capacity], new byte[capacity], null, 0);
+    }
+
+    private PriceSeries(int[] epochDays, long[] scaledPrices, byte[] scales, BigDecimal[] exactPrices, int size) {
+        this.epochDays = epochDays;
+        this.scaledPrices = scaledPrices;
+        this.scales = scales;
+        this.exactPrices = exactPrices;
+        this.size = size;
+    }
+
+    /**
+     * Converts a list of points, keeping their order. Dates are truncated to their day in the default time zone.
+     */
+    public static PriceSeries of(List<PriceData> points) {
+        ZoneId zone = ZoneId.systemDefault();
+        PriceSeries series = new PriceSeries(Math.max(1, points.size()));
+        for (PriceData point : points) {
+            BigDecimal price = point.getPrice();
+            series.add((int) point.getDate().toInstant().atZone(zone).toLocalDate().toEpochDay(),
+                    Commons.toScaledPrice(price), Math.max(0, Math.min(price.scale(), Commons.PRICE_SCALE)),
+                    exactPrice(price));
+        }
+        return series;
+    }
+
+    /**
+     * @return {@code price} if it has more than {@link Commons#PRICE_SCALE} decimals besides trailing zeros, so
+     *         its scaled value is rounded and it has to be kept as written, otherwise {@code null}.
+     */
+    public static BigDecimal exactPrice(BigDecimal price) {
+        return price.scale() > Commons.PRICE_SCALE && price.stripTrailingZeros().scale() > Commons.PRICE_SCALE
+                ? price
+                : null;
+    }
+
+    /**
+     * Converts a scaled price into a {@link BigDecimal} with the number of decimals it was written with.
+     *
+     * @param scaledPrice The price scaled by {@link Commons#PRICE_SCALE}.
+     * @param scale The decimals of the price as written, between 0 and {@link Commons#PRICE_SCALE}.
+     */
+    public static BigDecimal toPrice(long scaledPrice, int scale) {
+        return BigDecimal.valueOf(scaledPrice / POWERS_OF_TEN[Commons.PRICE_SCALE - scale], scale);
+    }
+
+    /**
+     * Appends a point, growing the arrays when they are full.
+     */
+    public void add(int epochDay, long scaledPrice, int scale) {
+        add(epochDay, scaledPrice, scale, null);
+    }
+
+    /**
+     * Appends a point whose price may have more than {@link Commons#PRICE_SCALE} decimals.
+     *
+     * @param exactPrice The price as written, as returned by {@link #exactPrice(BigDecimal)}, or {@code null} if
+     *                   {@code scaledPrice} and {@code scale} represent it exactly.
+     */
+    public void add(int epochDay, long scaledPrice, int scale, BigDecimal exactPrice) {
+        if (size == epochDays.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            scaledPrices = Arrays.copyOf(scaledPrices, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+            if (exactPrices != null) {
+                exactPrices = Arrays.copyOf(exactPrices, capacity);
+            }
+        }
+        if (exactPrice != null && exactPrices == null) {
+            exactPrices = new BigDecimal[epochDays.length];
+        }
+        epochDays[size] = epochDay;
+        scaledPrices[size] = scaledPrice;
+        scales[size] = (byte) scale;
+        if (exactPrices != null) {
+            exactPrices[size] = exactPrice;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The day of the point at {@code index}, as days since 1970-01-01.
+     */
+    public int epochDay(int index) {
+        return epochDays[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * @return The price of the point at {@code index} scaled by {@link Commons#PRICE_SCALE}, rounded if it has more
+     *         decimals.
+     */
+    public long scaledPrice(int index) {
+        return scaledPrices[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * @return A copy of the scaled prices of the points, in order.
+     */
+    public long[] scaledPrices() {
+        return Arrays.copyOf(scaledPrices, size);
+    }
+
+    /**
+     * @return The decimals the price at {@code index} was written with, capped at {@link Commons#PRICE_SCALE}.
+     */
+    public int scale(int index) {
+        return scales[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * @return The price at {@code index} as written if it has more than {@link Commons#PRICE_SCALE} decimals,
+     *         otherwise {@code null}.
+     */
+    public BigDecimal exactPrice(int index) {
+        int position = Objects.checkIndex(index, size);
+        return exactPrices == null ? null : exactPrices[position];
+    }
+
+    /**
+     * @return The price at {@code index} with the decimals it was written with.
+     */
+    public BigDecimal price(int index) {
+        return priceAt(Objects.checkIndex(index, size));
+    }
+
+    /**
+     * @return The prices in order, with the decimals they were written with.
+     */
+    public List<BigDecimal> prices() {
+        List<BigDecimal> prices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            prices.add(priceAt(i));
+        }
+        return prices;
+    }
+
+    private BigDecimal priceAt(int position) {
+        if (exactPrices != null && exactPrices[position] != null) {
+            return exactPrices[position];
+        }
+        return toPrice(scaledPrices[position], scales[position]);
+    }
+
+    /**
+     * @return A series with its own arrays and the same points.
+     */
+    public PriceSeries copy() {
+        return new PriceSeries(Arrays.copyOf(epochDays, size), Arrays.copyOf(scaledPrices, size),
+                Arrays.copyOf(scales, size), exactPrices == null ? null : Arrays.copyOf(exactPrices, size), size);
+    }
+
+    /**
+     * Sorts the points by day, keeping the order in which they were added for points of the same day, like
+     * {@code List.sort} does with a comparator on the date.
+     *
+     * <p>A series already in order is only scanned. Otherwise the day and the position of every point are packed
+     * in a {@code long} and sorted as primitives, and the arrays are permuted in place following the cycles of the
+     * permutation.</p>
+     */
+    public void sortByDate() {
+        int first = 1;
+        while (first < size && epochDays[first - 1] <= epochDays[first]) {
+            first++;
+        }
+        if (first >= size) {
+            return;
+        }
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) epochDays[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int start = 0; start < size; start++) {
+            if ((int) keys[start] == start) {
+                continue;
+            }
+            int day = epochDays[start];
+            long price = scaledPrices[start];
+            byte scale = scales[start];
+            BigDecimal exactPrice = exactPrices == null ? null : exactPrices[start];
+            int target = start;
+            while (true) {
+                int source = (int) keys[target];
+                keys[target] = (keys[target] & 0xFFFF_FFFF_0000_0000L) | target;
+                if (source == start) {
+                    epochDays[target] = day;
+                    scaledPrices[target] = price;
+                    scales[target] = scale;
+                    if (exactPrices != null) {
+                        exactPrices[target] = exactPrice;
+                    }
+                    break;
+                }
+                epochDays[target] = epochDays[source];
+                scaledPrices[target] = scaledPrices[source];
+                scales[target] = scales[source];
+                if (exactPrices != null) {
+                    exactPrices[target] = exactPrices[source];
+                }
+                target = source;
+            }
+        }
+    }
+
+    /**
+     * Builds the {@link PriceData} of every point, dated at the start of its day in the default time zone like the
+     * dates parsed from {@code yyyy-MM-dd}.
+     */
+    public List<PriceData> toPriceDataList() {
+        return toPriceDataList(0, size);
+    }
+
+    /**
+     * Same as {@link #toPriceDataList()} for a list of positions, in the order given.
+     *
+     * @param indexes The positions of the points; only the first {@code count} are read.
+     */
+    public List<PriceData> toPriceDataList(int[] indexes, int count) {
+        DateCache dates = new DateCache();
+        List<PriceData> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int position = Objects.checkIndex(indexes[i], size);
+            points.add(new PriceData(dates.toDate(epochDays[position]), priceAt(position)));
+        }
+        return points;
+    }
+
+    private List<PriceData> toPriceDataList(int from, int to) {
+        DateCache dates = new DateCache();
+        List<PriceData> points = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            points.add(new PriceData(dates.toDate(epochDays[i]), priceAt(i)));
+        }
+        return points;
+    }
+
+    /**
+     * Converts consecutive points of the same day with a single time zone lookup.
+     */
+    private static final class DateCache {
+        private final ZoneId zone = ZoneId.systemDefault();
+        private int epochDay = Integer.MIN_VALUE;
+        private long millis;
+
+        private Date toDate(int day) {
+            if (day != epochDay) {
+                millis = LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+                epochDay = day;
+            }
+            return new Date(millis);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import java.math.BigDecimal;
+
+/**
+ * SMA and standard deviation of a window of prices, excluding outliers, as computed by
+ * {@link Commons#calculateStatistics}.
+ */
+public record PriceStatistics(BigDecimal sma, BigDecimal stdDev) {
+}
@@ -0,0 +1,198 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch of a stream of values, with a deterministic bound on its error.
+ *
+ * <p>Values are kept in levels of at most {@code capacity} values; a value of level {@code h} stands for
+ * {@code 2^h} values of the stream. When a level fills up it is sorted and every other value, starting alternately
+ * at the first and at the second one, moves up a level, so the sketch keeps {@code O(capacity * log(n / capacity))}
+ * values for a stream of {@code n}. Two sketches are merged by adding the values of each level of one to the same
+ * level of the other, so partitions of a stream can be sketched independently and combined.</p>
+ *
+ * <p>Error bound: each time a level {@code h} is compacted, the estimated rank of any value moves by at most
+ * {@code 2^h}. The sketch adds those amounts up in {@link #getMaxRankError()}, which is never more than
+ * {@code n * log2(n / capacity) / capacity}. {@link #quantile(double)} returns a value between the exact values at
+ * ranks {@code floor(p * (n - 1)) - getMaxRankError()} and {@code ceil(p * (n - 1)) + getMaxRankError()}. The
+ * exact values are those {@code Commons.calculateQuartile} interpolates between. Until the first compaction, that is
+ * for up to {@code capacity} values, the error is zero and the result is the same interpolation.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class QuantileSketch {
+
+    /**
+     * Capacity of each level of the sketches created with {@link #QuantileSketch()}: about 3 KB per level.
+     */
+    public static final int DEFAULT_CAPACITY = 200;
+
+    private final int capacity;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private long[] compactions = new long[0];
+    private long count;
+    private long maxRankError;
+
+    public QuantileSketch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Values kept per level, an even number of at least 2.
+     */
+    public QuantileSketch(int capacity) {
+        if (capacity < 2 || capacity % 2 != 0) {
+            throw new IllegalArgumentException("Capacity must be an even number of at least 2: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a value of the stream.
+     */
+    public void update(double value) {
+        add(0, value);
+        count++;
+    }
+
+    /**
+     * Adds the values sketched by another sketch of the same capacity; {@code other} is not modified.
+     *
+     * @return This sketch.
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge sketches of capacity " + capacity + " and "
+                    + other.capacity);
+        }
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                add(level, other.levels[level][i]);
+            }
+        }
+        count += other.count;
+        maxRankError += other.maxRankError;
+        return this;
+    }
+
+    /**
+     * @return The number of values of the stream.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The most the rank of any value estimated by the sketch can differ from its rank in the stream.
+     */
+    public long getMaxRankError() {
+        return maxRankError;
+    }
+
+    /**
+     * Estimates a quantile with the linear interpolation of {@code Commons.calculateQuartile}.
+     *
+     * @param fraction The quantile, between 0 and 1.
+     * @return The estimated quantile, or {@code NaN} if the sketch is empty.
+     */
+    public double quantile(double fraction) {
+        return quantiles(fraction)[0];
+    }
+
+    /**
+     * Estimates several quantiles, sorting the values kept by the sketch once.
+     *
+     * @param fractions The quantiles, between 0 and 1.
+     * @return The estimated quantiles, in the order of {@code fractions}; {@code NaN} if the sketch is empty.
+     */
+    public double[] quantiles(double... fractions) {
+        double[] result = new double[fractions.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        double[][] sorted = new double[levels.length][];
+        int[] heads = new int[levels.length];
+        int retained = 0;
+        for (int level = 0; level < levels.length; level++) {
+            sorted[level] = Arrays.copyOf(levels[level], sizes[level]);
+            Arrays.sort(sorted[level]);
+            retained += sizes[level];
+        }
+
+        // Merges the sorted levels, accumulating the weight of each value: 2^level.
+        double[] values = new double[retained];
+        long[] cumulative = new long[retained];
+        long weight = 0;
+        for (int i = 0; i < retained; i++) {
+            int next = -1;
+            for (int level = 0; level < sorted.length; level++) {
+                if (heads[level] < sorted[level].length
+                        && (next < 0 || sorted[level][heads[level]] < sorted[next][heads[next]])) {
+                    next = level;
+                }
+            }
+            values[i] = sorted[next][heads[next]++];
+            weight += 1L << next;
+            cumulative[i] = weight;
+        }
+
+        for (int q = 0; q < fractions.length; q++) {
+            double index = fractions[q] * (count - 1);
+            long lower = (long) Math.floor(index);
+            long upper = (long) Math.ceil(index);
+            double lowerValue = values[rankPosition(cumulative, lower)];
+            double upperValue = values[rankPosition(cumulative, upper)];
+            result[q] = lowerValue + (upperValue - lowerValue) * (index - lower);
+        }
+        return result;
+    }
+
+    /**
+     * @return The position of the first value whose cumulative weight is more than {@code rank}.
+     */
+    private static int rankPosition(long[] cumulative, long rank) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] > rank) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private void add(int level, double value) {
+        if (level >= levels.length) {
+            int height = levels.length;
+            levels = Arrays.copyOf(levels, level + 1);
+            for (int added = height; added <= level; added++) {
+                levels[added] = new double[capacity];
+            }
+            sizes = Arrays.copyOf(sizes, level + 1);
+            compactions = Arrays.copyOf(compactions, level + 1);
+        }
+        levels[level][sizes[level]++] = value;
+        if (sizes[level] == capacity) {
+            compact(level);
+        }
+    }
+
+    /**
+     * Sorts a full level and moves every other value up, keeping none at this level.
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        Arrays.sort(values, 0, capacity);
+        int offset = (int) (compactions[level]++ & 1);
+        sizes[level] = 0;
+        maxRankError += 1L << level;
+        for (int i = offset; i < capacity; i += 2) {
+            add(level + 1, values[i]);
+        }
+    }
+}
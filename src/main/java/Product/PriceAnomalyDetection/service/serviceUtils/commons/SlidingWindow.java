@@ -0,0 +1,219 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import java.util.Arrays;
+
+/**
+ * Multiset of scaled prices taken from a known series, for windows that move one price at a time.
+ *
+ * <p>The distinct prices of the series are sorted once, and the window keeps, for each of them, how many times it
+ * holds it, along with their sum and their exact sum of squares, in Fenwick trees indexed by the rank of the price
+ * among the distinct ones. Adding or removing a price, reading the price of a given rank in the window and reading
+ * the count, sum and sum of squares of the prices within a range all cost {@code O(log d)}, with {@code d} the
+ * number of distinct prices of the series, whatever the window size. A series of {@code n} prices is then
+ * traversed in {@code O(n log n)}, without allocating after the constructor. The statistics of the window are
+ * computed by {@link #summarize(WindowStatistics)}.</p>
+ *
+ * <p>Instances are not thread safe.</p>
+ */
+public class SlidingWindow {
+
+    /**
+     * Distinct prices of the series, ascending.
+     */
+    private final long[] values;
+    private final int[] multiplicities;
+    private final int[] counts;
+    private final long[] sums;
+    private final long[] squaresHigh;
+    private final long[] squaresLow;
+    private final int highestBit;
+    private int size;
+
+    private int prefixCount;
+    private long prefixSum;
+    private long prefixSquaresHigh;
+    private long prefixSquaresLow;
+
+    /**
+     * @param prices Scaled prices the window will hold, in any order and with repetitions.
+     * @param length Number of prices of {@code prices} to consider, starting at index 0.
+     */
+    public SlidingWindow(long[] prices, int length) {
+        long[] sorted = Arrays.copyOf(prices, length);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.values = Arrays.copyOf(sorted, distinct);
+        this.multiplicities = new int[distinct];
+        this.counts = new int[distinct + 1];
+        this.sums = new long[distinct + 1];
+        this.squaresHigh = new long[distinct + 1];
+        this.squaresLow = new long[distinct + 1];
+        this.highestBit = distinct == 0 ? 0 : Integer.highestOneBit(distinct);
+    }
+
+    /**
+     * Adds a price to the window.
+     *
+     * @param price Scaled price to add.
+     * @throws IllegalArgumentException If the price is not one of the series the window was created with.
+     */
+    public void add(long price) {
+        int index = Arrays.binarySearch(values, price);
+        if (index < 0) {
+            throw new IllegalArgumentException("Price " + price + " is not in the series of the window");
+        }
+        multiplicities[index]++;
+        size++;
+        update(index, price, 1);
+    }
+
+    /**
+     * Removes one occurrence of a price from the window.
+     *
+     * @param price Scaled price to remove.
+     * @throws IllegalStateException If the price is not in the window.
+     */
+    public void remove(long price) {
+        int index = Arrays.binarySearch(values, price);
+        if (index < 0 || multiplicities[index] == 0) {
+            throw new IllegalStateException("Price " + price + " is not in the window");
+        }
+        multiplicities[index]--;
+        size--;
+        update(index, -price, -1);
+    }
+
+    private void update(int index, long price, int count) {
+        long squareHigh = Math.multiplyHigh(price, price);
+        long squareLow = price * price;
+        if (count < 0) {
+            squareHigh = ~squareHigh + (squareLow == 0 ? 1 : 0);
+            squareLow = -squareLow;
+        }
+        for (int i = index + 1; i < counts.length; i += i & -i) {
+            counts[i] += count;
+            sums[i] += price;
+            long low = squaresLow[i] + squareLow;
+            squaresHigh[i] += squareHigh + (Long.compareUnsigned(low, squareLow) < 0 ? 1 : 0);
+            squaresLow[i] = low;
+        }
+    }
+
+    /**
+     * Removes every price from the window.
+     */
+    public void clear() {
+        Arrays.fill(multiplicities, 0);
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0);
+        Arrays.fill(squaresHigh, 0);
+        Arrays.fill(squaresLow, 0);
+        size = 0;
+    }
+
+    /**
+     * Computes the Interquartile Range filter, mean and standard deviation of the current window, the same way
+     * {@link WindowStatistics#compute} does for an array of prices.
+     *
+     * @param statistics Holder that receives the statistics.
+     */
+    public void summarize(WindowStatistics statistics) {
+        if (size == 0) {
+            statistics.summarizeMoments(0, 0, 0, 0);
+            return;
+        }
+        long q1Times4 = quartileTimes4(1);
+        long q3Times4 = quartileTimes4(3);
+        long lowerBoundTimes8 = 5 * q1Times4 - 3 * q3Times4;
+        long upperBoundTimes8 = 5 * q3Times4 - 3 * q1Times4;
+
+        prefix(firstAbove(lowerBoundTimes8, false));
+        int count = -prefixCount;
+        long sum = -prefixSum;
+        long high = prefixSquaresHigh;
+        long low = prefixSquaresLow;
+        prefix(firstAbove(upperBoundTimes8, true));
+        count += prefixCount;
+        sum += prefixSum;
+        long acceptedLow = prefixSquaresLow - low;
+        long acceptedHigh = prefixSquaresHigh - high - (Long.compareUnsigned(prefixSquaresLow, low) < 0 ? 1 : 0);
+        statistics.summarizeMoments(count, sum, acceptedHigh, acceptedLow);
+    }
+
+    /**
+     * Same quartile as {@link WindowStatistics#quartileTimes4}, reading the prices of the window by rank.
+     */
+    private long quartileTimes4(int quarter) {
+        int position = quarter * (size - 1);
+        int lowerIndex = position / 4;
+        int remainder = position % 4;
+        long lowerValue = select(lowerIndex);
+        if (remainder == 0) {
+            return lowerValue * 4;
+        }
+        long upperValue = select(lowerIndex + 1);
+        return lowerValue * 4 + remainder * (upperValue - lowerValue);
+    }
+
+    /**
+     * @return The price of the given zero-based rank in the window, counting repetitions.
+     */
+    private long select(int rank) {
+        int position = 0;
+        int remaining = rank + 1;
+        for (int step = highestBit; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < counts.length && counts[next] < remaining) {
+                position = next;
+                remaining -= counts[next];
+            }
+        }
+        return values[position];
+    }
+
+    /**
+     * @return The number of distinct prices {@code v} such that {@code v * 8} is below {@code boundTimes8}, or at
+     *         most {@code boundTimes8} if {@code inclusive}.
+     */
+    private int firstAbove(long boundTimes8, boolean inclusive) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long valueTimes8 = values[middle] * 8;
+            if (valueTimes8 < boundTimes8 || inclusive && valueTimes8 == boundTimes8) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Reads the count, sum and sum of squares of the prices of the window among the {@code distinct} smallest
+     * distinct prices into the {@code prefix} fields.
+     */
+    private void prefix(int distinct) {
+        prefixCount = 0;
+        prefixSum = 0;
+        prefixSquaresHigh = 0;
+        prefixSquaresLow = 0;
+        for (int i = distinct; i > 0; i -= i & -i) {
+            prefixCount += counts[i];
+            prefixSum += sums[i];
+            long low = prefixSquaresLow + squaresLow[i];
+            prefixSquaresHigh += squaresHigh[i] + (Long.compareUnsigned(low, squaresLow[i]) < 0 ? 1 : 0);
+            prefixSquaresLow = low;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,226 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import java.util.Arrays;
+
+/**
+ * Primitive counterpart of {@link Commons#calculateSMA}, {@link Commons#calculateStandardDeviation} and
+ * {@link Commons#removeOutliers} working on prices scaled with {@link Commons#toScaledPrice}.
+ *
+ * <p>An instance keeps the statistics of the last computed window and an internal scratch buffer that only
+ * grows when a larger window is seen, so repeated calls do not allocate. Instances are not thread safe;
+ * each caller should keep its own.</p>
+ *
+ * <p>The Interquartile Range filter is evaluated exactly: quartiles are interpolated at quarter positions,
+ * so the bounds are kept multiplied by 8 as integers. Mean and standard deviation are computed in scaled units from
+ * the count, the sum and the sum of squares of the filtered values, all kept exactly, the sum of squares on 128
+ * bits; see {@link #summarizeMoments}. The same moments can be kept incrementally, as {@link SlidingWindow} does,
+ * and give the same result.</p>
+ */
+public class WindowStatistics {
+
+    private static final int NO_SKIP = -1;
+
+    private long[] scratch = new long[16];
+    private int count;
+    private double mean;
+    private double standardDeviation;
+
+    /**
+     * Computes the statistics of {@code prices[from, to)}.
+     *
+     * @param prices Scaled prices.
+     * @param from First index of the window, inclusive.
+     * @param to Last index of the window, exclusive.
+     */
+    public void compute(long[] prices, int from, int to) {
+        compute(prices, from, to, NO_SKIP);
+    }
+
+    /**
+     * Computes the statistics of {@code prices[from, to)} leaving out the price at {@code skip}.
+     *
+     * <p>The steps mirror the exact path:
+     * <ol>
+     *     <li>Copies the window into the scratch buffer and sorts it.</li>
+     *     <li>Calculates Q1 and Q3 with linear interpolation, and the bounds {@code Q1 - 1.5 * IQR} and
+     *         {@code Q3 + 1.5 * IQR}.</li>
+     *     <li>Calculates the mean and the population standard deviation of the prices inside the bounds.</li>
+     * </ol></p>
+     *
+     * @param prices Scaled prices.
+     * @param from First index of the window, inclusive.
+     * @param to Last index of the window, exclusive.
+     * @param skip Index inside the window to leave out, or a negative value to keep every price.
+     */
+    public void compute(long[] prices, int from, int to, int skip) {
+        int size = 0;
+        ensureCapacity(to - from);
+        for (int i = from; i < to; i++) {
+            if (i != skip) {
+                scratch[size++] = prices[i];
+            }
+        }
+        sortAndSummarize(size);
+    }
+
+    private void sortAndSummarize(int size) {
+        Arrays.sort(scratch, 0, size);
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += scratch[i];
+        }
+        summarizeSorted(scratch, size, sum);
+    }
+
+    /**
+     * Computes the statistics of a window that is already sorted in ascending order. The window is read in place
+     * and never copied.
+     *
+     * <p>Only the prices rejected by the Interquartile Range filter are subtracted from {@code sum}, so the mean
+     * costs as many steps as there are rejected prices; the sum of squares needs one pass over the accepted
+     * ones.</p>
+     *
+     * @param sorted Scaled prices sorted in ascending order.
+     * @param size Number of prices to consider, starting at index 0.
+     * @param sum Sum of the first {@code size} prices.
+     */
+    public void summarizeSorted(long[] sorted, int size, long sum) {
+        if (size == 0) {
+            count = 0;
+            mean = 0;
+            standardDeviation = 0;
+            return;
+        }
+        long q1Times4 = quartileTimes4(sorted, size, 1);
+        long q3Times4 = quartileTimes4(sorted, size, 3);
+        long lowerBoundTimes8 = 5 * q1Times4 - 3 * q3Times4;
+        long upperBoundTimes8 = 5 * q3Times4 - 3 * q1Times4;
+
+        int start = 0;
+        while (start < size && sorted[start] * 8 < lowerBoundTimes8) {
+            sum -= sorted[start];
+            start++;
+        }
+        int end = size;
+        while (end > start && sorted[end - 1] * 8 > upperBoundTimes8) {
+            end--;
+            sum -= sorted[end];
+        }
+
+        long squaresHigh = 0;
+        long squaresLow = 0;
+        for (int i = start; i < end; i++) {
+            long squareLow = sorted[i] * sorted[i];
+            long low = squaresLow + squareLow;
+            squaresHigh += Math.multiplyHigh(sorted[i], sorted[i])
+                    + (Long.compareUnsigned(low, squareLow) < 0 ? 1 : 0);
+            squaresLow = low;
+        }
+        summarizeMoments(end - start, sum, squaresHigh, squaresLow);
+    }
+
+    /**
+     * Sets the mean and the population standard deviation of {@code count} prices from their exact moments.
+     *
+     * <p>The sum of squares is first centred on {@code c = floor(sum / count)} with 128-bit integer arithmetic,
+     * {@code S = sumOfSquares - 2 * c * sum + count * c * c}, which is exact even if the intermediate products
+     * wrap around since {@code S} itself fits. The variance is then {@code (S - r * r / count) / count}, with
+     * {@code r = sum - c * count} between 0 and {@code count}, so no two large values are subtracted in
+     * {@code double} and the variance of prices that barely differ keeps its precision.</p>
+     *
+     * @param count Number of prices.
+     * @param sum Sum of the prices.
+     * @param squaresHigh High 64 bits of the sum of the squares of the prices.
+     * @param squaresLow Low 64 bits of the sum of the squares of the prices.
+     */
+    void summarizeMoments(int count, long sum, long squaresHigh, long squaresLow) {
+        this.count = count;
+        if (count == 0) {
+            mean = 0;
+            standardDeviation = 0;
+            return;
+        }
+        mean = (double) sum / count;
+        long c = Math.floorDiv(sum, count);
+        long r = sum - c * count;
+
+        long productHigh = Math.multiplyHigh(c, sum);
+        long productLow = c * sum;
+        long twiceHigh = (productHigh << 1) | (productLow >>> 63);
+        long twiceLow = productLow << 1;
+        long centredLow = squaresLow - twiceLow;
+        long centredHigh = squaresHigh - twiceHigh - (Long.compareUnsigned(squaresLow, twiceLow) < 0 ? 1 : 0);
+
+        long squareHigh = Math.multiplyHigh(c, c);
+        long squareLow = c * c;
+        long scaledLow = squareLow * count;
+        long scaledHigh = squareHigh * count + unsignedMultiplyHigh(squareLow, count);
+        long low = centredLow + scaledLow;
+        centredHigh += scaledHigh + (Long.compareUnsigned(low, scaledLow) < 0 ? 1 : 0);
+        centredLow = low;
+
+        double centred = centredHigh * 0x1p64 + ((centredLow >>> 1) * 2.0 + (centredLow & 1));
+        double variance = (centred - (double) r * r / count) / count;
+        standardDeviation = Math.sqrt(Math.max(0, variance));
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * Calculates Q1 ({@code quarter = 1}) or Q3 ({@code quarter = 3}) multiplied by 4, using the same
+     * linear interpolation as {@link Commons#removeOutliers}. Since the position {@code quarter * (size - 1) / 4}
+     * always falls on a multiple of 0.25, the result is an exact integer.
+     */
+    static long quartileTimes4(long[] sorted, int size, int quarter) {
+        int position = quarter * (size - 1);
+        int lowerIndex = position / 4;
+        int remainder = position % 4;
+        long lowerValue = sorted[lowerIndex];
+        if (remainder == 0) {
+            return lowerValue * 4;
+        }
+        long upperValue = sorted[lowerIndex + 1];
+        return lowerValue * 4 + remainder * (upperValue - lowerValue);
+    }
+
+    /**
+     * Checks whether a scaled price falls outside {@code mean ± kValue * standardDeviation} of the last window.
+     *
+     * @param scaledPrice The scaled price to evaluate.
+     * @param kValue Number of standard deviations accepted around the mean.
+     * @return {@code true} if the price is below the lower limit or above the upper limit.
+     */
+    public boolean isOutside(long scaledPrice, double kValue) {
+        double margin = kValue * standardDeviation;
+        return scaledPrice < mean - margin || scaledPrice > mean + margin;
+    }
+
+    private void ensureCapacity(int size) {
+        if (scratch.length < size) {
+            scratch = new long[Math.max(size, scratch.length * 2)];
+        }
+    }
+
+    /**
+     * @return Number of prices that passed the Interquartile Range filter in the last window.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Mean of the filtered prices of the last window, in scaled units.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return Population standard deviation of the filtered prices of the last window, in scaled units.
+     */
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+}
@@ -2,6 +2,7 @@ package Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer;
 
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -9,4 +10,6 @@ public interface DataTransformer {
 
     Product transformToProduct(String id, List<PriceData> priceDataList);
 
+    Product transformToProduct(String id, PriceSeries series);
+
 }
@@ -2,6 +2,11 @@ package Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer;
 
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceStatistics;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.SlidingWindow;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.WindowStatistics;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,8 +18,8 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
 
-import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateSMA;
-import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateStandardDeviation;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.calculateStatistics;
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.toScaledPrice;
 
 @Component
 @AllArgsConstructor
@@ -25,6 +30,8 @@ public class DataTransformerMovingWindow implements DataTransformer {
     private int windowSize;
     @Value("${algorithm.k-value}")
     private BigDecimal kValue;
+    @Value("${algorithm.math-mode}")
+    private MathMode mathMode = MathMode.EXACT;
     private static final MathContext MATH_CONTEXT = new MathContext(10, RoundingMode.HALF_UP);
 
     /**
@@ -67,6 +74,26 @@ public class DataTransformerMovingWindow implements DataTransformer {
 
 
         priceDataList.sort(Comparator.comparing(PriceData::getDate));
+
+        Product product = new Product();
+        product.setId(id);
+        List<PriceData> outliers = new ArrayList<>();
+        List<PriceData> nonOutliers = new ArrayList<>();
+
+        if (mathMode == MathMode.PRIMITIVE) {
+            long[] scaledPrices = new long[priceDataList.size()];
+            for (int i = 0; i < scaledPrices.length; i++) {
+                scaledPrices[i] = toScaledPrice(priceDataList.get(i).getPrice());
+            }
+            boolean[] outlierFlags = detectOutlierFlags(scaledPrices);
+            for (int i = 0; i < outlierFlags.length; i++) {
+                (outlierFlags[i] ? outliers : nonOutliers).add(priceDataList.get(i));
+            }
+            product.setOutliers(outliers);
+            product.setNonOutliers(nonOutliers);
+            return product;
+        }
+
         List<BigDecimal> sortedPrices = new ArrayList<>();
         for (PriceData priceData : priceDataList) {
             sortedPrices.add(priceData.getPrice());
@@ -74,12 +101,6 @@ public class DataTransformerMovingWindow implements DataTransformer {
 
         Set<Integer> outliersIndexes = detectOutliers(sortedPrices);
 
-
-        Product product = new Product();
-        product.setId(id);
-        List<PriceData> outliers = new ArrayList<>();
-        List<PriceData> nonOutliers = new ArrayList<>();
-
         for (int i = 0; i < priceDataList.size(); i++) {
             if (outliersIndexes.contains(i)) {
                 outliers.add(priceDataList.get(i));
@@ -93,6 +114,57 @@ public class DataTransformerMovingWindow implements DataTransformer {
         return product;
     }
 
+    /**
+     * Transforms the price series of an upload into a {@link Product}, classifying its points like
+     * {@link #transformToProduct(String, List)}.
+     *
+     * <p>The series is sorted in place by date and classified on its primitive arrays; {@link PriceData} objects are
+     * only built for the outliers and non-outliers of the product.</p>
+     *
+     * @param id The identifier for the product to be created.
+     * @param series The prices of the product; it is sorted by date.
+     * @return A {@link Product} object containing the id, outliers, and non-outliers of the series.
+     */
+    @Override
+    public Product transformToProduct(String id, PriceSeries series) {
+        Product product = new Product();
+        product.setId(id);
+        if (series == null || series.isEmpty()) {
+            product.setOutliers(new ArrayList<PriceData>());
+            product.setNonOutliers(new ArrayList<PriceData>());
+            return product;
+        }
+
+        series.sortByDate();
+        int size = series.size();
+        boolean[] outlierFlags;
+        if (size == 1) {
+            outlierFlags = new boolean[1];
+        } else if (mathMode == MathMode.PRIMITIVE) {
+            outlierFlags = detectOutlierFlags(series);
+        } else {
+            outlierFlags = new boolean[size];
+            for (int index : detectOutliers(series.prices())) {
+                outlierFlags[index] = true;
+            }
+        }
+
+        int[] outlierIndexes = new int[size];
+        int[] nonOutlierIndexes = new int[size];
+        int outlierCount = 0;
+        int nonOutlierCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (outlierFlags[i]) {
+                outlierIndexes[outlierCount++] = i;
+            } else {
+                nonOutlierIndexes[nonOutlierCount++] = i;
+            }
+        }
+        product.setOutliers(series.toPriceDataList(outlierIndexes, outlierCount));
+        product.setNonOutliers(series.toPriceDataList(nonOutlierIndexes, nonOutlierCount));
+        return product;
+    }
+
     /**
      * Detects outliers in a list of prices based on a statistical method using a sliding window.
      *
@@ -100,6 +172,10 @@ public class DataTransformerMovingWindow implements DataTransformer {
      * standard deviation for a sliding window of prices around each price. If a price is outside the calculated
      * lower and upper limits (based on the SMA and standard deviation), it is considered an outlier.</p>
      *
+     * <p>With {@link MathMode#PRIMITIVE} the prices are converted once to scaled {@code long} values and classified
+     * by {@link #detectOutlierFlags(long[])}; otherwise every window is built and evaluated with {@link BigDecimal}
+     * arithmetic.</p>
+     *
      * <p>The method performs the following steps for each price:
      * <ol>
      *     <li>Defines a sliding window of prices around the current price.</li>
@@ -112,6 +188,9 @@ public class DataTransformerMovingWindow implements DataTransformer {
      * @return A set of indices of the prices in the list that are considered outliers.
      */
     public Set<Integer> detectOutliers(List<BigDecimal> prices) {
+        if (mathMode == MathMode.PRIMITIVE) {
+            return detectOutliersPrimitive(prices);
+        }
         Set<Integer> outlierIndices = new HashSet<>();
 
         for (int i = 0; i < prices.size(); i++) {
@@ -119,8 +198,9 @@ public class DataTransformerMovingWindow implements DataTransformer {
             List<BigDecimal> window = this.getWindow(i, prices);
 
 
-            BigDecimal sma = calculateSMA(window);
-            BigDecimal stdDev = calculateStandardDeviation(window, sma);
+            PriceStatistics statistics = calculateStatistics(window);
+            BigDecimal sma = statistics.sma();
+            BigDecimal stdDev = statistics.stdDev();
 
 
             BigDecimal lowerLimit = sma.subtract(kValue.multiply(stdDev, MATH_CONTEXT), MATH_CONTEXT);
@@ -136,6 +216,74 @@ public class DataTransformerMovingWindow implements DataTransformer {
         return outlierIndices;
     }
 
+    private Set<Integer> detectOutliersPrimitive(List<BigDecimal> prices) {
+        long[] scaledPrices = new long[prices.size()];
+        for (int i = 0; i < scaledPrices.length; i++) {
+            scaledPrices[i] = toScaledPrice(prices.get(i));
+        }
+        boolean[] outlierFlags = detectOutlierFlags(scaledPrices);
+        Set<Integer> outlierIndices = new HashSet<>();
+        for (int i = 0; i < outlierFlags.length; i++) {
+            if (outlierFlags[i]) {
+                outlierIndices.add(i);
+            }
+        }
+        return outlierIndices;
+    }
+
+    /**
+     * Flags the outliers of a series of scaled prices moving a {@link SlidingWindow} along the series.
+     *
+     * <p>The window of index {@code i} holds the prices in {@code [i - windowSize / 2, i + windowSize / 2]},
+     * without the price at {@code i} itself, exactly as {@link #detectOutliers(List)} builds it. Moving from
+     * {@code i} to {@code i + 1} removes the new centre and the price leaving on the left, and adds the old
+     * centre and the price entering on the right. Each move and each summary cost {@code O(log n)}, so the whole
+     * series is classified in {@code O(n log n)} whatever the window size.</p>
+     *
+     * @param scaledPrices Prices scaled with {@code Commons.toScaledPrice}, sorted by date.
+     * @return An array where {@code true} marks the outliers.
+     */
+    public boolean[] detectOutlierFlags(long[] scaledPrices) {
+        return detectOutlierFlags(scaledPrices, scaledPrices.length);
+    }
+
+    /**
+     * Same as {@link #detectOutlierFlags(long[])} for the scaled prices of a series sorted by date.
+     */
+    public boolean[] detectOutlierFlags(PriceSeries series) {
+        return detectOutlierFlags(series.scaledPrices(), series.size());
+    }
+
+    private boolean[] detectOutlierFlags(long[] scaledPrices, int size) {
+        boolean[] outlierFlags = new boolean[size];
+        int half = windowSize / 2;
+        double k = kValue.doubleValue();
+        SlidingWindow window = new SlidingWindow(scaledPrices, size);
+        WindowStatistics statistics = new WindowStatistics();
+
+        for (int j = 1; j <= half && j < size; j++) {
+            window.add(scaledPrices[j]);
+        }
+        for (int i = 0; i < size; i++) {
+            window.summarize(statistics);
+            outlierFlags[i] = statistics.isOutside(scaledPrices[i], k);
+
+            int next = i + 1;
+            if (half == 0 || next == size) {
+                continue;
+            }
+            window.remove(scaledPrices[next]);
+            window.add(scaledPrices[i]);
+            if (i - half >= 0) {
+                window.remove(scaledPrices[i - half]);
+            }
+            if (next + half < size) {
+                window.add(scaledPrices[next + half]);
+            }
+        }
+        return outlierFlags;
+    }
+
     private List<BigDecimal> getWindow(int i, List<BigDecimal> prices) {
 
         int half = windowSize / 2;
@@ -0,0 +1,138 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.metrics;
+
+import Product.PriceAnomalyDetection.service.productService.ProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the scoring paths of {@link ProductService}.
+ *
+ * <p>Every meter is registered once, when this component is created, so recording a measure while scoring only
+ * reads the clock and updates the meter: no meter is looked up and no tag is built. Timers and distributions
+ * publish a percentile histogram, so the Prometheus endpoint exposes buckets that can be aggregated across
+ * nodes.</p>
+ *
+ * <ul>
+ *     <li>{@code scoring.stage}: time spent in each {@link Stage}, tagged with {@code path} and {@code stage}.</li>
+ *     <li>{@code scoring.duration}: time of a whole call, tagged with {@code path}.</li>
+ *     <li>{@code scoring.snapshot.lookups}: detection snapshots found and missed in Redis, tagged with
+ *         {@code result}.</li>
+ *     <li>{@code scoring.conflicts}: scores discarded because the state changed in the meantime.</li>
+ *     <li>{@code scoring.history.length}: points read to rebuild a detection state.</li>
+ *     <li>{@code scoring.window.size}: points in the window a price was scored against.</li>
+ * </ul>
+ */
+@Component
+public class ScoringMetrics {
+
+    /**
+     * Scoring endpoint being measured.
+     */
+    public enum Path {
+        SINGLE, BATCH
+    }
+
+    /**
+     * Steps of a score, in the order they run. In the batch path {@link #STATE_REBUILD} covers the single read of
+     * the histories of every state to rebuild, and the items are scored in parallel, so {@link #DETECT} covers the
+     * whole parallel step, including the rebuilds themselves.
+     */
+    public enum Stage {
+        SNAPSHOT_READ, PRODUCT_READ, STATE_REBUILD, DETECT, RECORD, SNAPSHOT_WRITE, INVALIDATE
+    }
+
+    private final Timer[][] stages = new Timer[Path.values().length][Stage.values().length];
+    private final Timer[] durations = new Timer[Path.values().length];
+    private final Counter snapshotHits;
+    private final Counter snapshotMisses;
+    private final Counter conflicts;
+    private final DistributionSummary historyLength;
+    private final DistributionSummary windowSize;
+
+    public ScoringMetrics(MeterRegistry registry) {
+        for (Path path : Path.values()) {
+            String pathTag = tag(path);
+            for (Stage stage : Stage.values()) {
+                stages[path.ordinal()][stage.ordinal()] = Timer.builder("scoring.stage")
+                        .description("Time spent in one stage of a score")
+                        .tags("path", pathTag, "stage", tag(stage))
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+            durations[path.ordinal()] = Timer.builder("scoring.duration")
+                    .description("Time spent scoring a price or a batch of prices")
+                    .tag("path", pathTag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        snapshotHits = Counter.builder("scoring.snapshot.lookups")
+                .description("Detection snapshots looked up in Redis")
+                .tag("result", "hit")
+                .register(registry);
+        snapshotMisses = Counter.builder("scoring.snapshot.lookups")
+                .description("Detection snapshots looked up in Redis")
+                .tag("result", "miss")
+                .register(registry);
+        conflicts = Counter.builder("scoring.conflicts")
+                .description("Scores discarded because the detection state changed in the meantime")
+                .register(registry);
+        historyLength = DistributionSummary.builder("scoring.history.length")
+                .description("Non-outliers read to rebuild a detection state")
+                .baseUnit("points")
+                .publishPercentileHistogram()
+                .register(registry);
+        windowSize = DistributionSummary.builder("scoring.window.size")
+                .description("Points in the window a price was scored against")
+                .baseUnit("points")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Records the time spent in a stage that started at {@code start}.
+     *
+     * @param start Value of {@link System#nanoTime()} when the stage started.
+     * @return The current value of {@link System#nanoTime()}, to be used as the start of the next stage.
+     */
+    public long stage(Path path, Stage stage, long start) {
+        long now = System.nanoTime();
+        stages[path.ordinal()][stage.ordinal()].record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Records the time of a whole call that started at {@code start}.
+     *
+     * @param start Value of {@link System#nanoTime()} when the call started.
+     */
+    public void duration(Path path, long start) {
+        durations[path.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void snapshotLookups(int hits, int misses) {
+        snapshotHits.increment(hits);
+        snapshotMisses.increment(misses);
+    }
+
+    public void conflicts(int count) {
+        conflicts.increment(count);
+    }
+
+    public void historyLength(int points) {
+        historyLength.record(points);
+    }
+
+    public void windowSize(int points) {
+        windowSize.record(points);
+    }
+
+    private static String tag(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
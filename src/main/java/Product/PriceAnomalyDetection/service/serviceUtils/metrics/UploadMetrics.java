@@ -0,0 +1,97 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.metrics;
+
+import Product.PriceAnomalyDetection.service.uploadService.UploadDataServiceImp;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the uploads of {@link UploadDataServiceImp}, registered once like those of {@link ScoringMetrics}.
+ *
+ * <ul>
+ *     <li>{@code upload.stage}: time spent in each {@link Stage}, tagged with {@code stage}.</li>
+ *     <li>{@code upload.duration}: time of a whole upload.</li>
+ *     <li>{@code upload.rows}: price rows saved.</li>
+ *     <li>{@code upload.rows.throughput}: price rows saved per second, one sample per upload.</li>
+ *     <li>{@code upload.history.length}: price rows of each uploaded product.</li>
+ * </ul>
+ */
+@Component
+public class UploadMetrics {
+
+    /**
+     * Steps of an upload. Parsing and writing overlap for streamed uploads, so {@link #PARSE} is only measured
+     * for files read at once.
+     */
+    public enum Stage {
+        PARSE, TRANSFORM_WAIT, WRITE, INVALIDATE
+    }
+
+    private final Timer[] stages = new Timer[Stage.values().length];
+    private final Timer duration;
+    private final Counter rows;
+    private final DistributionSummary throughput;
+    private final DistributionSummary historyLength;
+
+    public UploadMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = Timer.builder("upload.stage")
+                    .description("Time spent in one stage of an upload")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT).replace('_', '-'))
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        duration = Timer.builder("upload.duration")
+                .description("Time spent processing an upload")
+                .publishPercentileHistogram()
+                .register(registry);
+        rows = Counter.builder("upload.rows")
+                .description("Price rows saved by uploads")
+                .baseUnit("rows")
+                .register(registry);
+        throughput = DistributionSummary.builder("upload.rows.throughput")
+                .description("Price rows saved per second by each upload")
+                .baseUnit("rows.per.second")
+                .publishPercentileHistogram()
+                .register(registry);
+        historyLength = DistributionSummary.builder("upload.history.length")
+                .description("Price rows of each uploaded product")
+                .baseUnit("points")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * @param start Value of {@link System#nanoTime()} when the stage started.
+     * @return The current value of {@link System#nanoTime()}, to be used as the start of the next stage.
+     */
+    public long stage(Stage stage, long start) {
+        long now = System.nanoTime();
+        stages[stage.ordinal()].record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void historyLength(int points) {
+        historyLength.record(points);
+    }
+
+    /**
+     * Records a whole upload that started at {@code start}.
+     *
+     * @param start Value of {@link System#nanoTime()} when the upload started.
+     * @param rowCount Price rows saved by the upload.
+     */
+    public void finished(long start, long rowCount) {
+        long elapsed = System.nanoTime() - start;
+        duration.record(elapsed, TimeUnit.NANOSECONDS);
+        rows.increment(rowCount);
+        if (elapsed > 0) {
+            throughput.record(rowCount * 1e9 / elapsed);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.processFile;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Reads CSV files with the {@code ITEM_ID,PRICE,ORD_CLOSED_DT} schema without going through Commons CSV for the
+ * common case.
+ *
+ * <p>The input is read into a direct {@link ByteBuffer} and each line is decoded in place: the date is turned
+ * into an epoch day with integer arithmetic and the price into a long scaled by {@link Commons#PRICE_SCALE}, with
+ * no {@code double} in between. A price with more decimals is also parsed into a {@link BigDecimal} and handed over
+ * as written, and its scaled value is rounded {@code HALF_UP} like {@link Commons#toScaledPrice}. Item ids are
+ * looked up in a small cache keyed by their bytes, so ids that repeat do not allocate a new {@link String}.</p>
+ *
+ * <p>Lines the fast path does not handle, such as quoted fields, extra columns, blanks around values or dates
+ * outside {@code yyyy-MM-dd}, make the reader hand that line and the rest of the input to Commons CSV, which parses
+ * them with the same rules as before and throws the same exceptions for malformed rows. If the header is not
+ * exactly {@value #HEADER}, the whole input goes through Commons CSV.</p>
+ *
+ * <p>Instances keep caches between rows and are not thread safe; use one per input.</p>
+ */
+public class PriceCsvReader {
+
+    public static final String HEADER = "ITEM_ID,PRICE,ORD_CLOSED_DT";
+
+    private static final byte[] HEADER_BYTES = HEADER.getBytes(StandardCharsets.US_ASCII);
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private static final int DATE_LENGTH = 10;
+    private static final int MIN_FAST_YEAR = 1600;
+    private static final int MAX_PRICE_DIGITS = 14;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000};
+
+    /**
+     * Receives each row with its date as an epoch day and its price scaled by {@link Commons#PRICE_SCALE}.
+     * {@code scale} is the number of decimals of the price as written, capped at {@link Commons#PRICE_SCALE}, and
+     * {@code exactPrice} the price as written when it has more decimals, otherwise {@code null}; see
+     * {@link PriceSeries#exactPrice(BigDecimal)}.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(String itemId, int epochDay, long scaledPrice, int scale, BigDecimal exactPrice) throws IOException;
+    }
+
+    private final int bufferSize;
+    private final ItemIdCache itemIds = new ItemIdCache();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long fastRows;
+    private long fallbackRows;
+    private int cachedEpochDay = Integer.MIN_VALUE;
+    private long cachedMillis;
+
+    private int rowEpochDay;
+    private long rowScaledPrice;
+    private int rowScale;
+    private BigDecimal rowExactPrice;
+
+    public PriceCsvReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    PriceCsvReader(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Reads every row of a CSV stream.
+     *
+     * @param input The CSV content. It is read to the end but not closed.
+     * @param handler Receives each row, in file order.
+     * @throws IOException If an I/O error occurs while reading, or is thrown by {@code handler}.
+     * @throws InterruptedIOException If the thread is interrupted while waiting for input.
+     * @throws IllegalArgumentException If a row does not have the expected columns or its price is not a number.
+     * @throws ParseException If a date cannot be parsed.
+     */
+    public void read(InputStream input, RowHandler handler) throws IOException, ParseException {
+        ReadableByteChannel channel = Channels.newChannel(input);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        boolean headerRead = false;
+        boolean endOfInput = false;
+        while (true) {
+            try {
+                endOfInput = channel.read(buffer) < 0;
+            } catch (ClosedByInterruptException e) {
+                throw new InterruptedIOException("Reading of the stream was interrupted");
+            }
+            buffer.flip();
+            int position = buffer.position();
+            int limit = buffer.limit();
+            while (position < limit) {
+                int newline = indexOf(buffer, position, limit, (byte) '\n');
+                if (newline < 0 && !endOfInput) {
+                    break;
+                }
+                int lineEnd = newline < 0 ? limit : newline;
+                int contentEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (!headerRead) {
+                    headerRead = true;
+                    if (!isHeader(buffer, position, contentEnd)) {
+                        fallback(buffer, position, limit, input, handler, true);
+                        return;
+                    }
+                } else if (contentEnd > position) {
+                    if (!parseLine(buffer, position, contentEnd)) {
+                        fallback(buffer, position, limit, input, handler, false);
+                        return;
+                    }
+                    handler.row(itemIds.get(buffer, position, indexOf(buffer, position, contentEnd, (byte) ',')),
+                            rowEpochDay, rowScaledPrice, rowScale, rowExactPrice);
+                    fastRows++;
+                }
+                position = newline < 0 ? limit : newline + 1;
+            }
+            if (endOfInput) {
+                return;
+            }
+            buffer.position(position);
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    /**
+     * Converts an epoch day into the {@link Date} at the start of that day in the default time zone, which is
+     * what {@code SimpleDateFormat("yyyy-MM-dd")} returns for the same date.
+     */
+    public Date toDate(int epochDay) {
+        if (epochDay != cachedEpochDay) {
+            cachedMillis = LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedEpochDay = epochDay;
+        }
+        return new Date(cachedMillis);
+    }
+
+    /**
+     * Converts a scaled price into a {@link BigDecimal} with the number of decimals it was written with.
+     */
+    public static BigDecimal toPrice(long scaledPrice, int scale) {
+        return PriceSeries.toPrice(scaledPrice, scale);
+    }
+
+    /**
+     * @return Number of rows decoded by the fast path.
+     */
+    public long getFastRows() {
+        return fastRows;
+    }
+
+    /**
+     * @return Number of rows parsed with Commons CSV.
+     */
+    public long getFallbackRows() {
+        return fallbackRows;
+    }
+
+    private void fallback(ByteBuffer buffer, int from, int to, InputStream input, RowHandler handler,
+                          boolean withHeader) throws IOException, ParseException {
+        byte[] pending = new byte[to - from];
+        buffer.get(from, pending);
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(pending), input);
+        CSVFormat format = withHeader
+                ? CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build()
+                : CSVFormat.DEFAULT.builder().setHeader(HEADER.split(",")).build();
+        CSVParser csvParser = new CSVParser(new InputStreamReader(rest, StandardCharsets.UTF_8), format);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        for (CSVRecord record : csvParser) {
+            String itemId = record.get("ITEM_ID");
+            BigDecimal price = new BigDecimal(record.get("PRICE").trim());
+            Date date = dateFormat.parse(record.get("ORD_CLOSED_DT"));
+            int epochDay = (int) date.toInstant().atZone(zone).toLocalDate().toEpochDay();
+            handler.row(itemId, epochDay, Commons.toScaledPrice(price),
+                    Math.max(0, Math.min(price.scale(), Commons.PRICE_SCALE)), PriceSeries.exactPrice(price));
+            fallbackRows++;
+        }
+    }
+
+    private static boolean isHeader(ByteBuffer buffer, int from, int to) {
+        if (to - from != HEADER_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER_BYTES.length; i++) {
+            if (buffer.get(from + i) != HEADER_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the price and the date of a line into the row fields, or returns {@code false} if the line has to
+     * go through Commons CSV.
+     */
+    private boolean parseLine(ByteBuffer buffer, int from, int to) {
+        int firstComma = indexOf(buffer, from, to, (byte) ',');
+        if (firstComma <= from) {
+            return false;
+        }
+        for (int i = from; i < firstComma; i++) {
+            if (buffer.get(i) == '"') {
+                return false;
+            }
+        }
+        int secondComma = indexOf(buffer, firstComma + 1, to, (byte) ',');
+        if (secondComma < 0 || to - (secondComma + 1) != DATE_LENGTH) {
+            return false;
+        }
+        return parsePrice(buffer, firstComma + 1, secondComma) && parseDate(buffer, secondComma + 1);
+    }
+
+    private boolean parsePrice(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = i < to && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int scale = 0;
+        int roundingDigit = -1;
+        boolean inexact = false;
+        boolean decimalPoint = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !decimalPoint) {
+                decimalPoint = true;
+                continue;
+            }
+            if (b < '0' || b > '9') {
+                return false;
+            }
+            if (decimalPoint && scale == Commons.PRICE_SCALE) {
+                if (roundingDigit < 0) {
+                    roundingDigit = b - '0';
+                }
+                inexact |= b != '0';
+                continue;
+            }
+            if (++digits > MAX_PRICE_DIGITS) {
+                return false;
+            }
+            value = value * 10 + (b - '0');
+            if (decimalPoint) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        long scaled = value * POWERS_OF_TEN[Commons.PRICE_SCALE - scale];
+        if (roundingDigit >= 5) {
+            scaled++;
+        }
+        rowScaledPrice = negative ? -scaled : scaled;
+        rowScale = scale;
+        rowExactPrice = inexact ? new BigDecimal(ascii(buffer, from, to)) : null;
+        return true;
+    }
+
+    private boolean parseDate(ByteBuffer buffer, int from) {
+        if (buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-') {
+            return false;
+        }
+        int year = digits(buffer, from, 4);
+        int month = digits(buffer, from + 5, 2);
+        int day = digits(buffer, from + 8, 2);
+        if (year < MIN_FAST_YEAR || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return false;
+        }
+        rowEpochDay = epochDay(year, month, day);
+        return true;
+    }
+
+    private static int digits(ByteBuffer buffer, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date of the proleptic Gregorian calendar, counting years from March so that the
+     * leap day is the last day of the year.
+     */
+    static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    private static String ascii(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Direct-mapped cache from the bytes of an item id to its {@link String}. A slot is overwritten when another id
+     * hashes to it, which only costs a new {@link String}.
+     */
+    private static final class ItemIdCache {
+        private static final int SLOTS = 4_096;
+        private final byte[][] keys = new byte[SLOTS][];
+        private final String[] values = new String[SLOTS];
+
+        private String get(ByteBuffer buffer, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+            byte[] key = keys[slot];
+            if (key != null && matches(key, buffer, from, to)) {
+                return values[slot];
+            }
+            byte[] bytes = new byte[to - from];
+            buffer.get(from, bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            keys[slot] = bytes;
+            values[slot] = value;
+            return value;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.processFile;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.function.BiConsumer;
+
+public interface ProcessFileStream {
+    default void processData(InputStream input, BiConsumer<String, PriceSeries> consumer)
+            throws IOException, ParseException {
+        processData(input, consumer, () -> { });
+    }
+
+    void processData(InputStream input, BiConsumer<String, PriceSeries> consumer, Runnable onRow)
+            throws IOException, ParseException;
+}
@@ -0,0 +1,307 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.processFile;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Groups the rows of a CSV stream by item without keeping the whole file in memory.
+ *
+ * <p>Rows are grouped in memory until the estimated size of the groups exceeds {@code upload.stream.memory-budget}.
+ * Then the groups are written, sorted by item, to a run file in {@code upload.stream.temp-dir} and the memory is
+ * released. At the end of the stream the runs are merged with a k-way merge, so only one pending row per run and
+ * the item being assembled are kept in memory. An item is only complete once the whole stream has been read, since
+ * its rows may be anywhere in the file; a single item must still fit in memory because it is transformed as a
+ * whole.</p>
+ *
+ * <p>Within an item, prices keep the order in which they appear in the file. Run files are deleted when the
+ * stream has been processed, including when processing fails or the thread is interrupted.</p>
+ */
+@Component
+public class ProcessFileStreamImp implements ProcessFileStream {
+
+    /**
+     * Approximate heap used by one buffered point: its slots in the arrays of the {@link PriceSeries}, plus the
+     * unused capacity the arrays keep after growing.
+     */
+    static final long ESTIMATED_POINT_BYTES = PriceSeries.BYTES_PER_POINT * 3L / 2;
+
+    /**
+     * Approximate heap used by one buffered item besides its prices and the characters of its id: the map entry,
+     * the string, the series and its arrays.
+     */
+    static final long ESTIMATED_GROUP_BYTES = 240;
+
+    private static final int EXACT_SCALE = -1;
+
+    /**
+     * Maximum number of runs merged at once. With more runs, the oldest ones are first merged into a single run,
+     * which bounds the number of open files.
+     */
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    private final long memoryBudget;
+    private final Path tempDirectory;
+
+    @Autowired
+    public ProcessFileStreamImp(@Value("${upload.stream.memory-budget}") DataSize memoryBudget,
+                                @Value("${upload.stream.temp-dir}") String tempDirectory) {
+        this.memoryBudget = memoryBudget.toBytes();
+        this.tempDirectory = Paths.get(tempDirectory);
+    }
+
+    /**
+     * Reads a CSV stream with the "ITEM_ID", "PRICE" and "ORD_CLOSED_DT" columns and hands each item with all of
+     * its prices to {@code consumer}.
+     *
+     * <p>The method performs the following steps:
+     * <ol>
+     *     <li>Parses the rows one at a time with a {@link PriceCsvReader} and groups them by item in memory.</li>
+     *     <li>When the memory budget is exceeded, sorts the groups by item and spills them to a run file.</li>
+     *     <li>If nothing was spilled, hands the groups held in memory to {@code consumer}.</li>
+     *     <li>Otherwise spills the remaining groups and merges the runs, handing each item to {@code consumer}
+     *         as soon as all of its rows have been merged.</li>
+     * </ol></p>
+     *
+     * @param input The CSV stream. It is read to the end but not closed.
+     * @param consumer Receives each item id and its prices, once per item.
+     * @param onRow Called after each row is parsed, to report progress.
+     * @throws IOException If an I/O error occurs while reading the stream or the run files.
+     * @throws InterruptedIOException If the thread is interrupted, which is checked before each row.
+     * @throws IllegalArgumentException If a row does not have the expected columns or its price is not a number.
+     * @throws ParseException If a date cannot be parsed.
+     */
+    @Override
+    public void processData(InputStream input, BiConsumer<String, PriceSeries> consumer, Runnable onRow)
+            throws IOException, ParseException {
+        Map<String, PriceSeries> groups = new HashMap<>();
+        List<Path> runs = new ArrayList<>();
+        try {
+            long[] bufferedBytes = {0};
+            PriceCsvReader reader = new PriceCsvReader();
+            reader.read(input, (itemId, epochDay, scaledPrice, scale, exactPrice) -> {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Processing of the stream was interrupted");
+                }
+                PriceSeries prices = groups.get(itemId);
+                if (prices == null) {
+                    prices = new PriceSeries();
+                    groups.put(itemId, prices);
+                    bufferedBytes[0] += ESTIMATED_GROUP_BYTES + 2L * itemId.length();
+                }
+                prices.add(epochDay, scaledPrice, scale, exactPrice);
+                bufferedBytes[0] += ESTIMATED_POINT_BYTES;
+                onRow.run();
+                if (bufferedBytes[0] > memoryBudget) {
+                    runs.add(spill(groups));
+                    groups.clear();
+                    bufferedBytes[0] = 0;
+                }
+            });
+
+            if (runs.isEmpty()) {
+                groups.forEach(consumer);
+                return;
+            }
+            if (!groups.isEmpty()) {
+                runs.add(spill(groups));
+                groups.clear();
+            }
+            while (runs.size() > MAX_MERGE_FAN_IN) {
+                List<Path> oldest = new ArrayList<>(runs.subList(0, MAX_MERGE_FAN_IN));
+                Path merged = mergeIntoRun(oldest);
+                runs.subList(0, MAX_MERGE_FAN_IN).clear();
+                runs.add(0, merged);
+                deleteAll(oldest);
+            }
+            mergeGroups(runs, consumer);
+        } finally {
+            deleteAll(runs);
+        }
+    }
+
+    private Path spill(Map<String, PriceSeries> groups) throws IOException {
+        List<String> itemIds = new ArrayList<>(groups.keySet());
+        Collections.sort(itemIds);
+        Path run = Files.createTempFile(tempDirectory, "upload-run-", ".bin");
+        try (DataOutputStream output = openRun(run)) {
+            for (String itemId : itemIds) {
+                PriceSeries prices = groups.get(itemId);
+                for (int i = 0; i < prices.size(); i++) {
+                    writeRow(output, itemId, prices.epochDay(i), prices.scaledPrice(i), prices.scale(i),
+                            prices.exactPrice(i));
+                }
+            }
+        }
+        return run;
+    }
+
+    private Path mergeIntoRun(List<Path> runs) throws IOException {
+        Path merged = Files.createTempFile(tempDirectory, "upload-run-", ".bin");
+        try (DataOutputStream output = openRun(merged)) {
+            merge(runs, reader -> writeRow(output, reader.itemId, reader.epochDay, reader.scaledPrice, reader.scale,
+                    reader.exactPrice));
+        }
+        return merged;
+    }
+
+    private void mergeGroups(List<Path> runs, BiConsumer<String, PriceSeries> consumer) throws IOException {
+        GroupAssembler assembler = new GroupAssembler(consumer);
+        merge(runs, assembler);
+        assembler.flush();
+    }
+
+    /**
+     * Merges runs sorted by item, visiting rows by item and, within an item, in the order of the runs, which is
+     * the order of the file.
+     */
+    private static void merge(List<Path> runs, RowVisitor visitor) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Comparator
+                .comparing((RunReader reader) -> reader.itemId)
+                .thenComparingInt(reader -> reader.order));
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i), i);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                visitor.visit(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)));
+    }
+
+    /**
+     * Writes a row of a run. A price with more decimals than its scaled value follows as a string, flagged by the
+     * scale {@link #EXACT_SCALE}.
+     */
+    private static void writeRow(DataOutputStream output, String itemId, int epochDay, long scaledPrice, int scale,
+                                 BigDecimal exactPrice) throws IOException {
+        output.writeUTF(itemId);
+        output.writeInt(epochDay);
+        output.writeLong(scaledPrice);
+        if (exactPrice == null) {
+            output.writeByte(scale);
+        } else {
+            output.writeByte(EXACT_SCALE);
+            output.writeByte(scale);
+            output.writeUTF(exactPrice.toString());
+        }
+    }
+
+    private static void deleteAll(List<Path> runs) throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(RunReader reader) throws IOException;
+    }
+
+    private static final class RunReader {
+        private final DataInputStream input;
+        private final int order;
+        private String itemId;
+        private int epochDay;
+        private long scaledPrice;
+        private int scale;
+        private BigDecimal exactPrice;
+
+        private RunReader(Path run, int order) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+            this.order = order;
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                itemId = input.readUTF();
+            } catch (EOFException e) {
+                return false;
+            }
+            epochDay = input.readInt();
+            scaledPrice = input.readLong();
+            scale = input.readByte();
+            exactPrice = null;
+            if (scale == EXACT_SCALE) {
+                scale = input.readByte();
+                exactPrice = new BigDecimal(input.readUTF());
+            }
+            return true;
+        }
+
+        private void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Collects the consecutive rows of an item coming out of the merge and hands them over when the item changes.
+     */
+    private static final class GroupAssembler implements RowVisitor {
+        private final BiConsumer<String, PriceSeries> consumer;
+        private String itemId;
+        private PriceSeries prices = new PriceSeries();
+
+        private GroupAssembler(BiConsumer<String, PriceSeries> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void visit(RunReader reader) {
+            if (itemId != null && !itemId.equals(reader.itemId)) {
+                flush();
+            }
+            itemId = reader.itemId;
+            prices.add(reader.epochDay, reader.scaledPrice, reader.scale, reader.exactPrice);
+        }
+
+        private void flush() {
+            if (itemId != null) {
+                consumer.accept(itemId, prices);
+                itemId = null;
+                prices = new PriceSeries();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package Product.PriceAnomalyDetection.service.uploadJobService;
+
+import Product.PriceAnomalyDetection.model.UploadJob;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+public interface IUploadJobService {
+
+    UploadJob submit(MultipartFile file) throws IOException;
+
+    UploadJob findById(String jobId);
+
+    UploadJob cancel(String jobId);
+}
@@ -0,0 +1,184 @@
+package Product.PriceAnomalyDetection.service.uploadJobService;
+
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadJobNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadQueueFullException;
+import Product.PriceAnomalyDetection.model.UploadJob;
+import Product.PriceAnomalyDetection.model.UploadJobStatus;
+import Product.PriceAnomalyDetection.service.uploadService.IUploadDataService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs uploads in the background so the HTTP request returns as soon as the file has been received.
+ *
+ * <p>Jobs run on a dedicated pool of {@code upload.jobs.threads} threads with a queue of
+ * {@code upload.jobs.queue-capacity} jobs; when the queue is full new uploads are rejected instead of piling up.
+ * Jobs are kept in memory, so their status is only known by the instance that received the upload, and finished
+ * jobs are forgotten after {@code upload.jobs.retention}.</p>
+ */
+@Service
+public class UploadJobService implements IUploadJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadJobService.class);
+
+    private final IUploadDataService uploadDataService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Path tempDirectory;
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UploadJobService(IUploadDataService uploadDataService,
+                            @Value("${upload.jobs.threads}") int threads,
+                            @Value("${upload.jobs.queue-capacity}") int queueCapacity,
+                            @Value("${upload.jobs.retention}") Duration retention,
+                            @Value("${upload.stream.temp-dir}") String tempDirectory) {
+        this.uploadDataService = uploadDataService;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new CustomizableThreadFactory("upload-job-"));
+        this.retention = retention;
+        this.tempDirectory = Paths.get(tempDirectory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues the upload of a CSV file and returns without waiting for it to be processed.
+     *
+     * <p>The file is first copied to {@code upload.stream.temp-dir}, since the multipart content is discarded when
+     * the request ends, and then processed with {@link IUploadDataService#processStream(InputStream, UploadJob)}.
+     * The copy is deleted when the job finishes, whatever its outcome.</p>
+     *
+     * @param file The CSV file to upload.
+     * @return The queued job.
+     * @throws IOException If the file cannot be copied.
+     * @throws UploadQueueFullException If the queue of jobs is full.
+     */
+    @Override
+    public UploadJob submit(MultipartFile file) throws IOException {
+        purgeFinishedJobs();
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), file.getOriginalFilename());
+        Path content = Files.createTempFile(tempDirectory, "upload-job-", ".csv");
+        try {
+            file.transferTo(content);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(content);
+            throw e;
+        }
+
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, content)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(content);
+            throw new UploadQueueFullException("Upload queue is full");
+        }
+        return job;
+    }
+
+    /**
+     * Retrieves the status and progress of a job.
+     *
+     * @param jobId The identifier returned by {@link #submit(MultipartFile)}.
+     * @return The job.
+     * @throws UploadJobNotFoundException If the job does not exist or was already forgotten.
+     */
+    @Override
+    public UploadJob findById(String jobId) {
+        UploadJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new UploadJobNotFoundException();
+        }
+        return job;
+    }
+
+    /**
+     * Asks a job to stop.
+     *
+     * <p>A queued job is cancelled as soon as it is taken from the queue. A running job is interrupted and stops
+     * before parsing its next row or writing its next batch; the batches already written are kept. Cancelling a
+     * finished job has no effect.</p>
+     *
+     * @param jobId The identifier returned by {@link #submit(MultipartFile)}.
+     * @return The job; its status becomes {@link UploadJobStatus#CANCELLED} once it has stopped.
+     * @throws UploadJobNotFoundException If the job does not exist or was already forgotten.
+     */
+    @Override
+    public UploadJob cancel(String jobId) {
+        UploadJob job = findById(jobId);
+        if (!job.isFinished()) {
+            job.setCancelRequested(true);
+            Future<?> future = job.getFuture();
+            if (job.getStatus() == UploadJobStatus.RUNNING && future != null) {
+                future.cancel(true);
+            }
+        }
+        return job;
+    }
+
+    private void run(UploadJob job, Path content) {
+        UploadJobStatus outcome = UploadJobStatus.COMPLETED;
+        job.setStartedAt(new Date());
+        job.setStatus(UploadJobStatus.RUNNING);
+        try (InputStream input = Files.newInputStream(content)) {
+            if (job.isCancelRequested()) {
+                outcome = UploadJobStatus.CANCELLED;
+            } else {
+                uploadDataService.processStream(input, job);
+            }
+        } catch (InterruptedIOException | CancellationException e) {
+            outcome = UploadJobStatus.CANCELLED;
+        } catch (Exception e) {
+            if (job.isCancelRequested()) {
+                outcome = UploadJobStatus.CANCELLED;
+            } else {
+                outcome = UploadJobStatus.FAILED;
+                job.setError(e.getClass().getSimpleName() + ": " + e.getMessage());
+                logger.warn("Upload job {} failed", job.getId(), e);
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(content);
+            } catch (IOException e) {
+                logger.warn("Could not delete {}", content, e);
+            }
+        }
+        job.setFinishedAt(new Date());
+        job.setStatus(outcome);
+        logger.info("Upload job {} {}: {} rows parsed, {} items saved", job.getId(), outcome,
+                job.getRowsParsed().get(), job.getItemsSaved().get());
+    }
+
+    private void purgeFinishedJobs() {
+        Date cutoff = new Date(System.currentTimeMillis() - retention.toMillis());
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().before(cutoff));
+    }
+}
@@ -1,11 +1,17 @@
 package Product.PriceAnomalyDetection.service.uploadService;
 
+import Product.PriceAnomalyDetection.model.UploadJob;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 
 public interface IUploadDataService {
 
     void processFile(MultipartFile file) throws IOException, ParseException;
+
+    void processStream(InputStream input) throws IOException, ParseException;
+
+    void processStream(InputStream input, UploadJob job) throws IOException, ParseException;
 }
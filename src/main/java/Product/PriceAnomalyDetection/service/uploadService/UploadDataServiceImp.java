@@ -3,19 +3,36 @@ package Product.PriceAnomalyDetection.service.uploadService;
 
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJob;
 import Product.PriceAnomalyDetection.repository.IGenericRepo;
 import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.scoringEngine.IScoringEngine;
 import Product.PriceAnomalyDetection.service.genericService.GenericImp;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
 import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformer;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.UploadMetrics;
 import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFile;
+import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFileStream;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
 
 @Service
 @Data
@@ -24,12 +41,34 @@ public class UploadDataServiceImp extends GenericImp<Product, String> implements
     private final IProductRepo repo;
     private final DataTransformer dataTransformer;
     private final ProcessFile processFile;
+    private final ProcessFileStream processFileStream;
+    private final ICacheService cacheService;
+    private final IScoringEngine scoringEngine;
+    private final UploadMetrics metrics;
+    private final ForkJoinPool transformPool;
+    private final int batchSize;
+    private static final Logger logger = LoggerFactory.getLogger(UploadDataServiceImp.class);
 
     @Autowired
-    public UploadDataServiceImp(IProductRepo repo, DataTransformer dataTransformer, ProcessFile processFile) {
+    public UploadDataServiceImp(IProductRepo repo, DataTransformer dataTransformer, ProcessFile processFile,
+                                ProcessFileStream processFileStream, ICacheService cacheService,
+                                @Nullable IScoringEngine scoringEngine, UploadMetrics metrics,
+                                @Value("${upload.parallelism}") int parallelism,
+                                @Value("${upload.batch-size}") int batchSize) {
         this.repo = repo;
         this.dataTransformer = dataTransformer;
         this.processFile = processFile;
+        this.processFileStream = processFileStream;
+        this.cacheService = cacheService;
+        this.scoringEngine = scoringEngine;
+        this.metrics = metrics;
+        this.transformPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transformPool.shutdown();
     }
 
     @Override
@@ -42,14 +81,17 @@ public class UploadDataServiceImp extends GenericImp<Product, String> implements
      *
      * <p>This method accepts a file, processes its data to extract relevant information, and then
      * transforms the extracted data into {@link Product} objects. For each product, the corresponding
-     * data is used to create a list of {@link PriceData}. The product is then saved to the database.</p>
+     * data is kept as a {@link PriceSeries}, and {@link PriceData} objects are only built for the outliers and
+     * non-outliers of the product. The product is then saved to the database, replacing its previous history.</p>
      *
      * <p>The method performs the following steps:
      * <ol>
      *     <li>Processes the file to extract data into a map, where the key is the product identifier
-     *         and the value is a list of price data.</li>
-     *     <li>For each product, the data is transformed into a {@link Product} object.</li>
-     *     <li>The transformed product is saved to the database.</li>
+     *         and the value is its price series.</li>
+     *     <li>Splits the products into batches of {@code upload.batch-size} and transforms each batch into
+     *         {@link Product} objects in parallel on a pool of {@code upload.parallelism} threads.</li>
+     *     <li>Saves each batch with its history buckets using bulk writes, while the next batch is being
+     *         transformed.</li>
      * </ol></p>
      *
      * @param file The file containing the data to be processed.
@@ -59,12 +101,166 @@ public class UploadDataServiceImp extends GenericImp<Product, String> implements
      */
     @Override
     public void processFile(MultipartFile file) throws IOException, IllegalArgumentException, ParseException {
-        Map<String, List<PriceData>> data = processFile.processData(file);
-        data.forEach((key, value) -> {
-            Product product = dataTransformer.transformToProduct(key, value);
-            save(product);
-        });
+        UploadBatches batches = new UploadBatches(saved -> { });
+        Map<String, PriceSeries> data = processFile.processData(file);
+        metrics.stage(UploadMetrics.Stage.PARSE, batches.start);
+        try {
+            data.forEach(batches::add);
+            batches.finish();
+        } finally {
+            batches.cancel();
+        }
+    }
+
+    /**
+     * Processes a CSV stream of any size, transforming and saving each product as soon as its rows are grouped.
+     *
+     * <p>Unlike {@link #processFile(MultipartFile)}, the rows are grouped by {@link ProcessFileStream} within a
+     * bounded memory budget, spilling to temporary files when needed, so the size of the upload is not limited by
+     * the heap. Each product replaces its previous history, as with {@link #processFile(MultipartFile)}.</p>
+     *
+     * @param input The CSV stream, with the same columns as the files accepted by {@link #processFile(MultipartFile)}.
+     * @throws IOException If an I/O error occurs while reading the stream.
+     * @throws IllegalArgumentException If the content is invalid or cannot be parsed correctly.
+     * @throws ParseException If there is an error while parsing the data from the stream.
+     */
+    @Override
+    public void processStream(InputStream input) throws IOException, IllegalArgumentException, ParseException {
+        UploadBatches batches = new UploadBatches(saved -> { });
+        try {
+            processFileStream.processData(input, batches::add);
+            batches.finish();
+        } finally {
+            batches.cancel();
+        }
+    }
+
+    /**
+     * Processes a CSV stream like {@link #processStream(InputStream)}, reporting its progress on an upload job.
+     *
+     * <p>The rows parsed and the items saved are added to the counters of {@code job} as the upload progresses.
+     * The upload stops if the thread is interrupted, before the next row is parsed or the next batch is written.</p>
+     *
+     * @param input The CSV stream.
+     * @param job The job whose counters are updated.
+     * @throws IOException If an I/O error occurs while reading the stream.
+     * @throws java.io.InterruptedIOException If the thread was interrupted while parsing.
+     * @throws CancellationException If the thread was interrupted before writing a batch.
+     * @throws IllegalArgumentException If the content is invalid or cannot be parsed correctly.
+     * @throws ParseException If there is an error while parsing the data from the stream.
+     */
+    @Override
+    public void processStream(InputStream input, UploadJob job) throws IOException, ParseException {
+        UploadBatches batches = new UploadBatches(job.getItemsSaved()::addAndGet);
+        try {
+            processFileStream.processData(input, batches::add, job.getRowsParsed()::incrementAndGet);
+            batches.finish();
+        } finally {
+            batches.cancel();
+        }
+    }
+
+    /**
+     * Groups the products of an upload into batches, transforms each batch on {@link #transformPool} and saves it
+     * with {@link IProductRepo#saveAllWithHistory}, then invalidates the cached results of its products.
+     *
+     * <p>At most one batch is transformed while the previous one is written, so at most two batches of products
+     * are held besides the input. The time spent waiting for the transform and writing each batch is logged and
+     * recorded in {@link UploadMetrics}, with the rows saved per second by the whole upload.</p>
+     *
+     * <p>When the upload stops early, because the thread is interrupted, a write fails or the input cannot be
+     * parsed, the batch being transformed is cancelled so it does not keep the pool busy.</p>
+     */
+    private final class UploadBatches {
+        private final long start = System.nanoTime();
+        private final LongConsumer onSaved;
+        private List<Map.Entry<String, PriceSeries>> pending = new ArrayList<>();
+        private ForkJoinTask<List<Product>> inFlight;
+        private int inFlightNumber;
+        private int batchCount;
+        private int productCount;
+        private long rowCount;
+
+        private UploadBatches(LongConsumer onSaved) {
+            this.onSaved = onSaved;
+        }
+
+        private void add(String itemId, PriceSeries prices) {
+            pending.add(new AbstractMap.SimpleImmutableEntry<>(itemId, prices));
+            rowCount += prices.size();
+            metrics.historyLength(prices.size());
+            if (pending.size() == batchSize) {
+                dispatch();
+            }
+        }
+
+        private void dispatch() {
+            List<Map.Entry<String, PriceSeries>> batch = pending;
+            pending = new ArrayList<>();
+            ForkJoinTask<List<Product>> transformed = transformPool.submit(() -> batch.parallelStream()
+                    .map(entry -> dataTransformer.transformToProduct(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList()));
+            try {
+                write();
+            } catch (RuntimeException | Error e) {
+                transformed.cancel(true);
+                throw e;
+            }
+            inFlight = transformed;
+            inFlightNumber = ++batchCount;
+        }
+
+        private void finish() {
+            if (!pending.isEmpty()) {
+                dispatch();
+            }
+            write();
+            metrics.finished(start, rowCount);
+            logger.info("Upload finished: {} products in {} batches", productCount, batchCount);
+        }
+
+        /**
+         * Cancels the batch being transformed, if any; it has no effect after {@link #finish()}.
+         */
+        private void cancel() {
+            if (inFlight != null) {
+                inFlight.cancel(true);
+                inFlight = null;
+            }
+        }
 
+        private void write() {
+            if (inFlight == null) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                cancel();
+                throw new CancellationException("Upload was interrupted before batch " + inFlightNumber);
+            }
+            long waitStart = System.nanoTime();
+            List<Product> products;
+            long transformed;
+            long written;
+            try {
+                products = inFlight.join();
+                transformed = metrics.stage(UploadMetrics.Stage.TRANSFORM_WAIT, waitStart);
+                repo.saveAllWithHistory(products);
+                written = metrics.stage(UploadMetrics.Stage.WRITE, transformed);
+            } finally {
+                cancel();
+            }
+            List<String> itemIds = products.stream().map(Product::getId).toList();
+            cacheService.invalidateItems(itemIds);
+            if (scoringEngine != null) {
+                scoringEngine.forget(itemIds);
+            }
+            metrics.stage(UploadMetrics.Stage.INVALIDATE, written);
+            productCount += products.size();
+            onSaved.accept(products.size());
+            logger.info("Upload batch {}: {} products, waited {} ms for transform, written in {} ms",
+                    inFlightNumber, products.size(), (transformed - waitStart) / 1_000_000,
+                    (written - transformed) / 1_000_000);
+        }
     }
 
 
@@ -0,0 +1,26 @@
+package Product.PriceAnomalyDetection.config;
+
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModelRuntimeHintsTest {
+
+    @Test
+    public void testModels_AreRegisteredForReflection() throws NoSuchMethodException {
+        RuntimeHints hints = new RuntimeHints();
+        new ModelRuntimeHints.Registrar().registerHints(hints, getClass().getClassLoader());
+
+        for (Class<?> type : ModelRuntimeHints.MAPPED_TYPES) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type)
+                    .withMemberCategories(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.DECLARED_FIELDS).test(hints), type.getName());
+        }
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethod(ItemPriceRequest.class.getMethod("getItem_id")).test(hints));
+    }
+}
@@ -0,0 +1,103 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DetectionSnapshotCodecTest {
+
+    private final DetectionSnapshotCodec codec = new DetectionSnapshotCodec();
+
+    private static Product snapshot(MathMode mathMode) {
+        List<PriceData> history = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            history.add(new PriceData(new Date(1_700_000_000_000L + i), new BigDecimal("100.25").add(
+                    BigDecimal.valueOf(i % 7 * 35, 2))));
+        }
+        DetectionState state = new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), mathMode)
+                .buildState(history);
+        state.setVersion(1_234);
+        return new Product("item", null, null, 3, 300, state, null, null, 7);
+    }
+
+    private static void assertSameSnapshot(Product expected, Product actual) {
+        assertEquals(expected.getHistoryEpoch(), actual.getHistoryEpoch());
+        assertEquals(expected.getOutlierCount(), actual.getOutlierCount());
+        assertEquals(expected.getNonOutlierCount(), actual.getNonOutlierCount());
+        DetectionState expectedState = expected.getDetectionState();
+        DetectionState actualState = actual.getDetectionState();
+        assertEquals(expectedState.getWindowSize(), actualState.getWindowSize());
+        assertEquals(expectedState.getKValue(), actualState.getKValue());
+        assertArrayEquals(expectedState.getWindow(), actualState.getWindow());
+        assertEquals(expectedState.getSma(), actualState.getSma());
+        assertEquals(expectedState.getStdDev(), actualState.getStdDev());
+        assertEquals(expectedState.getLowerLimit(), actualState.getLowerLimit());
+        assertEquals(expectedState.getUpperLimit(), actualState.getUpperLimit());
+        assertEquals(expectedState.getVersion(), actualState.getVersion());
+        assertEquals(expectedState.getDetector(), actualState.getDetector());
+        assertArrayEquals(expectedState.getStatistics(), actualState.getStatistics());
+        assertEquals(expectedState.getMathMode(), actualState.getMathMode());
+        assertEquals(expected.getDetector(), actual.getDetector());
+    }
+
+    @Test
+    public void testRoundTrip_KeepsEveryFieldExactly() {
+        for (MathMode mathMode : MathMode.values()) {
+            Product snapshot = snapshot(mathMode);
+            assertSameSnapshot(snapshot, codec.deserialize(codec.serialize(snapshot)));
+        }
+
+        DetectionState state = new DetectionState(10, new BigDecimal("-1.5"),
+                new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0, -1}, new BigDecimal("1e40"), null,
+                new BigDecimal("-123456789012345678901234567890.5"), BigDecimal.ZERO, 0, Detector.EWMA,
+                new double[]{3, -0.0, Double.NaN, Double.MAX_VALUE, 1e-300}, null);
+        Product extreme = new Product("item", null, null, 0, Long.MAX_VALUE, state, Detector.MAD, null,
+                Long.MAX_VALUE);
+        assertSameSnapshot(extreme, codec.deserialize(codec.serialize(extreme)));
+
+        Product withoutState = codec.deserialize(codec.serialize(
+                new Product("item", null, null, 1, 2, null, null, null, 0)));
+        assertEquals(2, withoutState.getNonOutlierCount());
+        assertNull(withoutState.getDetectionState());
+    }
+
+    @Test
+    public void testPayload_IsSmallerThanJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (MathMode mathMode : MathMode.values()) {
+            Product snapshot = snapshot(mathMode);
+            byte[] json = objectMapper.writeValueAsBytes(Map.of("outlierCount", snapshot.getOutlierCount(),
+                    "nonOutlierCount", snapshot.getNonOutlierCount(), "detectionState", snapshot.getDetectionState()));
+
+            int binary = codec.serialize(snapshot).length;
+            assertTrue(binary * 3 < json.length, mathMode + ": " + binary + " bytes vs " + json.length + " in JSON");
+        }
+    }
+
+    @Test
+    public void testUnknownOrTruncatedBytes_AreRejected() {
+        byte[] bytes = codec.serialize(snapshot(MathMode.EXACT));
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[0] = DetectionSnapshotCodec.FORMAT_VERSION + 1;
+        assertThrows(SerializationException.class, () -> codec.deserialize(otherVersion));
+        assertThrows(SerializationException.class, () -> codec.deserialize(
+                Arrays.copyOf(bytes, bytes.length / 2)));
+        assertNull(codec.deserialize(new byte[0]));
+    }
+}
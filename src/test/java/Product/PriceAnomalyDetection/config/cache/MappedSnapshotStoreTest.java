@@ -0,0 +1,187 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedSnapshotStoreTest {
+
+    private static final long FAR_FUTURE = Long.MAX_VALUE;
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPutGetAndRemove() throws IOException {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 1_000, 64)) {
+            assertNull(store.get(bytes("MLB1")));
+
+            assertTrue(store.put(bytes("MLB1"), bytes("first"), FAR_FUTURE));
+            assertTrue(store.put(bytes("MLB2"), bytes("second"), FAR_FUTURE));
+            assertTrue(store.put(bytes("MLB1"), bytes("replaced"), FAR_FUTURE));
+
+            assertArrayEquals(bytes("replaced"), store.get(bytes("MLB1")));
+            assertArrayEquals(bytes("second"), store.get(bytes("MLB2")));
+
+            store.remove(bytes("MLB1"));
+            assertNull(store.get(bytes("MLB1")));
+            assertArrayEquals(bytes("second"), store.get(bytes("MLB2")));
+        }
+    }
+
+    @Test
+    public void testExpiredSnapshots_AreMisses() throws IOException {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 100, 64)) {
+            store.put(bytes("MLB1"), bytes("expired"), System.currentTimeMillis() - 1);
+
+            assertNull(store.get(bytes("MLB1")));
+        }
+    }
+
+    @Test
+    public void testValuesLargerThanASlot_AreNotStored() throws IOException {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 100, 32)) {
+            store.put(bytes("MLB1"), bytes("small"), FAR_FUTURE);
+
+            assertFalse(store.put(bytes("MLB1"), new byte[32], FAR_FUTURE));
+            assertNull(store.get(bytes("MLB1")));
+        }
+    }
+
+    @Test
+    public void testFullProbeSequence_OverwritesAndKeepsLatest() throws IOException {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 8, 32)) {
+            for (int i = 0; i < 200; i++) {
+                assertTrue(store.put(bytes("MLB" + i), bytes("v" + i), FAR_FUTURE));
+                assertArrayEquals(bytes("v" + i), store.get(bytes("MLB" + i)));
+            }
+            int kept = 0;
+            for (int i = 0; i < 200; i++) {
+                byte[] value = store.get(bytes("MLB" + i));
+                if (value != null) {
+                    assertArrayEquals(bytes("v" + i), value);
+                    kept++;
+                }
+            }
+            assertTrue(kept <= store.capacity(), kept + " values in " + store.capacity() + " slots");
+        }
+    }
+
+    @Test
+    public void testReopen_KeepsSnapshotsOnlyWithTheSameLayout() throws IOException {
+        Path file = tempDir.resolve("states.bin");
+        try (MappedSnapshotStore store = new MappedSnapshotStore(file, 1_000, 64)) {
+            store.put(bytes("MLB1"), bytes("kept"), FAR_FUTURE);
+        }
+
+        try (MappedSnapshotStore store = new MappedSnapshotStore(file, 1_000, 64)) {
+            assertArrayEquals(bytes("kept"), store.get(bytes("MLB1")));
+        }
+        try (MappedSnapshotStore store = new MappedSnapshotStore(file, 1_000, 128)) {
+            assertNull(store.get(bytes("MLB1")));
+        }
+    }
+
+    @Test
+    public void testCorruptSlot_IsReadAsMiss() throws IOException {
+        Path file = tempDir.resolve("states.bin");
+        try (MappedSnapshotStore store = new MappedSnapshotStore(file, 1, 64)) {
+            store.put(bytes("MLB1"), bytes("value"), FAR_FUTURE);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("X")),
+                    MappedSnapshotStore.HEADER_BYTES + MappedSnapshotStore.SLOT_HEADER_BYTES + 4);
+        }
+
+        try (MappedSnapshotStore store = new MappedSnapshotStore(file, 1, 64)) {
+            assertNull(store.get(bytes("MLB1")));
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters_KeepEveryValue() throws Exception {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 100_000, 48)) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> writers = new ArrayList<>();
+                for (int thread = 0; thread < 8; thread++) {
+                    int offset = thread;
+                    writers.add(executor.submit(() -> {
+                        for (int i = offset; i < 8_000; i += 8) {
+                            store.put(bytes("MLB" + i), bytes("v" + i), FAR_FUTURE);
+                            assertArrayEquals(bytes("v" + i), store.get(bytes("MLB" + i)));
+                        }
+                    }));
+                }
+                for (Future<?> writer : writers) {
+                    writer.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            for (int i = 0; i < 8_000; i++) {
+                assertArrayEquals(bytes("v" + i), store.get(bytes("MLB" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotCache_ServesLocalSnapshotsWithoutRedis() throws IOException {
+        try (MappedSnapshotStore store = new MappedSnapshotStore(tempDir.resolve("states.bin"), 1_000, 256)) {
+            List<String> redisReads = new ArrayList<>();
+            DetectionSnapshotCache cache = new DetectionSnapshotCache(null, Duration.ofMinutes(1), store) {
+                @Override
+                protected List<byte[]> mget(List<byte[]> keys) {
+                    keys.forEach(key -> redisReads.add(new String(key, StandardCharsets.UTF_8)));
+                    return null;
+                }
+
+                @Override
+                protected void set(Map<byte[], byte[]> values) {
+                    throw new IllegalStateException("Redis is down");
+                }
+
+                @Override
+                protected void delete(List<byte[]> keys) {
+                }
+            };
+            DetectionState state = new DetectionState(10, new BigDecimal("1.5"), new long[]{1_000_000, 1_010_000},
+                    null, null, BigDecimal.ONE, BigDecimal.TEN, 7, null, null, MathMode.EXACT);
+            cache.putAll(List.of(new Product("MLB1", null, null, 1, 2, state, null, null, 0)));
+
+            Map<String, Product> snapshots = cache.getAll(Set.of("MLB1", "MLB2"));
+
+            assertEquals(Set.of("MLB1"), snapshots.keySet());
+            assertEquals(7, snapshots.get("MLB1").getDetectionState().getVersion());
+            assertArrayEquals(state.getWindow(), snapshots.get("MLB1").getDetectionState().getWindow());
+            assertEquals(List.of(DetectionSnapshotCache.KEY_PREFIX + "MLB2"), redisReads);
+
+            cache.evictAll(List.of("MLB1"));
+            assertNull(cache.get("MLB1"));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package Product.PriceAnomalyDetection.config.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TwoLevelCacheTest {
+
+    private static final String CHANNEL = "invalidation";
+
+    /**
+     * Stands in for Redis: keeps the generations and delivers published messages to every node.
+     */
+    private final Map<String, Long> redisGenerations = new ConcurrentHashMap<>();
+    private final List<CacheGenerations> subscribers = new CopyOnWriteArrayList<>();
+
+    private ConcurrentMapCacheManager redis;
+    private Node first;
+    private Node second;
+
+    private final class FakeGenerations extends CacheGenerations {
+
+        private FakeGenerations() {
+            super(null, CHANNEL, 100, Duration.ofMinutes(1));
+            subscribers.add(this);
+        }
+
+        @Override
+        protected long fetch(String itemId) {
+            return redisGenerations.getOrDefault(itemId, 0L);
+        }
+
+        @Override
+        protected List<Long> incrementAndPublish(List<String> itemIds) {
+            List<Long> incremented = new ArrayList<>();
+            for (String itemId : itemIds) {
+                long generation = redisGenerations.merge(itemId, 1L, Long::sum);
+                incremented.add(generation);
+                publish(generation + ":" + itemId);
+            }
+            return incremented;
+        }
+
+        @Override
+        public void publishClear(String cacheName) {
+            publish("clear:" + cacheName);
+        }
+    }
+
+    private void publish(String body) {
+        for (CacheGenerations subscriber : subscribers) {
+            subscriber.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8),
+                    body.getBytes(StandardCharsets.UTF_8)), null);
+        }
+    }
+
+    private final class Node {
+        private final CacheGenerations generations = new FakeGenerations();
+        private final TwoLevelCacheManager cacheManager =
+                new TwoLevelCacheManager(redis, generations, 100, Duration.ofMinutes(1));
+        private final ItemKeyGenerator keyGenerator = new ItemKeyGenerator(generations);
+
+        private TwoLevelCache cache() {
+            return (TwoLevelCache) cacheManager.getCache("isAnomaly");
+        }
+
+        private Object key(String itemId, String price) throws NoSuchMethodException {
+            Method method = getClass().getDeclaredMethod("key", String.class, String.class);
+            return keyGenerator.generate(this, method, itemId, new BigDecimal(price));
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis = new ConcurrentMapCacheManager("isAnomaly");
+        first = new Node();
+        second = new Node();
+    }
+
+    private Cache remote() {
+        return redis.getCache("isAnomaly");
+    }
+
+    @Test
+    public void testLocalHit_DoesNotReachRedis() throws Exception {
+        Object key = first.key("1", "10.5");
+        first.cache().put(key, "false");
+        remote().clear();
+
+        assertEquals("false", first.cache().get(key, String.class));
+        assertEquals(CacheTierStatistics.of(1, 0, 1), first.cache().getLocalStatistics());
+        assertEquals(CacheTierStatistics.of(0, 0, -1), first.cache().getRemoteStatistics());
+    }
+
+    @Test
+    public void testRemoteHit_FillsLocalTier() throws Exception {
+        first.cache().put(first.key("1", "10.5"), "true");
+
+        assertEquals("true", ((ConcurrentMapCache) remote()).getNativeCache().get("1:10.5@0"));
+        assertEquals("true", second.cache().get(second.key("1", "10.5"), String.class));
+        assertEquals("true", second.cache().get(second.key("1", "10.5"), String.class));
+        assertNull(second.cache().get(second.key("1", "11.5")));
+
+        assertEquals(CacheTierStatistics.of(1, 2, 1), second.cache().getLocalStatistics());
+        assertEquals(CacheTierStatistics.of(1, 1, -1), second.cache().getRemoteStatistics());
+    }
+
+    @Test
+    public void testBoundManager_PublishesTierStatistics() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        second.cacheManager.bindTo(registry);
+        first.cache().put(first.key("1", "10.5"), "true");
+        second.cache().get(second.key("1", "10.5"), String.class);
+        second.cache().get(second.key("1", "10.5"), String.class);
+
+        assertEquals(1, registry.get("cache.tier.gets")
+                .tags("cache", "isAnomaly", "tier", "local", "result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("cache.tier.gets")
+                .tags("cache", "isAnomaly", "tier", "remote", "result", "hit").functionCounter().count());
+        assertEquals(0.5, registry.get("cache.tier.hit.ratio")
+                .tags("cache", "isAnomaly", "tier", "local").gauge().value());
+    }
+
+    @Test
+    public void testIncrement_HidesEntriesOfTheItemOnEveryNode() throws Exception {
+        first.cache().put(first.key("1", "10.5"), "false");
+        first.cache().put(first.key("2", "10.5"), "false");
+        assertEquals("false", second.cache().get(second.key("1", "10.5"), String.class));
+
+        first.generations.increment(List.of("1"));
+
+        assertNull(first.cache().get(first.key("1", "10.5")));
+        assertNull(second.cache().get(second.key("1", "10.5")));
+        assertEquals("false", second.cache().get(second.key("2", "10.5"), String.class));
+        assertEquals(new ItemCacheKey("1", 1, new BigDecimal("10.5")), second.key("1", "10.5"));
+    }
+
+    @Test
+    public void testKeyGeneratedBeforeIncrement_KeepsOldGeneration() throws Exception {
+        Object key = first.key("1", "10.5");
+        first.generations.increment(List.of("1"));
+        first.cache().put(key, "false");
+
+        assertNull(first.cache().get(first.key("1", "10.5")));
+        assertNull(second.cache().get(second.key("1", "10.5")));
+    }
+
+    @Test
+    public void testClear_DropsLocalTierOnEveryNode() throws Exception {
+        first.cache().put(first.key("1", "10.5"), "false");
+        assertEquals("false", second.cache().get(second.key("1", "10.5"), String.class));
+
+        first.cache().clear();
+
+        assertNull(second.cache().get(second.key("1", "10.5")));
+        assertEquals(0, second.cache().getLocalStatistics().size());
+    }
+}
@@ -1,11 +1,21 @@
 package Product.PriceAnomalyDetection.controller;
 
+import Product.PriceAnomalyDetection.config.cache.CacheTierStatistics;
 import Product.PriceAnomalyDetection.controller.errorHandling.ControllerAdvice;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.BackfillAlreadyRunningException;
 import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadJobNotFoundException;
+import Product.PriceAnomalyDetection.model.BackfillJob;
 import Product.PriceAnomalyDetection.model.ItemPriceRequest;
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJob;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.backfillService.IBackfillService;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
 import Product.PriceAnomalyDetection.service.productService.IProductService;
+import Product.PriceAnomalyDetection.service.uploadJobService.IUploadJobService;
 import Product.PriceAnomalyDetection.service.uploadService.UploadDataServiceImp;
 import org.hamcrest.core.IsNull;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,15 +24,24 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -40,6 +59,15 @@ public class ProductControllerTest {
     @Mock
     private UploadDataServiceImp uploadDataService;
 
+    @Mock
+    private IUploadJobService uploadJobService;
+
+    @Mock
+    private ICacheService cacheService;
+
+    @Mock
+    private IBackfillService backfillService;
+
     @InjectMocks
     private ProductController productController;
 
@@ -192,5 +220,132 @@ public class ProductControllerTest {
 
     }
 
+    @Test
+    public void testSetAndClearDetector() throws Exception {
+        Product product = new Product();
+        product.setId("1");
+        product.setDetector(Detector.MAD);
+        when(productService.setDetector("1", Detector.MAD)).thenReturn(product);
+        when(productService.setDetector("missing", null)).thenThrow(new ProductNotFoundException());
+
+        mockMvc.perform(put("/" + API_PRODUCT + "/1/detector/MAD"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.detector").value("MAD"));
+        mockMvc.perform(delete("/" + API_PRODUCT + "/missing/detector"))
+                .andExpect(status().isNotFound());
+        verify(productService).setDetector("missing", null);
+    }
+
+    @Test
+    public void testUploadDataStream_ReadsBody() throws Exception {
+        String csv = "ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,2023-10-01";
+
+        mockMvc.perform(post("/" + API_PRODUCT + "/upload/stream")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("API-Method", API_METHOD_UPLOAD_STREAM))
+                .andExpect(jsonPath("$.status_code").value("200"));
+
+        verify(uploadDataService).processStream(any(InputStream.class));
+    }
+
+    @Test
+    public void testSubmitUploadJob_ReturnsAccepted() throws Exception {
+        when(uploadJobService.submit(any(MultipartFile.class))).thenReturn(new UploadJob("job-1", "prices.csv"));
+        MockMultipartFile file = new MockMultipartFile("file", "prices.csv", "text/csv",
+                "ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,2023-10-01".getBytes());
+
+        mockMvc.perform(multipart("/" + API_PRODUCT + "/upload/jobs").file(file))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/" + API_PRODUCT + "/upload/jobs/job-1"))
+                .andExpect(jsonPath("$.id").value("job-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andExpect(jsonPath("$.rowsParsed").value(0));
+    }
+
+    @Test
+    public void testFindUploadJob_NotFound() throws Exception {
+        when(uploadJobService.findById("missing")).thenThrow(new UploadJobNotFoundException());
+
+        mockMvc.perform(get("/" + API_PRODUCT + "/upload/jobs/missing"))
+                .andExpect(status().isNotFound());
+    }
 
+    @Test
+    public void testCancelUploadJob() throws Exception {
+        UploadJob job = new UploadJob("job-1", "prices.csv");
+        job.setCancelRequested(true);
+        when(uploadJobService.cancel("job-1")).thenReturn(job);
+
+        mockMvc.perform(delete("/" + API_PRODUCT + "/upload/jobs/job-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cancelRequested").value(true));
+    }
+
+    @Test
+    public void testStartBackfill_ReturnsAcceptedWithLocation() throws Exception {
+        when(backfillService.start()).thenReturn(new BackfillJob("backfill-1", 20, new BigDecimal("2"), MathMode.EXACT));
+
+        mockMvc.perform(post("/" + API_PRODUCT + "/backfill/jobs"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/" + API_PRODUCT + "/backfill/jobs/backfill-1"))
+                .andExpect(jsonPath("$.status").value("QUEUED"))
+                .andExpect(jsonPath("$.windowSize").value(20))
+                .andExpect(jsonPath("$.itemsProcessed").value(0));
+    }
+
+    @Test
+    public void testStartBackfill_AlreadyRunning() throws Exception {
+        when(backfillService.start()).thenThrow(new BackfillAlreadyRunningException());
+
+        mockMvc.perform(post("/" + API_PRODUCT + "/backfill/jobs"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void testFindCacheStatistics() throws Exception {
+        when(cacheService.getStatistics()).thenReturn(Map.of("isAnomaly", Map.of(
+                "local", CacheTierStatistics.of(3, 1, 2),
+                "remote", CacheTierStatistics.of(0, 1, -1))));
+
+        mockMvc.perform(get("/" + API_PRODUCT + "/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.isAnomaly.local.hits").value(3))
+                .andExpect(jsonPath("$.isAnomaly.local.hitRate").value(0.75))
+                .andExpect(jsonPath("$.isAnomaly.remote.misses").value(1));
+    }
+
+    @Test
+    public void testIsAnomalyBatch_ReturnsResultsInRequestOrder() throws Exception {
+        List<ItemPriceRequest> requests = List.of(
+                new ItemPriceRequest("MLB1", new BigDecimal("10")),
+                new ItemPriceRequest("missing", new BigDecimal("20")),
+                new ItemPriceRequest("MLB1", new BigDecimal("900")));
+        when(productService.isAnomaly(anyList())).thenReturn(Arrays.asList("false", null, "true"));
+
+        mockMvc.perform(post("/" + API_PRODUCT + "/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(requests)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].item_id").value("MLB1"))
+                .andExpect(jsonPath("$[0].anomaly").value("false"))
+                .andExpect(jsonPath("$[0].status_code").value("200"))
+                .andExpect(jsonPath("$[1].item_id").value("missing"))
+                .andExpect(jsonPath("$[1].anomaly").doesNotExist())
+                .andExpect(jsonPath("$[1].status_code").value("404"))
+                .andExpect(jsonPath("$[2].anomaly").value("true"));
+    }
+
+    @Test
+    public void testIsAnomalyBatch_InvalidPrice() throws Exception {
+        List<ItemPriceRequest> requests = List.of(new ItemPriceRequest("MLB1", new BigDecimal("-1")));
+
+        mockMvc.perform(post("/" + API_PRODUCT + "/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(requests)))
+                .andExpect(status().isBadRequest());
+        verify(productService, never()).isAnomaly(anyList());
+    }
 }
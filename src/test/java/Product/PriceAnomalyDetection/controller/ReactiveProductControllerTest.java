@@ -0,0 +1,180 @@
+package Product.PriceAnomalyDetection.controller;
+
+import Product.PriceAnomalyDetection.controller.errorHandling.ReactiveControllerAdvice;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceResponse;
+import Product.PriceAnomalyDetection.model.ItemPriceScore;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.reactiveProductService.IReactiveProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static Product.PriceAnomalyDetection.controller.constant.ApiGlobalConstant.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ReactiveProductControllerTest {
+
+    private WebTestClient webTestClient;
+
+    @Mock
+    private IReactiveProductService productService;
+
+    @InjectMocks
+    private ReactiveProductController productController;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        webTestClient = WebTestClient.bindToController(productController)
+                .controllerAdvice(new ReactiveControllerAdvice())
+                .build();
+    }
+
+    @Test
+    public void testIsAnomaly_ReturnsTrue() {
+        when(productService.isAnomaly("12345", new BigDecimal("100.0"))).thenReturn(Mono.just("true"));
+
+        webTestClient.post().uri("/" + API_PRODUCT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new ItemPriceRequest("12345", new BigDecimal("100.0")))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("API-Method", API_METHOD_IS_ANOMALY)
+                .expectBody()
+                .jsonPath("$.item_id").isEqualTo("12345")
+                .jsonPath("$.anomaly").isEqualTo("true")
+                .jsonPath("$.status_code").isEqualTo("200");
+    }
+
+    @Test
+    public void testIsAnomaly_ProductNotFoundException() {
+        when(productService.isAnomaly(eq("missing"), any())).thenReturn(Mono.error(new ProductNotFoundException()));
+
+        webTestClient.post().uri("/" + API_PRODUCT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new ItemPriceRequest("missing", BigDecimal.TEN))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.status_code").isEqualTo("404");
+    }
+
+    @Test
+    public void testIsAnomaly_Conflict() {
+        when(productService.isAnomaly(eq("1"), any()))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("busy")));
+
+        webTestClient.post().uri("/" + API_PRODUCT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new ItemPriceRequest("1", BigDecimal.TEN))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    public void testIsAnomaly_InvalidRequest() {
+        webTestClient.post().uri("/" + API_PRODUCT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"item_id\": \"1\", \"price\": 0}")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.status_code").isEqualTo("400");
+
+        webTestClient.post().uri("/" + API_PRODUCT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"item_id\": ")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void testIsAnomalyBatch_StreamsNdjsonInRequestOrder() {
+        when(productService.isAnomaly(ArgumentMatchers.<Flux<ItemPriceRequest>>any())).thenAnswer(invocation -> {
+            Flux<ItemPriceRequest> requests = invocation.getArgument(0);
+            return requests.map(request -> new ItemPriceScore(request.getItem_id(), request.getPrice(),
+                    request.getItem_id().equals("missing") ? null : "false"));
+        });
+
+        List<ItemPriceResponse> responses = webTestClient.post().uri("/" + API_PRODUCT + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"item_id\": \"1\", \"price\": 10.5}\n"
+                        + "{\"item_id\": \"missing\", \"price\": 11.5}\n"
+                        + "{\"item_id\": \"2\", \"price\": 12.5}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("API-Method", API_METHOD_IS_ANOMALY_BATCH)
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(ItemPriceResponse.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(List.of("1", "missing", "2"), responses.stream().map(ItemPriceResponse::getItem_id).toList());
+        assertEquals(Arrays.asList("false", null, "false"),
+                responses.stream().map(ItemPriceResponse::getAnomaly).toList());
+        assertEquals(List.of("200", "404", "200"), responses.stream().map(ItemPriceResponse::getStatus_code).toList());
+    }
+
+    @Test
+    public void testIsAnomalyBatch_AcceptsJsonArray() {
+        when(productService.isAnomaly(ArgumentMatchers.<Flux<ItemPriceRequest>>any())).thenAnswer(invocation -> {
+            Flux<ItemPriceRequest> requests = invocation.getArgument(0);
+            return requests.map(request -> new ItemPriceScore(request.getItem_id(), request.getPrice(), "true"));
+        });
+
+        webTestClient.post().uri("/" + API_PRODUCT + "/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"item_id\": \"1\", \"price\": 10.5}, {\"item_id\": \"2\", \"price\": 12.5}]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].item_id").isEqualTo("2")
+                .jsonPath("$[1].anomaly").isEqualTo("true");
+    }
+
+    @Test
+    public void testFindById_WithPaging() {
+        Product product = new Product();
+        product.setId("1");
+        product.setOutliers(new ArrayList<>());
+        product.setNonOutliers(new ArrayList<>());
+        when(productService.findById("1", 2, HISTORY_PAGE_SIZE)).thenReturn(Mono.just(product));
+
+        webTestClient.get().uri("/" + API_PRODUCT + "/1?page=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("1")
+                .jsonPath("$.nonOutliers").isArray();
+    }
+
+    @Test
+    public void testFindById_ProductNotFoundException() {
+        when(productService.findById("missing")).thenReturn(Mono.error(new ProductNotFoundException()));
+
+        webTestClient.get().uri("/" + API_PRODUCT + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,533 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PendingAppend;
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.ScoreBatch;
+import Product.PriceAnomalyDetection.model.StorageEncoding;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+public class IProductRepoCustomImplTest {
+
+    private MongoServer server;
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private IProductRepoCustomImpl repo;
+
+    @BeforeEach
+    public void setUp() {
+        server = new MongoServer(new MemoryBackend());
+        client = MongoClients.create(server.bindAndGetConnectionString());
+        mongoTemplate = new MongoTemplate(client, "products");
+        repo = new IProductRepoCustomImpl(mongoTemplate, 3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.shutdown();
+    }
+
+    private static List<PriceData> series(int size, int firstPrice) {
+        List<PriceData> prices = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            prices.add(new PriceData(new Date(1_700_000_000_000L + i), BigDecimal.valueOf(firstPrice + i)));
+        }
+        return prices;
+    }
+
+    private Product product(String id, int nonOutliers, int outliers) {
+        Product product = new Product();
+        product.setId(id);
+        product.setNonOutliers(series(nonOutliers, 100));
+        product.setOutliers(series(outliers, 1_000));
+        return product;
+    }
+
+    private Product stored(String id) {
+        return mongoTemplate.findById(id, Product.class);
+    }
+
+    private static Product missing() {
+        Product product = new Product();
+        product.setId("missing");
+        return product;
+    }
+
+    @Test
+    public void testSaveWithHistory_SplitsSeriesIntoBuckets() {
+        repo.saveWithHistory(product("item", 7, 2));
+
+        assertEquals(4, mongoTemplate.count(new Query(), PriceBucket.class));
+        Product stored = mongoTemplate.findById("item", Product.class);
+        assertEquals(7, stored.getNonOutlierCount());
+        assertEquals(2, stored.getOutlierCount());
+        assertEquals(series(7, 100), repo.findHistory("item", false));
+        assertEquals(series(2, 1_000), repo.findHistory("item", true));
+    }
+
+    @Test
+    public void testSaveWithHistory_ReplacesPreviousHistory() {
+        repo.saveWithHistory(product("item", 7, 2));
+        repo.saveWithHistory(product("item", 2, 0));
+
+        assertEquals(series(2, 100), repo.findHistory("item", false));
+        assertTrue(repo.findHistory("item", true).isEmpty());
+    }
+
+    @Test
+    public void testSaveWithHistory_KeepsDetectorAndDropsPendingAppends() {
+        Product scored = product("item", 7, 2);
+        scored.setDetectionState(state(100, 101));
+        repo.saveWithHistory(scored);
+        assertTrue(repo.setDetector("item", Detector.MAD));
+        assertNull(mongoTemplate.findById("item", Product.class).getDetectionState());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("item")), new Update().push("pendingAppends",
+                new PendingAppend(false, 7, series(8, 100).get(7))), Product.class);
+
+        repo.saveWithHistory(product("item", 3, 0));
+
+        Product stored = mongoTemplate.findById("item", Product.class);
+        assertEquals(Detector.MAD, stored.getDetector());
+        assertNull(stored.getPendingAppends());
+        assertEquals(3, stored.getNonOutlierCount());
+        assertEquals(0, stored.getOutlierCount());
+
+        assertTrue(repo.setDetector("item", null));
+        assertNull(mongoTemplate.findById("item", Product.class).getDetector());
+        assertFalse(repo.setDetector("missing", Detector.MAD));
+    }
+
+    @Test
+    public void testFindHistory_Page() {
+        repo.saveWithHistory(product("item", 10, 0));
+
+        assertEquals(series(10, 100).subList(2, 7), repo.findHistory("item", false, 2, 5));
+        assertEquals(series(10, 100).subList(9, 10), repo.findHistory("item", false, 9, 5));
+        assertTrue(repo.findHistory("item", false, 10, 5).isEmpty());
+    }
+
+    @Test
+    public void testFindLastNonOutliers() {
+        repo.saveWithHistory(product("item", 10, 0));
+
+        assertEquals(series(10, 100).subList(6, 10), repo.findLastNonOutliers(stored("item"), 4));
+        assertEquals(series(10, 100), repo.findLastNonOutliers(stored("item"), 20));
+        assertTrue(repo.findLastNonOutliers(missing(), 4).isEmpty());
+    }
+
+    @Test
+    public void testFindLastNonOutliers_OfSeveralProductsInOneQuery() {
+        repo.saveWithHistory(product("long", 10, 0));
+        repo.saveWithHistory(product("short", 2, 1));
+        Product longHistory = new Product();
+        longHistory.setId("long");
+        longHistory.setNonOutlierCount(10);
+        longHistory.setHistoryEpoch(1);
+        Product shortHistory = new Product();
+        shortHistory.setId("short");
+        shortHistory.setNonOutlierCount(2);
+        shortHistory.setHistoryEpoch(1);
+        Product missing = new Product();
+        missing.setId("missing");
+
+        Map<String, List<PriceData>> histories =
+                repo.findLastNonOutliers(List.of(longHistory, shortHistory, missing), 4);
+
+        assertEquals(series(10, 100).subList(6, 10), histories.get("long"));
+        assertEquals(series(2, 100), histories.get("short"));
+        assertTrue(histories.get("missing").isEmpty());
+        assertEquals(List.of(PriceBucket.bucketId("long", false, 1), PriceBucket.bucketId("long", false, 2),
+                        PriceBucket.bucketId("long", false, 3), PriceBucket.bucketId("short", false, 0)),
+                IProductRepoCustomImpl.lastNonOutliersQuery(List.of(longHistory, shortHistory, missing), 4, 3)
+                        .getQueryObject().get("_id", Document.class).getList("$in", String.class));
+    }
+
+    private static DetectionState state(long... window) {
+        return new DetectionState(10, new BigDecimal("1.5"), window, new BigDecimal("100"), new BigDecimal("0"),
+                new BigDecimal("100"), new BigDecimal("100"), 0, null, null, MathMode.EXACT);
+    }
+
+    @Test
+    public void testRecordScore_FillsLastBucketThenOpensNewOne() {
+        repo.saveWithHistory(product("item", 2, 0));
+        PriceData first = new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5"));
+        PriceData second = new PriceData(new Date(1_800_000_000_001L), new BigDecimal("2.5"));
+        PriceData outlier = new PriceData(new Date(1_800_000_000_002L), new BigDecimal("99"));
+
+        assertTrue(repo.recordScore("item", 1, 0, 2, state(15_000), true, first, false));
+        assertTrue(repo.recordScore("item", 1, 1, 3, state(15_000, 25_000), false, second, false));
+        assertTrue(repo.recordScore("item", 1, 2, 0, state(15_000, 25_000), false, outlier, true));
+
+        List<PriceData> expected = series(2, 100);
+        expected.add(first);
+        expected.add(second);
+        assertEquals(expected, repo.findHistory("item", false));
+        assertEquals(List.of(outlier), repo.findHistory("item", true));
+        assertEquals(4, mongoTemplate.findById("item", Product.class).getNonOutlierCount());
+        assertEquals(1, mongoTemplate.findById(PriceBucket.bucketId("item", false, 1), PriceBucket.class).getCount());
+    }
+
+    @Test
+    public void testRecordScore_PushesIntoWindowAndKeepsLastPrices() {
+        repo.saveWithHistory(product("item", 2, 0));
+        repo.recordScore("item", 1, 0, 2, state(1, 2, 3), true, new PriceData(new Date(), BigDecimal.ONE), false);
+
+        for (long price = 4; price <= 15; price++) {
+            DetectionState state = state(price);
+            state.setLowerLimit(BigDecimal.valueOf(price));
+            assertTrue(repo.recordScore("item", 1, price - 3, price - 1, state, false,
+                    new PriceData(new Date(), BigDecimal.valueOf(price)), false));
+        }
+
+        DetectionState stored = mongoTemplate.findById("item", Product.class).getDetectionState();
+        assertArrayEquals(new long[]{5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}, stored.getWindow());
+        assertEquals(0, BigDecimal.valueOf(15).compareTo(stored.getLowerLimit()));
+        assertEquals(13, stored.getVersion());
+        assertEquals(15, mongoTemplate.findById("item", Product.class).getNonOutlierCount());
+    }
+
+    @Test
+    public void testRecordScore_RejectsStaleVersion() {
+        repo.saveWithHistory(product("item", 2, 0));
+        repo.recordScore("item", 1, 0, 2, state(1_000_000), true,
+                new PriceData(new Date(), new BigDecimal("100")), false);
+
+        assertFalse(repo.recordScore("item", 1, 0, 3, state(2_000_000), true,
+                new PriceData(new Date(), new BigDecimal("200")), false));
+        assertFalse(repo.recordScore("item", 1, 0, 0, state(1_000_000), false,
+                new PriceData(new Date(), new BigDecimal("300")), true));
+
+        Product product = mongoTemplate.findById("item", Product.class);
+        assertArrayEquals(new long[]{1_000_000}, product.getDetectionState().getWindow());
+        assertEquals(1, product.getDetectionState().getVersion());
+        assertEquals(3, product.getNonOutlierCount());
+        assertEquals(0, product.getOutlierCount());
+        assertEquals(3, repo.findHistory("item", false).size());
+    }
+
+    @Test
+    public void testRecordScore_RejectsStaleCount() {
+        repo.saveWithHistory(product("item", 2, 1));
+
+        assertFalse(repo.recordScore("item", 1, 0, 0, state(1), false,
+                new PriceData(new Date(), new BigDecimal("300")), true));
+
+        assertEquals(1, mongoTemplate.findById("item", Product.class).getOutlierCount());
+        assertEquals(1, repo.findHistory("item", true).size());
+    }
+
+    @Test
+    public void testRecordScore_AppendsPointLeftPendingByFailedBucketWrite() {
+        repo.saveWithHistory(product("item", 2, 0));
+        MongoTemplate failing = spy(mongoTemplate);
+        doThrow(new DataAccessResourceFailureException("Connection lost")).doCallRealMethod()
+                .when(failing).upsert(any(Query.class), any(UpdateDefinition.class), eq(PriceBucket.class));
+        IProductRepoCustomImpl flaky = new IProductRepoCustomImpl(failing, 3);
+        PriceData first = new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5"));
+        PriceData second = new PriceData(new Date(1_800_000_000_001L), new BigDecimal("2.5"));
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> flaky.recordScore("item", 1, 0, 2, state(15_000), true, first, false));
+
+        Product recorded = mongoTemplate.findById("item", Product.class);
+        assertEquals(3, recorded.getNonOutlierCount());
+        assertEquals(List.of(new PendingAppend(false, 2, first)), recorded.getPendingAppends());
+        assertEquals(series(2, 100), repo.findHistory("item", false));
+
+        assertTrue(flaky.recordScore("item", 1, 1, 3, state(15_000, 25_000), false, second, false));
+
+        List<PriceData> expected = series(2, 100);
+        expected.add(first);
+        expected.add(second);
+        assertEquals(expected, repo.findHistory("item", false));
+        assertTrue(mongoTemplate.findById("item", Product.class).getPendingAppends().isEmpty());
+        assertEquals(3, mongoTemplate.findById(PriceBucket.bucketId("item", false, 0), PriceBucket.class).getCount());
+        assertEquals(1, mongoTemplate.findById(PriceBucket.bucketId("item", false, 1), PriceBucket.class).getCount());
+    }
+
+    @Test
+    public void testRecordScore_RejectsScoreReadBeforeHistoryWasReplaced() {
+        repo.saveWithHistory(product("item", 7, 0));
+        Product read = stored("item");
+
+        repo.saveWithHistory(product("item", 2, 0));
+
+        assertFalse(repo.recordScore("item", read.getHistoryEpoch(), 0, 2, state(15_000), true,
+                new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5")), false));
+        assertEquals(series(2, 100), repo.findHistory("item", false));
+        assertEquals(2, stored("item").getNonOutlierCount());
+    }
+
+    @Test
+    public void testRecordScore_HistoryReplacedBeforeTheAppendLeavesNoStrayPoint() {
+        repo.saveWithHistory(product("item", 7, 0));
+        Product read = stored("item");
+        MongoTemplate interleaved = spy(mongoTemplate);
+        doAnswer(invocation -> {
+            repo.saveWithHistory(product("item", 2, 0));
+            return invocation.callRealMethod();
+        }).when(interleaved).upsert(any(Query.class), any(UpdateDefinition.class), eq(PriceBucket.class));
+        IProductRepoCustomImpl scorer = new IProductRepoCustomImpl(interleaved, 3);
+
+        assertTrue(scorer.recordScore("item", read.getHistoryEpoch(), 0, 7, state(15_000), true,
+                new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5")), false));
+
+        Product replaced = stored("item");
+        assertEquals(2, replaced.getNonOutlierCount());
+        assertNull(replaced.getDetectionState());
+        assertEquals(series(2, 100), repo.findHistory("item", false));
+        assertEquals(series(2, 100), repo.findLastNonOutliers(replaced, 10));
+        assertEquals(1, mongoTemplate.count(new Query(), PriceBucket.class));
+    }
+
+    @Test
+    public void testRecordScores_HistoryReplacedBeforeTheAppendLeavesNoStrayPoint() {
+        repo.saveAllWithHistory(List.of(product("a", 7, 0), product("b", 2, 0)));
+        MongoTemplate interleaved = spy(mongoTemplate);
+        doAnswer(invocation -> {
+            repo.saveWithHistory(product("a", 2, 0));
+            return invocation.callRealMethod();
+        }).when(interleaved).bulkOps(any(BulkOperations.BulkMode.class), eq(PriceBucket.class));
+        IProductRepoCustomImpl scorer = new IProductRepoCustomImpl(interleaved, 3);
+        List<PriceData> scored = List.of(new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5")));
+
+        assertTrue(scorer.recordScores(List.of(
+                new ScoreBatch("a", 1, 0, 0, 7, state(1), new ArrayList<>(), new ArrayList<>(scored)),
+                new ScoreBatch("b", 1, 0, 0, 2, state(2), new ArrayList<>(), new ArrayList<>(scored)))).isEmpty());
+
+        assertEquals(series(2, 100), repo.findHistory("a", false));
+        assertEquals(series(2, 100), repo.findLastNonOutliers(stored("a"), 10));
+        List<PriceData> expected = series(2, 100);
+        expected.addAll(scored);
+        assertEquals(expected, repo.findHistory("b", false));
+        assertTrue(stored("b").getPendingAppends().isEmpty());
+    }
+
+    @Test
+    public void testAppendPendingPoints_DoesNotDuplicateAppendedPoints() {
+        repo.saveWithHistory(product("item", 2, 0));
+        repo.saveWithHistory(product("other", 1, 0));
+        MongoTemplate failing = spy(mongoTemplate);
+        doThrow(new DataAccessResourceFailureException("Connection lost"))
+                .when(failing).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Product.class));
+        IProductRepoCustomImpl flaky = new IProductRepoCustomImpl(failing, 3);
+        PriceData scored = new PriceData(new Date(1_800_000_000_000L), new BigDecimal("1.5"));
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> flaky.recordScore("item", 1, 0, 2, state(15_000), true, scored, false));
+        assertEquals(1, mongoTemplate.findById("item", Product.class).getPendingAppends().size());
+
+        assertEquals(List.of("item"), repo.appendPendingPoints(null, 10));
+
+        List<PriceData> expected = series(2, 100);
+        expected.add(scored);
+        assertEquals(expected, repo.findHistory("item", false));
+        assertTrue(mongoTemplate.findById("item", Product.class).getPendingAppends().isEmpty());
+        assertTrue(repo.appendPendingPoints(null, 10).isEmpty());
+    }
+
+    @Test
+    public void testSaveAllWithHistory_ReplacesEveryProductOfTheBatch() {
+        repo.saveWithHistory(product("a", 9, 4));
+        List<Product> batch = List.of(product("a", 2, 1), product("b", 7, 0), product("c", 0, 5));
+
+        repo.saveAllWithHistory(batch);
+
+        for (Product product : batch) {
+            assertEquals(product.getNonOutliers(), repo.findHistory(product.getId(), false));
+            assertEquals(product.getOutliers(), repo.findHistory(product.getId(), true));
+            Product stored = mongoTemplate.findById(product.getId(), Product.class);
+            assertEquals(product.getNonOutliers().size(), stored.getNonOutlierCount());
+            assertEquals(product.getOutliers().size(), stored.getOutlierCount());
+        }
+        assertEquals(2 + 3 + 2, mongoTemplate.count(new Query(), PriceBucket.class));
+    }
+
+    @Test
+    public void testRecordScores_WritesEveryBatchAndReportsStaleProducts() {
+        repo.saveAllWithHistory(List.of(product("a", 2, 0), product("b", 1, 1), product("stale", 1, 0)));
+        List<PriceData> nonOutliers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            nonOutliers.add(new PriceData(new Date(1_800_000_000_000L + i), BigDecimal.valueOf(200 + i)));
+        }
+        List<PriceData> outliers = List.of(new PriceData(new Date(1_800_000_000_000L), new BigDecimal("2000")));
+
+        Set<String> conflicts = repo.recordScores(List.of(
+                new ScoreBatch("a", 1, 0, 0, 2, state(1, 2, 3), new ArrayList<>(outliers), new ArrayList<>(nonOutliers)),
+                new ScoreBatch("b", 1, 0, 1, 1, state(4), new ArrayList<>(), new ArrayList<>(nonOutliers.subList(0, 1))),
+                new ScoreBatch("stale", 1, 3, 0, 1, state(5), new ArrayList<>(), new ArrayList<>(nonOutliers))));
+
+        assertEquals(Set.of("stale"), conflicts);
+        List<PriceData> expected = series(2, 100);
+        expected.addAll(nonOutliers);
+        assertEquals(expected, repo.findHistory("a", false));
+        assertEquals(outliers, repo.findHistory("a", true));
+        Product a = mongoTemplate.findById("a", Product.class);
+        assertEquals(7, a.getNonOutlierCount());
+        assertEquals(1, a.getOutlierCount());
+        assertEquals(1, a.getDetectionState().getVersion());
+        assertTrue(a.getPendingAppends().isEmpty());
+        assertArrayEquals(new long[]{1, 2, 3}, a.getDetectionState().getWindow());
+        assertEquals(3, mongoTemplate.findById(PriceBucket.bucketId("a", false, 1), PriceBucket.class).getCount());
+        assertEquals(1, mongoTemplate.findById(PriceBucket.bucketId("a", false, 2), PriceBucket.class).getCount());
+
+        assertEquals(2, mongoTemplate.findById("b", Product.class).getNonOutlierCount());
+        Product stale = mongoTemplate.findById("stale", Product.class);
+        assertNull(stale.getDetectionState());
+        assertEquals(1, stale.getNonOutlierCount());
+        assertEquals(1, repo.findHistory("stale", false).size());
+        assertEquals(1, mongoTemplate.count(new Query(Criteria.where("_id").is("stale")), Product.class));
+    }
+
+    private static void assertSealed(MongoTemplate mongoTemplate, String bucketId, boolean sealed) {
+        PriceBucket bucket = mongoTemplate.findById(bucketId, PriceBucket.class);
+        assertEquals(sealed, bucket.getColumns() != null, bucketId);
+        assertEquals(sealed, bucket.getPrices().isEmpty(), bucketId);
+    }
+
+    @Test
+    public void testColumnar_SealsFullBucketsAndReadsBothLayouts() {
+        IProductRepoCustomImpl columnar = new IProductRepoCustomImpl(mongoTemplate, 3, StorageEncoding.COLUMNAR);
+        columnar.saveWithHistory(product("item", 7, 2));
+
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 0), true);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 1), true);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 2), false);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", true, 0), false);
+        assertEquals(series(7, 100), columnar.findHistory("item", false));
+        assertEquals(series(2, 1_000), columnar.findHistory("item", true));
+        assertEquals(series(7, 100).subList(2, 6), columnar.findHistory("item", false, 2, 4));
+        assertEquals(series(7, 100).subList(2, 7), columnar.findLastNonOutliers(stored("item"), 5));
+        assertEquals(series(7, 100), repo.findHistory("item", false));
+
+        Product loaded = new Product();
+        loaded.setId("item");
+        columnar.loadHistories(List.of(loaded));
+        assertEquals(series(7, 100), loaded.getNonOutliers());
+        assertEquals(series(2, 1_000), loaded.getOutliers());
+    }
+
+    @Test
+    public void testColumnar_RecordScoreSealsTheBucketItFills() {
+        IProductRepoCustomImpl columnar = new IProductRepoCustomImpl(mongoTemplate, 3, StorageEncoding.COLUMNAR);
+        columnar.saveWithHistory(product("item", 2, 0));
+        PriceData third = new PriceData(new Date(1_800_000_000_000L), new BigDecimal("102.75"));
+        PriceData fourth = new PriceData(new Date(1_800_000_000_001L), new BigDecimal("103"));
+
+        assertTrue(columnar.recordScore("item", 1, 0, 2, state(10_275), true, third, false));
+        assertTrue(columnar.recordScore("item", 1, 1, 3, state(10_275, 10_300), false, fourth, false));
+
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 0), true);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 1), false);
+        List<PriceData> expected = series(2, 100);
+        expected.add(third);
+        expected.add(fourth);
+        assertEquals(expected, columnar.findHistory("item", false));
+    }
+
+    @Test
+    public void testColumnar_RecordScoresSealsEveryFilledBucket() {
+        IProductRepoCustomImpl columnar = new IProductRepoCustomImpl(mongoTemplate, 3, StorageEncoding.COLUMNAR);
+        columnar.saveWithHistory(product("item", 2, 0));
+        List<PriceData> nonOutliers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            nonOutliers.add(new PriceData(new Date(1_800_000_000_000L + i), BigDecimal.valueOf(200 + i)));
+        }
+
+        assertTrue(columnar.recordScores(List.of(new ScoreBatch("item", 1, 0, 0, 2, state(1, 2, 3),
+                new ArrayList<>(), new ArrayList<>(nonOutliers)))).isEmpty());
+
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 0), true);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 1), true);
+        assertSealed(mongoTemplate, PriceBucket.bucketId("item", false, 2), false);
+        List<PriceData> expected = series(2, 100);
+        expected.addAll(nonOutliers);
+        assertEquals(expected, columnar.findHistory("item", false));
+    }
+
+    /**
+     * A product as the first version of the application stored it, with both series embedded and no counts.
+     */
+    private void insertEmbedded(String id, List<PriceData> nonOutliers, List<PriceData> outliers) {
+        mongoTemplate.insert(new Document("_id", id)
+                .append("outliers", embedded(outliers))
+                .append("nonOutliers", embedded(nonOutliers))
+                .append("_class", Product.class.getName()), "products");
+    }
+
+    private static List<Document> embedded(List<PriceData> series) {
+        List<Document> points = new ArrayList<>();
+        for (PriceData point : series) {
+            points.add(new Document("date", point.getDate()).append("price", point.getPrice().toString()));
+        }
+        return points;
+    }
+
+    @Test
+    public void testMigrateEmbeddedHistories_MovesArraysToBuckets() {
+        insertEmbedded("legacy", series(7, 100), series(2, 1_000));
+        repo.saveWithHistory(product("item", 1, 0));
+
+        assertEquals(List.of("legacy"), repo.migrateEmbeddedHistories(10));
+
+        Product stored = mongoTemplate.findById("legacy", Product.class);
+        assertEquals(7, stored.getNonOutlierCount());
+        assertEquals(2, stored.getOutlierCount());
+        assertEquals(series(7, 100), repo.findHistory("legacy", false));
+        assertEquals(series(2, 1_000), repo.findHistory("legacy", true));
+        assertEquals(series(7, 100).subList(3, 7), repo.findLastNonOutliers(stored("legacy"), 4));
+        Document raw = mongoTemplate.findById("legacy", Document.class, "products");
+        assertFalse(raw.containsKey("outliers"));
+        assertFalse(raw.containsKey("nonOutliers"));
+        assertTrue(repo.migrateEmbeddedHistories(10).isEmpty());
+    }
+
+    @Test
+    public void testMigrateEmbeddedHistories_KeepsPricesScoredAfterUpgrade() {
+        insertEmbedded("legacy", series(4, 100), List.of());
+        PriceData scored = new PriceData(new Date(1_800_000_000_000L), new BigDecimal("104"));
+        assertTrue(repo.recordScore("legacy", 0, 0, 0, state(10_400), true, scored, false));
+
+        assertEquals(List.of("legacy"), repo.migrateEmbeddedHistories(10));
+
+        List<PriceData> expected = series(4, 100);
+        expected.add(scored);
+        assertEquals(expected, repo.findHistory("legacy", false));
+        Product stored = mongoTemplate.findById("legacy", Product.class);
+        assertEquals(5, stored.getNonOutlierCount());
+        assertNull(stored.getDetectionState());
+    }
+}
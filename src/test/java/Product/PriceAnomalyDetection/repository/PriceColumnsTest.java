@@ -0,0 +1,82 @@
+package Product.PriceAnomalyDetection.repository;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriceColumnsTest {
+
+    private static List<PriceData> daily(int size) {
+        List<PriceData> points = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            points.add(new PriceData(new Date(1_700_000_000_000L + i * 86_400_000L),
+                    BigDecimal.valueOf(10_000 + (i * 37) % 500, 2)));
+        }
+        return points;
+    }
+
+    @Test
+    public void testRoundTrip_DailyPricesInAFewBytesPerPoint() {
+        List<PriceData> points = daily(200);
+
+        byte[] columns = PriceColumns.encode(points);
+
+        assertEquals(points, new PriceColumns(columns));
+        assertTrue(columns.length < 200 * 4, "Encoded in " + columns.length + " bytes");
+    }
+
+    @Test
+    public void testRoundTrip_KeepsTheScaleOfEveryPriceAndIrregularDates() {
+        List<PriceData> points = List.of(
+                new PriceData(new Date(-86_400_000L), new BigDecimal("1E+3")),
+                new PriceData(new Date(5), new BigDecimal("-12.5")),
+                new PriceData(new Date(5), new BigDecimal("0.0001")),
+                new PriceData(new Date(1_700_000_000_123L), new BigDecimal("99.90")));
+
+        List<PriceData> decoded = new PriceColumns(PriceColumns.encode(points));
+
+        assertEquals(points, decoded);
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).getPrice().scale(), decoded.get(i).getPrice().scale());
+        }
+    }
+
+    @Test
+    public void testDecode_ExposesPrimitiveColumns() {
+        List<PriceData> points = daily(3);
+
+        PriceColumns columns = new PriceColumns(PriceColumns.encode(points));
+
+        assertEquals(3, columns.size());
+        assertArrayEquals(new long[]{1_700_000_000_000L, 1_700_086_400_000L, 1_700_172_800_000L},
+                columns.epochMillis());
+        assertArrayEquals(new long[]{10_000, 10_037, 10_074}, columns.unscaledPrices());
+        assertEquals(2, columns.scale());
+    }
+
+    @Test
+    public void testEncode_ReturnsNullForPricesThatDoNotFitInALong() {
+        List<PriceData> points = List.of(
+                new PriceData(new Date(0), new BigDecimal("12345678901234567890")),
+                new PriceData(new Date(1), BigDecimal.ONE));
+
+        assertNull(PriceColumns.encode(points));
+        assertNull(PriceColumns.encode(List.of(new PriceData(new Date(0), null))));
+    }
+
+    @Test
+    public void testDecode_RejectsUnknownFormat() {
+        byte[] columns = PriceColumns.encode(daily(3));
+        columns[0] = 9;
+
+        assertThrows(IllegalArgumentException.class, () -> new PriceColumns(columns));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PriceColumns(new byte[]{PriceColumns.FORMAT_VERSION, 5}).get(0));
+    }
+}
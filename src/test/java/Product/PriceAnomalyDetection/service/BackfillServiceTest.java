@@ -0,0 +1,189 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.model.BackfillJob;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJobStatus;
+import Product.PriceAnomalyDetection.repository.IBackfillJobRepo;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.repository.IProductRepoCustomImpl;
+import Product.PriceAnomalyDetection.service.backfillService.BackfillService;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformerMovingWindow;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class BackfillServiceTest {
+
+    private static final int PRODUCTS = 23;
+    private static final BigDecimal NEW_K_VALUE = new BigDecimal("1");
+
+    private MongoServer server;
+    private MongoClient client;
+    private IProductRepo repo;
+    private IBackfillJobRepo jobRepo;
+    private ICacheService cacheService;
+    private BackfillService backfillService;
+
+    @BeforeEach
+    public void setUp() {
+        server = new MongoServer(new MemoryBackend());
+        client = MongoClients.create(server.bindAndGetConnectionString());
+        MongoTemplate mongoTemplate = new MongoTemplate(client, "products");
+        MongoRepositoryFactory factory = new MongoRepositoryFactory(mongoTemplate);
+        repo = factory.getRepository(IProductRepo.class,
+                RepositoryFragments.just(new IProductRepoCustomImpl(mongoTemplate, 7)));
+        jobRepo = factory.getRepository(IBackfillJobRepo.class);
+        cacheService = mock(ICacheService.class);
+        backfillService = new BackfillService(repo, jobRepo, newTransformer(), cacheService, null,
+                5, NEW_K_VALUE, MathMode.PRIMITIVE, 4, 3, 0);
+
+        DataTransformerMovingWindow oldTransformer =
+                new DataTransformerMovingWindow(10, new BigDecimal("3"), MathMode.PRIMITIVE);
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = oldTransformer.transformToProduct(id(i), history(i));
+            product.setDetector(i % 2 == 0 ? Detector.MAD : null);
+            products.add(product);
+        }
+        repo.saveAllWithHistory(products);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        backfillService.shutdown();
+        client.close();
+        server.shutdown();
+    }
+
+    private static DataTransformerMovingWindow newTransformer() {
+        return new DataTransformerMovingWindow(5, NEW_K_VALUE, MathMode.PRIMITIVE);
+    }
+
+    private static String id(int i) {
+        return String.format("MLA%03d", i);
+    }
+
+    private static List<PriceData> history(int i) {
+        Random random = new Random(i);
+        List<PriceData> history = new ArrayList<>();
+        for (int day = 0; day < 30 + i; day++) {
+            BigDecimal price = BigDecimal.valueOf(10_000 + random.nextInt(2_000) + (day % 9 == 0 ? 4_000 : 0), 2);
+            history.add(new PriceData(new Date(1_700_000_000_000L + day * 86_400_000L), price));
+        }
+        return history;
+    }
+
+    private static void awaitFinished(BackfillJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished(), "backfill " + job.getId() + " did not finish");
+    }
+
+    private void assertRescored(int i) {
+        Product expected = newTransformer().transformToProduct(id(i), history(i));
+        Product stored = repo.findById(id(i)).orElseThrow();
+        assertEquals(expected.getOutliers(), repo.findHistory(id(i), true), "outliers of " + id(i));
+        assertEquals(expected.getNonOutliers(), repo.findHistory(id(i), false), "non outliers of " + id(i));
+        assertEquals(expected.getOutliers().size(), stored.getOutlierCount());
+        assertEquals(i % 2 == 0 ? Detector.MAD : null, stored.getDetector());
+    }
+
+    @Test
+    public void testBackfill_ReclassifiesEveryProductWithTheNewParameters() throws Exception {
+        BackfillJob job = backfillService.start();
+        awaitFinished(job);
+
+        assertEquals(UploadJobStatus.COMPLETED, job.getStatus());
+        assertEquals(PRODUCTS, job.getTotalItems());
+        assertEquals(PRODUCTS, job.getItemsProcessed());
+        assertTrue(job.getItemsChanged() > 0);
+        assertEquals(id(PRODUCTS - 1), job.getLastItemId());
+        assertEquals(100, job.getPercentComplete());
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertRescored(i);
+        }
+        verify(cacheService, atLeastOnce()).invalidateItems(anyCollection());
+
+        BackfillJob stored = jobRepo.findById(job.getId()).orElseThrow();
+        assertEquals(UploadJobStatus.COMPLETED, stored.getStatus());
+        assertEquals(PRODUCTS, stored.getItemsProcessed());
+        assertEquals(job.getItemsChanged(), stored.getItemsChanged());
+
+        BackfillJob again = backfillService.start();
+        awaitFinished(again);
+        assertNotEquals(job.getId(), again.getId());
+        assertEquals(PRODUCTS, again.getItemsProcessed());
+        assertEquals(0, again.getItemsChanged());
+    }
+
+    @Test
+    public void testBackfill_ResumesAfterTheLastCommittedProduct() throws Exception {
+        BackfillJob interrupted = new BackfillJob("interrupted", 5, new BigDecimal("1.0"), MathMode.PRIMITIVE);
+        interrupted.setStatus(UploadJobStatus.RUNNING);
+        interrupted.setLastItemId(id(9));
+        interrupted.setItemsProcessed(10);
+        jobRepo.save(interrupted);
+
+        BackfillJob job = backfillService.start();
+        awaitFinished(job);
+
+        assertEquals("interrupted", job.getId());
+        assertEquals(UploadJobStatus.COMPLETED, job.getStatus());
+        assertEquals(PRODUCTS, job.getItemsProcessed());
+        assertNull(job.getError());
+        for (int i = 0; i < PRODUCTS; i++) {
+            if (i >= 10) {
+                assertRescored(i);
+            } else {
+                Product stored = repo.findById(id(i)).orElseThrow();
+                Product old = new DataTransformerMovingWindow(10, new BigDecimal("3"), MathMode.PRIMITIVE)
+                        .transformToProduct(id(i), history(i));
+                assertEquals(old.getOutliers().size(), stored.getOutlierCount(), "untouched " + id(i));
+            }
+        }
+    }
+
+    @Test
+    public void testBackfillWithOtherParameters_StartsAgain() throws Exception {
+        BackfillJob previous = new BackfillJob("previous", 10, new BigDecimal("3"), MathMode.PRIMITIVE);
+        previous.setStatus(UploadJobStatus.FAILED);
+        previous.setLastItemId(id(PRODUCTS - 1));
+        jobRepo.save(previous);
+
+        BackfillJob job = backfillService.start();
+        awaitFinished(job);
+
+        assertNotEquals("previous", job.getId());
+        assertEquals(PRODUCTS, job.getItemsProcessed());
+        assertEquals(UploadJobStatus.FAILED, backfillService.findById("previous").getStatus());
+    }
+}
@@ -0,0 +1,288 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.PriceBucket;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.productService.ProductService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionEwma;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionMad;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionSelector;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.StreamingAnomalyDetection;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static Product.PriceAnomalyDetection.service.ScoringFixture.INITIAL_HISTORY;
+import static Product.PriceAnomalyDetection.service.ScoringFixture.price;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ProductServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int SCORES_PER_THREAD = 100;
+
+    private ScoringFixture fixture;
+    private IProductRepo repo;
+    private ScoringFixture.InMemorySnapshotCache detectionSnapshots;
+    private SimpleMeterRegistry registry;
+    private ProductService productService;
+
+    @BeforeEach
+    public void setUp() {
+        fixture = new ScoringFixture();
+        repo = fixture.repo;
+        detectionSnapshots = new ScoringFixture.InMemorySnapshotCache();
+        registry = new SimpleMeterRegistry();
+        productService = new ProductService(repo,
+                new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), MathMode.PRIMITIVE),
+                mock(ICacheService.class), detectionSnapshots, new ScoringMetrics(registry), null, 1_000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void testBatchMatchesSingleScores() {
+        for (String id : List.of("a", "b", "single-a", "single-b")) {
+            fixture.saveHistory(id);
+        }
+        List<ItemPriceRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            requests.add(new ItemPriceRequest(i % 3 == 0 ? "b" : "a", price(i)));
+        }
+        requests.add(5, new ItemPriceRequest("missing", BigDecimal.TEN));
+
+        List<String> results = productService.isAnomaly(requests);
+
+        for (int i = 0; i < requests.size(); i++) {
+            ItemPriceRequest request = requests.get(i);
+            String expected = request.getItem_id().equals("missing")
+                    ? null
+                    : productService.isAnomaly("single-" + request.getItem_id(), request.getPrice());
+            assertEquals(expected, results.get(i), "request " + i);
+        }
+        for (String id : List.of("a", "b")) {
+            Product batch = repo.findById(id).orElseThrow();
+            Product single = repo.findById("single-" + id).orElseThrow();
+            assertEquals(single.getOutlierCount(), batch.getOutlierCount());
+            assertEquals(single.getNonOutlierCount(), batch.getNonOutlierCount());
+            assertArrayEquals(single.getDetectionState().getWindow(), batch.getDetectionState().getWindow());
+            assertEquals(repo.findHistory("single-" + id, false).stream().map(PriceData::getPrice).toList(),
+                    repo.findHistory(id, false).stream().map(PriceData::getPrice).toList());
+        }
+        assertTrue(repo.findById("missing").isEmpty());
+    }
+
+    @Test
+    public void testStaleSnapshot_IsEvictedAndScoredAgainFromMongo() {
+        fixture.saveHistory("item");
+        assertEquals("false", productService.isAnomaly("item", new BigDecimal("101")));
+        Map<String, byte[]> stale = new HashMap<>(detectionSnapshots.values);
+        assertEquals("false", productService.isAnomaly("item", new BigDecimal("102")));
+        detectionSnapshots.values.putAll(stale);
+
+        assertEquals("false", productService.isAnomaly("item", new BigDecimal("100")));
+        assertEquals(List.of("true", "false"), productService.isAnomaly(List.of(
+                new ItemPriceRequest("item", new BigDecimal("500")),
+                new ItemPriceRequest("item", new BigDecimal("101")))));
+        detectionSnapshots.values.putAll(stale);
+        assertEquals(List.of("false"), productService.isAnomaly(List.of(
+                new ItemPriceRequest("item", new BigDecimal("102")))));
+
+        Product stored = repo.findById("item").orElseThrow();
+        Product snapshot = detectionSnapshots.get("item");
+        assertEquals(5, stored.getDetectionState().getVersion());
+        assertEquals(INITIAL_HISTORY + 5, stored.getNonOutlierCount());
+        assertEquals(1, stored.getOutlierCount());
+        assertEquals(stored.getOutlierCount(), snapshot.getOutlierCount());
+        assertEquals(stored.getNonOutlierCount(), snapshot.getNonOutlierCount());
+        assertEquals(stored.getDetectionState().getVersion(), snapshot.getDetectionState().getVersion());
+        assertArrayEquals(stored.getDetectionState().getWindow(), snapshot.getDetectionState().getWindow());
+
+        assertEquals(2, registry.get("scoring.conflicts").counter().count());
+        assertEquals(1, registry.get("scoring.snapshot.lookups").tag("result", "miss").counter().count());
+        assertEquals(4, registry.get("scoring.snapshot.lookups").tag("result", "hit").counter().count());
+        assertEquals(3, registry.get("scoring.duration").tag("path", "single").timer().count());
+        assertEquals(2, registry.get("scoring.duration").tag("path", "batch").timer().count());
+        assertEquals(1, registry.get("scoring.stage").tags("path", "single", "stage", "state-rebuild").timer().count());
+        assertEquals(11, registry.get("scoring.history.length").summary().totalAmount());
+    }
+
+    @Test
+    public void testDetectorOfEachProduct_ScoresAndStoresItsOwnState() {
+        BigDecimal kValue = new BigDecimal("1.5");
+        AnomalyDetectionEwma ewma = new AnomalyDetectionEwma(10, kValue);
+        AnomalyDetectionMad mad = new AnomalyDetectionMad(10, kValue);
+        AnomalyDetectionSelector selector = new AnomalyDetectionSelector(List.of(
+                new AnomalyDetectionStandardDeviation(10, kValue, MathMode.PRIMITIVE), ewma, mad), Detector.EWMA);
+        ProductService selectorService = new ProductService(repo, selector, mock(ICacheService.class),
+                detectionSnapshots, new ScoringMetrics(registry), null, 1_000);
+        fixture.saveHistory("default");
+        fixture.saveHistory("mad", Detector.MAD);
+        List<PriceData> seed = repo.findLastNonOutliers(repo.findById("default").orElseThrow(), 11);
+        Map<String, StreamingAnomalyDetection> detectors = Map.of("default", ewma, "mad", mad);
+        Map<String, DetectionState> expected = Map.of("default", ewma.buildState(seed), "mad", mad.buildState(seed));
+
+        for (int i = 0; i < 60; i++) {
+            String id = i % 2 == 0 ? "default" : "mad";
+            BigDecimal price = price(i);
+            String result = i % 4 < 2
+                    ? selectorService.isAnomaly(id, price)
+                    : selectorService.isAnomaly(List.of(new ItemPriceRequest(id, price))).get(0);
+            assertEquals(detectors.get(id).isAnomaly(expected.get(id), price), result, "price " + i);
+            if (!Boolean.parseBoolean(result)) {
+                detectors.get(id).update(expected.get(id), price);
+            }
+        }
+
+        for (String id : List.of("default", "mad")) {
+            DetectionState stored = repo.findById(id).orElseThrow().getDetectionState();
+            Product snapshot = detectionSnapshots.get(id);
+            assertEquals(detectors.get(id).getDetector(), stored.getDetector());
+            assertArrayEquals(expected.get(id).getStatistics(), stored.getStatistics(), id);
+            assertEquals(0, expected.get(id).getUpperLimit().compareTo(stored.getUpperLimit()), id);
+            assertArrayEquals(stored.getStatistics(), snapshot.getDetectionState().getStatistics(), id);
+        }
+        assertEquals(Detector.MAD, detectionSnapshots.get("mad").getDetector());
+        assertEquals(2, registry.get("scoring.stage").tags("path", "single", "stage", "state-rebuild").timer().count()
+                + registry.get("scoring.stage").tags("path", "batch", "stage", "state-rebuild").timer().count());
+    }
+
+    @Test
+    public void testConcurrentBatchesAndSingleScoresAreNotLost() throws Exception {
+        fixture.saveHistory("item");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int offset = thread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                long anomalies = 0;
+                for (int i = 0; i < SCORES_PER_THREAD / 10; i++) {
+                    int sequence = (offset * SCORES_PER_THREAD + i) * 10;
+                    List<String> results;
+                    if (offset % 2 == 0) {
+                        List<ItemPriceRequest> batch = new ArrayList<>();
+                        for (int j = 0; j < 10; j++) {
+                            batch.add(new ItemPriceRequest("item", price(sequence + j)));
+                        }
+                        results = productService.isAnomaly(batch);
+                    } else {
+                        results = new ArrayList<>();
+                        for (int j = 0; j < 10; j++) {
+                            results.add(productService.isAnomaly("item", price(sequence + j)));
+                        }
+                    }
+                    anomalies += results.stream().filter("true"::equals).count();
+                }
+                return anomalies;
+            }));
+        }
+        start.countDown();
+        long anomalies = 0;
+        for (Future<Long> future : futures) {
+            anomalies += future.get();
+        }
+        executor.shutdown();
+
+        Product stored = repo.findById("item").orElseThrow();
+        long scores = (long) THREADS * (SCORES_PER_THREAD / 10) * 10;
+        assertEquals(anomalies, stored.getOutlierCount());
+        assertEquals(INITIAL_HISTORY + scores - anomalies, stored.getNonOutlierCount());
+        assertEquals(stored.getOutlierCount(), repo.findHistory("item", true).size());
+        assertEquals(stored.getNonOutlierCount(), repo.findHistory("item", false).size());
+        for (PriceBucket bucket : fixture.mongoTemplate.findAll(PriceBucket.class)) {
+            long seriesSize = bucket.isOutlier() ? stored.getOutlierCount() : stored.getNonOutlierCount();
+            assertEquals(Math.min(50, seriesSize - bucket.getSequence() * 50L), bucket.getPrices().size(),
+                    "bucket " + bucket.getId());
+        }
+    }
+
+    @Test
+    public void testConcurrentScoresAreNotLost() throws Exception {
+        fixture.saveHistory("item");
+        assertEquals("false", productService.isAnomaly("item", new BigDecimal("101")));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<BigDecimal, String>>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int offset = thread;
+            Callable<Map<BigDecimal, String>> scorer = () -> {
+                start.await();
+                Map<BigDecimal, String> results = new HashMap<>();
+                for (int i = 0; i < SCORES_PER_THREAD; i++) {
+                    int sequence = offset * SCORES_PER_THREAD + i;
+                    BigDecimal price = i % 17 == 0
+                            ? BigDecimal.valueOf(10_000 + sequence)
+                            : BigDecimal.valueOf(1_000_000 + sequence % 5 * 5_000 + sequence, 4);
+                    results.put(price, productService.isAnomaly("item", price));
+                }
+                return results;
+            };
+            futures.add(executor.submit(scorer));
+        }
+        start.countDown();
+        Map<BigDecimal, String> results = new HashMap<>();
+        for (Future<Map<BigDecimal, String>> future : futures) {
+            results.putAll(future.get());
+        }
+        executor.shutdown();
+
+        long anomalies = results.values().stream().filter("true"::equals).count();
+        long accepted = results.size() - anomalies + 1;
+        Product stored = repo.findById("item").orElseThrow();
+        List<PriceData> outliers = repo.findHistory("item", true);
+        List<PriceData> nonOutliers = repo.findHistory("item", false);
+
+        assertEquals(THREADS * SCORES_PER_THREAD, results.size());
+        assertEquals(anomalies, stored.getOutlierCount());
+        assertEquals(INITIAL_HISTORY + accepted, stored.getNonOutlierCount());
+        assertEquals(stored.getOutlierCount(), outliers.size());
+        assertEquals(stored.getNonOutlierCount(), nonOutliers.size());
+
+        Map<BigDecimal, Long> recorded = new HashMap<>();
+        outliers.forEach(point -> recorded.merge(point.getPrice(), 1L, Long::sum));
+        nonOutliers.subList(INITIAL_HISTORY + 1, nonOutliers.size())
+                .forEach(point -> recorded.merge(point.getPrice(), 1L, Long::sum));
+        results.keySet().forEach(price -> assertEquals(1L, recorded.get(price), "price " + price));
+
+        DetectionState state = stored.getDetectionState();
+        assertEquals(accepted, state.getVersion());
+        assertEquals(11, state.getWindow().length);
+        List<Long> acceptedPrices = nonOutliers.stream()
+                .map(point -> Commons.toScaledPrice(point.getPrice()))
+                .collect(Collectors.toList());
+        for (long price : state.getWindow()) {
+            assertTrue(acceptedPrices.contains(price), "window price " + price);
+        }
+    }
+}
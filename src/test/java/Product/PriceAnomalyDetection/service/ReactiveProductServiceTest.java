@@ -0,0 +1,157 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.config.cache.ReactiveCacheGenerations;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.ItemPriceScore;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.repository.IReactiveProductRepo;
+import Product.PriceAnomalyDetection.repository.IReactiveProductRepoCustomImpl;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.productService.ProductService;
+import Product.PriceAnomalyDetection.service.reactiveProductService.ReactiveProductService;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static Product.PriceAnomalyDetection.service.ScoringFixture.INITIAL_HISTORY;
+import static Product.PriceAnomalyDetection.service.ScoringFixture.price;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReactiveProductServiceTest {
+
+    private ScoringFixture fixture;
+    private com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+    private IProductRepo repo;
+    private ProductService productService;
+    private ReactiveProductService reactiveProductService;
+
+    @BeforeEach
+    public void setUp() {
+        fixture = new ScoringFixture();
+        repo = fixture.repo;
+        productService = new ProductService(repo,
+                new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), MathMode.PRIMITIVE),
+                mock(ICacheService.class), mock(DetectionSnapshotCache.class),
+                new ScoringMetrics(new SimpleMeterRegistry()), null, 1_000);
+
+        reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(fixture.connectionString());
+        ReactiveMongoTemplate reactiveTemplate = new ReactiveMongoTemplate(reactiveClient, "products");
+        IReactiveProductRepo reactiveRepo = new ReactiveMongoRepositoryFactory(reactiveTemplate)
+                .getRepository(IReactiveProductRepo.class,
+                        RepositoryFragments.just(new IReactiveProductRepoCustomImpl(reactiveTemplate, 50)));
+        ReactiveCacheGenerations generations = mock(ReactiveCacheGenerations.class);
+        when(generations.increment(any())).thenReturn(Mono.empty());
+        reactiveProductService = new ReactiveProductService(reactiveRepo,
+                new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), MathMode.PRIMITIVE),
+                new ScoringFixture.InMemoryReactiveSnapshotCache(), generations, 1_000, 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        reactiveClient.close();
+        fixture.close();
+    }
+
+    private static List<BigDecimal> prices(List<PriceData> series) {
+        return series.stream().map(PriceData::getPrice).toList();
+    }
+
+    @Test
+    public void testSequentialScores_MatchBlockingService() {
+        fixture.saveHistory("blocking");
+        fixture.saveHistory("reactive");
+
+        for (int i = 0; i < 300; i++) {
+            assertEquals(productService.isAnomaly("blocking", price(i)),
+                    reactiveProductService.isAnomaly("reactive", price(i)).block(), "price " + i);
+        }
+
+        Product expected = productService.findById("blocking");
+        Product actual = reactiveProductService.findById("reactive").block();
+        assertEquals(expected.getOutlierCount(), actual.getOutlierCount());
+        assertEquals(expected.getNonOutlierCount(), actual.getNonOutlierCount());
+        assertEquals(prices(expected.getOutliers()), prices(actual.getOutliers()));
+        assertEquals(prices(expected.getNonOutliers()), prices(actual.getNonOutliers()));
+        assertEquals(expected.getDetectionState().getVersion(), actual.getDetectionState().getVersion());
+
+        Product page = reactiveProductService.findById("reactive", 2, 50).block();
+        assertEquals(prices(expected.getNonOutliers().subList(100, 150)), prices(page.getNonOutliers()));
+    }
+
+    @Test
+    public void testConcurrentScores_AreAllRecorded() {
+        fixture.saveHistory("1");
+        int scores = 400;
+
+        List<String> results = Flux.range(0, scores)
+                .flatMap(i -> reactiveProductService.isAnomaly("1", price(i)), 64)
+                .collectList()
+                .block();
+
+        Product product = reactiveProductService.findById("1").block();
+        long outliers = results.stream().filter(Boolean::parseBoolean).count();
+        assertEquals(outliers, product.getOutlierCount());
+        assertEquals(INITIAL_HISTORY + scores - outliers, product.getNonOutlierCount());
+        assertEquals(product.getOutlierCount(), product.getOutliers().size());
+        assertEquals(product.getNonOutlierCount(), product.getNonOutliers().size());
+    }
+
+    @Test
+    public void testStream_KeepsOrderAndScoresEachItemInOrder() {
+        fixture.saveHistory("a");
+        fixture.saveHistory("b");
+        fixture.saveHistory("expected-a");
+        fixture.saveHistory("expected-b");
+        List<ItemPriceRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            requests.add(new ItemPriceRequest(i % 11 == 0 ? "missing" : i % 3 == 0 ? "b" : "a", price(i)));
+        }
+
+        List<ItemPriceScore> scores = reactiveProductService.isAnomaly(Flux.fromIterable(requests))
+                .collectList()
+                .block();
+
+        assertEquals(requests.size(), scores.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ItemPriceRequest request = requests.get(i);
+            ItemPriceScore score = scores.get(i);
+            assertEquals(request.getItem_id(), score.getItemId(), "request " + i);
+            assertEquals(request.getPrice(), score.getPrice(), "request " + i);
+            if (request.getItem_id().equals("missing")) {
+                assertNull(score.getAnomaly(), "request " + i);
+            } else {
+                assertEquals(productService.isAnomaly("expected-" + request.getItem_id(), request.getPrice()),
+                        score.getAnomaly(), "request " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingProduct_FailsWithNotFound() {
+        assertThrows(ProductNotFoundException.class,
+                () -> reactiveProductService.isAnomaly("missing", BigDecimal.TEN).block());
+        assertThrows(ProductNotFoundException.class, () -> reactiveProductService.findById("missing").block());
+    }
+}
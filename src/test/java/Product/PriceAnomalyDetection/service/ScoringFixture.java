@@ -0,0 +1,138 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.config.cache.ReactiveDetectionSnapshotCache;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.repository.IProductRepoCustomImpl;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory MongoDB with a product repository, shared by the scoring tests.
+ *
+ * <p>Products are saved with {@link #INITIAL_HISTORY} non-outliers around 100, and {@link #price(int)} gives a
+ * deterministic sequence of prices around 100 with an outlier every seventh one.</p>
+ */
+final class ScoringFixture implements AutoCloseable {
+
+    static final int INITIAL_HISTORY = 20;
+
+    private final MongoServer server;
+    private final MongoClient client;
+    private final String connectionString;
+    final MongoTemplate mongoTemplate;
+    final IProductRepo repo;
+
+    ScoringFixture() {
+        server = new MongoServer(new MemoryBackend());
+        connectionString = server.bindAndGetConnectionString();
+        client = MongoClients.create(connectionString);
+        mongoTemplate = new MongoTemplate(client, "products");
+        repo = new MongoRepositoryFactory(mongoTemplate).getRepository(IProductRepo.class,
+                RepositoryFragments.just(new IProductRepoCustomImpl(mongoTemplate, 50)));
+    }
+
+    String connectionString() {
+        return connectionString;
+    }
+
+    void saveHistory(String id) {
+        saveHistory(id, null);
+    }
+
+    void saveHistory(String id, Detector detector) {
+        List<PriceData> history = new ArrayList<>();
+        for (int i = 0; i < INITIAL_HISTORY; i++) {
+            history.add(new PriceData(new Date(1_700_000_000_000L + i), BigDecimal.valueOf(100 + i % 3)));
+        }
+        Product product = new Product();
+        product.setId(id);
+        product.setNonOutliers(history);
+        product.setDetector(detector);
+        repo.saveWithHistory(product);
+    }
+
+    static BigDecimal price(int sequence) {
+        return sequence % 7 == 0
+                ? BigDecimal.valueOf(10_000 + sequence)
+                : BigDecimal.valueOf(1_000_000 + sequence % 5 * 5_000 + sequence, 4);
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        server.shutdown();
+    }
+
+    /**
+     * Keeps the encoded snapshots in a map instead of Redis.
+     */
+    static final class InMemorySnapshotCache extends DetectionSnapshotCache {
+        final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+        InMemorySnapshotCache() {
+            super(null, Duration.ofMinutes(10));
+        }
+
+        @Override
+        protected List<byte[]> mget(List<byte[]> keys) {
+            return keys.stream().map(key -> values.get(new String(key, StandardCharsets.UTF_8))).toList();
+        }
+
+        @Override
+        protected void set(Map<byte[], byte[]> entries) {
+            entries.forEach((key, value) -> values.put(new String(key, StandardCharsets.UTF_8), value));
+        }
+
+        @Override
+        protected void delete(List<byte[]> keys) {
+            keys.forEach(key -> values.remove(new String(key, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Keeps the encoded snapshots of the reactive path in a map instead of Redis.
+     */
+    static final class InMemoryReactiveSnapshotCache extends ReactiveDetectionSnapshotCache {
+        final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+        InMemoryReactiveSnapshotCache() {
+            super(null, Duration.ofMinutes(10));
+        }
+
+        @Override
+        protected Mono<List<byte[]>> mget(List<String> keys) {
+            List<byte[]> found = new ArrayList<>();
+            keys.forEach(key -> found.add(values.get(key)));
+            return Mono.just(found);
+        }
+
+        @Override
+        protected Mono<Void> set(Map<String, byte[]> entries) {
+            return Mono.fromRunnable(() -> values.putAll(entries));
+        }
+
+        @Override
+        protected Mono<Void> delete(List<String> keys) {
+            return Mono.fromRunnable(() -> keys.forEach(values::remove));
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.config.cache.DetectionSnapshotCache;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.ProductNotFoundException;
+import Product.PriceAnomalyDetection.model.ItemPriceRequest;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.productService.ProductService;
+import Product.PriceAnomalyDetection.service.scoringEngine.ShardedScoringEngine;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.ScoringMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static Product.PriceAnomalyDetection.service.ScoringFixture.INITIAL_HISTORY;
+import static Product.PriceAnomalyDetection.service.ScoringFixture.price;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ShardedScoringEngineTest {
+
+    private static final int THREADS = 8;
+    private static final int SCORES_PER_THREAD = 200;
+
+    private ScoringFixture fixture;
+    private IProductRepo repo;
+    private AnomalyDetectionStandardDeviation anomalyDetection;
+    private ShardedScoringEngine engine;
+    private ProductService productService;
+    private ProductService engineProductService;
+
+    @BeforeEach
+    public void setUp() {
+        fixture = new ScoringFixture();
+        repo = fixture.repo;
+        anomalyDetection = new AnomalyDetectionStandardDeviation(10, new BigDecimal("1.5"), MathMode.PRIMITIVE);
+        engine = new ShardedScoringEngine(repo, anomalyDetection, mock(DetectionSnapshotCache.class),
+                mock(ICacheService.class), 4, 64, Duration.ofMillis(20), 1_000);
+        productService = new ProductService(repo, anomalyDetection, mock(ICacheService.class),
+                mock(DetectionSnapshotCache.class), new ScoringMetrics(new SimpleMeterRegistry()), null, 1_000);
+        engineProductService = new ProductService(repo, anomalyDetection, mock(ICacheService.class),
+                mock(DetectionSnapshotCache.class), new ScoringMetrics(new SimpleMeterRegistry()), engine, 1_000);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        engine.shutdown();
+        fixture.close();
+    }
+
+    private List<BigDecimal> prices(String id, boolean outlier) {
+        return repo.findHistory(id, outlier).stream().map(PriceData::getPrice).toList();
+    }
+
+    @Test
+    public void testSequentialScores_MatchProductServiceAndAreRecorded() {
+        fixture.saveHistory("service");
+        fixture.saveHistory("engine");
+
+        for (int i = 0; i < 300; i++) {
+            assertEquals(productService.isAnomaly("service", price(i)),
+                    engineProductService.isAnomaly("engine", price(i)), "price " + i);
+        }
+        engine.flush().join();
+
+        Product expected = repo.findById("service").orElseThrow();
+        Product actual = repo.findById("engine").orElseThrow();
+        assertEquals(expected.getOutlierCount(), actual.getOutlierCount());
+        assertEquals(expected.getNonOutlierCount(), actual.getNonOutlierCount());
+        assertEquals(prices("service", true), prices("engine", true));
+        assertEquals(prices("service", false), prices("engine", false));
+        assertEquals(Arrays.toString(expected.getDetectionState().getWindow()),
+                Arrays.toString(actual.getDetectionState().getWindow()));
+    }
+
+    @Test
+    public void testConcurrentScoresOfManyItems_AreAllRecorded() throws Exception {
+        List<String> ids = List.of("a", "b", "c", "d", "e");
+        ids.forEach(fixture::saveHistory);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int offset = thread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                long[] anomalies = new long[ids.size()];
+                for (int i = 0; i < SCORES_PER_THREAD; i++) {
+                    int item = i % ids.size();
+                    if ("true".equals(engine.score(ids.get(item), price(offset * SCORES_PER_THREAD + i)).join())) {
+                        anomalies[item]++;
+                    }
+                }
+                return anomalies;
+            }));
+        }
+        start.countDown();
+        long[] anomalies = new long[ids.size()];
+        for (Future<long[]> future : futures) {
+            long[] counts = future.get();
+            for (int item = 0; item < ids.size(); item++) {
+                anomalies[item] += counts[item];
+            }
+        }
+        executor.shutdown();
+        engine.shutdown();
+
+        long scoresPerItem = (long) THREADS * SCORES_PER_THREAD / ids.size();
+        for (int item = 0; item < ids.size(); item++) {
+            Product stored = repo.findById(ids.get(item)).orElseThrow();
+            assertEquals(anomalies[item], stored.getOutlierCount(), ids.get(item));
+            assertEquals(INITIAL_HISTORY + scoresPerItem - anomalies[item], stored.getNonOutlierCount(), ids.get(item));
+            assertEquals(stored.getOutlierCount(), repo.findHistory(ids.get(item), true).size());
+            assertEquals(stored.getNonOutlierCount(), repo.findHistory(ids.get(item), false).size());
+        }
+    }
+
+    @Test
+    public void testProductChangedByAnotherWriter_PendingScoresAreNotLost() {
+        fixture.saveHistory("item");
+        for (int i = 0; i < 10; i++) {
+            engine.score("item", price(i)).join();
+        }
+        engine.flush().join();
+        for (int i = 10; i < 20; i++) {
+            engine.score("item", price(i)).join();
+        }
+        productService.isAnomaly("item", new BigDecimal("101"));
+        engine.flush().join();
+        engine.score("item", price(20)).join();
+        engine.flush().join();
+
+        Product stored = repo.findById("item").orElseThrow();
+        assertEquals(INITIAL_HISTORY + 22, stored.getOutlierCount() + stored.getNonOutlierCount());
+        assertEquals(stored.getOutlierCount(), repo.findHistory("item", true).size());
+        assertEquals(stored.getNonOutlierCount(), repo.findHistory("item", false).size());
+    }
+
+    @Test
+    public void testShutdown_RetriesAFailedWrite() throws InterruptedException {
+        fixture.saveHistory("item");
+        IProductRepo failing = mock(IProductRepo.class, delegatesTo(repo));
+        doThrow(new DataAccessResourceFailureException("down")).doAnswer(delegatesTo(repo))
+                .when(failing).recordScores(any());
+        ShardedScoringEngine stopping = new ShardedScoringEngine(failing, anomalyDetection,
+                mock(DetectionSnapshotCache.class), mock(ICacheService.class), 1, 64, Duration.ofMinutes(1), 1_000);
+        for (int i = 0; i < 10; i++) {
+            stopping.score("item", price(i)).join();
+        }
+
+        stopping.shutdown();
+
+        Product stored = repo.findById("item").orElseThrow();
+        assertEquals(INITIAL_HISTORY + 10, stored.getOutlierCount() + stored.getNonOutlierCount());
+        assertEquals(stored.getNonOutlierCount(), repo.findHistory("item", false).size());
+        verify(failing, times(2)).recordScores(any());
+    }
+
+    @Test
+    public void testWriteFailingAfterTheProductsWereUpdated_IsNotRecordedTwice() throws InterruptedException {
+        fixture.saveHistory("item");
+        IProductRepo failing = mock(IProductRepo.class, delegatesTo(repo));
+        doAnswer(invocation -> {
+            repo.recordScores(invocation.getArgument(0));
+            throw new DataAccessResourceFailureException("Connection lost after the product bulk write");
+        }).doAnswer(delegatesTo(repo)).when(failing).recordScores(any());
+        ShardedScoringEngine flaky = new ShardedScoringEngine(failing, anomalyDetection,
+                mock(DetectionSnapshotCache.class), mock(ICacheService.class), 1, 64, Duration.ofMinutes(1), 1_000);
+        for (int i = 0; i < 10; i++) {
+            flaky.score("item", price(i)).join();
+        }
+        flaky.flush().join();
+        for (int i = 10; i < 15; i++) {
+            flaky.score("item", price(i)).join();
+        }
+
+        flaky.shutdown();
+
+        Product stored = repo.findById("item").orElseThrow();
+        assertEquals(INITIAL_HISTORY + 15, stored.getOutlierCount() + stored.getNonOutlierCount());
+        assertEquals(stored.getOutlierCount(), repo.findHistory("item", true).size());
+        assertEquals(stored.getNonOutlierCount(), repo.findHistory("item", false).size());
+        assertEquals(2, stored.getDetectionState().getVersion());
+    }
+
+    @Test
+    public void testForget_ReadsTheProductAgainAndScoresPendingPricesAgainstIt() throws InterruptedException {
+        List.of("idle", "busy").forEach(fixture::saveHistory);
+        IProductRepo counting = mock(IProductRepo.class, delegatesTo(repo));
+        ShardedScoringEngine forgetting = new ShardedScoringEngine(counting, anomalyDetection,
+                mock(DetectionSnapshotCache.class), mock(ICacheService.class), 1, 64, Duration.ofMinutes(1), 1_000);
+        forgetting.score("idle", price(1)).join();
+        forgetting.flush().join();
+        for (int i = 0; i < 5; i++) {
+            forgetting.score("busy", price(i)).join();
+        }
+        fixture.saveHistory("busy");
+
+        forgetting.forget(List.of("idle", "busy", "unknown"));
+        forgetting.score("idle", price(2)).join();
+        forgetting.shutdown();
+
+        verify(counting, times(2)).findById("idle");
+        verify(counting, times(2)).findById("busy");
+        Product busy = repo.findById("busy").orElseThrow();
+        assertEquals(INITIAL_HISTORY + 5, busy.getOutlierCount() + busy.getNonOutlierCount());
+        assertEquals(busy.getNonOutlierCount(), repo.findHistory("busy", false).size());
+        assertEquals(1, busy.getDetectionState().getVersion());
+        Product idle = repo.findById("idle").orElseThrow();
+        assertEquals(INITIAL_HISTORY + 2, idle.getOutlierCount() + idle.getNonOutlierCount());
+    }
+
+    @Test
+    public void testItemsWithoutPendingScores_AreEvictedBeyondMaxItems() throws InterruptedException {
+        List.of("p", "q", "r", "s").forEach(fixture::saveHistory);
+        IProductRepo counting = mock(IProductRepo.class, delegatesTo(repo));
+        ShardedScoringEngine small = new ShardedScoringEngine(counting, anomalyDetection,
+                mock(DetectionSnapshotCache.class), mock(ICacheService.class), 1, 64, Duration.ofMinutes(1), 1);
+        for (String id : List.of("p", "q", "r")) {
+            small.score(id, price(1)).join();
+        }
+        small.flush().join();
+        small.score("s", price(1)).join();
+        small.score("r", price(2)).join();
+        small.shutdown();
+
+        verify(counting, times(2)).findById("r");
+    }
+
+    @Test
+    public void testBatch_KeepsOrderAndReportsMissingProducts() {
+        fixture.saveHistory("a");
+        fixture.saveHistory("expected-a");
+        List<ItemPriceRequest> requests = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            boolean missing = i % 9 == 0;
+            requests.add(new ItemPriceRequest(missing ? "missing" : "a", price(i)));
+            expected.add(missing ? null : productService.isAnomaly("expected-a", price(i)));
+        }
+
+        assertEquals(expected, engineProductService.isAnomaly(requests));
+        assertThrows(ProductNotFoundException.class, () -> engineProductService.isAnomaly("missing", BigDecimal.TEN));
+    }
+}
@@ -1,21 +1,36 @@
 package Product.PriceAnomalyDetection.service;
 
 import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.model.UploadJob;
 import Product.PriceAnomalyDetection.repository.IProductRepo;
+import Product.PriceAnomalyDetection.service.cacheService.ICacheService;
+import Product.PriceAnomalyDetection.service.scoringEngine.IScoringEngine;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.Detector;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
 import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformer;
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformerMovingWindow;
+import Product.PriceAnomalyDetection.service.serviceUtils.metrics.UploadMetrics;
 import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFileImp;
+import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFileStreamImp;
 import Product.PriceAnomalyDetection.service.uploadService.UploadDataServiceImp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -28,14 +43,27 @@ public class UploadDataServiceTest {
     @Mock
     private DataTransformer dataTransformer;
 
+    @Mock
+    private ICacheService cacheService;
+
+    @Mock
+    private IScoringEngine scoringEngine;
+
 
     private ProcessFileImp processFileImp = new ProcessFileImp();
 
+    private ProcessFileStreamImp processFileStream =
+            new ProcessFileStreamImp(DataSize.ofKilobytes(4), System.getProperty("java.io.tmpdir"));
+
+    private SimpleMeterRegistry registry;
+
     private UploadDataServiceImp uploadDataService;
 
     @BeforeEach
     public void setUp() {
-        uploadDataService = new UploadDataServiceImp(repo, dataTransformer, processFileImp);
+        registry = new SimpleMeterRegistry();
+        uploadDataService = new UploadDataServiceImp(repo, dataTransformer, processFileImp, processFileStream,
+                cacheService, scoringEngine, new UploadMetrics(registry), 2, 100);
     }
 
     @Test
@@ -45,11 +73,14 @@ public class UploadDataServiceTest {
         MultipartFile file = new MockMultipartFile("file.csv", csvContent.getBytes());
 
         Product mockProduct = new Product();
-        when(dataTransformer.transformToProduct(anyString(), anyList())).thenReturn(mockProduct);
+        mockProduct.setId("1");
+        when(dataTransformer.transformToProduct(anyString(), any(PriceSeries.class))).thenReturn(mockProduct);
 
         uploadDataService.processFile(file);
 
-        verify(repo, times(1)).save(mockProduct);
+        verify(repo, times(1)).saveAllWithHistory(List.of(mockProduct));
+        verify(cacheService, times(1)).invalidateItems(List.of("1"));
+        verify(scoringEngine, times(1)).forget(List.of("1"));
     }
 
     @Test
@@ -60,11 +91,79 @@ public class UploadDataServiceTest {
             csvContent.append(i).append(",").append(i * 10).append(",2023-10-01\n");
         }
         MultipartFile file = new MockMultipartFile("file.csv", csvContent.toString().getBytes());
-        when(dataTransformer.transformToProduct(anyString(), anyList())).thenReturn(new Product());
+        when(dataTransformer.transformToProduct(anyString(), any(PriceSeries.class))).thenReturn(new Product());
         uploadDataService.processFile(file);
-        verify(repo, times(1000)).save(any(Product.class));
+        verify(dataTransformer, times(1000)).transformToProduct(anyString(), any(PriceSeries.class));
+        verify(repo, times(10)).saveAllWithHistory(argThat(products -> products.size() == 100));
+    }
+
+    @Test
+    public void testProcessStreamWithLargeCSV() throws IOException, ParseException {
+
+        StringBuilder csvContent = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 1; i <= 1000; i++) {
+            csvContent.append(i % 250).append(",").append(i * 10).append(",2023-10-01\n");
+        }
+        when(dataTransformer.transformToProduct(anyString(), any(PriceSeries.class))).thenReturn(new Product());
+        uploadDataService.processStream(new ByteArrayInputStream(csvContent.toString().getBytes()));
+        verify(dataTransformer, times(250))
+                .transformToProduct(anyString(), argThat((PriceSeries prices) -> prices.size() == 4));
+        verify(repo, times(2)).saveAllWithHistory(argThat(products -> products.size() == 100));
+        verify(repo, times(1)).saveAllWithHistory(argThat(products -> products.size() == 50));
     }
 
+    @Test
+    public void testProcessStreamReportsJobProgress() throws IOException, ParseException {
+
+        StringBuilder csvContent = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 1; i <= 1000; i++) {
+            csvContent.append(i % 250).append(",").append(i * 10).append(",2023-10-01\n");
+        }
+        when(dataTransformer.transformToProduct(anyString(), any(PriceSeries.class))).thenReturn(new Product());
+        UploadJob job = new UploadJob("job", "file.csv");
+        uploadDataService.processStream(new ByteArrayInputStream(csvContent.toString().getBytes()), job);
+        assertEquals(1000, job.getRowsParsed().get());
+        assertEquals(250, job.getItemsSaved().get());
+        assertEquals(1000, registry.get("upload.rows").counter().count());
+        assertEquals(250, registry.get("upload.history.length").summary().count());
+        assertEquals(3, registry.get("upload.stage").tag("stage", "write").timer().count());
+        assertEquals(1, registry.get("upload.rows.throughput").summary().count());
+    }
+
+
+    @Test
+    public void testProcessStreamStopsAtFailedWrite() {
+
+        StringBuilder csvContent = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 1; i <= 1000; i++) {
+            csvContent.append(i % 250).append(",").append(i * 10).append(",2023-10-01\n");
+        }
+        when(dataTransformer.transformToProduct(anyString(), any(PriceSeries.class))).thenReturn(new Product());
+        doThrow(new IllegalStateException("Write failed")).when(repo).saveAllWithHistory(any());
+        assertThrows(IllegalStateException.class, () -> uploadDataService.processStream(
+                new ByteArrayInputStream(csvContent.toString().getBytes())));
+        verify(repo, times(1)).saveAllWithHistory(any());
+        verify(cacheService, never()).invalidateItems(any());
+        verify(scoringEngine, never()).forget(any());
+    }
+
+    @Test
+    public void testReupload_KeepsTheDetectorOfTheProduct() throws IOException, ParseException {
+        try (ScoringFixture fixture = new ScoringFixture()) {
+            UploadDataServiceImp service = new UploadDataServiceImp(fixture.repo,
+                    new DataTransformerMovingWindow(10, new BigDecimal("1.5"), MathMode.PRIMITIVE), processFileImp,
+                    processFileStream, cacheService, null, new UploadMetrics(registry), 2, 100);
+            String csvContent = "ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,2023-10-01\n1,11,2023-10-02\n";
+            service.processFile(new MockMultipartFile("file.csv", csvContent.getBytes()));
+            fixture.repo.setDetector("1", Detector.MAD);
+
+            service.processFile(new MockMultipartFile("file.csv", (csvContent + "1,12,2023-10-03\n").getBytes()));
+
+            Product stored = fixture.repo.findById("1").orElseThrow();
+            assertEquals(Detector.MAD, stored.getDetector());
+            assertEquals(3, stored.getOutlierCount() + stored.getNonOutlierCount());
+        }
+    }
 
     @Test
     public void testProcessFileWithNullValues() throws IOException, ParseException {
@@ -0,0 +1,140 @@
+package Product.PriceAnomalyDetection.service;
+
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadJobNotFoundException;
+import Product.PriceAnomalyDetection.controller.errorHandling.exceptions.UploadQueueFullException;
+import Product.PriceAnomalyDetection.model.UploadJob;
+import Product.PriceAnomalyDetection.model.UploadJobStatus;
+import Product.PriceAnomalyDetection.service.uploadJobService.UploadJobService;
+import Product.PriceAnomalyDetection.service.uploadService.IUploadDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class UploadJobServiceTest {
+
+    private static final String CSV = "ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,2023-10-01\n2,20.5,2023-10-01\n";
+
+    @TempDir
+    Path tempDir;
+
+    private IUploadDataService uploadDataService;
+    private UploadJobService uploadJobService;
+
+    @BeforeEach
+    public void setUp() {
+        uploadDataService = mock(IUploadDataService.class);
+        uploadJobService = new UploadJobService(uploadDataService, 1, 1, Duration.ofHours(1), tempDir.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploadJobService.shutdown();
+    }
+
+    private static MockMultipartFile file() {
+        return new MockMultipartFile("file", "prices.csv", "text/csv", CSV.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void awaitFinished(UploadJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished(), "job " + job.getId() + " did not finish");
+    }
+
+    private long filesLeft() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testSubmit_RunsInBackgroundAndReportsProgress() throws Exception {
+        doAnswer(invocation -> {
+            InputStream input = invocation.getArgument(0);
+            UploadJob job = invocation.getArgument(1);
+            assertEquals(CSV, new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            job.getRowsParsed().addAndGet(2);
+            job.getItemsSaved().addAndGet(2);
+            return null;
+        }).when(uploadDataService).processStream(any(InputStream.class), any(UploadJob.class));
+
+        UploadJob job = uploadJobService.submit(file());
+        awaitFinished(job);
+
+        assertSame(job, uploadJobService.findById(job.getId()));
+        assertEquals(UploadJobStatus.COMPLETED, job.getStatus());
+        assertEquals("prices.csv", job.getFileName());
+        assertEquals(2, job.getRowsParsed().get());
+        assertEquals(2, job.getItemsSaved().get());
+        assertTrue(job.getItemsPerSecond() > 0);
+        assertNull(job.getError());
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testSubmit_ReportsFailure() throws Exception {
+        doAnswer(invocation -> {
+            throw new IllegalArgumentException("bad row");
+        }).when(uploadDataService).processStream(any(InputStream.class), any(UploadJob.class));
+
+        UploadJob job = uploadJobService.submit(file());
+        awaitFinished(job);
+
+        assertEquals(UploadJobStatus.FAILED, job.getStatus());
+        assertEquals("IllegalArgumentException: bad row", job.getError());
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testCancel_InterruptsRunningJobAndSkipsQueuedJob() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.onSpinWait();
+            }
+            throw new InterruptedIOException("interrupted");
+        }).when(uploadDataService).processStream(any(InputStream.class), any(UploadJob.class));
+
+        UploadJob running = uploadJobService.submit(file());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        UploadJob queued = uploadJobService.submit(file());
+        assertEquals(UploadJobStatus.QUEUED, queued.getStatus());
+        assertThrows(UploadQueueFullException.class, () -> uploadJobService.submit(file()));
+
+        uploadJobService.cancel(queued.getId());
+        uploadJobService.cancel(running.getId());
+        awaitFinished(running);
+        awaitFinished(queued);
+
+        assertEquals(UploadJobStatus.CANCELLED, running.getStatus());
+        assertEquals(UploadJobStatus.CANCELLED, queued.getStatus());
+        assertTrue(running.isCancelRequested());
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testFindById_UnknownJob() {
+        assertThrows(UploadJobNotFoundException.class, () -> uploadJobService.findById("missing"));
+        assertThrows(UploadJobNotFoundException.class, () -> uploadJobService.cancel("missing"));
+    }
+}
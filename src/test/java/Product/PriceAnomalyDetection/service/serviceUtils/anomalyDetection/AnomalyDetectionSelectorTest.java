@@ -0,0 +1,96 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnomalyDetectionSelectorTest {
+
+    private static final BigDecimal K_VALUE = new BigDecimal("1.5");
+
+    private final AnomalyDetectionStandardDeviation standardDeviation =
+            new AnomalyDetectionStandardDeviation(10, K_VALUE, MathMode.PRIMITIVE);
+    private final AnomalyDetectionEwma ewma = new AnomalyDetectionEwma(10, K_VALUE);
+    private final AnomalyDetectionMad mad = new AnomalyDetectionMad(10, K_VALUE);
+
+    private AnomalyDetectionSelector selector(Detector defaultDetector) {
+        return new AnomalyDetectionSelector(List.of(standardDeviation, ewma, mad), defaultDetector);
+    }
+
+    private static List<PriceData> history() {
+        List<PriceData> history = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            history.add(new PriceData(new Date(1_700_000_000_000L + i), BigDecimal.valueOf(100 + i % 3)));
+        }
+        return history;
+    }
+
+    @Test
+    public void testStates_AreBuiltWithTheDetectorOfTheProductOrOfTheDeployment() {
+        AnomalyDetectionSelector selector = selector(Detector.EWMA);
+
+        DetectionState byDefault = selector.buildState(history(), null);
+        DetectionState overridden = selector.buildState(history(), Detector.MAD);
+
+        assertEquals(Detector.EWMA, byDefault.getDetector());
+        assertArrayEquals(ewma.buildState(history()).getStatistics(), byDefault.getStatistics());
+        assertEquals(Detector.MAD, overridden.getDetector());
+        assertTrue(selector.isCurrent(byDefault, null));
+        assertTrue(selector.isCurrent(overridden, Detector.MAD));
+        assertFalse(selector.isCurrent(overridden, null));
+        assertFalse(selector.isCurrent(byDefault, Detector.STANDARD_DEVIATION));
+        assertFalse(selector.isCurrent(null, Detector.MAD));
+        assertEquals(11, selector.getHistorySize());
+    }
+
+    @Test
+    public void testScores_AreDispatchedToTheDetectorOfTheState() {
+        AnomalyDetectionSelector selector = selector(Detector.STANDARD_DEVIATION);
+        DetectionState madState = selector.buildState(history(), Detector.MAD);
+        DetectionState expected = mad.buildState(history());
+
+        for (String price : List.of("100", "101.5", "99", "150", "102")) {
+            BigDecimal value = new BigDecimal(price);
+            assertEquals(mad.isAnomaly(expected, value), selector.isAnomaly(madState, value), price);
+            if (!Boolean.parseBoolean(selector.isAnomaly(madState, value))) {
+                selector.update(madState, value);
+                mad.update(expected, value);
+            }
+        }
+        assertArrayEquals(expected.getStatistics(), madState.getStatistics());
+    }
+
+    @Test
+    public void testStatesWithoutDetector_AreStandardDeviationStates() {
+        AnomalyDetectionSelector selector = selector(Detector.STANDARD_DEVIATION);
+        DetectionState legacy = standardDeviation.buildState(history());
+        legacy.setDetector(null);
+
+        assertTrue(selector.isCurrent(legacy, null));
+        assertFalse(selector(Detector.EWMA).isCurrent(legacy, null));
+        selector.update(legacy, new BigDecimal("101"));
+        assertNull(legacy.getStatistics());
+        assertEquals(11, legacy.getWindow().length);
+        assertNotNull(selector.isAnomaly(legacy, new BigDecimal("101")));
+    }
+
+    @Test
+    public void testDefaultDetectorWithoutImplementation_IsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AnomalyDetectionSelector(List.of(standardDeviation), Detector.MAD));
+    }
+}
@@ -1,19 +1,25 @@
 package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
 
+import Product.PriceAnomalyDetection.model.DetectionState;
 import Product.PriceAnomalyDetection.model.PriceData;
 import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.context.SpringBootTest;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 public class AnomalyDetectionStandardDeviationTest {
@@ -75,4 +81,79 @@ public class AnomalyDetectionStandardDeviationTest {
         assertNotNull(result);
     }
 
+    @Test
+    public void testDetectionState_MatchesHistory() {
+        for (MathMode mathMode : MathMode.values()) {
+            anomalyDetection.setMathMode(mathMode);
+            Random random = new Random(5);
+            List<PriceData> nonOutliers = new ArrayList<>();
+            long time = 1_700_000_000_000L;
+            for (int i = 0; i < 20; i++) {
+                nonOutliers.add(new PriceData(new Date(time++), BigDecimal.valueOf(9_500 + random.nextInt(1_000), 2)));
+            }
+            DetectionState state = anomalyDetection.buildState(nonOutliers);
+
+            for (int i = 0; i < 300; i++) {
+                BigDecimal newPrice = BigDecimal.valueOf(9_000 + random.nextInt(2_000), 2);
+                String expected = anomalyDetection.isAnomaly(nonOutliers, newPrice);
+                assertEquals(expected, anomalyDetection.isAnomaly(state, newPrice), mathMode + " price " + newPrice);
+                if (!Boolean.parseBoolean(expected)) {
+                    nonOutliers.add(new PriceData(new Date(time++), newPrice));
+                    anomalyDetection.update(state, newPrice);
+                }
+            }
+            assertEquals(4, state.getWindow().length);
+        }
+    }
+
+    @Test
+    public void testDetectionState_RoundsPricesWithMoreThanFourDecimals() {
+        anomalyDetection.setMathMode(MathMode.EXACT);
+        List<PriceData> nonOutliers = new ArrayList<>();
+        List<PriceData> rounded = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nonOutliers.add(new PriceData(new Date(1_700_000_000_000L + i), new BigDecimal("1.00004")));
+            rounded.add(new PriceData(new Date(1_700_000_000_000L + i), new BigDecimal("1.0000")));
+        }
+        DetectionState state = anomalyDetection.buildState(nonOutliers);
+        BigDecimal newPrice = new BigDecimal("1.0000");
+
+        assertEquals(0, new BigDecimal("1.0000").compareTo(state.getSma()));
+        assertEquals("true", anomalyDetection.isAnomaly(nonOutliers, newPrice));
+        assertEquals("false", anomalyDetection.isAnomaly(state, newPrice));
+        assertEquals(anomalyDetection.isAnomaly(rounded, newPrice), anomalyDetection.isAnomaly(state, newPrice));
+    }
+
+    @Test
+    public void testDetectionState_EmptyHistory() {
+        DetectionState state = anomalyDetection.buildState(List.of());
+
+        assertEquals("false", anomalyDetection.isAnomaly(state, new BigDecimal("100")));
+        anomalyDetection.update(state, new BigDecimal("100"));
+        assertEquals(1, state.getWindow().length);
+    }
+
+    @Test
+    public void testDetectionState_IsCurrent() {
+        DetectionState state = anomalyDetection.buildState(List.of());
+        assertTrue(anomalyDetection.isCurrent(state));
+        assertFalse(anomalyDetection.isCurrent(null));
+
+        anomalyDetection.setWindowSize(5);
+        assertFalse(anomalyDetection.isCurrent(state));
+    }
+
+    @Test
+    public void testDetectionState_IsRebuiltWhenMathModeChanges() {
+        anomalyDetection.setMathMode(MathMode.EXACT);
+        DetectionState state = anomalyDetection.buildState(List.of());
+        assertTrue(anomalyDetection.isCurrent(state));
+
+        anomalyDetection.setMathMode(MathMode.PRIMITIVE);
+        assertFalse(anomalyDetection.isCurrent(state));
+
+        state.setMathMode(null);
+        assertFalse(anomalyDetection.isCurrent(state));
+    }
+
 }
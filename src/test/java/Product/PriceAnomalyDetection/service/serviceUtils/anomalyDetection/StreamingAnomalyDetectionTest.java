@@ -0,0 +1,178 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection;
+
+import Product.PriceAnomalyDetection.model.DetectionState;
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.MathMode;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.P2Quantile;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons.toScaledPrice;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingAnomalyDetectionTest {
+
+    private static final BigDecimal K_VALUE = new BigDecimal("2");
+
+    private static List<PriceData> history(double... prices) {
+        List<PriceData> history = new ArrayList<>();
+        for (int i = 0; i < prices.length; i++) {
+            history.add(new PriceData(new Date(1_700_000_000_000L + i), BigDecimal.valueOf(prices[i])));
+        }
+        return history;
+    }
+
+    @Test
+    public void testEwma_MatchesDirectlyWeightedMeanAndVariance() {
+        AnomalyDetectionEwma ewma = new AnomalyDetectionEwma(9, K_VALUE);
+        double alpha = 0.2;
+        double[] prices = {100, 102, 98, 101, 99, 103, 97, 100, 100.5, 99.5};
+        DetectionState state = ewma.buildState(history(prices));
+        BigDecimal next = new BigDecimal("100.75");
+        ewma.update(state, next);
+
+        double[] scaled = new double[prices.length + 1];
+        for (int i = 0; i < prices.length; i++) {
+            scaled[i] = toScaledPrice(BigDecimal.valueOf(prices[i]));
+        }
+        scaled[prices.length] = toScaledPrice(next);
+        double mean = scaled[0];
+        double variance = 0;
+        for (int i = 1; i < scaled.length; i++) {
+            double previousMean = mean;
+            mean = (1 - alpha) * mean + alpha * scaled[i];
+            variance = (1 - alpha) * variance + alpha * (1 - alpha) * Math.pow(scaled[i] - previousMean, 2);
+        }
+
+        assertEquals(11, state.getStatistics()[0]);
+        assertEquals(mean, state.getStatistics()[1], 1e-6);
+        assertEquals(variance, state.getStatistics()[2], 1e-3);
+        assertEquals(mean / 10_000, state.getSma().doubleValue(), 1e-4);
+        assertEquals(Math.sqrt(variance) / 10_000, state.getStdDev().doubleValue(), 1e-4);
+    }
+
+    @Test
+    public void testEwma_FlagsPricesOutsideTheLimitsAndFollowsALevelChange() {
+        AnomalyDetectionEwma ewma = new AnomalyDetectionEwma(10, new BigDecimal("1.5"));
+        DetectionState state = ewma.buildState(history(100, 101, 99, 100, 102, 98, 100, 101, 99, 100, 100));
+
+        assertEquals("true", ewma.isAnomaly(state, new BigDecimal("150")));
+        assertEquals("true", ewma.isAnomaly(state, new BigDecimal("90")));
+        assertEquals("false", ewma.isAnomaly(state, new BigDecimal("100.5")));
+        assertEquals(ewma.isAnomaly(state, new BigDecimal("150")),
+                ewma.isAnomaly(history(100, 101, 99, 100, 102, 98, 100, 101, 99, 100, 100), new BigDecimal("150")));
+
+        for (int i = 0; i < 200; i++) {
+            ewma.update(state, BigDecimal.valueOf(120 + i % 3));
+        }
+        assertEquals("false", ewma.isAnomaly(state, new BigDecimal("121")));
+        assertEquals("true", ewma.isAnomaly(state, new BigDecimal("100")));
+    }
+
+    @Test
+    public void testUpdate_KeepsStateSizeConstantAndDoesNotModifyPreviousStatistics() {
+        for (StreamingAnomalyDetection detector : List.of(new AnomalyDetectionEwma(10, K_VALUE),
+                new AnomalyDetectionMad(10, K_VALUE))) {
+            DetectionState state = detector.buildState(history(100, 101, 99));
+            double[] before = state.getStatistics();
+            double[] copy = before.clone();
+            detector.update(state, new BigDecimal("100"));
+            assertNotSame(before, state.getStatistics());
+            assertTrue(Arrays.equals(copy, before), detector.getDetector().name());
+
+            Random random = new Random(7);
+            for (int i = 0; i < 10_000; i++) {
+                detector.update(state, BigDecimal.valueOf(10_000 + random.nextInt(500), 2));
+            }
+            assertEquals(before.length, state.getStatistics().length);
+            assertEquals(0, state.getWindow().length);
+        }
+    }
+
+    @Test
+    public void testNotEnoughPrices_AreNeverAnomalies() {
+        for (StreamingAnomalyDetection detector : List.of(new AnomalyDetectionEwma(10, K_VALUE),
+                new AnomalyDetectionMad(10, K_VALUE))) {
+            DetectionState state = detector.buildState(List.of());
+            assertEquals("false", detector.isAnomaly(state, new BigDecimal("100")));
+            detector.update(state, new BigDecimal("100"));
+            assertEquals("false", detector.isAnomaly(state, new BigDecimal("1000")));
+            detector.update(state, new BigDecimal("101"));
+            assertEquals("true", detector.isAnomaly(state, new BigDecimal("1000")));
+        }
+    }
+
+    @Test
+    public void testMad_EstimatesMedianAndDeviationOfALongStream() {
+        AnomalyDetectionMad mad = new AnomalyDetectionMad(10, K_VALUE);
+        DetectionState state = mad.buildState(List.of());
+        Random random = new Random(42);
+        double[] prices = new double[20_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = Math.round((100 + 5 * random.nextGaussian()) * 100) / 100.0;
+            mad.update(state, BigDecimal.valueOf(prices[i]));
+        }
+        double[] sorted = prices.clone();
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        double[] deviations = Arrays.stream(prices).map(price -> Math.abs(price - median)).sorted().toArray();
+        double exactMad = deviations[deviations.length / 2];
+
+        assertEquals(median, state.getSma().doubleValue(), median * 0.01);
+        assertEquals(AnomalyDetectionMad.NORMAL_CONSISTENCY * exactMad, state.getStdDev().doubleValue(),
+                AnomalyDetectionMad.NORMAL_CONSISTENCY * exactMad * 0.05);
+        assertEquals("false", mad.isAnomaly(state, new BigDecimal("105")));
+        assertEquals("true", mad.isAnomaly(state, new BigDecimal("115")));
+    }
+
+    @Test
+    public void testMad_IsNotWidenedByExtremePrices() {
+        AnomalyDetectionMad mad = new AnomalyDetectionMad(10, K_VALUE);
+        DetectionState state = mad.buildState(history(100, 101, 99, 100, 5000, 100, 101, 99, 4000, 100, 100));
+
+        assertEquals(100, state.getSma().doubleValue(), 1);
+        assertEquals("true", mad.isAnomaly(state, new BigDecimal("110")));
+        assertEquals("false", mad.isAnomaly(state, new BigDecimal("100.5")));
+    }
+
+    @Test
+    public void testP2Quantile_IsExactForTheFirstObservations() {
+        double[] sketch = new double[P2Quantile.SIZE];
+        double[] values = {7, 3, 9, 1, 5};
+        for (int i = 0; i < values.length; i++) {
+            P2Quantile.add(sketch, 0, 0.25, values[i]);
+            double[] sorted = Arrays.copyOf(values, i + 1);
+            Arrays.sort(sorted);
+            double index = 0.25 * i;
+            int lower = (int) Math.floor(index);
+            double expected = sorted[lower] + (sorted[(int) Math.ceil(index)] - sorted[lower]) * (index - lower);
+            assertEquals(expected, P2Quantile.quantile(sketch, 0, 0.25), 1e-12);
+        }
+        assertEquals(5, P2Quantile.count(sketch, 0));
+    }
+
+    @Test
+    public void testIsCurrent_OnlyForStatesOfTheSameDetectorAndConfiguration() {
+        AnomalyDetectionEwma ewma = new AnomalyDetectionEwma(10, K_VALUE);
+        AnomalyDetectionMad mad = new AnomalyDetectionMad(10, K_VALUE);
+        List<PriceData> history = history(100, 101, 99);
+
+        assertTrue(ewma.isCurrent(ewma.buildState(history)));
+        assertFalse(ewma.isCurrent(mad.buildState(history)));
+        assertFalse(mad.isCurrent(ewma.buildState(history)));
+        assertFalse(ewma.isCurrent(new AnomalyDetectionEwma(5, K_VALUE).buildState(history)));
+        assertFalse(ewma.isCurrent(new AnomalyDetectionEwma(10, BigDecimal.ONE).buildState(history)));
+        assertFalse(ewma.isCurrent(new AnomalyDetectionStandardDeviation(10, K_VALUE, MathMode.EXACT)
+                .buildState(history)));
+        assertFalse(ewma.isCurrent(null));
+    }
+}
@@ -0,0 +1,68 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommonsTest {
+
+    private static List<BigDecimal> prices(int size, long seed) {
+        Random random = new Random(seed);
+        List<BigDecimal> prices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BigDecimal price = BigDecimal.valueOf(Math.round((100 + random.nextGaussian() * 5) * 100), 2);
+            prices.add(random.nextInt(50) == 0 ? price.multiply(BigDecimal.TEN) : price);
+        }
+        return prices;
+    }
+
+    @Test
+    public void testCalculateStatistics_MatchesSeparateCalls() {
+        for (int size : new int[]{0, 1, 5, 10, Commons.EXACT_QUARTILES_LIMIT + 1, 5_000}) {
+            List<BigDecimal> prices = prices(size, size);
+            BigDecimal sma = Commons.calculateSMA(prices);
+
+            PriceStatistics statistics = Commons.calculateStatistics(prices);
+
+            assertEquals(sma, statistics.sma(), "sma of " + size);
+            assertEquals(Commons.calculateStandardDeviation(prices, sma), statistics.stdDev(), "stdDev of " + size);
+        }
+    }
+
+    @Test
+    public void testRemoveOutliers_LargeWindowRemovesSpikes() {
+        List<BigDecimal> prices = prices(20_000, 1);
+
+        List<BigDecimal> filtered = Commons.removeOutliers(prices, MathMode.PRIMITIVE);
+
+        // Spikes are ten times the price; the normal prices are within 5 standard deviations of 100.
+        assertTrue(filtered.stream().allMatch(price -> price.compareTo(BigDecimal.valueOf(200)) < 0));
+        assertTrue(filtered.stream().filter(price -> price.compareTo(BigDecimal.valueOf(90)) >= 0
+                && price.compareTo(BigDecimal.valueOf(110)) <= 0).count()
+                == prices.stream().filter(price -> price.compareTo(BigDecimal.valueOf(90)) >= 0
+                && price.compareTo(BigDecimal.valueOf(110)) <= 0).count());
+    }
+
+    @Test
+    public void testRemoveOutliers_LargeWindowIsExactUnderExactMode() {
+        List<BigDecimal> prices = prices(Commons.EXACT_QUARTILES_LIMIT * 10 + 1, 2);
+        List<BigDecimal> sorted = new ArrayList<>(prices);
+        sorted.sort(null);
+        // 2001 prices: Q1 and Q3 fall on indexes 500 and 1500.
+        BigDecimal q1 = sorted.get(500);
+        BigDecimal q3 = sorted.get(1500);
+        BigDecimal margin = q3.subtract(q1).multiply(BigDecimal.valueOf(1.5));
+        List<BigDecimal> expected = prices.stream()
+                .filter(price -> price.compareTo(q1.subtract(margin)) >= 0 && price.compareTo(q3.add(margin)) <= 0)
+                .toList();
+
+        assertEquals(expected, Commons.removeOutliers(prices));
+        assertEquals(expected, Commons.removeOutliers(prices, MathMode.EXACT));
+    }
+}
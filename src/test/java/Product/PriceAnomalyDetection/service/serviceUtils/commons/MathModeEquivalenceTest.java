@@ -0,0 +1,128 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.model.Product;
+import Product.PriceAnomalyDetection.service.serviceUtils.anomalyDetection.AnomalyDetectionStandardDeviation;
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformerMovingWindow;
+import Product.PriceAnomalyDetection.service.serviceUtils.processFile.ProcessFileImp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MathModeEquivalenceTest {
+
+    private static final int[] WINDOW_SIZES = {3, 5, 10, 20};
+    private static final String[] K_VALUES = {"1.5", "2"};
+
+    private Map<String, PriceSeries> load(String resource) throws IOException, ParseException {
+        try (InputStream inputStream = new ClassPathResource(resource).getInputStream()) {
+            MockMultipartFile file = new MockMultipartFile("file", resource, "text/csv", inputStream);
+            return new ProcessFileImp().processData(file);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv/prices_sample.csv", "csv/prices_rounded.csv"})
+    public void testTransformerClassifiesSamePoints(String resource) throws IOException, ParseException {
+        Map<String, PriceSeries> data = load(resource);
+
+        for (int windowSize : WINDOW_SIZES) {
+            for (String kValue : K_VALUES) {
+                DataTransformerMovingWindow exact =
+                        new DataTransformerMovingWindow(windowSize, new BigDecimal(kValue), MathMode.EXACT);
+                DataTransformerMovingWindow primitive =
+                        new DataTransformerMovingWindow(windowSize, new BigDecimal(kValue), MathMode.PRIMITIVE);
+
+                data.forEach((id, prices) -> {
+                    Product exactProduct = exact.transformToProduct(id, prices.copy());
+                    Product primitiveProduct = primitive.transformToProduct(id, prices.copy());
+                    Product listProduct = exact.transformToProduct(id, prices.toPriceDataList());
+                    assertEquals(listProduct.getOutliers(), exactProduct.getOutliers(),
+                            "outliers of " + id + " from a list with window " + windowSize + " and k " + kValue);
+                    assertEquals(exactProduct.getOutliers(), primitiveProduct.getOutliers(),
+                            "outliers of " + id + " with window " + windowSize + " and k " + kValue);
+                    assertEquals(exactProduct.getNonOutliers(), primitiveProduct.getNonOutliers(),
+                            "non outliers of " + id + " with window " + windowSize + " and k " + kValue);
+                });
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"csv/prices_sample.csv", "csv/prices_rounded.csv"})
+    public void testDetectorClassifiesSamePoints(String resource) throws IOException, ParseException {
+        Map<String, PriceSeries> data = load(resource);
+
+        for (int windowSize : WINDOW_SIZES) {
+            for (String kValue : K_VALUES) {
+                AnomalyDetectionStandardDeviation exact =
+                        new AnomalyDetectionStandardDeviation(windowSize, new BigDecimal(kValue), MathMode.EXACT);
+                AnomalyDetectionStandardDeviation primitive =
+                        new AnomalyDetectionStandardDeviation(windowSize, new BigDecimal(kValue), MathMode.PRIMITIVE);
+                DataTransformerMovingWindow transformer =
+                        new DataTransformerMovingWindow(windowSize, new BigDecimal(kValue), MathMode.EXACT);
+
+                data.forEach((id, prices) -> {
+                    List<PriceData> nonOutliers = transformer.transformToProduct(id, prices.copy()).getNonOutliers();
+                    for (int i = 0; i < prices.size(); i++) {
+                        BigDecimal probe = prices.price(i);
+                        assertEquals(exact.isAnomaly(nonOutliers, probe), primitive.isAnomaly(nonOutliers, probe),
+                                "price " + probe + " of " + id + " with window " + windowSize + " and k " + kValue);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void testWindowStatisticsMatchesCommons() {
+        Random random = new Random(42);
+        WindowStatistics statistics = new WindowStatistics();
+
+        for (int run = 0; run < 500; run++) {
+            int size = 1 + random.nextInt(30);
+            List<BigDecimal> window = new ArrayList<>();
+            long[] scaledWindow = new long[size];
+            for (int i = 0; i < size; i++) {
+                BigDecimal price = BigDecimal.valueOf(1000 + random.nextInt(100_000), 2);
+                window.add(price);
+                scaledWindow[i] = Commons.toScaledPrice(price);
+            }
+
+            BigDecimal sma = Commons.calculateSMA(window);
+            BigDecimal stdDev = Commons.calculateStandardDeviation(window, sma);
+            statistics.compute(scaledWindow, 0, size);
+
+            assertEquals(Commons.removeOutliers(window).size(), statistics.getCount());
+            assertEquals(sma.doubleValue(), statistics.getMean() / 10_000, 1e-6);
+            assertEquals(stdDev.doubleValue(), statistics.getStandardDeviation() / 10_000, 1e-6);
+        }
+    }
+
+    @Test
+    public void testWindowStatisticsSkipsIndex() {
+        long[] prices = {100, 105, 9_000, 110};
+        WindowStatistics statistics = new WindowStatistics();
+
+        statistics.compute(prices, 0, prices.length, 2);
+
+        assertEquals(3, statistics.getCount());
+        assertEquals(105, statistics.getMean(), 1e-9);
+        assertTrue(statistics.isOutside(9_000, 2));
+    }
+
+}
@@ -0,0 +1,86 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriceSeriesTest {
+
+    private static Date day(int epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Test
+    public void testSortByDate_IsStableLikeListSort() {
+        Random random = new Random(11);
+        List<PriceData> points = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            points.add(new PriceData(day(19_000 + random.nextInt(50)), BigDecimal.valueOf(i, 2)));
+        }
+        PriceSeries series = PriceSeries.of(points);
+
+        series.sortByDate();
+        points.sort(Comparator.comparing(PriceData::getDate));
+
+        assertEquals(points, series.toPriceDataList());
+    }
+
+    @Test
+    public void testConversion_KeepsTheDecimalsOfEveryPrice() {
+        List<PriceData> points = List.of(
+                new PriceData(day(19_000), new BigDecimal("10")),
+                new PriceData(day(19_001), new BigDecimal("10.50")),
+                new PriceData(day(19_002), new BigDecimal("0.0001")));
+
+        PriceSeries series = PriceSeries.of(points);
+
+        assertEquals(points, series.toPriceDataList());
+        assertEquals(105_000, series.scaledPrice(1));
+        assertEquals(2, series.price(1).scale());
+        assertEquals(List.of(points.get(2), points.get(0)), series.toPriceDataList(new int[]{2, 0, 1}, 2));
+    }
+
+    @Test
+    public void testPricesWithMoreDecimals_SurviveSortAndCopy() {
+        PriceSeries series = new PriceSeries(1);
+        series.add(2, 101_235, 4, new BigDecimal("10.123456"));
+        series.add(1, 105_000, 1);
+        series.add(0, 12_346, 4, PriceSeries.exactPrice(new BigDecimal("1.23455")));
+        PriceSeries copy = series.copy();
+
+        series.sortByDate();
+
+        assertEquals(List.of(new BigDecimal("1.23455"), new BigDecimal("10.5"), new BigDecimal("10.123456")),
+                series.prices());
+        assertNull(series.exactPrice(1));
+        assertEquals(12_346, series.scaledPrice(0));
+        assertEquals(new BigDecimal("10.123456"), copy.price(0));
+        assertNull(PriceSeries.exactPrice(new BigDecimal("10.50000")));
+    }
+
+    @Test
+    public void testAdd_GrowsAndCopyIsIndependent() {
+        PriceSeries series = new PriceSeries(1);
+        for (int i = 0; i < 100; i++) {
+            series.add(100 - i, i * 10_000L, 0);
+        }
+        PriceSeries copy = series.copy();
+
+        series.sortByDate();
+
+        assertEquals(100, copy.size());
+        assertEquals(100, copy.epochDay(0));
+        assertEquals(1, series.epochDay(0));
+        assertEquals(BigDecimal.valueOf(99), series.price(0));
+    }
+}
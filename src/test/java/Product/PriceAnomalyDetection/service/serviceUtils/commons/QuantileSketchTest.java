@@ -0,0 +1,113 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double[] FRACTIONS = {0, 0.01, 0.25, 0.5, 0.75, 0.99, 1};
+
+    private static double[] stream(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            // Skewed prices with repeated values and a few spikes, like the uploads.
+            double price = Math.round(Math.exp(4 + random.nextGaussian() * 0.3) * 100) / 100.0;
+            values[i] = random.nextInt(100) == 0 ? price * 20 : price;
+        }
+        return values;
+    }
+
+    /**
+     * The interpolation of {@code Commons.calculateQuartile} on a sorted array.
+     */
+    private static double exact(double[] sorted, double fraction) {
+        double index = fraction * (sorted.length - 1);
+        int lower = (int) Math.floor(index);
+        int upper = (int) Math.ceil(index);
+        return sorted[lower] + (sorted[upper] - sorted[lower]) * (index - lower);
+    }
+
+    private static void assertWithinBound(double[] sorted, QuantileSketch sketch) {
+        long error = sketch.getMaxRankError();
+        for (double fraction : FRACTIONS) {
+            double index = fraction * (sorted.length - 1);
+            double lowest = sorted[(int) Math.max(0, (long) Math.floor(index) - error)];
+            double highest = sorted[(int) Math.min(sorted.length - 1, (long) Math.ceil(index) + error)];
+            double estimate = sketch.quantile(fraction);
+            assertTrue(estimate >= lowest && estimate <= highest,
+                    "quantile " + fraction + " = " + estimate + " outside [" + lowest + ", " + highest + "]");
+        }
+    }
+
+    @Test
+    public void testUpToCapacity_IsExact() {
+        double[] values = stream(QuantileSketch.DEFAULT_CAPACITY - 1, 1);
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.update(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(0, sketch.getMaxRankError());
+        for (double fraction : FRACTIONS) {
+            assertEquals(exact(sorted, fraction), sketch.quantile(fraction), 1e-9);
+        }
+    }
+
+    @Test
+    public void testLargeStream_IsWithinRankErrorBound() {
+        int size = 200_000;
+        double[] values = stream(size, 2);
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.update(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(size, sketch.getCount());
+        int capacity = QuantileSketch.DEFAULT_CAPACITY;
+        double levels = Math.ceil(Math.log((double) size / capacity) / Math.log(2));
+        assertTrue(sketch.getMaxRankError() <= levels * size / capacity,
+                "rank error " + sketch.getMaxRankError());
+        assertWithinBound(sorted, sketch);
+    }
+
+    @Test
+    public void testMergedPartitions_AreWithinRankErrorBound() {
+        double[] values = stream(50_000, 3);
+        QuantileSketch merged = new QuantileSketch();
+        int partitions = 7;
+        for (int partition = 0; partition < partitions; partition++) {
+            QuantileSketch sketch = new QuantileSketch();
+            for (int i = partition; i < values.length; i += partitions) {
+                sketch.update(values[i]);
+            }
+            merged.merge(sketch);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(values.length, merged.getCount());
+        assertWithinBound(sorted, merged);
+    }
+
+    @Test
+    public void testEmptySketch_ReturnsNaN() {
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+
+    @Test
+    public void testDifferentCapacities_CannotBeMerged() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(8).merge(new QuantileSketch(16)));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(7));
+    }
+}
@@ -0,0 +1,115 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.commons;
+
+import Product.PriceAnomalyDetection.service.serviceUtils.dataTransformer.DataTransformerMovingWindow;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingWindowTest {
+
+    @Test
+    public void testAddAndRemoveKeepOrderAndSum() {
+        SlidingWindow window = new SlidingWindow(new long[]{30, 10, 20, 10, 99}, 4);
+        window.add(30);
+        window.add(10);
+        window.add(20);
+        window.add(10);
+        window.remove(10);
+
+        WindowStatistics statistics = new WindowStatistics();
+        window.summarize(statistics);
+
+        assertEquals(3, window.size());
+        assertEquals(20, statistics.getMean(), 1e-9);
+        assertThrows(IllegalStateException.class, () -> window.remove(99));
+        assertThrows(IllegalArgumentException.class, () -> window.add(99));
+        window.remove(30);
+        assertThrows(IllegalStateException.class, () -> window.remove(30));
+
+        window.clear();
+        window.summarize(statistics);
+        assertEquals(0, window.size());
+        assertEquals(0, statistics.getCount());
+    }
+
+    @Test
+    public void testSummaryMatchesSortedWindowAfterEveryMove() {
+        Random random = new Random(11);
+        long[] prices = new long[2_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = random.nextInt(3) == 0 ? 1_000_000 + random.nextInt(50) : random.nextLong(1L << 40);
+        }
+        SlidingWindow window = new SlidingWindow(prices, prices.length);
+        WindowStatistics sliding = new WindowStatistics();
+        WindowStatistics sorted = new WindowStatistics();
+
+        for (int i = 0; i < prices.length; i++) {
+            window.add(prices[i]);
+            if (i >= 40) {
+                window.remove(prices[i - 40]);
+            }
+            window.summarize(sliding);
+            sorted.compute(prices, Math.max(0, i - 39), i + 1);
+            assertEquals(sorted.getCount(), sliding.getCount(), "index " + i);
+            assertEquals(sorted.getMean(), sliding.getMean(), "index " + i);
+            assertEquals(sorted.getStandardDeviation(), sliding.getStandardDeviation(), "index " + i);
+        }
+    }
+
+    @Test
+    public void testVarianceOfLargeCloseTogetherPricesIsExact() {
+        long base = 100_000_000_000_000_000L;
+        long[] prices = {base + 1, base + 2, base + 3, base + 4};
+        SlidingWindow window = new SlidingWindow(prices, prices.length);
+        for (long price : prices) {
+            window.add(price);
+        }
+        WindowStatistics statistics = new WindowStatistics();
+
+        window.summarize(statistics);
+
+        assertEquals(4, statistics.getCount());
+        assertEquals(Math.sqrt(1.25), statistics.getStandardDeviation(), 1e-12);
+    }
+
+    @Test
+    public void testIncrementalFlagsMatchWindowByWindow() {
+        Random random = new Random(7);
+        long[] prices = new long[5_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 1_000_000 + random.nextInt(100_000) + (random.nextInt(20) == 0 ? 5_000_000 : 0);
+        }
+
+        for (int windowSize : new int[]{0, 1, 2, 3, 4, 10, 25}) {
+            DataTransformerMovingWindow transformer =
+                    new DataTransformerMovingWindow(windowSize, BigDecimal.valueOf(2), MathMode.PRIMITIVE);
+            boolean[] flags = transformer.detectOutlierFlags(prices);
+
+            WindowStatistics statistics = new WindowStatistics();
+            int half = windowSize / 2;
+            for (int i = 0; i < prices.length; i++) {
+                statistics.compute(prices, Math.max(0, i - half), Math.min(prices.length, i + half + 1), i);
+                assertEquals(statistics.isOutside(prices[i], 2), flags[i], "index " + i + " with window " + windowSize);
+            }
+        }
+    }
+
+    @Test
+    public void testLongHistoryIsClassified() {
+        Random random = new Random(3);
+        long[] prices = new long[200_000];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 500_000 + random.nextInt(10_000);
+        }
+        prices[100_000] = 50_000_000;
+
+        DataTransformerMovingWindow transformer =
+                new DataTransformerMovingWindow(10, BigDecimal.valueOf(2), MathMode.PRIMITIVE);
+        boolean[] flags = transformer.detectOutlierFlags(prices);
+
+        assertTrue(flags[100_000]);
+    }
+}
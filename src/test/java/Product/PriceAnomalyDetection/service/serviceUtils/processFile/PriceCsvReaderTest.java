@@ -0,0 +1,160 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.processFile;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.Commons;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriceCsvReaderTest {
+
+    private record Row(String itemId, PriceData priceData) {
+    }
+
+    private static List<Row> read(PriceCsvReader reader, byte[] content) throws IOException, ParseException {
+        List<Row> rows = new ArrayList<>();
+        reader.read(new ByteArrayInputStream(content), (itemId, epochDay, scaledPrice, scale, exactPrice) ->
+                rows.add(new Row(itemId, new PriceData(reader.toDate(epochDay),
+                        exactPrice != null ? exactPrice : PriceCsvReader.toPrice(scaledPrice, scale)))));
+        return rows;
+    }
+
+    private static List<Row> readWithCommonsCsv(byte[] content) throws IOException, ParseException {
+        List<Row> rows = new ArrayList<>();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        try (CSVParser csvParser = new CSVParser(new InputStreamReader(new ByteArrayInputStream(content),
+                StandardCharsets.UTF_8), CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build())) {
+            for (CSVRecord record : csvParser) {
+                BigDecimal price = new BigDecimal(record.get("PRICE"));
+                rows.add(new Row(record.get("ITEM_ID"), new PriceData(format.parse(record.get("ORD_CLOSED_DT")),
+                        PriceSeries.exactPrice(price) != null
+                                ? price
+                                : price.setScale(Math.min(price.scale(), Commons.PRICE_SCALE), RoundingMode.UNNECESSARY))));
+            }
+        }
+        return rows;
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream input = new ClassPathResource(name).getInputStream()) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSampleFiles_MatchCommonsCsvWithoutFallback() throws IOException, ParseException {
+        for (String name : List.of("csv/prices_sample.csv", "csv/prices_rounded.csv")) {
+            byte[] content = resource(name);
+            PriceCsvReader reader = new PriceCsvReader(64);
+
+            assertEquals(readWithCommonsCsv(content), read(reader, content), name);
+            assertEquals(0, reader.getFallbackRows(), name);
+            assertTrue(reader.getFastRows() > 0, name);
+        }
+    }
+
+    @Test
+    public void testPrices_ParsedExactlyAndRoundedHalfUp() throws IOException, ParseException {
+        List<Long> scaled = new ArrayList<>();
+        List<Integer> scales = new ArrayList<>();
+        List<BigDecimal> exactPrices = new ArrayList<>();
+        new PriceCsvReader().read(new ByteArrayInputStream(bytes(
+                "ITEM_ID,PRICE,ORD_CLOSED_DT\r\n1,0.1,2023-10-01\r\n1,100,2023-10-01\r\n\r\n1,1.23455,2023-10-01\r\n"
+                        + "1,-1.00005,2023-10-01\r\n1,7.1234449,2023-10-01")),
+                (itemId, epochDay, scaledPrice, scale, exactPrice) -> {
+                    scaled.add(scaledPrice);
+                    scales.add(scale);
+                    exactPrices.add(exactPrice);
+                });
+
+        assertEquals(List.of(1_000L, 1_000_000L, 12_346L, -10_001L, 71_234L), scaled);
+        assertEquals(List.of(1, 0, 4, 4, 4), scales);
+        assertEquals(Arrays.asList(null, null, new BigDecimal("1.23455"), new BigDecimal("-1.00005"),
+                new BigDecimal("7.1234449")), exactPrices);
+        assertEquals(new BigDecimal("0.1"), PriceCsvReader.toPrice(1_000L, 1));
+        assertEquals(new BigDecimal("100"), PriceCsvReader.toPrice(1_000_000L, 0));
+    }
+
+    @Test
+    public void testPricesWithMoreDecimals_KeptAsWritten() throws IOException, ParseException {
+        byte[] fast = bytes("ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.123456,2023-10-01\n1,10.50000,2023-10-02\n");
+        byte[] fallback = bytes("ITEM_ID,PRICE,ORD_CLOSED_DT\n\"1\",10.123456,2023-10-01\n1,10.50000,2023-10-02\n");
+
+        for (byte[] content : List.of(fast, fallback)) {
+            List<Row> rows = read(new PriceCsvReader(), content);
+
+            assertEquals(new BigDecimal("10.123456"), rows.get(0).priceData().getPrice());
+            assertEquals(0, new BigDecimal("10.5").compareTo(rows.get(1).priceData().getPrice()));
+        }
+    }
+
+    @Test
+    public void testDates_DecodedToEpochDays() {
+        for (LocalDate date = LocalDate.of(1899, 12, 1); date.getYear() < 2101; date = date.plusDays(17)) {
+            assertEquals(date.toEpochDay(), PriceCsvReader.epochDay(date.getYear(), date.getMonthValue(),
+                    date.getDayOfMonth()), date.toString());
+        }
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), PriceCsvReader.epochDay(2024, 2, 29));
+    }
+
+    @Test
+    public void testUnexpectedRow_FallsBackForTheRestOfTheFile() throws IOException, ParseException {
+        byte[] content = bytes("ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,2023-10-01\n\"2\",20.5,2023-10-02\n"
+                + "3, 30.5,2023-10-03\n4,40.5,2023-10-04\n");
+        PriceCsvReader reader = new PriceCsvReader();
+
+        List<Row> rows = read(reader, content);
+
+        assertEquals(List.of("1", "2", "3", "4"), rows.stream().map(Row::itemId).toList());
+        assertEquals(new BigDecimal("30.5"), rows.get(2).priceData().getPrice());
+        assertEquals(1, reader.getFastRows());
+        assertEquals(3, reader.getFallbackRows());
+    }
+
+    @Test
+    public void testOtherHeader_UsesCommonsCsv() throws IOException, ParseException {
+        byte[] content = bytes("ORD_CLOSED_DT,ITEM_ID,PRICE\n2023-10-01,1,10.5\n2023-10-02,1,11.5\n");
+        PriceCsvReader reader = new PriceCsvReader();
+
+        List<Row> rows = read(reader, content);
+
+        assertEquals(2, rows.size());
+        assertEquals(new BigDecimal("11.5"), rows.get(1).priceData().getPrice());
+        assertEquals(0, reader.getFastRows());
+        assertEquals(2, reader.getFallbackRows());
+    }
+
+    @Test
+    public void testMalformedRows_ThrowLikeCommonsCsv() {
+        PriceCsvReader reader = new PriceCsvReader();
+        assertThrows(IllegalArgumentException.class, () ->
+                read(reader, bytes("ITEM_ID,PRICE,ORD_CLOSED_DT\n1,,2023-10-01\n")));
+        assertThrows(IllegalArgumentException.class, () ->
+                read(reader, bytes("ITEM_ID,PRICE\n1,10.5\n")));
+        assertThrows(ParseException.class, () ->
+                read(reader, bytes("ITEM_ID,PRICE,ORD_CLOSED_DT\n1,10.5,01/10/2023\n")));
+    }
+}
@@ -0,0 +1,110 @@
+package Product.PriceAnomalyDetection.service.serviceUtils.processFile;
+
+import Product.PriceAnomalyDetection.model.PriceData;
+import Product.PriceAnomalyDetection.service.serviceUtils.commons.PriceSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessFileStreamImpTest {
+
+    private static final String SAMPLE = "csv/prices_sample.csv";
+
+    @TempDir
+    Path tempDir;
+
+    private Map<String, List<PriceData>> groupWithBudget(DataSize budget) throws IOException, ParseException {
+        ProcessFileStreamImp processFileStream = new ProcessFileStreamImp(budget, tempDir.toString());
+        Map<String, List<PriceData>> groups = new HashMap<>();
+        try (InputStream input = new ClassPathResource(SAMPLE).getInputStream()) {
+            processFileStream.processData(input, (itemId, prices) -> assertNull(
+                    groups.put(itemId, prices.toPriceDataList()), "item " + itemId + " was emitted twice"));
+        }
+        return groups;
+    }
+
+    private Map<String, List<PriceData>> groupInMemory() throws IOException, ParseException {
+        Map<String, PriceSeries> series;
+        try (InputStream input = new ClassPathResource(SAMPLE).getInputStream()) {
+            series = new ProcessFileImp().processData(new MockMultipartFile("file", SAMPLE, "text/csv", input));
+        }
+        Map<String, List<PriceData>> groups = new HashMap<>();
+        series.forEach((itemId, prices) -> groups.put(itemId, prices.toPriceDataList()));
+        return groups;
+    }
+
+    private long filesLeft() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testWithinBudget_MatchesInMemoryGrouping() throws IOException, ParseException {
+        assertEquals(groupInMemory(), groupWithBudget(DataSize.ofMegabytes(64)));
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testSpillsAndMerges_MatchesInMemoryGrouping() throws IOException, ParseException {
+        Map<String, List<PriceData>> expected = groupInMemory();
+
+        Map<String, List<PriceData>> grouped = groupWithBudget(DataSize.ofKilobytes(1));
+
+        assertEquals(expected, grouped);
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testSpillsAndMerges_KeepsPricesWithMoreDecimals() throws IOException, ParseException {
+        StringBuilder csv = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("MLB").append(i % 7).append(',').append(10 + i).append(".123456,2023-10-01\n");
+        }
+        ProcessFileStreamImp processFileStream = new ProcessFileStreamImp(DataSize.ofBytes(512), tempDir.toString());
+        List<BigDecimal> prices = new ArrayList<>();
+
+        processFileStream.processData(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                (itemId, series) -> prices.addAll(series.prices()));
+
+        prices.sort(Comparator.naturalOrder());
+        assertEquals(100, prices.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new BigDecimal((10 + i) + ".123456"), prices.get(i));
+        }
+        assertEquals(0, filesLeft());
+    }
+
+    @Test
+    public void testInvalidRow_DeletesRuns() {
+        StringBuilder csv = new StringBuilder("ITEM_ID,PRICE,ORD_CLOSED_DT\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("MLB").append(i % 7).append(',').append(10 + i).append(",2023-10-01\n");
+        }
+        csv.append("MLB1,,2023-10-02\n");
+        ProcessFileStreamImp processFileStream = new ProcessFileStreamImp(DataSize.ofBytes(512), tempDir.toString());
+
+        assertThrows(NumberFormatException.class, () -> processFileStream.processData(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), (itemId, prices) -> { }));
+        assertDoesNotThrow(() -> assertEquals(0, filesLeft()));
+    }
+}